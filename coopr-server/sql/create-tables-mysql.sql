@@ -35,6 +35,7 @@ CREATE TABLE IF NOT EXISTS jobs (
     job_num BIGINT,
     cluster_id BIGINT,
     status VARCHAR(32),
+    version BIGINT NOT NULL DEFAULT 0,
     create_time TIMESTAMP DEFAULT '0000-00-00 00:00:00',
     job MEDIUMBLOB,
     PRIMARY KEY (cluster_id, job_num),
@@ -57,7 +58,8 @@ CREATE TABLE IF NOT EXISTS tasks (
     PRIMARY KEY (cluster_id, job_num, task_num),
     FOREIGN KEY (cluster_id, job_num) REFERENCES jobs(cluster_id, job_num),
     INDEX status_time_index (status_time),
-    INDEX submit_time_index (submit_time)
+    INDEX submit_time_index (submit_time),
+    INDEX cluster_status_time_index (cluster_id, status_time)
 ) ENGINE = InnoDB;
 
 CREATE TABLE IF NOT EXISTS nodes (
@@ -68,6 +70,35 @@ CREATE TABLE IF NOT EXISTS nodes (
     INDEX cluster_node_index (cluster_id, id)
 ) ENGINE = InnoDB;
 
+CREATE TABLE IF NOT EXISTS node_actions (
+    node_id VARCHAR(64),
+    submit_time BIGINT,
+    task_id VARCHAR(255),
+    cluster_id BIGINT,
+    status VARCHAR(32),
+    action MEDIUMBLOB,
+    PRIMARY KEY (node_id, submit_time, task_id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS node_usage (
+    cluster_id BIGINT,
+    bucket_start BIGINT,
+    bucket_end BIGINT,
+    tenant_id VARCHAR(64),
+    user_id VARCHAR(255),
+    cluster_template_name VARCHAR(255),
+    live_delta BIGINT,
+    live_offset BIGINT,
+    PRIMARY KEY (cluster_id, bucket_start, bucket_end),
+    INDEX bucket_index (bucket_start, bucket_end)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS live_nodes (
+    cluster_id BIGINT,
+    node_id VARCHAR(64),
+    PRIMARY KEY (cluster_id, node_id)
+) ENGINE = InnoDB;
+
 CREATE TABLE IF NOT EXISTS providerTypes (
     name VARCHAR(255),
     version BIGINT,
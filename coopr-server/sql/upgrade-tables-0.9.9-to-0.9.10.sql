@@ -0,0 +1,34 @@
+#
+# Copyright © 2016 Cask Data, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# to use, run:
+# mysql -u $user -p -h $hostname $dbname < upgrade-tables-0.9.9-to-0.9.10.sql
+
+# Job versions, so that cached jobs can tell whether they were changed by another server
+ALTER TABLE `jobs` ADD COLUMN version BIGINT NOT NULL DEFAULT 0 AFTER status;
+
+# Index so that completed tasks can be read in cluster and time order when processing reports
+ALTER TABLE `tasks` ADD INDEX cluster_status_time_index (cluster_id, status_time);
+
+# Action history of nodes, so that nodes only need to keep their most recent actions
+CREATE TABLE IF NOT EXISTS node_actions (
+    node_id VARCHAR(64),
+    submit_time BIGINT,
+    task_id VARCHAR(255),
+    cluster_id BIGINT,
+    status VARCHAR(32),
+    action MEDIUMBLOB,
+    PRIMARY KEY (node_id, submit_time, task_id)
+) ENGINE = InnoDB;
@@ -16,6 +16,7 @@
 
 package co.cask.coopr.cluster;
 
+import co.cask.coopr.macro.ClusterMacroContext;
 import co.cask.coopr.macro.Expander;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.spec.Link;
@@ -44,9 +45,10 @@ public class ClusterDetails {
     this.message = job.getStatusMessage();
     // get links from the cluster template, expanding any macros in them and populating the field
     ImmutableList.Builder linksBuilder = ImmutableList.builder();
+    ClusterMacroContext macroContext = new ClusterMacroContext(cluster, nodes);
     for (Link link : cluster.getClusterTemplate().getLinks()) {
       try {
-        linksBuilder.add(new Link(link.getLabel(), Expander.expand(link.getUrl(), cluster, nodes, null)));
+        linksBuilder.add(new Link(link.getLabel(), Expander.expand(link.getUrl(), macroContext, null)));
       } catch (Exception e) {
         // if we couldn't expand the macro, just use the original string
         linksBuilder.add(link);
@@ -54,7 +56,7 @@ public class ClusterDetails {
     }
     this.links = linksBuilder.build();
     for (Node node : this.nodes) {
-      node.populateLinks(cluster, nodes);
+      node.populateLinks(macroContext);
     }
   }
 
@@ -15,6 +15,7 @@
  */
 package co.cask.coopr.cluster;
 
+import co.cask.coopr.macro.ClusterMacroContext;
 import co.cask.coopr.macro.Expander;
 import co.cask.coopr.spec.Link;
 import co.cask.coopr.spec.service.Service;
@@ -176,13 +177,21 @@ public class Node implements Comparable<Node> {
    * purposes.
    */
   public void populateLinks(Cluster cluster, Set<Node> nodes) {
+    populateLinks(new ClusterMacroContext(cluster, nodes));
+  }
+
+  /**
+   * Get all service links on the node, combine them all, and expand any macros in them against the given cluster
+   * context. Only useful for display purposes.
+   */
+  public void populateLinks(ClusterMacroContext macroContext) {
     // take links from the services on this node, expand any self macros that may be there, and combine them all
     ImmutableList.Builder<Link> linksBuilder = ImmutableList.builder();
     for (Service service : services) {
       for (Link link : service.getLinks()) {
         try {
           // The service link may have macros like %host.self% that should get expanded.
-          linksBuilder.add(new Link(link.getLabel(), Expander.expand(link.getUrl(), cluster, nodes, this)));
+          linksBuilder.add(new Link(link.getLabel(), Expander.expand(link.getUrl(), macroContext, this)));
         } catch (Exception e) {
           // if we couldn't expand the macro, just use the original string
           linksBuilder.add(link);
@@ -37,7 +37,9 @@ public class TakeTaskRequestCodec implements JsonDeserializer<TakeTaskRequest> {
     String workerId = context.deserialize(jsonObj.get("workerId"), String.class);
     String provisionerId = context.deserialize(jsonObj.get("provisionerId"), String.class);
     String tenantId = context.deserialize(jsonObj.get("tenantId"), String.class);
+    Integer batchSize = context.deserialize(jsonObj.get("batchSize"), Integer.class);
+    Integer waitSeconds = context.deserialize(jsonObj.get("waitSeconds"), Integer.class);
 
-    return new TakeTaskRequest(workerId, provisionerId, tenantId);
+    return new TakeTaskRequest(workerId, provisionerId, tenantId, batchSize, waitSeconds);
   }
 }
@@ -20,6 +20,7 @@ import co.cask.coopr.codec.json.AbstractCodec;
 import co.cask.coopr.scheduler.task.TaskConfig;
 import co.cask.coopr.scheduler.task.TaskServiceAction;
 import co.cask.coopr.spec.Provider;
+import com.google.common.collect.ImmutableMap;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -56,7 +57,12 @@ public class TaskConfigCodec extends AbstractCodec<TaskConfig> {
     jsonObj.add("automators", context.serialize(taskConfig.getNodeProperties().getAutomators()));
     jsonObj.add("services", context.serialize(taskConfig.getNodeProperties().getServices()));
     jsonObj.add("provider", context.serialize(taskConfig.getProvider()));
-    jsonObj.add("nodes", context.serialize(taskConfig.getNodes()));
+    // tasks in the queue refer to a snapshot of the cluster nodes, which is filled in before they go to provisioners
+    if (taskConfig.getNodesSnapshotId() != null) {
+      jsonObj.addProperty("nodesSnapshot", taskConfig.getNodesSnapshotId());
+    } else {
+      jsonObj.add("nodes", context.serialize(taskConfig.getNodes()));
+    }
     jsonObj.add("service", context.serialize(taskConfig.getTaskServiceAction()));
 
     // gross...
@@ -78,6 +84,10 @@ public class TaskConfigCodec extends AbstractCodec<TaskConfig> {
     Provider provider = context.deserialize(jsonObj.remove("provider"), Provider.class);
     Map<String, NodeProperties> nodePropertiesMap =
       context.deserialize(jsonObj.remove("nodes"), new TypeToken<Map<String, NodeProperties>>() { }.getType());
+    String nodesSnapshotId = context.deserialize(jsonObj.remove("nodesSnapshot"), String.class);
+    if (nodePropertiesMap == null && nodesSnapshotId != null) {
+      nodePropertiesMap = ImmutableMap.of();
+    }
     JsonObject clusterConfig = context.deserialize(jsonObj.remove("cluster"), JsonObject.class);
     TaskServiceAction taskServiceAction = context.deserialize(jsonObj.remove("service"), TaskServiceAction.class);
     // build node properties
@@ -108,7 +118,8 @@ public class TaskConfigCodec extends AbstractCodec<TaskConfig> {
       .build();
 
     // what's left is the provisioner results
-    return new TaskConfig(nodeProperties, provider, nodePropertiesMap, taskServiceAction, clusterConfig, jsonObj);
+    return new TaskConfig(nodeProperties, provider, nodePropertiesMap, taskServiceAction, clusterConfig, jsonObj,
+                          nodesSnapshotId);
   }
 
   private JsonObject shallowCopy(JsonObject o) {
@@ -34,6 +34,7 @@ public class Constants {
   public static final String ZOOKEEPER_QUORUM = "server.zookeeper.quorum";
   public static final String ZOOKEEPER_SESSION_TIMEOUT_MILLIS = "server.zookeeper.session.timeout.millis";
   public static final String ZOOKEEPER_NAMESPACE = "server.zookeeper.namespace";
+  public static final String ZOOKEEPER_MAP_SEQUENTIAL_NODES = "server.zookeeper.map.sequential.nodes.enabled";
 
   public static final String EXTERNAL_SSL_KEYSTORE_PATH = "server.ssl.keystore.path";
   public static final String EXTERNAL_SSL_KEYPASSWORD = "server.ssl.keystore.password";
@@ -57,8 +58,19 @@ public class Constants {
   public static final String EMBEDDED_DERBY_DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
 
   public static final String SCHEDULER_INTERVAL_SECS = "server.scheduler.run.interval.seconds";
+  public static final String SCHEDULER_DAG_DISPATCH_ENABLED = "server.scheduler.dag.dispatch.enabled";
+  public static final String SCHEDULER_EVENT_DRIVEN_ENABLED = "server.scheduler.event.driven.enabled";
+  public static final String SCHEDULER_JOB_WRITE_INTERVAL_SECS = "server.scheduler.job.write.interval.seconds";
   public static final String SOLVER_NUM_THREADS = "server.solver.num.threads";
+  public static final String SOLVER_SEARCH_NUM_THREADS = "server.solver.search.num.threads";
+  public static final String SOLVER_LAYOUT_CACHE_MAX_ENTRIES = "server.solver.layout.cache.max.entries";
+  public static final String ENTITY_CACHE_MAX_ENTRIES = "server.entity.cache.max.entries";
   public static final String TASK_TIMEOUT_SECS = "server.task.timeout.seconds";
+  public static final String TASK_TAKE_MAX_BATCH_SIZE = "server.task.take.max.batch.size";
+  public static final String TASK_TAKE_MAX_WAIT_SECS = "server.task.take.max.wait.seconds";
+  public static final String TASK_TAKE_NUM_THREADS = "server.task.take.num.threads";
+  public static final String TASK_TAKE_CHECK_INTERVAL_MS = "server.task.take.check.interval.ms";
+  public static final String TASK_SNAPSHOT_RETENTION_SECS = "server.task.snapshot.retention.seconds";
   public static final String CLUSTER_CLEANUP_SECS = "server.cluster.cleanup.seconds";
   public static final String NETTY_EXEC_NUM_THREADS = "server.netty.exec.num.threads";
   public static final String NETTY_WORKER_NUM_THREADS = "server.netty.worker.num.threads";
@@ -70,6 +82,7 @@ public class Constants {
 
   public static final String ID_START_NUM = "server.ids.start.num";
   public static final String ID_INCREMENT_BY = "server.ids.increment.by";
+  public static final String ID_LEASE_SIZE = "server.ids.lease.size";
 
   public static final String CALLBACK_CLASS = "server.callback.class";
   public static final String PLUGIN_STORE_CLASS = "server.plugin.store.class";
@@ -81,6 +94,9 @@ public class Constants {
   public static final String PROVISIONER_REQUEST_MS_BETWEEN_RETRIES = "server.provisioner.request.ms.between.retries";
   public static final String PROVISIONER_REQUEST_SOCKET_TIMEOUT_MS = "server.provisioner.request.socket.timeout.ms";
   public static final String PROVISIONER_REQUEST_CONNECT_TIMEOUT_MS = "server.provisioner.request.connect.timeout.ms";
+  public static final String PROVISIONER_REQUEST_MAX_CONNECTIONS = "server.provisioner.request.max.connections";
+  public static final String PROVISIONER_REQUEST_THREADS = "server.provisioner.request.threads";
+  public static final String PROVISIONER_REQUEST_DEADLINE_MS = "server.provisioner.request.deadline.ms";
 
   /**
    * Config settings for the crendential store.
@@ -115,6 +131,10 @@ public class Constants {
    */
   public static final class Metrics {
     public static final String QUEUE_CACHE_SECONDS = "server.metrics.queue.cache.seconds";
+    public static final String ROLLUP_ENABLED = "server.metrics.rollup.enabled";
+    public static final String ROLLUP_HOURLY_RETENTION_DAYS = "server.metrics.rollup.hourly.retention.days";
+    public static final String ROLLUP_DAILY_RETENTION_DAYS = "server.metrics.rollup.daily.retention.days";
+    public static final String ROLLUP_COMPACTION_SECONDS = "server.metrics.rollup.compaction.seconds";
   }
 
   /**
@@ -150,6 +170,13 @@ public class Constants {
     public static final String DATA_DIR = "server.plugin.store.localfilestore.data.dir";
   }
 
+  /**
+   * Constants for the content addressed store implementation for plugin resources.
+   */
+  public static final class ContentAddressedPluginStore {
+    public static final String DATA_DIR = "server.plugin.store.contentaddressedstore.data.dir";
+  }
+
   /**
    * Queue related constants.
    */
@@ -164,6 +191,7 @@ public class Constants {
     public static final String CLUSTER_NAMESPACE = "/locks/clusters";
     public static final String PLUGIN_NAMESPACE = "/locks/plugins";
     public static final String TENANT_NAMESPACE = "/locks/tenants";
+    public static final String TENANT_REQUEST_NAMESPACE = "/locks/tenantrequests";
     public static final String TASK_NAMESPACE = "/locks/tasks";
   }
 
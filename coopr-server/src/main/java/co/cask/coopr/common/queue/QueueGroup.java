@@ -18,8 +18,10 @@ package co.cask.coopr.common.queue;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Service;
+import org.apache.twill.common.Cancellable;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -32,6 +34,19 @@ import java.util.Set;
  */
 public interface QueueGroup extends Service {
 
+  /**
+   * Listener for elements being added to queues in the group.
+   */
+  interface Listener {
+
+    /**
+     * Called after elements were added to some queue in the group. Calls may be combined, so there can be fewer
+     * calls than elements added. Implementations should return quickly, since they can be called from the thread
+     * that added the elements.
+     */
+    void elementsAdded();
+  }
+
   /**
    * Adds the given elements to the specified queue.
    *
@@ -60,6 +75,16 @@ public interface QueueGroup extends Service {
    */
   Element take(String queueName, String consumerId);
 
+  /**
+   * Take up to the given number of elements from a specific queue in the group at once.
+   *
+   * @param queueName Name of the queue to take elements from.
+   * @param consumerId Id of the consumer taking the elements.
+   * @param maxElements Max number of elements to take.
+   * @return Elements from the queue, which is empty if there are no elements to take.
+   */
+  List<Element> take(String queueName, String consumerId, int maxElements);
+
   /**
    * Records progress of consuming the given element from the given queue.
    *
@@ -128,4 +153,13 @@ public interface QueueGroup extends Service {
    * @return Iterator over all queued elements in the queue.
    */
   Iterator<QueuedElement> getQueued(String queueName);
+
+  /**
+   * Add a listener that is called whenever elements are added to some queue in the group, whether they were added
+   * through this instance of the group or through another instance of it.
+   *
+   * @param listener Listener to add.
+   * @return Cancellable that removes the listener.
+   */
+  Cancellable addListener(Listener listener);
 }
@@ -38,6 +38,8 @@ public enum QueueType {
   // balancer queue holds tenants to rebalance workers for
   BALANCER("/clustermanager/balancer");
   public static final Set<QueueType> GROUP_TYPES = ImmutableSet.of(SOLVER, CLUSTER, JOB, CALLBACK, PROVISIONER);
+  // types whose schedulers can run whenever elements are added to their queues, on any server
+  public static final Set<QueueType> EVENT_DRIVEN_TYPES = ImmutableSet.of(SOLVER, CLUSTER, JOB, CALLBACK);
   private final String path;
 
   private QueueType(String path) {
@@ -18,6 +18,7 @@ package co.cask.coopr.common.queue;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Queue that tracks consuming of the elements and may re-add elements that were attempted to be consumed.
@@ -60,6 +61,16 @@ public interface TrackingQueue {
    */
   Element take(String consumerId);
 
+  /**
+   * Take up to the given number of available elements from the queue at once, in the order they would be returned by
+   * {@link #take(String)}. Elements can be placed back to the queue the same way as elements taken one at a time.
+   *
+   * @param consumerId element consumer
+   * @param maxElements max number of elements to take
+   * @return available elements, which is empty if no element is available
+   */
+  List<Element> take(String consumerId, int maxElements);
+
   /**
    * Records progress of consuming the element. If element no longer belongs to this consumer this will be noted in
    * returned possession state as {@link PossessionState#NOT_POSSESSES}. This may happen e.g. if {@link TrackingQueue}
@@ -1,5 +1,6 @@
 package co.cask.coopr.common.queue.guice;
 
+import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.QueueService;
 import co.cask.coopr.common.queue.QueueType;
@@ -16,14 +17,25 @@ import org.apache.twill.zookeeper.ZKClient;
  */
 public class QueueModule extends AbstractModule {
   private final ZKClient zkClient;
+  private final boolean sequentialMapNodes;
+  private final boolean eventDriven;
 
   public QueueModule(ZKClient zkClient) {
+    this(zkClient, Configuration.create());
+  }
+
+  public QueueModule(ZKClient zkClient, Configuration conf) {
     this.zkClient = zkClient;
+    this.sequentialMapNodes = conf.getBoolean(Constants.ZOOKEEPER_MAP_SEQUENTIAL_NODES, false);
+    this.eventDriven = conf.getBoolean(Constants.SCHEDULER_EVENT_DRIVEN_ENABLED, true);
   }
 
   @Override
   protected void configure() {
-    TrackingQueue balancerQueue = new LazyZKTrackingQueue(zkClient, QueueType.BALANCER.getPath());
+    bindConstant().annotatedWith(Names.named(Constants.ZOOKEEPER_MAP_SEQUENTIAL_NODES)).to(sequentialMapNodes);
+    bindConstant().annotatedWith(Names.named(Constants.SCHEDULER_EVENT_DRIVEN_ENABLED)).to(eventDriven);
+    TrackingQueue balancerQueue =
+      new LazyZKTrackingQueue(zkClient, QueueType.BALANCER.getPath(), sequentialMapNodes);
     bind(TrackingQueue.class)
       .annotatedWith(Names.named(Constants.Queue.WORKER_BALANCE)).toInstance(balancerQueue);
 
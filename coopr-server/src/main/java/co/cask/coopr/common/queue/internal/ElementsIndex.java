@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.queue.internal;
+
+import co.cask.coopr.common.zookeeper.lib.SynchronizedZKMap;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import javax.annotation.Nullable;
+
+/**
+ * In-memory indexes over the entries of a {@link ZKElementsTracking}, kept consistent with the map that holds the
+ * entries by listening to changes of its view. Elements that are not being consumed are kept ordered by priority and
+ * elements being consumed are kept by consumer, so that none of the queue operations need to look at every element.
+ */
+final class ElementsIndex implements SynchronizedZKMap.Listener<ZKElementsTracking.Entry> {
+  // what each element was indexed with, since entries are changed in place before they are written back to the map
+  private final Map<String, IndexedEntry> indexedEntries = Maps.newHashMap();
+  private final NavigableSet<IndexedEntry> notStarted = Sets.newTreeSet();
+  // consumer id -> ids of the elements it is consuming
+  private final SetMultimap<String, String> beingConsumed = HashMultimap.create();
+
+  @Override
+  public synchronized void entryChanged(String key, ZKElementsTracking.Entry value) {
+    entryRemoved(key);
+    IndexedEntry indexedEntry = new IndexedEntry(key, value);
+    indexedEntries.put(key, indexedEntry);
+    if (indexedEntry.isNotStarted()) {
+      notStarted.add(indexedEntry);
+    } else {
+      beingConsumed.put(indexedEntry.consumerId, key);
+    }
+  }
+
+  @Override
+  public synchronized void entryRemoved(String key) {
+    IndexedEntry indexedEntry = indexedEntries.remove(key);
+    if (indexedEntry == null) {
+      return;
+    }
+    if (indexedEntry.isNotStarted()) {
+      notStarted.remove(indexedEntry);
+    } else {
+      beingConsumed.remove(indexedEntry.consumerId, key);
+    }
+  }
+
+  /**
+   * Get the entry with the highest priority out of the entries that are not being consumed.
+   *
+   * @return Entry with the highest priority that is not being consumed, or null if there is none.
+   */
+  @Nullable
+  synchronized ZKElementsTracking.Entry getNotStartedWithHighestPriority() {
+    return notStarted.isEmpty() ? null : notStarted.first().entry;
+  }
+
+  /**
+   * Get all entries that are not being consumed, ordered from highest to lowest priority.
+   *
+   * @return Entries that are not being consumed.
+   */
+  synchronized List<ZKElementsTracking.Entry> getNotStarted() {
+    List<ZKElementsTracking.Entry> entries = Lists.newArrayListWithCapacity(notStarted.size());
+    for (IndexedEntry indexedEntry : notStarted) {
+      entries.add(indexedEntry.entry);
+    }
+    return entries;
+  }
+
+  /**
+   * Get all entries that are being consumed, grouped by consumer.
+   *
+   * @return Entries that are being consumed.
+   */
+  synchronized List<ZKElementsTracking.Entry> getBeingConsumed() {
+    List<ZKElementsTracking.Entry> entries = Lists.newArrayListWithCapacity(beingConsumed.size());
+    for (String elementId : beingConsumed.values()) {
+      entries.add(indexedEntries.get(elementId).entry);
+    }
+    return entries;
+  }
+
+  /**
+   * Index record of an entry, ordered by priority and then by element id.
+   */
+  private static final class IndexedEntry implements Comparable<IndexedEntry> {
+    private final String elementId;
+    private final ZKElementsTracking.Entry entry;
+    private final long priority;
+    private final String consumerId;
+
+    private IndexedEntry(String elementId, ZKElementsTracking.Entry entry) {
+      this.elementId = elementId;
+      this.entry = entry;
+      this.priority = entry.priority;
+      this.consumerId = entry.consumerId;
+    }
+
+    private boolean isNotStarted() {
+      return ZKElementsTracking.NO_CONSUMER_ASSIGNED.equals(consumerId);
+    }
+
+    @Override
+    public int compareTo(IndexedEntry o) {
+      if (priority != o.priority) {
+        return priority > o.priority ? 1 : -1;
+      }
+      return elementId.compareTo(o.elementId);
+    }
+  }
+}
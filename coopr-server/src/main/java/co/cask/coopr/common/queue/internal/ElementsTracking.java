@@ -41,6 +41,16 @@ public interface ElementsTracking {
    */
   Element startConsuming(String consumerId);
 
+  /**
+   * Start consuming up to the given number of elements from the queue, in priority order. All elements are handed
+   * out at once, so that consumers that want many elements do not have to pay for taking each one separately.
+   *
+   * @param consumerId Id of the consumer.
+   * @param maxElements Max number of elements to start consuming.
+   * @return Elements to start consuming, which is empty if there are no elements to consume.
+   */
+  List<Element> startConsuming(String consumerId, int maxElements);
+
   /**
    * Stop consuming an element and add it back to the queue to allow it to be consumed again. The operation may
    * fail if there is no element in the queue matching the element id, or if the element is being consumed by a
@@ -29,9 +29,7 @@ import org.apache.twill.zookeeper.ZKClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.locks.Lock;
 import javax.annotation.Nullable;
 
@@ -39,8 +37,8 @@ import javax.annotation.Nullable;
 /**
  * Simple implementation that uses ZK to store element data.
  * <p/>
- * Given that queue is not going to be big, at max will contain hundreds or thousands of elements *for simplicity* we
- * use {@link Map} backed by ZK - underneath:
+ * Element data is kept in a {@link SynchronizedZKMap}, and an {@link ElementsIndex} that is updated whenever the
+ * view of the map changes is used to find elements by priority or by consumer without walking thru all of them.
  * <p/>
  * Again, for simplicity we use *single* lock and wrap all methods with it.
  */
@@ -49,16 +47,23 @@ public class ZKElementsTracking implements ElementsTracking {
   // Moves to the top of the queue. Since we reset priority when we start consuming, it is safe to use 0L here
   // See {@link #getCurrentHighestPriority()} for more info.
   private static final long HIGHEST_PRIORITY = 0L;
-  private static final String NO_CONSUMER_ASSIGNED = "";
+  static final String NO_CONSUMER_ASSIGNED = "";
   private static final EntrySerializer ENTRY_SERIALIZER = new EntrySerializer();
 
   private final ThreadLocal<Lock> globalLock;
-  private final Map<String, Entry> queueElements;
+  private final SynchronizedZKMap<Entry> queueElements;
+  private final ElementsIndex index;
 
   public ZKElementsTracking(final ZKClient zkClient, final String basePath)  {
+    this(zkClient, basePath, false);
+  }
+
+  public ZKElementsTracking(final ZKClient zkClient, final String basePath, boolean sequentialMapNodes)  {
     String queuePath = basePath + "/queue";
     Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, queuePath));
-    this.queueElements = new SynchronizedZKMap<Entry>(zkClient, queuePath + "/map", ENTRY_SERIALIZER);
+    this.index = new ElementsIndex();
+    this.queueElements = new SynchronizedZKMap<Entry>(zkClient, queuePath + "/map", ENTRY_SERIALIZER, index,
+                                                      sequentialMapNodes);
 
     this.globalLock = new ThreadLocal<Lock>() {
       @Override
@@ -89,40 +94,36 @@ public class ZKElementsTracking implements ElementsTracking {
 
   @Override
   public Element startConsuming(String consumerId) {
+    List<Element> elements = startConsuming(consumerId, 1);
+    return elements.isEmpty() ? null : elements.get(0);
+  }
+
+  @Override
+  public List<Element> startConsuming(String consumerId, int maxElements) {
+    List<Element> elements = Lists.newArrayList();
     try {
       globalLock.get().lock();
       try {
-        Entry entry = getNotStartedWithHighestPriority();
-        if (entry == null) {
-          return null;
+        queueElements.refresh();
+        while (elements.size() < maxElements) {
+          Entry entry = index.getNotStartedWithHighestPriority();
+          if (entry == null) {
+            break;
+          }
+          entry.consumerId = consumerId;
+          entry.lastProgressReportTs = System.currentTimeMillis();
+          entry.priority = getCurrentHighestPriority();
+          queueElements.put(entry.element.getId(), entry);
+          elements.add(entry.element);
         }
-        entry.consumerId = consumerId;
-        entry.lastProgressReportTs = System.currentTimeMillis();
-        entry.priority = getCurrentHighestPriority();
-        queueElements.put(entry.element.getId(), entry);
-        return entry.element;
       } finally {
         globalLock.get().unlock();
       }
     } catch (Exception e) {
+      // elements that were already marked as being consumed are still handed out
       LOG.error("error during start consuming", e);
-      return null;
     }
-  }
-
-  private Entry getNotStartedWithHighestPriority() throws Exception {
-    Entry result = null;
-    for (Entry entry : queueElements.values()) {
-      // we are walking thru *all* element items, hence need to skip those that are in progress
-      if (!NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
-        continue;
-      }
-      // choosing entry with highest priority
-      if (result == null || result.priority > entry.priority) {
-        result = entry;
-      }
-    }
-    return result;
+    return elements;
   }
 
   @Override
@@ -204,11 +205,9 @@ public class ZKElementsTracking implements ElementsTracking {
     try {
       globalLock.get().lock();
       try {
-        for (Entry entry : queueElements.values()) {
-          // we are walking thru *all* element items, hence need to skip those not in progress
-          if (NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
-            continue;
-          }
+        queueElements.refresh();
+        // index returns a copy, so it is fine to reschedule elements while walking thru them
+        for (Entry entry : index.getBeingConsumed()) {
           boolean stopAndReschedule = walker.process(entry.element,
                                                      entry.consumerId,
                                                      entry.lastProgressReportTs);
@@ -286,14 +285,9 @@ public class ZKElementsTracking implements ElementsTracking {
     try {
       globalLock.get().lock();
       try {
-        List<Entry> all = Lists.newArrayList(queueElements.values());
-        // we want to return the list ordered by priority
-        Collections.sort(all);
-        for (Entry entry : all) {
-          if (NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
-            list.add(entry);
-          }
-        }
+        queueElements.refresh();
+        // index keeps them ordered by priority
+        list.addAll(index.getNotStarted());
       } finally {
         globalLock.get().unlock();
       }
@@ -310,11 +304,8 @@ public class ZKElementsTracking implements ElementsTracking {
     try {
       globalLock.get().lock();
       try {
-        for (Entry entry : queueElements.values()) {
-          if (!NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
-            listBuilder.add(entry);
-          }
-        }
+        queueElements.refresh();
+        listBuilder.addAll(index.getBeingConsumed());
       } finally {
         globalLock.get().unlock();
       }
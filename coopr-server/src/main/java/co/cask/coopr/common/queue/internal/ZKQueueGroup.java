@@ -29,27 +29,41 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKOperations;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * Implementation of a {@link QueueGroup} that uses queues built on zookeeper. Whenever a queue name is referenced in a
  * method, the queue is cached and the physical zookeeper queue is created if it does not already exist. Watches
  * zookeeper to make sure queues added or deleted by another instance of the group are reflected in this group.
+ * If enabled, adding elements also updates the data of the group node, which every instance of the group watches so
+ * that its listeners hear about elements added by other instances.
  */
 public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
+  private static final Logger LOG = LoggerFactory.getLogger(ZKQueueGroup.class);
   private final ZKClient zkClient;
   private final QueueType queueType;
+  private final boolean notifyInstances;
   private final LoadingCache<String, TrackingQueue> queueMap;
+  private final Set<Listener> listeners;
 
   /**
    * Create a zookeeper queue group of the given type, using the given zookeeper client. Physical queues in the group
@@ -59,21 +73,54 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
    * @param zkClient Client to use for zookeeper operations.
    * @param queueType Type of queues in the group.
    */
-  ZKQueueGroup(final ZKClient zkClient, final QueueType queueType) {
+  ZKQueueGroup(ZKClient zkClient, QueueType queueType) {
+    this(zkClient, queueType, false, QueueType.EVENT_DRIVEN_TYPES.contains(queueType));
+  }
+
+  /**
+   * Create a zookeeper queue group of the given type, using the given zookeeper client.
+   *
+   * @param zkClient Client to use for zookeeper operations.
+   * @param queueType Type of queues in the group.
+   * @param sequentialMapNodes Whether queues should store their elements in sequential nodes.
+   * @param notifyInstances Whether adding elements should notify listeners of other instances of the group.
+   */
+  ZKQueueGroup(final ZKClient zkClient, final QueueType queueType, final boolean sequentialMapNodes,
+               boolean notifyInstances) {
     this.zkClient = zkClient;
     this.queueType = queueType;
+    this.notifyInstances = notifyInstances;
+    this.listeners = new CopyOnWriteArraySet<Listener>();
     this.queueMap = CacheBuilder.newBuilder().build(
       new CacheLoader<String, TrackingQueue>() {
         @Override
         public TrackingQueue load(String queueName) throws Exception {
-          return new LazyZKTrackingQueue(zkClient, getZKPathForQueue(queueName));
+          return new LazyZKTrackingQueue(zkClient, getZKPathForQueue(queueName), sequentialMapNodes);
         }
       });
   }
 
   @Override
   public ListenableFuture<String> add(String queueName, Element element) {
-    return queueMap.getUnchecked(queueName).add(element);
+    ListenableFuture<String> result = queueMap.getUnchecked(queueName).add(element);
+    notifyListeners();
+    if (notifyInstances) {
+      // no need to wait for this, it only wakes up listeners of other instances of the group, which also run on a
+      // schedule and will see the element eventually.
+      Futures.addCallback(zkClient.setData(queueType.getPath(), new byte[0]), new FutureCallback<Stat>() {
+        @Override
+        public void onSuccess(Stat result) {
+          // no-op
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          LOG.warn("Could not notify other instances of {} queues about an added element.",
+                   queueType.name().toLowerCase(), t);
+        }
+      });
+    }
+    return result;
   }
 
   /**
@@ -93,6 +140,11 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
     return queueMap.getUnchecked(queueName).take(consumerId);
   }
 
+  @Override
+  public List<Element> take(String queueName, String consumerId, int maxElements) {
+    return queueMap.getUnchecked(queueName).take(consumerId, maxElements);
+  }
+
   @Override
   public TrackingQueue.PossessionState recordProgress(String consumerId, String queueName, String elementId,
                                                       TrackingQueue.ConsumingStatus status, String result) {
@@ -138,6 +190,17 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
     return queueMap.getUnchecked(queueName).getQueued();
   }
 
+  @Override
+  public Cancellable addListener(final Listener listener) {
+    listeners.add(listener);
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        listeners.remove(listener);
+      }
+    };
+  }
+
   @Override
   protected void startUp() throws Exception {
     Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, queueType.getPath()));
@@ -148,6 +211,18 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
         refreshQueues(nodeChildren);
       }
     });
+    final SettableFuture<Void> watchSet = SettableFuture.create();
+    ZKOperations.watchData(zkClient, queueType.getPath(), new ZKOperations.DataCallback() {
+      @Override
+      public void updated(NodeData nodeData) {
+        // the first call is for the data as it was when the watch was set, every call after that is for a change
+        if (!watchSet.set(null)) {
+          notifyListeners();
+        }
+      }
+    });
+    // wait for the watch so that no element added after startup is missed
+    Futures.getUnchecked(watchSet);
   }
 
   @Override
@@ -155,6 +230,12 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
     // no-op
   }
 
+  private void notifyListeners() {
+    for (Listener listener : listeners) {
+      listener.elementsAdded();
+    }
+  }
+
   private void refreshQueues(NodeChildren nodeChildren) {
     Set<String> queueNames = Sets.newHashSet(nodeChildren.getChildren());
     Set<String> existingQueues = queueMap.asMap().keySet();
@@ -16,12 +16,14 @@
 
 package co.cask.coopr.common.queue.internal;
 
+import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.QueueGroup;
 import co.cask.coopr.common.queue.QueueService;
 import co.cask.coopr.common.queue.QueueType;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import org.apache.twill.zookeeper.ZKClient;
 
 import java.util.Map;
@@ -33,10 +35,13 @@ public class ZKQueueService extends AbstractIdleService implements QueueService
   private final Map<QueueType, QueueGroup> queueGroups;
 
   @Inject
-  private ZKQueueService(ZKClient zkClient) {
+  private ZKQueueService(ZKClient zkClient,
+                         @Named(Constants.ZOOKEEPER_MAP_SEQUENTIAL_NODES) boolean sequentialMapNodes,
+                         @Named(Constants.SCHEDULER_EVENT_DRIVEN_ENABLED) boolean eventDriven) {
     ImmutableMap.Builder<QueueType, QueueGroup> builder = ImmutableMap.builder();
     for (QueueType type : QueueType.GROUP_TYPES) {
-      builder.put(type, new ZKQueueGroup(zkClient, type));
+      boolean notifyInstances = eventDriven && QueueType.EVENT_DRIVEN_TYPES.contains(type);
+      builder.put(type, new ZKQueueGroup(zkClient, type, sequentialMapNodes, notifyInstances));
     }
     this.queueGroups = builder.build();
   }
@@ -20,26 +20,39 @@ import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.zookeeper.lib.ReentrantDistributedLock;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskId;
+import com.google.common.collect.Maps;
 import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.Inject;
 import org.apache.twill.zookeeper.NodeData;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 
 /**
- * Uses Zookeeper for creating new unique ids.
+ * Uses Zookeeper for creating new unique ids. Instead of going to zookeeper for every id, each server leases a block
+ * of ids at a time by moving the zookeeper counter past the block with a versioned write, and then hands out ids from
+ * the block in memory. Ids in a block that are not handed out before the server stops are never used, since the
+ * counter has already moved past them. Ids are unique across servers, but are only increasing within a server.
  */
 public final class IdService extends AbstractIdleService {
+  private static final Logger LOG = LoggerFactory.getLogger(IdService.class);
   private static final String IDS_BASEPATH = "/ids";
 
   private final long startId;
   private final long incrementBy;
-  private ThreadLocal<Lock> idLock;
+  private final long leaseSize;
+  private final Map<Type, AtomicReference<IdBlock>> idBlocks;
 
   private final ZKClient zkClient;
 
@@ -58,35 +71,47 @@ public final class IdService extends AbstractIdleService {
     }
   }
 
+  /**
+   * Block of ids leased from zookeeper, handed out in memory.
+   */
+  private static final class IdBlock {
+    private final AtomicLong next;
+    private final long end;
+
+    private IdBlock(long start, long end) {
+      this.next = new AtomicLong(start);
+      this.end = end;
+    }
+  }
+
   @Inject
   private IdService(final ZKClient zkClient, Configuration conf)  {
-    this.zkClient = zkClient;
-    this.startId = conf.getInt(Constants.ID_START_NUM);
-    this.incrementBy = conf.getInt(Constants.ID_INCREMENT_BY);
+    this(zkClient, conf.getInt(Constants.ID_START_NUM), conf.getInt(Constants.ID_INCREMENT_BY),
+         conf.getInt(Constants.ID_LEASE_SIZE));
   }
 
   // for unit testing
-  IdService(final ZKClient zkClient, int startId, int incrementBy) {
+  IdService(final ZKClient zkClient, int startId, int incrementBy, int leaseSize) {
     this.zkClient = zkClient;
     this.startId = startId;
     this.incrementBy = incrementBy;
+    this.leaseSize = Math.max(1, leaseSize);
+    this.idBlocks = Maps.newEnumMap(Type.class);
+    for (Type type : Type.values()) {
+      idBlocks.put(type, new AtomicReference<IdBlock>());
+    }
   }
 
   @Override
   protected void startUp() {
-    this.idLock = new ThreadLocal<Lock>() {
-      @Override
-      protected Lock initialValue() {
-        return new ReentrantDistributedLock(zkClient, IDS_BASEPATH + "/lock");
-      }
-    };
-    idLock.get().lock();
+    Lock idLock = new ReentrantDistributedLock(zkClient, IDS_BASEPATH + "/lock");
+    idLock.lock();
     try {
       for (Type type : Type.values()) {
         initializeCounter(type);
       }
     } finally {
-      idLock.get().unlock();
+      idLock.unlock();
     }
   }
 
@@ -124,17 +149,41 @@ public final class IdService extends AbstractIdleService {
     return new TaskId(jobId, generateId(Type.TASK));
   }
 
-  // This generally should not be a noticeable amount of time compared to the time it takes to perform tasks
-  // TODO: try optimistic locking before actual locking to improve performance.
   private long generateId(Type type) {
-    idLock.get().lock();
-    try {
+    AtomicReference<IdBlock> blockRef = idBlocks.get(type);
+    while (true) {
+      IdBlock block = blockRef.get();
+      if (block != null) {
+        long id = block.next.getAndAdd(incrementBy);
+        if (id < block.end) {
+          return id;
+        }
+      }
+      // the block is used up. Only one thread leases the next block, the others wait for it and then use it.
+      synchronized (blockRef) {
+        if (blockRef.get() == block) {
+          blockRef.set(leaseBlock(type));
+        }
+      }
+    }
+  }
+
+  // move the counter past the next block of ids, retrying if another server moved it first.
+  private IdBlock leaseBlock(Type type) {
+    while (true) {
       NodeData nodeData = Futures.getUnchecked(zkClient.getData(type.path));
-      long counterVal = Longs.fromByteArray(nodeData.getData());
-      Futures.getUnchecked(zkClient.setData(type.path, Longs.toByteArray(counterVal + incrementBy)));
-      return counterVal;
-    } finally {
-      idLock.get().unlock();
+      long start = Longs.fromByteArray(nodeData.getData());
+      long end = start + leaseSize * incrementBy;
+      try {
+        Futures.getUnchecked(zkClient.setData(type.path, Longs.toByteArray(end), nodeData.getStat().getVersion()));
+        LOG.debug("Leased {} ids from {} to {}", type, start, end);
+        return new IdBlock(start, end);
+      } catch (UncheckedExecutionException e) {
+        if (!(e.getCause() instanceof KeeperException.BadVersionException)) {
+          throw e;
+        }
+        LOG.debug("Counter for {} ids changed while leasing a block, retrying.", type);
+      }
     }
   }
 
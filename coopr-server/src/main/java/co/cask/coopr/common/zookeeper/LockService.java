@@ -50,4 +50,9 @@ public class LockService {
   public Lock getTenantProvisionerLock() {
     return new ReentrantDistributedLock(zkClient, Constants.Lock.TENANT_NAMESPACE);
   }
+
+  public Lock getTenantProvisionerRequestLock(String tenantId) {
+    String path = Joiner.on('/').join(Constants.Lock.TENANT_REQUEST_NAMESPACE, tenantId);
+    return new ReentrantDistributedLock(zkClient, path);
+  }
 }
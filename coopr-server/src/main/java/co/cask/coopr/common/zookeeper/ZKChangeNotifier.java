@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.zookeeper;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+/**
+ * Notifies every server of changes to state they cache, through a node in zookeeper that every server watches.
+ * A change is published by writing the key of what changed to the node, and watchers are told which key changed.
+ * Since a watch only fires once, watchers that miss updates of the node, for example because several changes happened
+ * in quick succession or while they were disconnected, are told that everything changed instead. Notifications are
+ * best effort, so anything cached based on them should also expire after a while.
+ */
+public class ZKChangeNotifier {
+  private static final Logger LOG = LoggerFactory.getLogger(ZKChangeNotifier.class);
+
+  /**
+   * Listener for changes published through the notifier.
+   */
+  public interface ChangeListener {
+
+    /**
+     * Called when the state with the given key changed.
+     *
+     * @param key Key of the state that changed.
+     */
+    void changed(String key);
+
+    /**
+     * Called when any state may have changed.
+     */
+    void allChanged();
+  }
+
+  private final ZKClient zkClient;
+  private final String path;
+  private final ChangeListener listener;
+  // version of the node as of the last change passed on to the listener, or -1 if the node did not exist
+  private int lastVersion;
+
+  public ZKChangeNotifier(ZKClient zkClient, String path, ChangeListener listener) {
+    this.zkClient = zkClient;
+    this.path = path;
+    this.listener = listener;
+    this.lastVersion = -1;
+  }
+
+  /**
+   * Start watching for changes.
+   *
+   * @return Future that completes once changes are being watched.
+   */
+  public ListenableFuture<?> start() {
+    ListenableFuture<Stat> future = watch();
+    Futures.addCallback(future, new FutureCallback<Stat>() {
+      @Override
+      public void onSuccess(Stat result) {
+        // changes made before the watch was set are not of interest
+        synchronized (ZKChangeNotifier.this) {
+          if (result != null && result.getVersion() > lastVersion) {
+            lastVersion = result.getVersion();
+          }
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        // already logged by the watch
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Notify all watchers that the state with the given key changed. Failures are logged instead of thrown, since
+   * watchers pick up the change once what they cached expires.
+   *
+   * @param key Key of the state that changed.
+   */
+  public void notifyChange(final String key) {
+    ListenableFuture<ZKClientExt.SetResult> future =
+      ZKClientExt.createOrSet(zkClient, path, key.getBytes(Charsets.UTF_8), CreateMode.PERSISTENT);
+    Futures.addCallback(future, new FutureCallback<ZKClientExt.SetResult>() {
+      @Override
+      public void onSuccess(ZKClientExt.SetResult result) {
+        // other servers are notified through their watches
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.error("Exception notifying change of {} at {}.", key, path, t);
+      }
+    });
+  }
+
+  // set a watch on the node. When it fires, it is set again before the change is read, so that changes made while
+  // reading are not missed.
+  private ListenableFuture<Stat> watch() {
+    ListenableFuture<Stat> future = zkClient.exists(path, new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        // connection events do not mean anything changed, and the watch remains set after them
+        if (event.getType() == Event.EventType.None) {
+          return;
+        }
+        watch();
+        if (event.getType() == Event.EventType.NodeDeleted) {
+          changed(null, null);
+        } else {
+          readChange();
+        }
+      }
+    });
+    Futures.addCallback(future, new FutureCallback<Stat>() {
+      @Override
+      public void onSuccess(Stat result) {
+        // watch is set, nothing else to do
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.error("Exception while watching for changes at {}.", path, t);
+      }
+    });
+    return future;
+  }
+
+  private void readChange() {
+    Futures.addCallback(zkClient.getData(path), new FutureCallback<NodeData>() {
+      @Override
+      public void onSuccess(NodeData result) {
+        changed(result.getData(), result.getStat());
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        // the change is unknown, so anything may have changed
+        LOG.warn("Exception reading change at {}.", path, t);
+        synchronized (ZKChangeNotifier.this) {
+          listener.allChanged();
+        }
+      }
+    });
+  }
+
+  // pass the change on to the listener, as a change of a single key if no other change was missed before it.
+  private synchronized void changed(@Nullable byte[] data, @Nullable Stat stat) {
+    int version = stat == null ? -1 : stat.getVersion();
+    if (stat != null && version <= lastVersion) {
+      // already passed on
+      return;
+    }
+    if (data != null && version == lastVersion + 1) {
+      listener.changed(new String(data, Charsets.UTF_8));
+    } else {
+      listener.allChanged();
+    }
+    lastVersion = version;
+  }
+}
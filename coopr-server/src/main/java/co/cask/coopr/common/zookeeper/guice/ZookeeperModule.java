@@ -2,8 +2,12 @@ package co.cask.coopr.common.zookeeper.guice;
 
 import co.cask.coopr.common.zookeeper.IdService;
 import co.cask.coopr.common.zookeeper.LockService;
+import co.cask.coopr.store.entity.EntityChangeWatcher;
+import co.cask.coopr.store.entity.EntityStoreListener;
+import co.cask.coopr.store.tenant.TenantCache;
 import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
+import com.google.inject.multibindings.Multibinder;
 import org.apache.twill.zookeeper.ZKClient;
 
 /**
@@ -22,5 +26,8 @@ public class ZookeeperModule extends AbstractModule {
     bind(ZKClient.class).toInstance(zkClient);
     bind(IdService.class).in(Scopes.SINGLETON);
     bind(LockService.class).in(Scopes.SINGLETON);
+    bind(TenantCache.class).in(Scopes.SINGLETON);
+    bind(EntityChangeWatcher.class).in(Scopes.SINGLETON);
+    Multibinder.newSetBinder(binder(), EntityStoreListener.class).addBinding().to(EntityChangeWatcher.class);
   }
 }
@@ -16,29 +16,43 @@
 package co.cask.coopr.common.zookeeper.lib;
 
 import co.cask.coopr.common.zookeeper.ZKClientExt;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.twill.zookeeper.NodeChildren;
 import org.apache.twill.zookeeper.NodeData;
-import org.apache.twill.zookeeper.OperationFuture;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKClients;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.data.Stat;
 
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
+import javax.annotation.Nullable;
 
 /**
  * Synchronized (across threads and different processes) implementation of {@link java.util.Map} backed
  * by Zookeeper.
  * <p/>
+ * Every call checks the children version of the entries node while holding the global lock. If another process
+ * changed the entries, only the data of new or replaced entries is fetched. Changes made through this map are applied
+ * to its in-memory view directly.
+ * <p/>
+ * Older versions stored each entry in a node named after its key, and replaced it by deleting and creating the node.
+ * Such legacy nodes have to be fetched again whenever anything changes. If sequential nodes are enabled, entries are
+ * instead stored in nodes named {@code ~<key>-<sequence>}, so replaced entries can be told apart by name, and legacy
+ * nodes are rewritten in that format. Sequential nodes must only be enabled once every process that uses the map
+ * understands them. Until then legacy nodes are written and never removed, and a legacy node takes precedence over
+ * sequential nodes of the same key, since it can only exist next to them if it was written after them.
+ * <p/>
  * Does not permit null keys or values.
  *
  * @param <T> Type of object to keep in map values.
@@ -46,30 +60,83 @@ import java.util.concurrent.locks.Lock;
 public class SynchronizedZKMap<T> implements Map<String, T> {
   private static final String ENTRIES_PATH = "/entries";
   private static final String LOCK_PATH = "/lock";
+  // marks nodes named <key>-<sequence>, so that they are not mistaken for legacy nodes with keys that end in digits
+  private static final String SEQUENTIAL_NODE_PREFIX = "~";
+  // zk appends a 10 digit sequence number to the names of sequential nodes
+  private static final int SEQUENCE_LENGTH = 10;
+  private static final char SEQUENCE_SEPARATOR = '-';
   private final ZKClient zkClient;
   private final Serializer<T> serializer;
+  private final boolean sequentialNodes;
 
   private final Lock globalLock;
-  private Map<String, T> currentView;
+  private final Map<String, T> currentView;
+  // name of the node that holds the value of each key in the current view
+  private final Map<String, String> nodeNames;
   private int currentViewVersion;
+  private final Listener<T> listener;
 
   public SynchronizedZKMap(ZKClient zkClient, String namespace, Serializer<T> serializer) {
-    this(namespace == null ? zkClient : ZKClients.namespace(zkClient, namespace), serializer);
+    this(zkClient, namespace, serializer, null);
+  }
+
+  public SynchronizedZKMap(ZKClient zkClient, String namespace, Serializer<T> serializer,
+                           @Nullable Listener<T> listener) {
+    this(zkClient, namespace, serializer, listener, false);
+  }
+
+  public SynchronizedZKMap(ZKClient zkClient, String namespace, Serializer<T> serializer,
+                           @Nullable Listener<T> listener, boolean sequentialNodes) {
+    this(namespace == null ? zkClient : ZKClients.namespace(zkClient, namespace), serializer, listener,
+         sequentialNodes);
   }
 
   public SynchronizedZKMap(ZKClient zkClient, Serializer<T> serializer) {
+    this(zkClient, serializer, null);
+  }
+
+  public SynchronizedZKMap(ZKClient zkClient, Serializer<T> serializer, @Nullable Listener<T> listener) {
+    this(zkClient, serializer, listener, false);
+  }
+
+  /**
+   * Create a map backed by the given zookeeper client.
+   *
+   * @param zkClient Client to use for zookeeper operations.
+   * @param serializer Serializer for map values.
+   * @param listener Listener to notify of changes to the in-memory view, or null.
+   * @param sequentialNodes Whether to write entries to sequential nodes and rewrite legacy nodes. Must only be true
+   *                        once every process that uses the map supports sequential nodes.
+   */
+  public SynchronizedZKMap(ZKClient zkClient, Serializer<T> serializer, @Nullable Listener<T> listener,
+                           boolean sequentialNodes) {
     this.zkClient = zkClient;
     this.serializer = serializer;
+    this.listener = listener;
+    this.sequentialNodes = sequentialNodes;
     this.currentView = Maps.newHashMap();
+    this.nodeNames = Maps.newHashMap();
     this.currentViewVersion = -1;
     this.globalLock = new ReentrantDistributedLock(zkClient, LOCK_PATH);
   }
 
+  /**
+   * Brings the in-memory view up to date with the entries in zookeeper, notifying the listener of any changes.
+   */
+  public synchronized void refresh() {
+    globalLock.lock();
+    try {
+      syncViewIfNeeded();
+    } finally {
+      globalLock.unlock();
+    }
+  }
+
   @Override
   public synchronized int size() {
     globalLock.lock();
     try {
-      reloadCacheIfNeeded();
+      syncViewIfNeeded();
       return currentView.size();
     } finally {
       globalLock.unlock();
@@ -80,7 +147,7 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
   public synchronized boolean isEmpty() {
     globalLock.lock();
     try {
-      reloadCacheIfNeeded();
+      syncViewIfNeeded();
       return currentView.isEmpty();
     } finally {
       globalLock.unlock();
@@ -91,7 +158,7 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
   public synchronized boolean containsKey(Object key) {
     globalLock.lock();
     try {
-      reloadCacheIfNeeded();
+      syncViewIfNeeded();
       return currentView.containsKey(key);
     } finally {
       globalLock.unlock();
@@ -102,7 +169,7 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
   public synchronized boolean containsValue(Object value) {
     globalLock.lock();
     try {
-      reloadCacheIfNeeded();
+      syncViewIfNeeded();
       return currentView.containsValue(value);
     } finally {
       globalLock.unlock();
@@ -113,30 +180,28 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
   public synchronized T get(Object key) {
     globalLock.lock();
     try {
-      reloadCacheIfNeeded();
+      syncViewIfNeeded();
       return currentView.get(key);
     } finally {
       globalLock.unlock();
     }
   }
 
-  // note: may not return value and still delete smth from ZK if in-memory view is stale
   public synchronized T put(String key, T value) {
     globalLock.lock();
     try {
-      reloadCacheIfNeeded();
+      syncViewIfNeeded();
       return putInternal(key, value);
     } finally {
       globalLock.unlock();
     }
   }
 
-  // note: we may return null even though we removed non-null element if the view in memory is stale. Which is OK
   @Override
   public synchronized T remove(Object key) {
     globalLock.lock();
     try {
-      reloadCacheIfNeeded();
+      syncViewIfNeeded();
       return removeInternal(key);
     } finally {
       globalLock.unlock();
@@ -152,7 +217,7 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
   public synchronized void clear() {
     globalLock.lock();
     try {
-      reloadCacheIfNeeded();
+      syncViewIfNeeded();
       clearInternal();
     } finally {
       globalLock.unlock();
@@ -163,8 +228,8 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
   public synchronized Set<String> keySet() {
     globalLock.lock();
     try {
-      reloadCacheIfNeeded();
-      return currentView.keySet();
+      syncViewIfNeeded();
+      return ImmutableSet.copyOf(currentView.keySet());
     } finally {
       globalLock.unlock();
     }
@@ -174,8 +239,8 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
   public synchronized Collection<T> values() {
     globalLock.lock();
     try {
-      reloadCacheIfNeeded();
-      return currentView.values();
+      syncViewIfNeeded();
+      return ImmutableList.copyOf(currentView.values());
     } finally {
       globalLock.unlock();
     }
@@ -185,23 +250,41 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
   public synchronized Set<Entry<String, T>> entrySet() {
     globalLock.lock();
     try {
-      reloadCacheIfNeeded();
-      return currentView.entrySet();
+      syncViewIfNeeded();
+      return ImmutableMap.copyOf(currentView).entrySet();
     } finally {
       globalLock.unlock();
     }
   }
 
   private T putInternal(String key, T value) {
-    Map<String, T> current = Maps.newHashMap(currentView);
-    T result = current.put(key, value);
-    currentView = ImmutableMap.<String, T>builder().putAll(current).build();
-    String itemNodePath = getItemNodePath(key);
-    // Note: we do delete and add new node with new data VS createOrSet() so that cversion of children change (we depend
-    //       on it when checking if the current in-memory view is stale)
-    Futures.getUnchecked(ZKClientExt.delete(zkClient, itemNodePath, true));
-    Futures.getUnchecked(zkClient.create(itemNodePath, serializer.serialize(value), CreateMode.PERSISTENT, true));
-    return result;
+    String oldNode = nodeNames.get(key);
+    String newNode = sequentialNodes ? createSequentialNode(key, serializer.serialize(value)) : null;
+    int changes = newNode == null ? 0 : 1;
+    if (oldNode != null) {
+      Futures.getUnchecked(ZKClientExt.delete(zkClient, getNodePath(oldNode), true));
+      changes++;
+    }
+    if (newNode == null) {
+      // Note: like older versions, the legacy node is deleted and created again instead of set, so that the cversion
+      //       of children changes and other processes know their view is stale.
+      Futures.getUnchecked(zkClient.create(getNodePath(key), serializer.serialize(value),
+                                           CreateMode.PERSISTENT, true));
+      newNode = key;
+      changes++;
+    }
+    nodeNames.put(key, newNode);
+    updateViewVersion(changes);
+    return putInView(key, value);
+  }
+
+  // Note: a new sequential node is created for every put, instead of setting the data of the existing node, so that
+  //       both the cversion of children and the node name change. Other processes use these to tell which entries
+  //       of their in-memory view are stale without fetching the data of every node.
+  private String createSequentialNode(String key, byte[] data) {
+    String prefixPath = getNodePath(SEQUENTIAL_NODE_PREFIX + key + SEQUENCE_SEPARATOR);
+    String newPath = Futures.getUnchecked(zkClient.create(prefixPath, data, CreateMode.PERSISTENT_SEQUENTIAL, true));
+    return newPath.substring(newPath.lastIndexOf('/') + 1);
   }
 
   private T removeInternal(Object key) {
@@ -210,76 +293,205 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
                                            (key == null ? null : key.getClass()));
     }
 
-    if (!currentView.containsKey(key)) {
+    // the view was just synced while holding the global lock, so if the key is not in it, it is not in zk either
+    String node = nodeNames.remove(key);
+    if (node == null) {
       return null;
     }
 
-    Map<String, T> current = Maps.newHashMap(currentView);
-    T removed = current.remove(key);
-    currentView = ImmutableMap.<String, T>builder().putAll(current).build();
-    // note: we cannot only issue remove from zk if removed != null because even if removed == null this could mean
-    //       the element was removed (and for other race-condition reasons)
-    Futures.getUnchecked(ZKClientExt.delete(zkClient, getItemNodePath((String) key), true));
-
-    return removed;
+    Futures.getUnchecked(ZKClientExt.delete(zkClient, getNodePath(node), true));
+    updateViewVersion(1);
+    return removeFromView((String) key);
   }
 
   private void clearInternal() {
-    if (currentView.size() > 0) {
-      currentView = Collections.emptyMap();
-      NodeChildren nodeChildren = Futures.getUnchecked(zkClient.getChildren(ENTRIES_PATH));
+    if (nodeNames.size() > 0) {
       List<ListenableFuture<String>> deleteFutures = Lists.newArrayList();
-      for (String node : nodeChildren.getChildren()) {
+      for (String node : nodeNames.values()) {
         deleteFutures.add(ZKClientExt.delete(zkClient, getNodePath(node), true));
       }
       Futures.getUnchecked(Futures.allAsList(deleteFutures));
+      updateViewVersion(nodeNames.size());
+      nodeNames.clear();
+      clearView();
     }
   }
 
-  private void reloadCacheIfNeeded() {
-    NodeChildren nodeChildren = Futures.getUnchecked(ZKClientExt.getChildrenOrNull(zkClient, ENTRIES_PATH));
-    if (nodeChildren == null) {
-      if (currentView.size() > 0) {
-        currentView = Collections.emptyMap();
-      }
+  // Every change to the entries is made while holding the global lock, so after our own change the children version
+  // is known without asking zk for it.
+  private void updateViewVersion(int changes) {
+    if (currentViewVersion >= 0) {
+      currentViewVersion += changes;
+    }
+  }
 
+  private void syncViewIfNeeded() {
+    // we use children version to detect if we need to update local view. A stat is much cheaper than listing all
+    // children, and in the common case of no changes from other processes, it is the only call made to zk.
+    Stat stat = Futures.getUnchecked(zkClient.exists(ENTRIES_PATH));
+    if (stat != null && stat.getCversion() == currentViewVersion) {
       return;
     }
 
-    // we use children version to detect if we need to update local view
-    int trueVersion = nodeChildren.getStat().getCversion();
-
-    if (currentViewVersion == trueVersion) {
+    NodeChildren nodeChildren = stat == null ?
+      null : Futures.getUnchecked(ZKClientExt.getChildrenOrNull(zkClient, ENTRIES_PATH));
+    if (nodeChildren == null) {
+      clearView();
+      nodeNames.clear();
+      currentViewVersion = -1;
       return;
     }
 
-    List<String> nodes = nodeChildren.getChildren();
-    final Map<String, ListenableFuture<NodeData>> nodeAndDataFutures = Maps.newHashMap();
-    List<OperationFuture<NodeData>> dataFutures = Lists.newArrayList();
-    for (String node : nodes) {
-      OperationFuture<NodeData> dataFuture = zkClient.getData(getNodePath(node));
-      dataFutures.add(dataFuture);
-      nodeAndDataFutures.put(node, dataFuture);
+    // find the latest node for every key. There can be more than one if a process died in the middle of a put, or if a
+    // process that does not use sequential nodes wrote a legacy node for the key. Legacy nodes are never stale, since
+    // processes that use sequential nodes delete the legacy node of a key when they write it.
+    Map<String, String> latestNodes = Maps.newHashMap();
+    List<String> staleNodes = Lists.newArrayList();
+    for (String node : nodeChildren.getChildren()) {
+      String key = getKey(node);
+      String otherNode = latestNodes.get(key);
+      if (otherNode == null || isNewer(node, otherNode)) {
+        latestNodes.put(key, node);
+        if (otherNode != null) {
+          staleNodes.add(otherNode);
+        }
+      } else {
+        staleNodes.add(node);
+      }
     }
 
-    Futures.getUnchecked(Futures.successfulAsList(dataFutures));
+    // drop entries that were removed or replaced by other processes. Legacy nodes keep their name
+    // when replaced, so they are always fetched again.
+    Iterator<Entry<String, String>> iter = nodeNames.entrySet().iterator();
+    while (iter.hasNext()) {
+      Entry<String, String> keyAndNode = iter.next();
+      String node = keyAndNode.getValue();
+      if (!isSequential(node) || !node.equals(latestNodes.get(keyAndNode.getKey()))) {
+        removeFromView(keyAndNode.getKey());
+        iter.remove();
+      }
+    }
+
+    // only fetch data of nodes that are not in the view yet
+    Map<String, ListenableFuture<NodeData>> nodeAndDataFutures = Maps.newHashMap();
+    for (String node : latestNodes.values()) {
+      if (!nodeNames.containsKey(getKey(node))) {
+        nodeAndDataFutures.put(node, ZKClientExt.getDataOrNull(zkClient, getNodePath(node)));
+      }
+    }
+    List<ListenableFuture<String>> deleteFutures = Lists.newArrayList();
+    for (String node : staleNodes) {
+      deleteFutures.add(ZKClientExt.delete(zkClient, getNodePath(node), true));
+    }
+
+    Futures.getUnchecked(Futures.successfulAsList(nodeAndDataFutures.values()));
+    Futures.getUnchecked(Futures.allAsList(deleteFutures));
 
-    ImmutableMap.Builder<String, T> builder = ImmutableMap.builder();
+    int changes = staleNodes.size();
     for (Entry<String, ListenableFuture<NodeData>> nodeAndData : nodeAndDataFutures.entrySet()) {
-      T value = serializer.deserialize(Futures.getUnchecked(nodeAndData.getValue()).getData());
-      builder.put(nodeAndData.getKey(), value);
+      NodeData nodeData = Futures.getUnchecked(nodeAndData.getValue());
+      if (nodeData == null) {
+        continue;
+      }
+      String node = nodeAndData.getKey();
+      String key = getKey(node);
+      if (sequentialNodes && !isSequential(node)) {
+        // every process supports sequential nodes, so legacy nodes can be rewritten and no longer fetched every time
+        String newNode = createSequentialNode(key, nodeData.getData());
+        Futures.getUnchecked(ZKClientExt.delete(zkClient, getNodePath(node), true));
+        node = newNode;
+        changes += 2;
+      }
+      putInView(key, serializer.deserialize(nodeData.getData()));
+      nodeNames.put(key, node);
+    }
+
+    currentViewVersion = nodeChildren.getStat().getCversion() + changes;
+  }
+
+  private T putInView(String key, T value) {
+    T previous = currentView.put(key, value);
+    if (listener != null) {
+      listener.entryChanged(key, value);
+    }
+    return previous;
+  }
+
+  private T removeFromView(String key) {
+    T removed = currentView.remove(key);
+    if (removed != null && listener != null) {
+      listener.entryRemoved(key);
     }
+    return removed;
+  }
+
+  private void clearView() {
+    if (listener != null) {
+      for (String key : currentView.keySet()) {
+        listener.entryRemoved(key);
+      }
+    }
+    currentView.clear();
+  }
 
-    currentView = builder.build();
-    currentViewVersion = trueVersion;
+  // sequential nodes are named ~<key>-<sequence>, legacy nodes written by older versions are named <key>
+  private static String getKey(String node) {
+    return isSequential(node) ?
+      node.substring(SEQUENTIAL_NODE_PREFIX.length(), node.length() - SEQUENCE_LENGTH - 1) : node;
   }
 
+  // whether the node holds a later value for its key than the other node
+  private static boolean isNewer(String node, String otherNode) {
+    if (!isSequential(node)) {
+      return true;
+    }
+    return isSequential(otherNode) && getSequence(otherNode) < getSequence(node);
+  }
 
-  private synchronized String getItemNodePath(String key) {
-    return getNodePath(key);
+  private static long getSequence(String node) {
+    return Long.parseLong(node.substring(node.length() - SEQUENCE_LENGTH));
   }
 
-  private synchronized String getNodePath(String nodeName) {
+  private static boolean isSequential(String node) {
+    int separatorIndex = node.length() - SEQUENCE_LENGTH - 1;
+    if (!node.startsWith(SEQUENTIAL_NODE_PREFIX) || separatorIndex < SEQUENTIAL_NODE_PREFIX.length() ||
+      node.charAt(separatorIndex) != SEQUENCE_SEPARATOR) {
+      return false;
+    }
+    for (int i = separatorIndex + 1; i < node.length(); i++) {
+      if (!Character.isDigit(node.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String getNodePath(String nodeName) {
     return ENTRIES_PATH + "/" + nodeName;
   }
+
+  /**
+   * Listener for changes to the in-memory view of a {@link SynchronizedZKMap}, whether they were made through the map
+   * or by other processes. It is called while holding the lock of the map, so it can be used to keep indexes over the
+   * entries of the map consistent with it.
+   *
+   * @param <T> Type of object kept in map values.
+   */
+  public interface Listener<T> {
+
+    /**
+     * Called when an entry was added to or replaced in the view.
+     *
+     * @param key Key of the entry.
+     * @param value New value of the entry.
+     */
+    void entryChanged(String key, T value);
+
+    /**
+     * Called when an entry was removed from the view.
+     *
+     * @param key Key of the entry.
+     */
+    void entryRemoved(String key);
+  }
 }
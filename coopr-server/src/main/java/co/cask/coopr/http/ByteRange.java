@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.http;
+
+import com.google.common.base.Objects;
+
+import javax.annotation.Nullable;
+
+/**
+ * A single range of bytes requested through the Range header of a request, with the first and last byte positions
+ * both inclusive.
+ */
+public final class ByteRange {
+  private static final String BYTES_UNIT = "bytes=";
+  private final long first;
+  private final long last;
+
+  private ByteRange(long first, long last) {
+    this.first = first;
+    this.last = last;
+  }
+
+  /**
+   * Parse the value of a Range header for content of the given length. Only a single range is supported. Headers
+   * that are missing, invalid, or contain multiple ranges are ignored, in which case the whole content should be sent.
+   * The last byte position is clipped to the end of the content. The returned range is not satisfiable if it starts
+   * past the end of the content.
+   *
+   * @param header Value of the Range header, or null if there is none
+   * @param length Length of the content the range is for
+   * @return Requested range, or null if the header should be ignored
+   */
+  @Nullable
+  public static ByteRange parse(@Nullable String header, long length) {
+    if (header == null || !header.startsWith(BYTES_UNIT)) {
+      return null;
+    }
+    String spec = header.substring(BYTES_UNIT.length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0 || spec.indexOf(',') >= 0) {
+      return null;
+    }
+    String firstStr = spec.substring(0, dash).trim();
+    String lastStr = spec.substring(dash + 1).trim();
+    try {
+      if (firstStr.isEmpty()) {
+        // a suffix range for the final bytes of the content
+        long suffixLength = Long.parseLong(lastStr);
+        if (suffixLength < 0) {
+          return null;
+        }
+        return new ByteRange(Math.max(0, length - suffixLength), length - 1);
+      }
+      long first = Long.parseLong(firstStr);
+      if (first < 0) {
+        return null;
+      }
+      if (lastStr.isEmpty()) {
+        return new ByteRange(first, length - 1);
+      }
+      long last = Long.parseLong(lastStr);
+      if (last < first) {
+        return null;
+      }
+      return new ByteRange(first, Math.min(last, length - 1));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Get the position of the first byte in the range.
+   *
+   * @return Position of the first byte in the range
+   */
+  public long getFirst() {
+    return first;
+  }
+
+  /**
+   * Get the position of the last byte in the range.
+   *
+   * @return Position of the last byte in the range
+   */
+  public long getLast() {
+    return last;
+  }
+
+  /**
+   * Get the number of bytes in the range.
+   *
+   * @return Number of bytes in the range
+   */
+  public long getLength() {
+    return last - first + 1;
+  }
+
+  /**
+   * Whether or not any of the content is within the range.
+   *
+   * @return True if the range contains some of the content, false if not
+   */
+  public boolean isSatisfiable() {
+    return first <= last;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ByteRange)) {
+      return false;
+    }
+    ByteRange that = (ByteRange) o;
+    return first == that.first && last == that.last;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(first, last);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("first", first)
+      .add("last", last)
+      .toString();
+  }
+}
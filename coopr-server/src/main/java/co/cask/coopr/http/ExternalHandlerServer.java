@@ -41,7 +41,7 @@ public class ExternalHandlerServer extends HandlerServer {
                                 final AccessTokenTransformer accessTokenTransformer,
                                 final DiscoveryServiceClient discoveryServiceClient) {
     super(handlers, conf, Constants.EXTERNAL_PORT,
-          cConf, tokenValidator, accessTokenTransformer, discoveryServiceClient);
+          cConf, tokenValidator, accessTokenTransformer, discoveryServiceClient, null);
   }
 
   @Override
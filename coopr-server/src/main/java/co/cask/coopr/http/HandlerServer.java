@@ -47,6 +47,7 @@ abstract class HandlerServer extends AbstractIdleService {
 
   private static final String DECODER_CHANNEL_HANDLER_NAME = "decoder";
   private static final String AUTHENTICATION_CHANNEL_HANDLER_NAME = "access-token-authenticator";
+  private static final String REQUEST_CHANNELS_HANDLER_NAME = "request-channels";
 
   private final NettyHttpService httpService;
 
@@ -54,7 +55,8 @@ abstract class HandlerServer extends AbstractIdleService {
                 final CConfiguration cConf,
                 final TokenValidator tokenValidator,
                 final AccessTokenTransformer accessTokenTransformer,
-                final DiscoveryServiceClient discoveryServiceClient) {
+                final DiscoveryServiceClient discoveryServiceClient,
+                @Nullable final RequestChannels requestChannels) {
     String host = conf.get(Constants.HOST);
     int port = conf.getInt(portKey);
     int numExecThreads = conf.getInt(Constants.NETTY_EXEC_NUM_THREADS);
@@ -72,7 +74,7 @@ abstract class HandlerServer extends AbstractIdleService {
     builder.setExecThreadPoolSize(numExecThreads);
     builder.setBossThreadPoolSize(1);
     builder.setWorkerThreadPoolSize(numWorkerThreads);
-    if (securityEnabled) {
+    if (securityEnabled || requestChannels != null) {
       builder.modifyChannelPipeline(new Function<ChannelPipeline, ChannelPipeline>() {
         @Nullable
         @Override
@@ -80,9 +82,14 @@ abstract class HandlerServer extends AbstractIdleService {
           if (input == null) {
             input = Channels.pipeline();
           }
-          input.addAfter(DECODER_CHANNEL_HANDLER_NAME, AUTHENTICATION_CHANNEL_HANDLER_NAME,
-                         new SecurityAuthenticationHttpHandler(realm, tokenValidator, cConf, accessTokenTransformer,
-                                                               discoveryServiceClient));
+          if (requestChannels != null) {
+            input.addAfter(DECODER_CHANNEL_HANDLER_NAME, REQUEST_CHANNELS_HANDLER_NAME, requestChannels);
+          }
+          if (securityEnabled) {
+            input.addAfter(DECODER_CHANNEL_HANDLER_NAME, AUTHENTICATION_CHANNEL_HANDLER_NAME,
+                           new SecurityAuthenticationHttpHandler(realm, tokenValidator, cConf, accessTokenTransformer,
+                                                                 discoveryServiceClient));
+          }
           return input;
         }
       });
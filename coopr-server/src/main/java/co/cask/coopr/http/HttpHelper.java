@@ -2,6 +2,7 @@ package co.cask.coopr.http;
 
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
 import com.google.gson.Gson;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.handler.codec.http.HttpRequest;
@@ -13,6 +14,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.lang.reflect.Type;
+import javax.annotation.Nullable;
 
 /**
  * Helper class for http handlers.
@@ -50,4 +52,24 @@ public final class HttpHelper {
       }
     }
   }
+
+  /**
+   * Whether or not the value of an If-None-Match header matches the given entity tag, meaning the client already has
+   * the current content. Weak comparison is used, as required for If-None-Match.
+   *
+   * @param ifNoneMatch Value of the If-None-Match header, or null if there is none
+   * @param etag Quoted entity tag of the current content
+   * @return True if the header matches the entity tag, false if not
+   */
+  public static boolean matchesETag(@Nullable String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+      if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
@@ -42,9 +42,10 @@ public class InternalHandlerServer extends HandlerServer {
                                 final CConfiguration cConf,
                                 final TokenValidator tokenValidator,
                                 final AccessTokenTransformer accessTokenTransformer,
-                                final DiscoveryServiceClient discoveryServiceClient) {
+                                final DiscoveryServiceClient discoveryServiceClient,
+                                RequestChannels requestChannels) {
     super(handlers, conf, Constants.INTERNAL_PORT,
-          cConf, tokenValidator, accessTokenTransformer, discoveryServiceClient);
+          cConf, tokenValidator, accessTokenTransformer, discoveryServiceClient, requestChannels);
   }
 
   @Override
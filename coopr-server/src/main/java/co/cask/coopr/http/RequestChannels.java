@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package co.cask.coopr.http;
+
+import com.google.common.collect.MapMaker;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * Channel handler that keeps track of the channel each request was received on. Handlers that respond to requests
+ * asynchronously, such as long-poll requests, can use it to find out whether the client is still connected, and
+ * whether their response was actually written.
+ */
+@ChannelHandler.Sharable
+public class RequestChannels extends SimpleChannelHandler {
+  private static final Logger LOG = LoggerFactory.getLogger(RequestChannels.class);
+
+  // requests are only referenced while they are being handled, so their entries go away once they are responded to
+  private final ConcurrentMap<HttpRequest, Channel> requestChannels = new MapMaker().weakKeys().makeMap();
+  private final ConcurrentMap<Channel, ChannelFutureListener> writeListeners = new MapMaker().makeMap();
+
+  /**
+   * Get the channel the given request was received on.
+   *
+   * @param request Request to get the channel for.
+   * @return Channel the request was received on, or null if it is unknown.
+   */
+  @Nullable
+  public Channel getChannel(HttpRequest request) {
+    return requestChannels.get(request);
+  }
+
+  /**
+   * Add a listener that is notified when the response to the given request has been written, or failed to be
+   * written, including when the channel is closed before the response is sent. Must be called before the response
+   * is sent. If the channel of the request is unknown, the listener is never notified.
+   *
+   * @param request Request whose response to listen to.
+   * @param listener Listener to notify with the future of the response write.
+   */
+  public void addResponseListener(HttpRequest request, ChannelFutureListener listener) {
+    Channel channel = requestChannels.get(request);
+    if (channel != null) {
+      writeListeners.put(channel, listener);
+      // the channel may have been closed before the listener was added
+      if (!channel.isOpen()) {
+        failPendingWrite(channel);
+      }
+    }
+  }
+
+  @Override
+  public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+    if (e.getMessage() instanceof HttpRequest) {
+      requestChannels.put((HttpRequest) e.getMessage(), e.getChannel());
+    }
+    super.messageReceived(ctx, e);
+  }
+
+  @Override
+  public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+    if (e.getMessage() instanceof HttpResponse) {
+      ChannelFutureListener listener = writeListeners.remove(e.getChannel());
+      if (listener != null) {
+        e.getFuture().addListener(listener);
+      }
+    }
+    super.writeRequested(ctx, e);
+  }
+
+  @Override
+  public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+    failPendingWrite(e.getChannel());
+    super.channelClosed(ctx, e);
+  }
+
+  private void failPendingWrite(Channel channel) {
+    ChannelFutureListener listener = writeListeners.remove(channel);
+    if (listener != null) {
+      try {
+        listener.operationComplete(Channels.failedFuture(channel, new ClosedChannelException()));
+      } catch (Exception e) {
+        LOG.error("Exception notifying listener of a response that was not written.", e);
+      }
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package co.cask.coopr.http.guice;
 
 import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.http.RequestChannels;
 import co.cask.coopr.http.handler.AdminHandler;
 import co.cask.coopr.http.handler.ClusterHandler;
 import co.cask.coopr.http.handler.MetricHandler;
@@ -29,6 +30,7 @@ import co.cask.coopr.http.handler.TaskHandler;
 import co.cask.coopr.http.handler.UserHandler;
 import co.cask.http.HttpHandler;
 import com.google.inject.AbstractModule;
+import com.google.inject.Scopes;
 import com.google.inject.multibindings.Multibinder;
 import com.google.inject.name.Names;
 
@@ -39,6 +41,7 @@ public class HttpModule extends AbstractModule {
 
   @Override
   protected void configure() {
+    bind(RequestChannels.class).in(Scopes.SINGLETON);
 
     Multibinder<HttpHandler> externalHandlerBinder =
       Multibinder.newSetBinder(binder(), HttpHandler.class, Names.named(Constants.HandlersNames.EXTERNAL));
@@ -18,7 +18,7 @@ package co.cask.coopr.http.handler;
 import co.cask.coopr.account.Account;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.spec.Tenant;
-import co.cask.coopr.store.tenant.TenantStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.http.AbstractHttpHandler;
 import co.cask.http.HttpResponder;
 import org.jboss.netty.handler.codec.http.HttpRequest;
@@ -30,10 +30,10 @@ import java.io.IOException;
  * Abstract handler that provides some base methods for authenticating and authorizing requests.
  */
 public abstract class AbstractAuthHandler extends AbstractHttpHandler {
-  private final TenantStore tenantStore;
+  private final TenantCache tenantCache;
 
-  protected AbstractAuthHandler(TenantStore tenantStore) {
-    this.tenantStore = tenantStore;
+  protected AbstractAuthHandler(TenantCache tenantCache) {
+    this.tenantCache = tenantCache;
   }
 
   /**
@@ -58,7 +58,7 @@ public abstract class AbstractAuthHandler extends AbstractHttpHandler {
       return null;
     }
     try {
-      Tenant tenant = tenantStore.getTenantByName(tenantName);
+      Tenant tenant = tenantCache.getTenantByName(tenantName);
       if (tenant == null) {
         responder.sendError(HttpResponseStatus.NOT_FOUND, "Tenant does not exist.");
         return null;
@@ -34,7 +34,7 @@ import co.cask.coopr.spec.template.TemplateNotFoundException;
 import co.cask.coopr.spec.template.TemplateValidationException;
 import co.cask.coopr.store.entity.EntityStoreService;
 import co.cask.coopr.store.entity.EntityStoreView;
-import co.cask.coopr.store.tenant.TenantStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
@@ -87,9 +87,9 @@ public class AdminHandler extends AbstractAuthHandler {
   private final Gson gson;
 
   @Inject
-  private AdminHandler(TenantStore tenantStore, EntityStoreService entityStoreService,
+  private AdminHandler(TenantCache tenantCache, EntityStoreService entityStoreService,
                        TaskQueueService taskQueueService, ClusterService clusterService, Gson gson) {
-    super(tenantStore);
+    super(tenantCache);
     this.taskQueueService = taskQueueService;
     this.entityStoreService = entityStoreService;
     this.clusterService = clusterService;
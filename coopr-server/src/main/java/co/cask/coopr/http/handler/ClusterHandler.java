@@ -41,7 +41,7 @@ import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
 import co.cask.coopr.store.cluster.ClusterStoreView;
-import co.cask.coopr.store.tenant.TenantStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
@@ -78,6 +78,8 @@ import javax.ws.rs.PathParam;
 @Path(Constants.API_BASE + "/clusters")
 public class ClusterHandler extends AbstractAuthHandler {
   private static final Logger LOG = LoggerFactory.getLogger(ClusterHandler.class);
+  private static final int DEFAULT_NODE_ACTIONS_LIMIT = 100;
+  private static final int MAX_NODE_ACTIONS_LIMIT = 1000;
 
   private final ClusterService clusterService;
   private final ClusterStoreService clusterStoreService;
@@ -86,12 +88,12 @@ public class ClusterHandler extends AbstractAuthHandler {
   private final Gson gson;
 
   @Inject
-  private ClusterHandler(TenantStore tenantStore,
+  private ClusterHandler(TenantCache tenantCache,
                          ClusterService clusterService,
                          ClusterStoreService clusterStoreService,
                          Configuration conf,
                          Gson gson) {
-    super(tenantStore);
+    super(tenantCache);
     this.clusterService = clusterService;
     this.clusterStoreService = clusterStoreService;
     this.clusterStore = clusterStoreService.getSystemView();
@@ -573,6 +575,63 @@ public class ClusterHandler extends AbstractAuthHandler {
     }
   }
 
+  /**
+   * Get a page of the action history of a node in a cluster, most recently submitted actions first. Clients can
+   * include a 'before' param with a timestamp in milliseconds to only get actions submitted before that time, which
+   * is usually the submit time of the last action in the previous page, along with a 'beforeTask' param with the task
+   * id of that action so that actions submitted at the same time are not skipped. The 'limit' param is the max number
+   * of actions to get, which defaults to {@value #DEFAULT_NODE_ACTIONS_LIMIT} and is capped at
+   * {@value #MAX_NODE_ACTIONS_LIMIT}.
+   *
+   * @param request Request for node actions.
+   * @param responder Responder for sending the response.
+   * @param clusterId Id of the cluster containing the node.
+   * @param nodeId Id of the node whose actions to get.
+   */
+  @GET
+  @Path("/{cluster-id}/nodes/{node-id}/actions")
+  public void getNodeActions(HttpRequest request, HttpResponder responder,
+                             @PathParam("cluster-id") String clusterId,
+                             @PathParam("node-id") String nodeId) {
+    Account account = getAndAuthenticateAccount(request, responder);
+    if (account == null) {
+      return;
+    }
+
+    Map<String, List<String>> queryParams = new QueryStringDecoder(request.getUri()).getParameters();
+    String beforeTaskId = queryParams.containsKey("beforeTask") ? queryParams.get("beforeTask").get(0) : null;
+    long before;
+    int limit;
+    try {
+      before = queryParams.containsKey("before") ?
+        Long.parseLong(queryParams.get("before").get(0)) : Long.MAX_VALUE;
+      limit = queryParams.containsKey("limit") ?
+        Integer.parseInt(queryParams.get("limit").get(0)) : DEFAULT_NODE_ACTIONS_LIMIT;
+    } catch (NumberFormatException e) {
+      responder.sendError(HttpResponseStatus.BAD_REQUEST, "before and limit must be numbers.");
+      return;
+    }
+    if (limit <= 0) {
+      responder.sendError(HttpResponseStatus.BAD_REQUEST, "limit must be positive.");
+      return;
+    }
+    limit = Math.min(limit, MAX_NODE_ACTIONS_LIMIT);
+
+    try {
+      Cluster cluster = clusterStoreService.getView(account).getCluster(clusterId);
+      if (cluster == null || !cluster.getNodeIDs().contains(nodeId)) {
+        responder.sendError(HttpResponseStatus.NOT_FOUND,
+                            "node " + nodeId + " in cluster " + clusterId + " not found.");
+        return;
+      }
+      List<Node.Action> actions = clusterStore.getNodeActions(nodeId, before, beforeTaskId, limit);
+      responder.sendJson(HttpResponseStatus.OK, actions, new TypeToken<List<Node.Action>>() { }.getType(), gson);
+    } catch (IOException e) {
+      responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR,
+                          "Exception getting actions for node " + nodeId);
+    }
+  }
+
   /**
    * Overwrite the config used by an active cluster. The POST body should contain a "config" key containing the new
    * cluster config. Additionally, the body can contain a "restart" key whose value is true or false, indicating
@@ -17,13 +17,14 @@
 package co.cask.coopr.http.handler;
 
 import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.metrics.MetricService;
 import co.cask.coopr.metrics.TimeSeries;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
 import co.cask.coopr.store.cluster.ClusterTaskFilter;
-import co.cask.coopr.store.tenant.TenantStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.http.HttpResponder;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
@@ -52,15 +53,18 @@ public class MetricHandler extends AbstractAuthHandler {
 
   private final ClusterStore clusterStore;
   private final Gson gson;
+  private final boolean rollupEnabled;
 
   /**
    * Initializes a new instance of a MetricHandler.
    */
   @Inject
-  private MetricHandler(TenantStore tenantStore, ClusterStoreService clusterStoreService, Gson gson) {
-    super(tenantStore);
+  private MetricHandler(TenantCache tenantCache, ClusterStoreService clusterStoreService, Gson gson,
+                        Configuration conf) {
+    super(tenantCache);
     this.clusterStore = clusterStoreService.getSystemView();
     this.gson = gson;
+    this.rollupEnabled = conf.getBoolean(Constants.Metrics.ROLLUP_ENABLED);
   }
 
   /**
@@ -134,7 +138,9 @@ public class MetricHandler extends AbstractAuthHandler {
                                                      filters.get("clustertemplate"), startTime,
                                                      endTime, periodicity, timeUnit);
     try {
-      TimeSeries result = new MetricService(clusterStore).getNodesUsage(filter);
+      MetricService metricService = new MetricService(clusterStore);
+      TimeSeries result = rollupEnabled ?
+        metricService.getNodesUsageFromRollups(filter) : metricService.getNodesUsage(filter);
       responder.sendJson(HttpResponseStatus.OK, result, TimeSeries.class, gson);
     }  catch (IOException e) {
       responder.sendString(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Unable to read data from the database");
@@ -21,7 +21,7 @@ import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.scheduler.task.NodeService;
 import co.cask.coopr.store.node.NodeStore;
 import co.cask.coopr.store.node.NodeStoreService;
-import co.cask.coopr.store.tenant.TenantStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.gson.Gson;
@@ -59,9 +59,9 @@ public class NodeHandler extends AbstractAuthHandler {
    * Initializes a new instance of a NodeHandler.
    */
   @Inject
-  private NodeHandler(TenantStore tenantStore, NodeService nodeService,
+  private NodeHandler(TenantCache tenantCache, NodeService nodeService,
                       NodeStoreService nodeStoreService, Gson gson) {
-    super(tenantStore);
+    super(tenantCache);
     this.nodeStoreService = nodeStoreService;
     this.nodeStore = this.nodeStoreService.getSystemView();
     this.gson = gson;
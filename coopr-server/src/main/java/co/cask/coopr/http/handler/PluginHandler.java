@@ -26,7 +26,7 @@ import co.cask.coopr.provisioner.plugin.ResourceType;
 import co.cask.coopr.scheduler.task.MissingEntityException;
 import co.cask.coopr.spec.plugin.AbstractPluginSpecification;
 import co.cask.coopr.store.entity.EntityStoreService;
-import co.cask.coopr.store.tenant.TenantStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.http.BodyConsumer;
 import co.cask.http.HttpResponder;
 import com.google.gson.Gson;
@@ -61,12 +61,12 @@ public class PluginHandler extends AbstractAuthHandler {
   private final TenantProvisionerService tenantProvisionerService;
 
   @Inject
-  private PluginHandler(TenantStore tenantStore,
+  private PluginHandler(TenantCache tenantCache,
                         ResourceService resourceService,
                         EntityStoreService entityStoreService,
                         TenantProvisionerService tenantProvisionerService,
                         Gson gson) {
-    super(tenantStore);
+    super(tenantCache);
     this.resourceService = resourceService;
     this.entityStoreService = entityStoreService;
     this.tenantProvisionerService = tenantProvisionerService;
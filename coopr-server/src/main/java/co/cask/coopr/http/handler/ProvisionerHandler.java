@@ -17,6 +17,8 @@ package co.cask.coopr.http.handler;
 
 import co.cask.coopr.account.Account;
 import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.http.ByteRange;
+import co.cask.coopr.http.HttpHelper;
 import co.cask.coopr.provisioner.Provisioner;
 import co.cask.coopr.provisioner.ProvisionerHeartbeat;
 import co.cask.coopr.provisioner.TenantProvisionerService;
@@ -27,20 +29,24 @@ import co.cask.coopr.scheduler.task.MissingEntityException;
 import co.cask.coopr.spec.plugin.AutomatorType;
 import co.cask.coopr.spec.plugin.ProviderType;
 import co.cask.coopr.store.entity.EntityStoreService;
-import co.cask.coopr.store.tenant.TenantStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.http.ChunkResponder;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.io.ByteStreams;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -67,12 +73,12 @@ public final class ProvisionerHandler extends AbstractAuthHandler {
   private final EntityStoreService entityStoreService;
 
   @Inject
-  private ProvisionerHandler(TenantStore tenantStore,
+  private ProvisionerHandler(TenantCache tenantCache,
                              TenantProvisionerService tenantProvisionerService,
                              EntityStoreService entityStoreService,
                              ResourceService resourceService,
                              Gson gson) {
-    super(tenantStore);
+    super(tenantCache);
     this.gson = gson;
     this.resourceService = resourceService;
     this.tenantProvisionerService = tenantProvisionerService;
@@ -208,7 +214,7 @@ public final class ProvisionerHandler extends AbstractAuthHandler {
     Account account = new Account(Constants.ADMIN_USER, tenantId);
 
     ResourceType resourceTypeObj = new ResourceType(PluginType.AUTOMATOR, automatortypeId, resourceType);
-    sendResourceInChunks(responder, account, resourceTypeObj, name, version);
+    sendResource(request, responder, account, resourceTypeObj, name, version);
   }
 
   /**
@@ -233,7 +239,7 @@ public final class ProvisionerHandler extends AbstractAuthHandler {
     Account account = new Account(Constants.ADMIN_USER, tenantId);
 
     ResourceType resourceTypeObj = new ResourceType(PluginType.PROVIDER, providertypeId, resourceType);
-    sendResourceInChunks(responder, account, resourceTypeObj, name, version);
+    sendResource(request, responder, account, resourceTypeObj, name, version);
   }
 
   /**
@@ -321,38 +327,105 @@ public final class ProvisionerHandler extends AbstractAuthHandler {
     return result;
   }
 
-  private void sendResourceInChunks(HttpResponder responder, Account account,
-                                    ResourceType resourceType, String name, String versionStr) {
+  private void sendResource(HttpRequest request, HttpResponder responder, Account account,
+                            ResourceType resourceType, String name, String versionStr) {
+    int version;
     try {
-      int version = Integer.parseInt(versionStr);
-      InputStream inputStream =
-        resourceService.getResourceInputStream(account, resourceType, name, version);
-      if (inputStream == null) {
-        LOG.error("No input stream available, but metadata exists for version {} of resource {} for tenant {}.",
+      version = Integer.parseInt(versionStr);
+    } catch (NumberFormatException e) {
+      responder.sendError(HttpResponseStatus.BAD_REQUEST, "Invalid version " + versionStr);
+      return;
+    }
+    try {
+      String hash = resourceService.getResourceHash(account, resourceType, name, version);
+      if (hash == null) {
+        LOG.error("No contents available, but metadata exists for version {} of resource {} for tenant {}.",
                   version, name, account.getTenantId());
         responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error getting resource.");
+        return;
       }
-      try {
-        ChunkResponder chunkResponder = responder.sendChunkStart(
-          HttpResponseStatus.OK, ImmutableMultimap.<String, String>of());
-        while (true) {
-          byte[] chunkBytes = new byte[Constants.PLUGIN_RESOURCE_CHUNK_SIZE];
-          int bytesRead = inputStream.read(chunkBytes, 0, Constants.PLUGIN_RESOURCE_CHUNK_SIZE);
-          if (bytesRead == -1) {
-            break;
-          }
-          chunkResponder.sendChunk(ChannelBuffers.wrappedBuffer(chunkBytes, 0, bytesRead));
-        }
-        chunkResponder.close();
-      } finally {
-        inputStream.close();
+      // provisioners that already have the contents of the resource version do not need them sent again
+      String etag = "\"" + hash + "\"";
+      if (HttpHelper.matchesETag(request.getHeader(HttpHeaders.Names.IF_NONE_MATCH), etag)) {
+        responder.sendStatus(HttpResponseStatus.NOT_MODIFIED, ImmutableMultimap.of(HttpHeaders.Names.ETAG, etag));
+        return;
+      }
+      File file = resourceService.getResourceFile(account, resourceType, name, version);
+      if (file == null) {
+        sendResourceInChunks(responder, account, resourceType, name, version, etag);
+      } else {
+        sendResourceFile(request, responder, file, etag);
       }
-    } catch (NumberFormatException e) {
-      responder.sendError(HttpResponseStatus.BAD_REQUEST, "Invalid version " + versionStr);
     } catch (IOException e) {
       responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error getting resource.");
     } catch (MissingEntityException e) {
       responder.sendError(HttpResponseStatus.NOT_FOUND, "Resource not found.");
     }
   }
+
+  private void sendResourceFile(HttpRequest request, HttpResponder responder,
+                                File file, String etag) throws IOException {
+    long length = file.length();
+    ByteRange range = ByteRange.parse(request.getHeader(HttpHeaders.Names.RANGE), length);
+    if (range == null) {
+      // the file is transferred straight to the connection, without being copied through the heap
+      responder.sendFile(file, ImmutableMultimap.of(HttpHeaders.Names.ETAG, etag,
+                                                    HttpHeaders.Names.ACCEPT_RANGES, HttpHeaders.Values.BYTES));
+      return;
+    }
+    if (!range.isSatisfiable()) {
+      responder.sendStatus(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE,
+                           ImmutableMultimap.of(HttpHeaders.Names.CONTENT_RANGE, "bytes */" + length));
+      return;
+    }
+    // the responder can only transfer whole files straight to the connection, so the requested part of the file is
+    // sent in chunks, which works for ranges of any length while only holding one chunk at a time
+    InputStream inputStream = new FileInputStream(file);
+    try {
+      ByteStreams.skipFully(inputStream, range.getFirst());
+      String contentRange = "bytes " + range.getFirst() + "-" + range.getLast() + "/" + length;
+      ChunkResponder chunkResponder = responder.sendChunkStart(
+        HttpResponseStatus.PARTIAL_CONTENT, ImmutableMultimap.of(HttpHeaders.Names.ETAG, etag,
+                                                                 HttpHeaders.Names.ACCEPT_RANGES,
+                                                                 HttpHeaders.Values.BYTES,
+                                                                 HttpHeaders.Names.CONTENT_RANGE, contentRange));
+      sendChunks(chunkResponder, inputStream, range.getLength());
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private void sendResourceInChunks(HttpResponder responder, Account account, ResourceType resourceType,
+                                    String name, int version, String etag) throws IOException, MissingEntityException {
+    InputStream inputStream = resourceService.getResourceInputStream(account, resourceType, name, version);
+    if (inputStream == null) {
+      LOG.error("No input stream available, but metadata exists for version {} of resource {} for tenant {}.",
+                version, name, account.getTenantId());
+      responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error getting resource.");
+      return;
+    }
+    try {
+      ChunkResponder chunkResponder = responder.sendChunkStart(
+        HttpResponseStatus.OK, ImmutableMultimap.of(HttpHeaders.Names.ETAG, etag));
+      sendChunks(chunkResponder, inputStream, Long.MAX_VALUE);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  // send at most the given number of bytes from the input stream, and close the chunk responder
+  private void sendChunks(ChunkResponder chunkResponder, InputStream inputStream, long maxBytes) throws IOException {
+    long remaining = maxBytes;
+    while (remaining > 0) {
+      int chunkSize = (int) Math.min(Constants.PLUGIN_RESOURCE_CHUNK_SIZE, remaining);
+      byte[] chunkBytes = new byte[chunkSize];
+      int bytesRead = inputStream.read(chunkBytes, 0, chunkSize);
+      if (bytesRead == -1) {
+        break;
+      }
+      chunkResponder.sendChunk(ChannelBuffers.wrappedBuffer(chunkBytes, 0, bytesRead));
+      remaining -= bytesRead;
+    }
+    chunkResponder.close();
+  }
 }
@@ -22,7 +22,7 @@ import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.http.request.NodePropertiesRequest;
 import co.cask.coopr.spec.service.Service;
 import co.cask.coopr.store.cluster.ClusterStoreService;
-import co.cask.coopr.store.tenant.TenantStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Maps;
@@ -55,9 +55,9 @@ public class RPCHandler extends AbstractAuthHandler {
   private final ClusterStoreService clusterStoreService;
 
   @Inject
-  private RPCHandler(TenantStore tenantStore,
+  private RPCHandler(TenantCache tenantCache,
                      ClusterStoreService clusterStoreService) {
-    super(tenantStore);
+    super(tenantCache);
     this.clusterStoreService = clusterStoreService;
   }
 
@@ -24,7 +24,7 @@ import co.cask.coopr.provisioner.QuotaException;
 import co.cask.coopr.provisioner.TenantProvisionerService;
 import co.cask.coopr.spec.TenantSpecification;
 import co.cask.coopr.store.entity.EntityStoreService;
-import co.cask.coopr.store.tenant.TenantStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.gson.Gson;
@@ -58,9 +58,9 @@ public class SuperadminHandler extends AbstractAuthHandler {
   private final TenantProvisionerService tenantProvisionerService;
 
   @Inject
-  private SuperadminHandler(TenantStore store, TenantProvisionerService tenantProvisionerService,
+  private SuperadminHandler(TenantCache tenantCache, TenantProvisionerService tenantProvisionerService,
                             EntityStoreService entityStoreService, Gson gson) {
-    super(store);
+    super(tenantCache);
     this.gson = gson;
     this.entityStoreService = entityStoreService;
     this.tenantProvisionerService = tenantProvisionerService;
@@ -17,20 +17,28 @@ package co.cask.coopr.http.handler;
 
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.http.HttpHelper;
+import co.cask.coopr.http.RequestChannels;
 import co.cask.coopr.http.request.FinishTaskRequest;
 import co.cask.coopr.http.request.TakeTaskRequest;
 import co.cask.coopr.scheduler.task.MissingEntityException;
+import co.cask.coopr.scheduler.task.TakeTaskWaiters;
 import co.cask.coopr.scheduler.task.TaskQueueService;
 import co.cask.http.AbstractHttpHandler;
 import co.cask.http.HttpResponder;
+import com.google.common.base.Joiner;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 
@@ -43,10 +51,15 @@ public final class TaskHandler extends AbstractHttpHandler {
 
   private final Gson gson;
   private final TaskQueueService taskQueueService;
+  private final TakeTaskWaiters takeTaskWaiters;
+  private final RequestChannels requestChannels;
 
   @Inject
-  private TaskHandler(TaskQueueService taskQueueService, Gson gson) {
+  private TaskHandler(TaskQueueService taskQueueService, TakeTaskWaiters takeTaskWaiters,
+                      RequestChannels requestChannels, Gson gson) {
     this.taskQueueService = taskQueueService;
+    this.takeTaskWaiters = takeTaskWaiters;
+    this.requestChannels = requestChannels;
     this.gson = gson;
   }
 
@@ -54,22 +67,95 @@ public final class TaskHandler extends AbstractHttpHandler {
    * Take a task from the queue to execute. Post body must contain a workerId key, which must also be passed back
    * when finishing a task. Tasks are returned as a json object with taskId, jobId, clusterId, taskName and nodeId
    * as key value pairs, and with a config key whose value is a json object with all the configuration settings.
+   * If the post body contains a batchSize key, up to that many tasks are taken at once and returned as a json array
+   * of task objects, so that provisioners with many workers can prefetch tasks. All of those tasks are taken by the
+   * worker in the request, which must be the one to finish them. If the post body contains a waitSeconds key and
+   * there are no tasks to take, the request waits up to that many seconds for tasks to be added before returning a
+   * 204, so that idle provisioner workers do not have to keep polling for tasks. The wait is capped by the server.
+   * Tasks are not taken for requests whose client disconnected, and taken tasks whose response could not be written
+   * are put back into the queue.
    *
    * @param request The request to take a task.
    * @param responder Responder to send the response.
    */
   @POST
   @Path("/take")
-  public void handleTakeTask(HttpRequest request, HttpResponder responder) {
-    TakeTaskRequest takeRequest = HttpHelper.decodeRequestBody(request, responder, TakeTaskRequest.class, gson);
+  public void handleTakeTask(final HttpRequest request, final HttpResponder responder) {
+    final TakeTaskRequest takeRequest =
+      HttpHelper.decodeRequestBody(request, responder, TakeTaskRequest.class, gson);
+    if (takeRequest == null) {
+      return;
+    }
+
+    Integer waitSeconds = takeRequest.getWaitSeconds();
+    if (waitSeconds == null || waitSeconds == 0) {
+      takeTasks(request, takeRequest, responder, true);
+      return;
+    }
+
+    // the response is sent later by whichever thread takes tasks for the request, or when it times out
+    final Channel channel = requestChannels.getChannel(request);
+    final TakeTaskWaiters.Waiter waiter = new TakeTaskWaiters.Waiter() {
+      @Override
+      protected boolean tryTake() {
+        return takeTasks(request, takeRequest, responder, false);
+      }
+
+      @Override
+      protected void timedOut() {
+        responder.sendStatus(HttpResponseStatus.NO_CONTENT);
+      }
+
+      @Override
+      protected boolean isConnected() {
+        return channel == null || channel.isConnected();
+      }
+    };
+    if (channel != null) {
+      // stop waiting as soon as the client goes away instead of holding on to the waiter until it times out
+      channel.getCloseFuture().addListener(new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+          takeTaskWaiters.cancel(takeRequest.getTenantId(), waiter);
+        }
+      });
+    }
+    takeTaskWaiters.take(takeRequest.getTenantId(), waitSeconds, waiter);
+  }
 
+  // take tasks and respond with them, returning whether or not a response was sent. If there are no tasks to take,
+  // a response is only sent if respondIfEmpty is true.
+  private boolean takeTasks(HttpRequest request, final TakeTaskRequest takeRequest, HttpResponder responder,
+                            boolean respondIfEmpty) {
     try {
-      String taskJson = taskQueueService.takeNextClusterTask(takeRequest);
-      if (taskJson == null) {
+      final List<String> taskJsons;
+      String responseBody;
+      if (takeRequest.getBatchSize() != null) {
+        taskJsons = taskQueueService.takeNextClusterTasks(takeRequest, takeRequest.getBatchSize());
+        // tasks are already serialized, so the array is put together here instead of serializing them again
+        responseBody = taskJsons.isEmpty() ? null : "[" + Joiner.on(',').join(taskJsons) + "]";
+      } else {
+        responseBody = taskQueueService.takeNextClusterTask(takeRequest);
+        taskJsons = responseBody == null ? Collections.<String>emptyList() : Collections.singletonList(responseBody);
+      }
+
+      if (responseBody != null) {
+        requestChannels.addResponseListener(request, new ChannelFutureListener() {
+          @Override
+          public void operationComplete(ChannelFuture future) throws Exception {
+            if (!future.isSuccess()) {
+              LOG.warn("Could not send {} tasks to worker {}, putting them back into the queue.",
+                       taskJsons.size(), takeRequest.getWorkerId(), future.getCause());
+              taskQueueService.giveBackTasks(takeRequest, taskJsons);
+            }
+          }
+        });
+        responder.sendString(HttpResponseStatus.OK, responseBody);
+      } else if (respondIfEmpty) {
         responder.sendStatus(HttpResponseStatus.NO_CONTENT);
-        return;
+      } else {
+        return false;
       }
-      responder.sendString(HttpResponseStatus.OK, taskJson);
     } catch (IOException e) {
       LOG.error("Exception while taking task.", e);
       responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error taking task.");
@@ -77,6 +163,7 @@ public final class TaskHandler extends AbstractHttpHandler {
       responder.sendError(HttpResponseStatus.FORBIDDEN, "Provisioner " + takeRequest.getProvisionerId()
         + " is not registered.");
     }
+    return true;
   }
 
   /**
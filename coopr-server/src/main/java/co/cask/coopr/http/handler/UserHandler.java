@@ -18,7 +18,7 @@ package co.cask.coopr.http.handler;
 import co.cask.coopr.account.Account;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.http.HttpHelper;
-import co.cask.coopr.store.tenant.TenantStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.coopr.store.user.UserStore;
 import co.cask.http.HttpResponder;
 import com.google.gson.Gson;
@@ -47,8 +47,8 @@ public class UserHandler extends AbstractAuthHandler {
   private final UserStore userStore;
 
   @Inject
-  private UserHandler(TenantStore tenantStore, UserStore userStore, Gson gson) {
-    super(tenantStore);
+  private UserHandler(TenantCache tenantCache, UserStore userStore, Gson gson) {
+    super(tenantCache);
     this.gson = gson;
     this.userStore = userStore;
   }
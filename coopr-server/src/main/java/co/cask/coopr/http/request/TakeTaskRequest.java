@@ -3,6 +3,8 @@ package co.cask.coopr.http.request;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 
+import javax.annotation.Nullable;
+
 /**
  * Request sent by provisioners for taking a task to perform.
  */
@@ -10,14 +12,29 @@ public class TakeTaskRequest {
   private final String workerId;
   private final String provisionerId;
   private final String tenantId;
+  private final Integer batchSize;
+  private final Integer waitSeconds;
 
   public TakeTaskRequest(String workerId, String provisionerId, String tenantId) {
+    this(workerId, provisionerId, tenantId, null);
+  }
+
+  public TakeTaskRequest(String workerId, String provisionerId, String tenantId, @Nullable Integer batchSize) {
+    this(workerId, provisionerId, tenantId, batchSize, null);
+  }
+
+  public TakeTaskRequest(String workerId, String provisionerId, String tenantId, @Nullable Integer batchSize,
+                         @Nullable Integer waitSeconds) {
     Preconditions.checkArgument(workerId != null && !workerId.isEmpty(), "workerId must be specified.");
     Preconditions.checkArgument(provisionerId != null && !provisionerId.isEmpty(), "provisionerId must be specified.");
     Preconditions.checkArgument(tenantId != null && !tenantId.isEmpty(), "tenantId must be specified.");
+    Preconditions.checkArgument(batchSize == null || batchSize > 0, "batchSize must be positive.");
+    Preconditions.checkArgument(waitSeconds == null || waitSeconds >= 0, "waitSeconds must not be negative.");
     this.workerId = workerId;
     this.provisionerId = provisionerId;
     this.tenantId = tenantId;
+    this.batchSize = batchSize;
+    this.waitSeconds = waitSeconds;
   }
 
   public String getWorkerId() {
@@ -32,6 +49,27 @@ public class TakeTaskRequest {
     return tenantId;
   }
 
+  /**
+   * Get the max number of tasks to take, or null if a single task should be taken and returned on its own.
+   *
+   * @return Max number of tasks to take, or null if a single task should be taken.
+   */
+  @Nullable
+  public Integer getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Get the max number of seconds to wait for tasks if there are none to take right away, or null if the request
+   * should not wait.
+   *
+   * @return Max number of seconds to wait for tasks, or null if the request should not wait.
+   */
+  @Nullable
+  public Integer getWaitSeconds() {
+    return waitSeconds;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -45,11 +83,13 @@ public class TakeTaskRequest {
 
     return Objects.equal(workerId, that.workerId) &&
       Objects.equal(provisionerId, that.provisionerId) &&
-      Objects.equal(tenantId, that.tenantId);
+      Objects.equal(tenantId, that.tenantId) &&
+      Objects.equal(batchSize, that.batchSize) &&
+      Objects.equal(waitSeconds, that.waitSeconds);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(workerId, provisionerId, tenantId);
+    return Objects.hashCode(workerId, provisionerId, tenantId, batchSize, waitSeconds);
   }
 }
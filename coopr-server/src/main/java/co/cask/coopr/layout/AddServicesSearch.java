@@ -0,0 +1,281 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.layout.change.AddServicesChange;
+import co.cask.coopr.layout.change.ClusterLayoutChange;
+import co.cask.coopr.layout.change.ClusterLayoutTracker;
+import co.cask.coopr.spec.template.Constraints;
+import co.cask.coopr.spec.template.LayoutConstraint;
+import co.cask.coopr.spec.template.ServiceConstraint;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Depth first search for a way to add services to an existing {@link ClusterLayout}, one service at a time. Changes
+ * for each service are tried in the same order as the {@link co.cask.coopr.layout.change.AddServiceChangeIterator}:
+ * adding the service to as many nodes as possible first, and to more preferred node layouts first. So the first
+ * valid cluster layout found is the same one found by applying every change and validating the whole layout.
+ * Unlike that approach, constraints are checked once per node layout before any change is generated, using the fact
+ * that the layout before each change is valid:
+ *
+ * - node layouts that would break a constraint with the service added are never given the service,
+ * - node layouts that would break a must coexist constraint without the service are given the service on all nodes,
+ * - the number of nodes to add the service to is capped by the slack left on its min and max counts.
+ *
+ * Every change generated this way results in a valid cluster layout. Cluster layouts that cannot lead to a solution
+ * are remembered along with the services left to add, so that equivalent branches are not searched twice. Since
+ * the services left to add can only be affected by services they share a layout constraint with, all other services
+ * are left out of the remembered layouts. For example, if the last service to add cannot go on any node, every way
+ * of adding the services before it fails the same way, and only the first one has to be searched.
+ */
+final class AddServicesSearch {
+  private static final NodeLayoutComparator NODE_LAYOUT_COMPARATOR = new NodeLayoutComparator(null, null);
+  private final Constraints constraints;
+  private final List<String> services;
+  private final ClusterLayoutTracker tracker;
+  // the i'th set contains the services that can affect where services from index i onwards can be added.
+  private final List<Set<String>> relevantServices;
+  // relevant cluster layouts and the index of the next service to add that are known to not lead to a solution.
+  private final Set<Map.Entry<Multiset<NodeLayout>, Integer>> failedStates;
+
+  /**
+   * Create a search for adding services to a cluster layout.
+   *
+   * @param startingLayout Layout of the cluster to add services to.
+   * @param services Services to add, in the order they should be added.
+   */
+  AddServicesSearch(ClusterLayout startingLayout, List<String> services) {
+    this.constraints = startingLayout.getConstraints();
+    this.services = services;
+    this.tracker = new ClusterLayoutTracker(startingLayout);
+    this.relevantServices = getRelevantServices(constraints.getLayoutConstraint(), services);
+    this.failedStates = Sets.newHashSet();
+  }
+
+  /**
+   * Search for a way to add all services to the cluster.
+   *
+   * @return Tracker containing the changes that add all services to the cluster, or null if there is no way to add
+   *         all services to the cluster.
+   */
+  ClusterLayoutTracker search() {
+    if (services.isEmpty()) {
+      return tracker;
+    }
+    // adding services can never fix a layout that is already invalid
+    if (!tracker.getCurrentLayout().isValid()) {
+      return null;
+    }
+    return addServices(0) ? tracker : null;
+  }
+
+  private boolean addServices(int serviceIndex) {
+    if (serviceIndex == services.size()) {
+      return true;
+    }
+    Map.Entry<Multiset<NodeLayout>, Integer> state = Maps.immutableEntry(getRelevantLayout(serviceIndex), serviceIndex);
+    if (failedStates.contains(state)) {
+      return false;
+    }
+    ServiceChanges changes = ServiceChanges.create(tracker.getCurrentLayout(), services.get(serviceIndex));
+    if (changes != null && changes.tryChanges(this, serviceIndex)) {
+      return true;
+    }
+    failedStates.add(state);
+    return false;
+  }
+
+  // apply a change that adds the service at the given index, keeping it only if the rest of the services can be added.
+  private boolean applyChange(ClusterLayoutChange change, int serviceIndex) {
+    if (!tracker.addChangeIfValid(change)) {
+      return false;
+    }
+    if (addServices(serviceIndex + 1)) {
+      return true;
+    }
+    tracker.removeLastChange();
+    return false;
+  }
+
+  // get the current layout with only the services that can affect where services from the given index onwards can be
+  // added. Whether or not the rest of the services can be added depends only on this layout.
+  private Multiset<NodeLayout> getRelevantLayout(int serviceIndex) {
+    Set<String> relevant = relevantServices.get(serviceIndex);
+    Multiset<NodeLayout> relevantLayout = HashMultiset.create();
+    for (Multiset.Entry<NodeLayout> entry : tracker.getCurrentLayout().getLayout().entrySet()) {
+      NodeLayout nodeLayout = entry.getElement();
+      relevantLayout.add(new NodeLayout(nodeLayout.getHardwareTypeName(), nodeLayout.getImageTypeName(),
+                                        Sets.intersection(nodeLayout.getServiceNames(), relevant)),
+                         entry.getCount());
+    }
+    return relevantLayout;
+  }
+
+  // a service can only be affected by itself and services it shares a layout constraint with. Node layouts are
+  // valid before each change, so other constraints cannot be broken by adding the service. Hardware and image types
+  // are part of every remembered node layout, so service constraints on them do not need to be considered.
+  private static List<Set<String>> getRelevantServices(LayoutConstraint layoutConstraint, List<String> services) {
+    List<Set<String>> relevantServices = Lists.newArrayListWithCapacity(services.size());
+    Set<String> relevant = Sets.newHashSet();
+    for (String service : Lists.reverse(services)) {
+      relevant.add(service);
+      for (Set<String> mustCoexist : layoutConstraint.getServicesThatMustCoexist()) {
+        if (mustCoexist.contains(service)) {
+          relevant.addAll(mustCoexist);
+        }
+      }
+      for (Set<String> cantCoexist : layoutConstraint.getServicesThatMustNotCoexist()) {
+        if (cantCoexist.contains(service)) {
+          relevant.addAll(cantCoexist);
+        }
+      }
+      relevantServices.add(ImmutableSet.copyOf(relevant));
+    }
+    return Lists.reverse(relevantServices);
+  }
+
+  /**
+   * All the valid ways to add a service to a cluster layout. Each node layout that can have the service added is a
+   * slot, with a min and max number of its nodes that the service must be added to.
+   */
+  private static final class ServiceChanges {
+    private final String service;
+    private final List<NodeLayout> nodeLayouts;
+    private final int[] minCounts;
+    private final int[] maxCounts;
+    // sum of the min and max counts of the slots at or after each index
+    private final int[] minAfter;
+    private final int[] maxAfter;
+    private final int minNodes;
+    private final int maxNodes;
+    private final int[] counts;
+
+    private ServiceChanges(String service, List<NodeLayout> nodeLayouts, int[] minCounts, int[] maxCounts,
+                           int minNodes, int maxNodes) {
+      this.service = service;
+      this.nodeLayouts = nodeLayouts;
+      this.minCounts = minCounts;
+      this.maxCounts = maxCounts;
+      this.minAfter = new int[minCounts.length + 1];
+      this.maxAfter = new int[maxCounts.length + 1];
+      for (int i = minCounts.length - 1; i >= 0; i--) {
+        minAfter[i] = minAfter[i + 1] + minCounts[i];
+        maxAfter[i] = maxAfter[i + 1] + maxCounts[i];
+      }
+      this.minNodes = Math.max(minNodes, minAfter[0]);
+      this.maxNodes = Math.min(maxNodes, maxAfter[0]);
+      this.counts = new int[nodeLayouts.size()];
+    }
+
+    // returns null if there is no valid way to add the service to the cluster layout.
+    private static ServiceChanges create(ClusterLayout layout, String service) {
+      Constraints constraints = layout.getConstraints();
+      Set<String> clusterServices = Sets.newHashSet();
+      for (NodeLayout nodeLayout : layout.getLayout().elementSet()) {
+        clusterServices.addAll(nodeLayout.getServiceNames());
+      }
+      boolean isNewService = clusterServices.add(service);
+
+      int existingCount = 0;
+      List<NodeLayout> expandable = Lists.newArrayList();
+      Set<NodeLayout> mustExpand = Sets.newHashSet();
+      for (Multiset.Entry<NodeLayout> entry : layout.getLayout().entrySet()) {
+        NodeLayout nodeLayout = entry.getElement();
+        if (nodeLayout.getServiceNames().contains(service)) {
+          existingCount += entry.getCount();
+          continue;
+        }
+        boolean canExpand = NodeLayout.addServiceToNodeLayout(nodeLayout, service)
+          .satisfiesConstraints(constraints, clusterServices);
+        // the layout was valid before, so the only way unchanged nodes can become invalid is through must coexist
+        // constraints that include the service, which only start to apply once the service is on the cluster.
+        boolean mustExpandAll = isNewService && !nodeLayout.satisfiesConstraints(constraints, clusterServices);
+        if (mustExpandAll && !canExpand) {
+          return null;
+        }
+        if (canExpand) {
+          expandable.add(nodeLayout);
+        }
+        if (mustExpandAll) {
+          mustExpand.add(nodeLayout);
+        }
+      }
+      Collections.sort(expandable, NODE_LAYOUT_COMPARATOR);
+
+      int[] minCounts = new int[expandable.size()];
+      int[] maxCounts = new int[expandable.size()];
+      for (int i = 0; i < maxCounts.length; i++) {
+        NodeLayout nodeLayout = expandable.get(i);
+        maxCounts[i] = layout.getLayout().count(nodeLayout);
+        minCounts[i] = mustExpand.contains(nodeLayout) ? maxCounts[i] : 0;
+      }
+      // the service always needs to be added to at least one node
+      int minNodes = 1;
+      int maxNodes = Integer.MAX_VALUE;
+      ServiceConstraint constraint = constraints.getServiceConstraints().get(service);
+      if (constraint != null) {
+        minNodes = Math.max(minNodes, constraint.getMinCount() - existingCount);
+        maxNodes = constraint.getMaxCount() - existingCount;
+      }
+      return new ServiceChanges(service, expandable, minCounts, maxCounts, minNodes, maxNodes);
+    }
+
+    // try adding the service to as many nodes as possible first.
+    private boolean tryChanges(AddServicesSearch search, int serviceIndex) {
+      for (int numNodes = maxNodes; numNodes >= minNodes; numNodes--) {
+        if (assign(search, serviceIndex, 0, numNodes)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    // try every count for the given slot, from most to least, and recurse on the next slot.
+    private boolean assign(AddServicesSearch search, int serviceIndex, int slot, int remaining) {
+      if (slot == counts.length) {
+        return search.applyChange(createChange(), serviceIndex);
+      }
+      int maxCount = Math.min(maxCounts[slot], remaining - minAfter[slot + 1]);
+      int minCount = Math.max(minCounts[slot], remaining - maxAfter[slot + 1]);
+      for (int count = maxCount; count >= minCount; count--) {
+        counts[slot] = count;
+        if (assign(search, serviceIndex, slot + 1, remaining - count)) {
+          return true;
+        }
+      }
+      counts[slot] = 0;
+      return false;
+    }
+
+    private AddServicesChange createChange() {
+      Multiset<NodeLayout> countsPerNodeLayout = HashMultiset.create();
+      for (int i = 0; i < counts.length; i++) {
+        countsPerNodeLayout.add(nodeLayouts.get(i), counts[i]);
+      }
+      return new AddServicesChange(countsPerNodeLayout, service);
+    }
+  }
+}
@@ -17,11 +17,19 @@ package co.cask.coopr.layout;
 
 import co.cask.coopr.spec.template.ClusterTemplate;
 import co.cask.coopr.spec.template.ServiceConstraint;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class that takes in an ordered list of {@link NodeLayout}s by preference, {@link ClusterTemplate}, number of
@@ -32,12 +40,30 @@ public class ClusterLayoutFinder {
   private final List<NodeLayout> nodePreferences;
   private final int numMachines;
   private final Map<String, ServiceConstraint> serviceConstraints;
+  private final ExecutorService searchExecutor;
   private Map<String, Integer> serviceCounts;
 
   public ClusterLayoutFinder(List<NodeLayout> nodePreferences, ClusterTemplate template, Set<String> services,
                              int numMachines) {
+    this(nodePreferences, template, services, numMachines, null);
+  }
+
+  /**
+   * Create a finder that splits its search across threads of the given executor. The search space is split by how
+   * many nodes of the most preferred node layout are used, which gives disjoint parts that are searched in parallel.
+   * The most preferred valid layout is still returned, so results are the same as a search on a single thread.
+   *
+   * @param nodePreferences Node layouts in order of preference.
+   * @param template Template with constraints to satisfy.
+   * @param services Services to place on the cluster.
+   * @param numMachines Number of machines in the cluster.
+   * @param searchExecutor Executor to run parts of the search on, or null to search on the calling thread only.
+   */
+  public ClusterLayoutFinder(List<NodeLayout> nodePreferences, ClusterTemplate template, Set<String> services,
+                             int numMachines, ExecutorService searchExecutor) {
     this.nodePreferences = nodePreferences;
     this.numMachines = numMachines;
+    this.searchExecutor = searchExecutor;
     serviceConstraints = Maps.newHashMap();
 
     // we only care about the constraints that apply to services that are on the cluster
@@ -64,6 +90,75 @@ public class ClusterLayoutFinder {
    * @return Array containing how many of each node type to use.
    */
   public int[] findValidNodeCounts() {
+    NodeCountSearch search = new NodeCountSearch(nodePreferences, serviceConstraints, numMachines);
+    if (searchExecutor == null || nodePreferences.size() < 2) {
+      return search.search();
+    }
+    return findValidNodeCountsInParallel(search.getMaxFirstLayoutCount());
+  }
+
+  // search each count of the first node layout as a separate task. The i'th task uses (max - i) of the first node
+  // layout, so lower task indices are more preferred. Once a task finds a valid layout, every task with a higher
+  // index is stopped, but tasks with lower indices must still finish before we know which layout is most preferred.
+  private int[] findValidNodeCountsInParallel(int maxFirstLayoutCount) {
+    final AtomicInteger bestIndex = new AtomicInteger(Integer.MAX_VALUE);
+    List<Future<int[]>> results = Lists.newArrayListWithCapacity(maxFirstLayoutCount + 1);
+    try {
+      for (int i = 0; i <= maxFirstLayoutCount; i++) {
+        final int index = i;
+        final int firstLayoutCount = maxFirstLayoutCount - i;
+        results.add(searchExecutor.submit(new Callable<int[]>() {
+          @Override
+          public int[] call() throws Exception {
+            if (index > bestIndex.get()) {
+              return null;
+            }
+            int[] nodeCounts = new NodeCountSearch(nodePreferences, serviceConstraints, numMachines)
+              .search(firstLayoutCount, new Supplier<Boolean>() {
+                @Override
+                public Boolean get() {
+                  return index > bestIndex.get();
+                }
+              });
+            if (nodeCounts != null) {
+              // lower the best index if ours is lower
+              int best = bestIndex.get();
+              while (index < best && !bestIndex.compareAndSet(best, index)) {
+                best = bestIndex.get();
+              }
+            }
+            return nodeCounts;
+          }
+        }));
+      }
+
+      for (Future<int[]> result : results) {
+        int[] nodeCounts = result.get();
+        if (nodeCounts != null) {
+          return nodeCounts;
+        }
+      }
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      // stop anything still running, which only happens if we found an answer or failed.
+      bestIndex.set(-1);
+      for (Future<int[]> result : results) {
+        result.cancel(true);
+      }
+    }
+  }
+
+  // find valid node counts by checking every candidate from a SlottedCombinationIterator. Gives the same answer
+  // as findValidNodeCounts() whenever this finds one, but takes much longer. Kept for testing and benchmarking only.
+  int[] findValidNodeCountsByIteration() {
+    for (String service : serviceCounts.keySet()) {
+      serviceCounts.put(service, 0);
+    }
     int[] initialLayout = getInitialNodeCounts();
     if (initialLayout == null) {
       return null;
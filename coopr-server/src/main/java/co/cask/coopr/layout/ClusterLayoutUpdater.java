@@ -27,9 +27,10 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.SortedSet;
 
@@ -48,11 +49,28 @@ public class ClusterLayoutUpdater {
 
     Constraints clusterConstraints = cluster.getClusterTemplate().getConstraints();
     ClusterLayout clusterLayout = ClusterLayout.fromNodes(clusterNodes, clusterConstraints);
+    return addServices(clusterLayout, servicesToAdd);
+  }
+
+  // search for a way to add the services to the cluster layout, returning null if there is none.
+  ClusterLayoutTracker addServices(ClusterLayout clusterLayout, Set<String> servicesToAdd) {
+    return new AddServicesSearch(clusterLayout, sortServices(clusterLayout.getConstraints(), servicesToAdd)).search();
+  }
+
+  // same as above, except that every change for each service is applied and the whole layout is validated after
+  // each one.
+  ClusterLayoutTracker addServicesByIteration(ClusterLayout clusterLayout, Set<String> servicesToAdd) {
+    Deque<String> sortedServices = Lists.newLinkedList(sortServices(clusterLayout.getConstraints(), servicesToAdd));
+    ClusterLayoutTracker tracker = new ClusterLayoutTracker(clusterLayout);
+    return canAddServicesToCluster(tracker, sortedServices) ? tracker : null;
+  }
 
+  // sort services so that the most constrained ones are added first.
+  private List<String> sortServices(Constraints clusterConstraints, Set<String> servicesToAdd) {
     Set<String> servicesToAddCopy = Sets.newHashSet(servicesToAdd);
     SortedSet<Map.Entry<String, ServiceConstraint>> sortedConstraints = Sets.newTreeSet(serviceComparator);
     sortedConstraints.addAll(clusterConstraints.getServiceConstraints().entrySet());
-    Queue<String> sortedServices = Lists.newLinkedList();
+    List<String> sortedServices = Lists.newArrayListWithCapacity(servicesToAdd.size());
     for (Map.Entry<String, ServiceConstraint> entry : sortedConstraints) {
       if (servicesToAddCopy.contains(entry.getKey())) {
         sortedServices.add(entry.getKey());
@@ -61,12 +79,10 @@ public class ClusterLayoutUpdater {
     }
     // any service without a constraint has no limit on the number of nodes it can be placed on, so add them to the end
     sortedServices.addAll(servicesToAddCopy);
-
-    ClusterLayoutTracker tracker = new ClusterLayoutTracker(clusterLayout);
-    return canAddServicesToCluster(tracker, sortedServices) ? tracker : null;
+    return sortedServices;
   }
 
-  private boolean canAddServicesToCluster(ClusterLayoutTracker tracker, Queue<String> servicesToAdd) {
+  private boolean canAddServicesToCluster(ClusterLayoutTracker tracker, Deque<String> servicesToAdd) {
     if (servicesToAdd.isEmpty()) {
       return true;
     }
@@ -97,6 +113,8 @@ public class ClusterLayoutUpdater {
         }
       }
     }
+    // put the service back so that it is tried again with the next change of the service before it
+    servicesToAdd.addFirst(service);
     return false;
   }
 
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A solved cluster layout, which is how many nodes of each {@link NodeLayout} make up the cluster. Node layouts are
+ * kept in order of preference, and only node layouts that are used by the cluster are included.
+ */
+public final class LayoutSolution {
+  private final List<NodeLayout> nodeLayouts;
+  private final int[] nodeCounts;
+
+  /**
+   * Create a solution from the node layouts considered in a search and the number of each one to use.
+   *
+   * @param nodePreferences Node layouts in order of preference.
+   * @param nodeCounts How many nodes of each node layout to use, by index into the preferred node layouts.
+   */
+  public LayoutSolution(List<NodeLayout> nodePreferences, int[] nodeCounts) {
+    Preconditions.checkArgument(nodePreferences.size() == nodeCounts.length,
+                                "number of node counts must match the number of node layouts");
+    ImmutableList.Builder<NodeLayout> usedLayouts = ImmutableList.builder();
+    int[] usedCounts = new int[nodeCounts.length];
+    int numUsed = 0;
+    for (int i = 0; i < nodeCounts.length; i++) {
+      if (nodeCounts[i] > 0) {
+        usedLayouts.add(nodePreferences.get(i));
+        usedCounts[numUsed++] = nodeCounts[i];
+      }
+    }
+    this.nodeLayouts = usedLayouts.build();
+    this.nodeCounts = Arrays.copyOf(usedCounts, numUsed);
+  }
+
+  /**
+   * Get the node layouts used in the cluster, in order of preference.
+   *
+   * @return Immutable list of node layouts used in the cluster.
+   */
+  public List<NodeLayout> getNodeLayouts() {
+    return nodeLayouts;
+  }
+
+  /**
+   * Get how many nodes of each node layout to use, where the i'th count is for the i'th node layout.
+   *
+   * @return Copy of the node counts.
+   */
+  public int[] getNodeCounts() {
+    return Arrays.copyOf(nodeCounts, nodeCounts.length);
+  }
+
+  /**
+   * Get the total number of nodes in the cluster.
+   *
+   * @return Total number of nodes in the cluster.
+   */
+  public int getNumNodes() {
+    int numNodes = 0;
+    for (int count : nodeCounts) {
+      numNodes += count;
+    }
+    return numNodes;
+  }
+}
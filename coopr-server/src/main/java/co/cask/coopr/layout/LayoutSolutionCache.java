@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.management.CacheStats;
+import co.cask.coopr.management.ServerStats;
+import co.cask.coopr.spec.template.ClusterTemplate;
+import co.cask.coopr.spec.template.LayoutConstraint;
+import co.cask.coopr.spec.template.ServiceConstraint;
+import co.cask.coopr.store.entity.BaseEntityStoreView;
+import co.cask.coopr.store.entity.EntityStoreListener;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded cache of solved cluster layouts, so that creating many clusters from the same template with the same
+ * services, hardware types, image types, and size only solves the layout once. Solutions are keyed by a hash of all
+ * inputs to the solve, so a cached solution is always the one that solving again would find. Clusters without a
+ * valid layout are cached as well. Least recently used solutions are evicted once the cache is full, and the cache is
+ * cleared whenever a template, hardware type, or image type is written or deleted so that it does not hold on to
+ * solutions that will not be used again.
+ */
+public class LayoutSolutionCache implements EntityStoreListener {
+  private static final Logger LOG  = LoggerFactory.getLogger(LayoutSolutionCache.class);
+  // null if caching is disabled
+  private final Cache<HashCode, Optional<LayoutSolution>> cache;
+  private final CacheStats stats;
+
+  @Inject
+  private LayoutSolutionCache(Configuration conf, ServerStats serverStats) {
+    this(conf.getInt(Constants.SOLVER_LAYOUT_CACHE_MAX_ENTRIES), serverStats.getLayoutCacheStats());
+  }
+
+  LayoutSolutionCache(int maxEntries, CacheStats stats) {
+    this.cache = maxEntries <= 0 ? null :
+      CacheBuilder.newBuilder().maximumSize(maxEntries).<HashCode, Optional<LayoutSolution>>build();
+    this.stats = stats;
+  }
+
+  /**
+   * Get the solved layout for a cluster, solving it with the given solver if it is not in the cache.
+   *
+   * @param template Template the cluster is created from.
+   * @param services Services to place on the cluster.
+   * @param hardwareTypes Hardware types that can be used in the cluster.
+   * @param imageTypes Image types that can be used in the cluster.
+   * @param numMachines Number of machines in the cluster.
+   * @param solver Solver to use if the layout is not in the cache. Must solve for the exact inputs given.
+   * @return Solved layout for the cluster, or null if there is no valid layout.
+   */
+  LayoutSolution getSolution(ClusterTemplate template, Set<String> services, Set<String> hardwareTypes,
+                             Set<String> imageTypes, int numMachines, Supplier<LayoutSolution> solver) {
+    if (cache == null) {
+      return solver.get();
+    }
+    HashCode key = getKey(template, services, hardwareTypes, imageTypes, numMachines);
+    Optional<LayoutSolution> solution = cache.getIfPresent(key);
+    if (solution != null) {
+      stats.recordHit();
+      return solution.orNull();
+    }
+    stats.recordMiss();
+    solution = Optional.fromNullable(solver.get());
+    cache.put(key, solution);
+    return solution.orNull();
+  }
+
+  @Override
+  public void entityChanged(Account account, BaseEntityStoreView.EntityType entityType, String entityName) {
+    if (cache == null) {
+      return;
+    }
+    switch (entityType) {
+      case HARDWARE_TYPE:
+      case IMAGE_TYPE:
+      case CLUSTER_TEMPLATE:
+      case PARTIAL_TEMPLATE:
+        LOG.debug("{} {} changed, clearing cached cluster layouts", entityType.getId(), entityName);
+        cache.invalidateAll();
+        break;
+      default:
+        break;
+    }
+  }
+
+  // hash everything that the solved layout depends on. Collections are sorted so that the key does not depend on
+  // iteration order, and every name is length prefixed so that different inputs cannot produce the same bytes.
+  static HashCode getKey(ClusterTemplate template, Set<String> services, Set<String> hardwareTypes,
+                         Set<String> imageTypes, int numMachines) {
+    Hasher hasher = Hashing.sha256().newHasher();
+
+    Map<String, ServiceConstraint> serviceConstraints = template.getConstraints().getServiceConstraints();
+    putNames(hasher, serviceConstraints.keySet());
+    for (String service : Ordering.natural().sortedCopy(serviceConstraints.keySet())) {
+      ServiceConstraint constraint = serviceConstraints.get(service);
+      hasher.putInt(constraint.getMinCount()).putInt(constraint.getMaxCount());
+      putNames(hasher, constraint.getRequiredHardwareTypes());
+      putNames(hasher, constraint.getRequiredImageTypes());
+    }
+
+    LayoutConstraint layoutConstraint = template.getConstraints().getLayoutConstraint();
+    putNameSets(hasher, layoutConstraint.getServicesThatMustCoexist());
+    putNameSets(hasher, layoutConstraint.getServicesThatMustNotCoexist());
+
+    putNames(hasher, services);
+    putNames(hasher, hardwareTypes);
+    putNames(hasher, imageTypes);
+    hasher.putInt(numMachines);
+    return hasher.hash();
+  }
+
+  private static void putNames(Hasher hasher, Collection<String> names) {
+    hasher.putInt(names.size());
+    for (String name : Ordering.natural().sortedCopy(names)) {
+      hasher.putInt(name.length()).putString(name, Charsets.UTF_8);
+    }
+  }
+
+  private static void putNameSets(Hasher hasher, Set<Set<String>> nameSets) {
+    // sort each set of names, then sort the sets by their sorted names
+    List<List<String>> sortedSets = Lists.newArrayListWithCapacity(nameSets.size());
+    for (Set<String> names : nameSets) {
+      sortedSets.add(Ordering.natural().sortedCopy(names));
+    }
+    Ordering<Iterable<String>> setOrdering = Ordering.<String>natural().lexicographical();
+    hasher.putInt(sortedSets.size());
+    for (List<String> names : setOrdering.sortedCopy(sortedSets)) {
+      putNames(hasher, names);
+    }
+  }
+}
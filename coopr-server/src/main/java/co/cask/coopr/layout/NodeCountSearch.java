@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.spec.template.ServiceConstraint;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Branch and bound search for how many of each {@link NodeLayout} to use in a cluster. Node counts are assigned one
+ * node layout at a time in order of preference, trying the largest count first. This visits candidate layouts in the
+ * same order as the {@link SlottedCombinationIterator}, so the first complete assignment found is the same one the
+ * iterator would find. Unlike the iterator, a partial assignment is abandoned as soon as it can no longer lead to a
+ * valid cluster, which happens when:
+ *
+ * - some service can no longer reach its min count with the machines that are left, or
+ * - the machines that are left cannot be placed on the remaining node layouts without exceeding some service max.
+ *
+ * Service max counts are never exceeded, since each node layout is capped by the slack left on its services.
+ */
+final class NodeCountSearch {
+  private static final Supplier<Boolean> NEVER_STOP = Suppliers.ofInstance(false);
+  private final int numMachines;
+  private final int numLayouts;
+  // indices of the constrained services on each node layout
+  private final int[][] layoutServices;
+  private final int[] serviceMins;
+  private final int[] serviceMaxes;
+  // layoutsAfter[i][s] is true if some node layout at index i or later contains service s
+  private final boolean[][] layoutsAfter;
+  private final int[] serviceCounts;
+  private final int[] nodeCounts;
+  private Supplier<Boolean> stopCondition = NEVER_STOP;
+
+  NodeCountSearch(List<NodeLayout> nodePreferences, Map<String, ServiceConstraint> serviceConstraints,
+                  int numMachines) {
+    this.numMachines = numMachines;
+    this.numLayouts = nodePreferences.size();
+
+    // only services with constraints can make a cluster invalid, so everything else is ignored.
+    Map<String, Integer> serviceIndices = Maps.newHashMap();
+    int numServices = serviceConstraints.size();
+    this.serviceMins = new int[numServices];
+    this.serviceMaxes = new int[numServices];
+    for (Map.Entry<String, ServiceConstraint> entry : serviceConstraints.entrySet()) {
+      int index = serviceIndices.size();
+      serviceIndices.put(entry.getKey(), index);
+      serviceMins[index] = entry.getValue().getMinCount();
+      serviceMaxes[index] = Math.min(entry.getValue().getMaxCount(), numMachines);
+    }
+
+    this.layoutServices = new int[numLayouts][];
+    for (int i = 0; i < numLayouts; i++) {
+      int[] services = new int[nodePreferences.get(i).getServiceNames().size()];
+      int numConstrained = 0;
+      for (String service : nodePreferences.get(i).getServiceNames()) {
+        Integer index = serviceIndices.get(service);
+        if (index != null) {
+          services[numConstrained++] = index;
+        }
+      }
+      layoutServices[i] = Arrays.copyOf(services, numConstrained);
+    }
+
+    this.layoutsAfter = new boolean[numLayouts + 1][numServices];
+    for (int i = numLayouts - 1; i >= 0; i--) {
+      System.arraycopy(layoutsAfter[i + 1], 0, layoutsAfter[i], 0, numServices);
+      for (int service : layoutServices[i]) {
+        layoutsAfter[i][service] = true;
+      }
+    }
+
+    this.serviceCounts = new int[numServices];
+    this.nodeCounts = new int[numLayouts];
+  }
+
+  /**
+   * Search for the most preferred valid node counts.
+   *
+   * @return Array containing how many of each node layout to use, or null if there is no valid cluster layout.
+   */
+  int[] search() {
+    if (numLayouts == 0 || !canComplete(0, numMachines)) {
+      return null;
+    }
+    return assign(0, numMachines) ? Arrays.copyOf(nodeCounts, numLayouts) : null;
+  }
+
+  /**
+   * Search for the most preferred valid node counts that use exactly the given number of the first node layout.
+   * Searches for different counts of the first node layout cover disjoint parts of the search space, and together
+   * cover all of it. The search gives up and returns null as soon as the stop condition is true.
+   *
+   * @param firstLayoutCount Number of nodes of the first node layout to use.
+   * @param stopCondition Condition that is checked throughout the search to see if it should give up early.
+   * @return Array containing how many of each node layout to use, or null if there is no valid cluster layout with
+   *         the given count for the first node layout, or if the search stopped early.
+   */
+  int[] search(int firstLayoutCount, Supplier<Boolean> stopCondition) {
+    if (numLayouts == 0 || firstLayoutCount > getMaxFirstLayoutCount()
+      || (numLayouts == 1 && firstLayoutCount != numMachines) || !canComplete(0, numMachines)) {
+      return null;
+    }
+    this.stopCondition = stopCondition;
+    try {
+      return tryCount(0, firstLayoutCount, numMachines) ? Arrays.copyOf(nodeCounts, numLayouts) : null;
+    } finally {
+      this.stopCondition = NEVER_STOP;
+    }
+  }
+
+  /**
+   * Get the most nodes of the first node layout that a valid cluster layout could use.
+   *
+   * @return Max number of nodes of the first node layout.
+   */
+  int getMaxFirstLayoutCount() {
+    return numLayouts == 0 ? 0 : getMaxCount(0, numMachines);
+  }
+
+  // try every count for the given node layout, from most to least, and recurse on the next node layout.
+  private boolean assign(int layout, int remaining) {
+    int maxCount = getMaxCount(layout, remaining);
+    // the last node layout has to take up whatever machines are left
+    int minCount = layout == numLayouts - 1 ? remaining : 0;
+    for (int count = maxCount; count >= minCount; count--) {
+      if (tryCount(layout, count, remaining)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // use the given count for the node layout, keeping it if it leads to a valid cluster and undoing it if not.
+  private boolean tryCount(int layout, int count, int remaining) {
+    if (stopCondition.get()) {
+      return false;
+    }
+    addNodes(layout, count);
+    int left = remaining - count;
+    if (left == 0) {
+      if (meetsMinCounts()) {
+        return true;
+      }
+    } else if (canComplete(layout + 1, left) && assign(layout + 1, left)) {
+      return true;
+    }
+    addNodes(layout, -count);
+    return false;
+  }
+
+  // check whether the node layouts starting from the given index could possibly take the machines that are left.
+  private boolean canComplete(int layout, int remaining) {
+    if (layout >= numLayouts) {
+      return false;
+    }
+    // every service below its min must be on some remaining node layout, and there must be enough machines for it.
+    for (int service = 0; service < serviceCounts.length; service++) {
+      int needed = serviceMins[service] - serviceCounts[service];
+      if (needed > 0 && (!layoutsAfter[layout][service] || needed > remaining)) {
+        return false;
+      }
+    }
+    // the remaining node layouts must be able to hold all remaining machines without breaking any service max.
+    int capacity = 0;
+    for (int i = layout; i < numLayouts && capacity < remaining; i++) {
+      capacity += getMaxCount(i, remaining);
+    }
+    return capacity >= remaining;
+  }
+
+  // get the most nodes of the given node layout that can be added without exceeding a service max.
+  private int getMaxCount(int layout, int remaining) {
+    int max = remaining;
+    for (int service : layoutServices[layout]) {
+      max = Math.min(max, serviceMaxes[service] - serviceCounts[service]);
+    }
+    return Math.max(max, 0);
+  }
+
+  private boolean meetsMinCounts() {
+    for (int service = 0; service < serviceCounts.length; service++) {
+      if (serviceCounts[service] < serviceMins[service]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void addNodes(int layout, int count) {
+    nodeCounts[layout] += count;
+    for (int service : layoutServices[layout]) {
+      serviceCounts[service] += count;
+    }
+  }
+}
@@ -150,6 +150,16 @@ public class NodeLayoutGenerator {
 
   // search through all possible service combinations, keeping track of valid service combinations.
   Set<Set<String>> findValidServiceSets(Set<String> services) {
+    if (services.size() > ServiceSetEnumerator.MAX_SERVICES) {
+      return findValidServiceSetsByIteration(services);
+    }
+    LayoutConstraint layoutConstraint = clusterTemplate.getConstraints().getLayoutConstraint();
+    return new ServiceSetEnumerator(services, layoutConstraint, clusterServices).getValidServiceSets();
+  }
+
+  // search through all possible service combinations by checking every candidate set of service names. Much slower
+  // than findValidServiceSets(), and only used when there are too many services to represent sets as bitmasks.
+  Set<Set<String>> findValidServiceSetsByIteration(Set<String> services) {
     Set<Set<String>> validServiceSets = Sets.newHashSet();
 
     if (!services.isEmpty()) {
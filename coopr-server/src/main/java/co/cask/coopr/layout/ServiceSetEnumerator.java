@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.spec.template.LayoutConstraint;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Enumerates all service sets that satisfy a {@link LayoutConstraint}, representing each service set as a bitmask
+ * where the i'th bit is set if the i'th service is in the set. Layout constraints are compiled into masks up front,
+ * and service sets are built one service at a time so that whole branches of candidates can be skipped as soon as
+ * they break a constraint. For example, once a service set contains all services in a must not coexist constraint,
+ * none of its supersets are looked at. Only service sets that satisfy all constraints are turned into sets of names.
+ */
+final class ServiceSetEnumerator {
+  // max number of services that fit into a long bitmask
+  static final int MAX_SERVICES = 63;
+
+  private final List<String> services;
+  private final long[] cantCoexistMasks;
+  private final long[] mustCoexistMasks;
+  // must coexist constraints that include a cluster service that is not being enumerated. Service sets that contain
+  // any of the services in these constraints can never contain all of them.
+  private final long incompleteMustCoexistMask;
+
+  /**
+   * Create an enumerator for subsets of the given services.
+   *
+   * @param services Services to enumerate subsets of.
+   * @param layoutConstraint Layout constraint that valid service sets must satisfy.
+   * @param clusterServices Services on the cluster, used to prune the layout constraint.
+   */
+  ServiceSetEnumerator(Set<String> services, LayoutConstraint layoutConstraint, Set<String> clusterServices) {
+    Preconditions.checkArgument(services.size() <= MAX_SERVICES, "cannot enumerate sets of more than %s services",
+                                MAX_SERVICES);
+    this.services = Lists.newArrayList(services);
+
+    Set<Set<String>> cantCoexists = layoutConstraint.getServicesThatMustNotCoexist();
+    List<Long> cantMasks = Lists.newArrayListWithCapacity(cantCoexists.size());
+    for (Set<String> cantCoexist : cantCoexists) {
+      // if a service in the constraint is not being enumerated, no service set can contain all of them
+      if (this.services.containsAll(cantCoexist)) {
+        cantMasks.add(toMask(cantCoexist));
+      }
+    }
+    this.cantCoexistMasks = toArray(cantMasks);
+
+    long incompleteMask = 0;
+    Set<Set<String>> mustCoexists = layoutConstraint.getServicesThatMustCoexist();
+    List<Long> mustMasks = Lists.newArrayListWithCapacity(mustCoexists.size());
+    for (Set<String> mustCoexist : mustCoexists) {
+      // ignore services that are not on the cluster
+      Set<String> trueMustCoexist = Sets.intersection(mustCoexist, clusterServices);
+      long mask = toMask(trueMustCoexist);
+      if (this.services.containsAll(trueMustCoexist)) {
+        mustMasks.add(mask);
+      } else {
+        incompleteMask |= mask;
+      }
+    }
+    this.mustCoexistMasks = toArray(mustMasks);
+    this.incompleteMustCoexistMask = incompleteMask;
+  }
+
+  /**
+   * Get all non-empty service sets that satisfy the layout constraint.
+   *
+   * @return Set of all valid, non-empty service sets.
+   */
+  Set<Set<String>> getValidServiceSets() {
+    Set<Set<String>> validServiceSets = Sets.newHashSet();
+    for (long serviceSet : getValidServiceSetMasks()) {
+      validServiceSets.add(toServiceSet(serviceSet));
+    }
+    return validServiceSets;
+  }
+
+  /**
+   * Get all non-empty service sets that satisfy the layout constraint, as bitmasks.
+   *
+   * @return List of all valid, non-empty service sets as bitmasks.
+   */
+  List<Long> getValidServiceSetMasks() {
+    List<Long> validServiceSets = Lists.newArrayList();
+    addValidServiceSets(0, 0L, validServiceSets);
+    return validServiceSets;
+  }
+
+  // decide whether or not the service at the given index is in the set, skipping decisions that break a constraint.
+  private void addValidServiceSets(int index, long serviceSet, List<Long> validServiceSets) {
+    // the services that have been decided on so far, whether they are in the set or not
+    long decided = (1L << index) - 1;
+    if (!canBeValid(serviceSet, decided)) {
+      return;
+    }
+    if (index == services.size()) {
+      if (serviceSet != 0) {
+        validServiceSets.add(serviceSet);
+      }
+      return;
+    }
+    long withService = serviceSet | (1L << index);
+    if (!containsCantCoexist(withService)) {
+      addValidServiceSets(index + 1, withService, validServiceSets);
+    }
+    addValidServiceSets(index + 1, serviceSet, validServiceSets);
+  }
+
+  // whether some way of deciding the remaining services could result in a valid service set.
+  private boolean canBeValid(long serviceSet, long decided) {
+    if ((serviceSet & incompleteMustCoexistMask) != 0) {
+      return false;
+    }
+    for (long mustCoexist : mustCoexistMasks) {
+      // if the set contains some service in the constraint, it cannot leave out any other service in it.
+      if ((serviceSet & mustCoexist) != 0 && (mustCoexist & decided & ~serviceSet) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean containsCantCoexist(long serviceSet) {
+    for (long cantCoexist : cantCoexistMasks) {
+      if ((serviceSet & cantCoexist) == cantCoexist) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long toMask(Set<String> serviceSet) {
+    long mask = 0;
+    for (String service : serviceSet) {
+      int index = services.indexOf(service);
+      if (index >= 0) {
+        mask |= 1L << index;
+      }
+    }
+    return mask;
+  }
+
+  private Set<String> toServiceSet(long mask) {
+    Set<String> serviceSet = Sets.newHashSetWithExpectedSize(Long.bitCount(mask));
+    for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+      serviceSet.add(services.get(Long.numberOfTrailingZeros(remaining)));
+    }
+    return serviceSet;
+  }
+
+  private static long[] toArray(List<Long> masks) {
+    long[] array = new long[masks.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = masks.get(i);
+    }
+    return array;
+  }
+}
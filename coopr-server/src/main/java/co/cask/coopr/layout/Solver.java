@@ -18,6 +18,8 @@ package co.cask.coopr.layout;
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
 import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.http.request.ClusterCreateRequest;
 import co.cask.coopr.layout.change.ClusterLayoutChange;
 import co.cask.coopr.layout.change.ClusterLayoutTracker;
@@ -31,9 +33,11 @@ import co.cask.coopr.spec.template.Compatibilities;
 import co.cask.coopr.store.entity.EntityStoreService;
 import co.cask.coopr.store.entity.EntityStoreView;
 import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +47,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The solver takes a cluster template, a number of machines, and figures out what services to put on what hardware
@@ -56,11 +62,22 @@ public class Solver {
   private static final Logger LOG  = LoggerFactory.getLogger(Solver.class);
   private final EntityStoreService entityStoreService;
   private final ClusterLayoutUpdater updater;
+  private final ExecutorService searchExecutor;
+  private final LayoutSolutionCache solutionCache;
 
   @Inject
-  private Solver(EntityStoreService entityStoreService, ClusterLayoutUpdater updater) {
+  private Solver(EntityStoreService entityStoreService, ClusterLayoutUpdater updater,
+                 LayoutSolutionCache solutionCache, Configuration conf) {
     this.entityStoreService = entityStoreService;
     this.updater = updater;
+    this.solutionCache = solutionCache;
+    int searchNumThreads = conf.getInt(Constants.SOLVER_SEARCH_NUM_THREADS);
+    // with 1 thread, searches are done on the calling solver thread
+    this.searchExecutor = searchNumThreads < 2 ? null :
+      Executors.newFixedThreadPool(searchNumThreads, new ThreadFactoryBuilder()
+        .setNameFormat("solver-search-%d")
+        .setDaemon(true)
+        .build());
   }
 
   /**
@@ -177,9 +194,11 @@ public class Solver {
       dnsSuffix = template.getClusterDefaults().getDnsSuffix();
     }
 
-    Map<String, Node> nodes =
-      solveConstraints(cluster.getId(), template, request.getName(), request.getNumMachines(), hardwareTypeFlavors,
-                       imageTypeMap, serviceNames, serviceMap, dnsSuffix);
+    LayoutSolution solution = getLayoutSolution(template, serviceNames, hardwareTypeFlavors.keySet(),
+                                                imageTypeMap.keySet(), request.getNumMachines());
+    Map<String, Node> nodes = solution == null ? null :
+      createNodes(cluster.getId(), request.getName(), solution, hardwareTypeFlavors, imageTypeMap, serviceMap,
+                  dnsSuffix);
 
     // Update cluster object
     // TODO: this should happen outside Solver.
@@ -188,6 +207,19 @@ public class Solver {
     return nodes;
   }
 
+  // get the solved layout from the cache, only solving it if it has not already been solved for the same inputs.
+  private LayoutSolution getLayoutSolution(final ClusterTemplate template, final Set<String> serviceNames,
+                                           final Set<String> hardwareTypes, final Set<String> imageTypes,
+                                           final int numMachines) {
+    return solutionCache.getSolution(template, serviceNames, hardwareTypes, imageTypes, numMachines,
+                                     new Supplier<LayoutSolution>() {
+      @Override
+      public LayoutSolution get() {
+        return findLayoutSolution(template, serviceNames, hardwareTypes, imageTypes, numMachines, searchExecutor);
+      }
+    });
+  }
+
   // get a mapping of service name to service object for fast lookup later. Also check that each service actually
   // exists.
   private Map<String, Service> getServiceMap(Set<String> serviceNames, EntityStoreView entityStore) throws IOException {
@@ -197,7 +229,7 @@ public class Solver {
       if (service == null) {
         throw new IllegalArgumentException("service " + serviceName + " does not exist");
       }
-      map.put(serviceName, entityStore.getService(serviceName));
+      map.put(serviceName, service);
     }
     return map;
   }
@@ -341,9 +373,8 @@ public class Solver {
     }
   }
 
-  // solves for a valid cluster layout based on the constraints. First finds all possible node layouts that can be
-  // used in the cluster based on the services that need to be on the cluster and constraints. Then searches for a
-  // valid number of each node layout based on the constraints.
+  // solves for a valid cluster layout based on the constraints, returning the nodes in the cluster or null if there
+  // is no valid cluster layout.
   static Map<String, Node> solveConstraints(String clusterId, ClusterTemplate clusterTemplate, String clusterName,
                                             int numMachines,
                                             Map<String, String> hardwareTypeMap,
@@ -351,8 +382,33 @@ public class Solver {
                                             Set<String> serviceNames,
                                             Map<String, Service> serviceMap,
                                             String dnsSuffix) {
+    return solveConstraints(clusterId, clusterTemplate, clusterName, numMachines, hardwareTypeMap, imageTypeMap,
+                            serviceNames, serviceMap, dnsSuffix, null);
+  }
+
+  // same as above, except the search for how many of each node layout to use is split across threads of the given
+  // executor. If the executor is null, the search is done on the calling thread.
+  static Map<String, Node> solveConstraints(String clusterId, ClusterTemplate clusterTemplate, String clusterName,
+                                            int numMachines,
+                                            Map<String, String> hardwareTypeMap,
+                                            Map<String, Map<String, String>> imageTypeMap,
+                                            Set<String> serviceNames,
+                                            Map<String, Service> serviceMap,
+                                            String dnsSuffix,
+                                            ExecutorService searchExecutor) {
+    LayoutSolution solution = findLayoutSolution(clusterTemplate, serviceNames, hardwareTypeMap.keySet(),
+                                                 imageTypeMap.keySet(), numMachines, searchExecutor);
+    return solution == null ? null : createNodes(clusterId, clusterName, solution, hardwareTypeMap, imageTypeMap,
+                                                 serviceMap, dnsSuffix);
+  }
+
+  // finds all possible node layouts that can be used in the cluster based on the services that need to be on the
+  // cluster and constraints. Then searches for a valid number of each node layout based on the constraints.
+  static LayoutSolution findLayoutSolution(ClusterTemplate clusterTemplate, Set<String> serviceNames,
+                                           Set<String> hardwareTypes, Set<String> imageTypes, int numMachines,
+                                           ExecutorService searchExecutor) {
     NodeLayoutGenerator nodeLayoutGenerator =
-      new NodeLayoutGenerator(clusterTemplate, serviceNames, hardwareTypeMap.keySet(), imageTypeMap.keySet());
+      new NodeLayoutGenerator(clusterTemplate, serviceNames, hardwareTypes, imageTypes);
 
     // We need to deterministically choose the same cluster.  Nodelayouts earlier in the traversal order are
     // preferred.
@@ -360,20 +416,27 @@ public class Solver {
 
     long start = System.nanoTime();
     ClusterLayoutFinder layoutFinder =
-      new ClusterLayoutFinder(traversalOrder, clusterTemplate, serviceNames, numMachines);
+      new ClusterLayoutFinder(traversalOrder, clusterTemplate, serviceNames, numMachines, searchExecutor);
     int[] clusterlayout = layoutFinder.findValidNodeCounts();
     long dur = (System.nanoTime() - start) / 1000000;
     LOG.debug("took {} ms to find cluster layout", dur);
 
-    if (clusterlayout == null) {
-      return null;
-    }
+    return clusterlayout == null ? null : new LayoutSolution(traversalOrder, clusterlayout);
+  }
 
+  // creates the nodes for a solved cluster layout, giving each one a new id and hostname.
+  static Map<String, Node> createNodes(String clusterId, String clusterName, LayoutSolution solution,
+                                       Map<String, String> hardwareTypeMap,
+                                       Map<String, Map<String, String>> imageTypeMap,
+                                       Map<String, Service> serviceMap,
+                                       String dnsSuffix) {
+    List<NodeLayout> nodeLayouts = solution.getNodeLayouts();
+    int[] nodeCounts = solution.getNodeCounts();
     Map<String, Node> clusterNodes = Maps.newHashMap();
     int nodeNum = 1000;
-    for (int i = 0; i < clusterlayout.length; i++) {
-      NodeLayout nodeLayout = traversalOrder.get(i);
-      for (int j = 0; j < clusterlayout[i]; j++) {
+    for (int i = 0; i < nodeCounts.length; i++) {
+      NodeLayout nodeLayout = nodeLayouts.get(i);
+      for (int j = 0; j < nodeCounts[i]; j++) {
         String nodeId = UUID.randomUUID().toString();
         Set<Service> nodeServices = Sets.newHashSet();
         for (String serviceName : nodeLayout.getServiceNames()) {
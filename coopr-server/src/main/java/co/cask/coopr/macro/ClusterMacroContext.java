@@ -0,0 +1,200 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cluster and cluster nodes that macros are evaluated against, with service lookups indexed once up front so that
+ * evaluating a macro does not require a scan over all cluster nodes. A context should be built once for a set of
+ * nodes and reused for every node and macro that is expanded against that set, and rebuilt whenever the membership
+ * of the cluster changes. Not thread safe.
+ */
+public final class ClusterMacroContext {
+  private static final Comparator<Node> NODE_NUM_COMPARATOR = new Comparator<Node>() {
+    @Override
+    public int compare(Node node, Node node2) {
+      Integer nodenum1 = node.getProperties().getNodenum();
+      Integer nodenum2 = node2.getProperties().getNodenum();
+      return nodenum1.compareTo(nodenum2);
+    }
+  };
+  private final Cluster cluster;
+  private final Set<Node> nodes;
+  // service name -> nodes with the service, in the iteration order of the node set
+  private final ListMultimap<String, Node> serviceNodes;
+  // service name -> nodes with the service, sorted by node number
+  private final Map<String, List<Node>> sortedServiceNodes;
+  // service name -> node id -> instance number of the node for the service, starting at 1
+  private final Map<String, Map<String, Integer>> instanceNums;
+  // service name -> hostnames of the nodes with the service, filled in on first use
+  private final Map<String, List<String>> serviceHostnames;
+  // service name, ip type -> ips of the nodes with the service, filled in on first use
+  private final Table<String, String, List<String>> serviceIPs;
+
+  /**
+   * Index the given nodes of the given cluster.
+   *
+   * @param cluster Cluster macros are evaluated for.
+   * @param nodes Nodes of the cluster macros are evaluated for.
+   */
+  public ClusterMacroContext(Cluster cluster, Set<Node> nodes) {
+    this.cluster = cluster;
+    this.nodes = nodes;
+    this.serviceNodes = ArrayListMultimap.create();
+    for (Node node : nodes) {
+      Set<String> nodeServices = Sets.newHashSet();
+      for (Service service : node.getServices()) {
+        if (nodeServices.add(service.getName())) {
+          serviceNodes.put(service.getName(), node);
+        }
+      }
+    }
+    this.sortedServiceNodes = Maps.newHashMap();
+    this.instanceNums = Maps.newHashMap();
+    for (String serviceName : serviceNodes.keySet()) {
+      List<Node> sorted = Lists.newArrayList(serviceNodes.get(serviceName));
+      Collections.sort(sorted, NODE_NUM_COMPARATOR);
+      ImmutableMap.Builder<String, Integer> nums = ImmutableMap.builder();
+      int instanceNum = 1;
+      for (Node node : sorted) {
+        nums.put(node.getId(), instanceNum);
+        instanceNum++;
+      }
+      sortedServiceNodes.put(serviceName, sorted);
+      instanceNums.put(serviceName, nums.build());
+    }
+    this.serviceHostnames = Maps.newHashMap();
+    this.serviceIPs = HashBasedTable.create();
+  }
+
+  public Cluster getCluster() {
+    return cluster;
+  }
+
+  public Set<Node> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Get the nodes that have the given service on it, in the iteration order of the cluster nodes.
+   *
+   * @param serviceName Name of the service.
+   * @return Nodes with the service on it, empty if there are none.
+   */
+  public List<Node> getServiceNodes(String serviceName) {
+    return Collections.unmodifiableList(serviceNodes.get(serviceName));
+  }
+
+  /**
+   * Get the n'th node, by node number, of the nodes that have the given service on it.
+   *
+   * @param serviceName Name of the service.
+   * @param n number of the node with the service on it, starting at 0.
+   * @return N'th node on the cluster with the given service.
+   * @throws IncompleteClusterException if there are not fewer than n + 1 nodes with the service
+   */
+  public Node getNthServiceNode(String serviceName, int n) throws IncompleteClusterException {
+    List<Node> sorted = sortedServiceNodes.get(serviceName);
+    if (sorted == null || n >= sorted.size()) {
+      throw new IncompleteClusterException("There are fewer than " + (n + 1) + " nodes with "
+                                             + serviceName + " on the cluster");
+    }
+    return sorted.get(n);
+  }
+
+  /**
+   * Get the instance number of the node for the given service. For example, suppose there are 3 nodes with zookeeper
+   * with node numbers 3, 7, and 17. The instance num of the node with node number 3 is 1, the instance num of the
+   * node with node number 7 is 2, and the instance num of the node with node number 17 is 3.
+   *
+   * @param serviceName Name of the service.
+   * @param node Node to find the instance number for.
+   * @return Instance number of the node, or -1 if the node does not have the service on it.
+   */
+  public int getServiceInstanceNum(String serviceName, Node node) {
+    Map<String, Integer> nums = instanceNums.get(serviceName);
+    Integer instanceNum = nums == null ? null : nums.get(node.getId());
+    return instanceNum == null ? -1 : instanceNum;
+  }
+
+  /**
+   * Get the hostnames of all nodes that have the given service on it, in the iteration order of the cluster nodes.
+   *
+   * @param serviceName Name of the service.
+   * @return Hostnames of the nodes with the service on it, empty if there are none.
+   * @throws IncompleteClusterException if a node with the service on it has no hostname.
+   */
+  public List<String> getServiceHostnames(String serviceName) throws IncompleteClusterException {
+    List<String> hostnames = serviceHostnames.get(serviceName);
+    if (hostnames == null) {
+      ImmutableList.Builder<String> builder = ImmutableList.builder();
+      for (Node node : serviceNodes.get(serviceName)) {
+        String hostname = node.getProperties().getHostname();
+        if (hostname == null) {
+          throw new IncompleteClusterException("node " + node.getId() + " has no hostname for macro expansion.");
+        }
+        builder.add(hostname);
+      }
+      hostnames = builder.build();
+      serviceHostnames.put(serviceName, hostnames);
+    }
+    return hostnames;
+  }
+
+  /**
+   * Get the ips of the given type of all nodes that have the given service on it, in the iteration order of the
+   * cluster nodes.
+   *
+   * @param serviceName Name of the service.
+   * @param ipType Type of ip to get.
+   * @return Ips of the nodes with the service on it, empty if there are none.
+   * @throws IncompleteClusterException if a node with the service on it has no ip of the given type.
+   */
+  public List<String> getServiceIPs(String serviceName, String ipType) throws IncompleteClusterException {
+    List<String> ips = serviceIPs.get(serviceName, ipType);
+    if (ips == null) {
+      ImmutableList.Builder<String> builder = ImmutableList.builder();
+      for (Node node : serviceNodes.get(serviceName)) {
+        String ip = node.getProperties().getIPAddress(ipType);
+        if (ip == null) {
+          throw new IncompleteClusterException("node " + node.getId() + " has no ip for macro expansion.");
+        }
+        builder.add(ip);
+      }
+      ips = builder.build();
+      serviceIPs.put(serviceName, ipType, ips);
+    }
+    return ips;
+  }
+}
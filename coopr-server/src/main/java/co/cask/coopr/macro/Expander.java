@@ -17,11 +17,11 @@ package co.cask.coopr.macro;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
-import com.google.gson.JsonArray;
+import com.google.common.collect.Lists;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nullable;
@@ -74,44 +74,90 @@ public final class Expander {
    */
   public static String expand(String textWithMacros, Cluster cluster, Set<Node> nodes, Node node)
     throws SyntaxException, IncompleteClusterException {
+    List<Object> segments = parseMacros(textWithMacros);
+    // nothing to expand, or only validating
+    if (segments == null || nodes == null) {
+      return textWithMacros;
+    }
+    String expanded = expandMacros(segments, new ClusterMacroContext(cluster, nodes), node);
+    // only return a new string if actual expansion happened
+    return expanded == null ? textWithMacros : expanded;
+  }
+
+  /**
+   * Given a text that may contain macros, validate and expand all macros against the given cluster context, and on
+   * the specified node. Use this instead of {@link #expand(String, Cluster, Set, Node)} when expanding many texts
+   * against the same cluster nodes.
+   * @param textWithMacros text that may contain macros.
+   * @param context cluster and cluster nodes to evaluate macros for.
+   * @param node cluster node to evaluate macros for.
+   * @return text with any relevant macros expanded.
+   * @throws SyntaxException if a macro is not wellformed.
+   * @throws IncompleteClusterException if a macro cannot be expanded because the cluster lacks the information.
+   */
+  public static String expand(String textWithMacros, ClusterMacroContext context, Node node)
+    throws SyntaxException, IncompleteClusterException {
+    List<Object> segments = parseMacros(textWithMacros);
+    if (segments == null) {
+      return textWithMacros;
+    }
+    String expanded = expandMacros(segments, context, node);
+    return expanded == null ? textWithMacros : expanded;
+  }
+
+  /**
+   * Parse all macros in the given text.
+   *
+   * @return Literal text and expressions making up the given text, or null if the text contains no macros.
+   */
+  static List<Object> parseMacros(String text) throws SyntaxException {
+    List<Object> segments = null;
     int pos = 0;
-    StringBuilder builder = nodes == null ? null : new StringBuilder();
+    while (pos < text.length()) {
+      int pos1 = findNextPercent(text, pos);
+      if (pos1 < 0) {
+        break;
+      }
+      int pos2 = findNextPercent(text, pos1 + 1);
+      if (pos2 < 0) {
+        break;
+      }
+      if (segments == null) {
+        segments = Lists.newArrayList();
+      }
+      if (pos1 > pos) {
+        segments.add(text.substring(pos, pos1));
+      }
+      segments.add(new Parser(text.substring(pos1 + 1, pos2)).parse());
+      pos = pos2 + 1;
+    }
+    if (segments != null && pos < text.length()) {
+      segments.add(text.substring(pos));
+    }
+    return segments;
+  }
+
+  /**
+   * Evaluate the given segments of a text.
+   *
+   * @return the expanded text, or null if no macro could be expanded.
+   */
+  static String expandMacros(List<Object> segments, ClusterMacroContext context, Node node)
+    throws IncompleteClusterException {
+    StringBuilder builder = new StringBuilder();
     boolean expansionHappened = false;
-    while (pos < textWithMacros.length()) {
-      // find the first macro
-      int pos1 = findNextPercent(textWithMacros, pos);
-      if (pos1 >= 0) {
-        int pos2 = findNextPercent(textWithMacros, pos1 + 1);
-        if (pos2 >= 0) {
-          // copy text up to macro
-          if (builder != null) {
-            builder.append(textWithMacros, pos, pos1);
-          }
-          // macro found
-          String macro = textWithMacros.substring(pos1 + 1, pos2);
-          // parse the macro
-          Expression expression = new Parser(macro).parse();
-          // if cluster is given, expand macro
-          if (builder != null) {
-            String expansion = expression.evaluate(cluster, nodes, node);
-            if (expansion != null) {
-              builder.append(expansion);
-              expansionHappened = true;
-            }
-          }
-          // move position past macro
-          pos = pos2 + 1;
-          continue;
+    for (Object segment : segments) {
+      if (segment instanceof Expression) {
+        String expansion = ((Expression) segment).evaluate(context, node);
+        if (expansion != null) {
+          builder.append(expansion);
+          expansionHappened = true;
         }
+      } else {
+        builder.append((String) segment);
       }
-      // no macro found, copy remaining text and quit
-      if (builder != null && expansionHappened) {
-        builder.append(textWithMacros, pos, textWithMacros.length());
-      }
-      break;
     }
-    // only return a new string if actual expansion happened
-    return expansionHappened ? builder.toString() : textWithMacros;
+    return expansionHappened ? builder.toString() : null;
   }
 
   /**
@@ -148,7 +194,7 @@ public final class Expander {
    * @throws SyntaxException if a macro expression is ill-formed.
    * @throws IncompleteClusterException if the cluster does not have the meta data to expand all macros.
    */
-  public static JsonElement expand(JsonElement json, @Nullable java.util.List<String> path, Cluster cluster,
+  public static JsonElement expand(JsonElement json, @Nullable List<String> path, Cluster cluster,
                                    Set<Node> nodes, Node node) throws SyntaxException, IncompleteClusterException {
 
     // if path is given,
@@ -173,52 +219,8 @@ public final class Expander {
       return json;
     }
 
-    if (json.isJsonPrimitive()) {
-      JsonPrimitive primitive = json.getAsJsonPrimitive();
-      if (primitive.isString()) {
-        String value = primitive.getAsString();
-        String expanded = expand(value, cluster, nodes, node);
-        if (!expanded.equals(value)) {
-          // only return a new json element if actual expansion happened
-          return new JsonPrimitive(expanded);
-        }
-      }
-    }
-
-    if (json.isJsonArray()) {
-      JsonArray array = json.getAsJsonArray();
-      JsonArray array1 = new JsonArray();
-      boolean expansionHappened = false;
-      for (JsonElement element : array) {
-        JsonElement expanded = expand(element, path, cluster, nodes, node);
-        if (expanded != element) {
-          expansionHappened = true;
-        }
-        array1.add(expanded);
-      }
-      // only return a new json array if actual expansion happened
-      if (expansionHappened) {
-        return array1;
-      }
-    }
-
-    if (json.isJsonObject()) {
-      JsonObject object = json.getAsJsonObject();
-      JsonObject object1 = new JsonObject();
-      boolean expansionHappened = false;
-      for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
-        JsonElement expanded = expand(entry.getValue(), path, cluster, nodes, node);
-        if (expanded != entry.getValue()) {
-          expansionHappened = true;
-        }
-        object1.add(entry.getKey(), expand(entry.getValue(), path, cluster, nodes, node));
-      }
-      if (expansionHappened) {
-        return object1;
-      }
-    }
-
-    return json;
+    JsonTemplate template = JsonTemplate.compile(json);
+    return nodes == null ? json : template.expand(cluster, nodes, node);
   }
 
 }
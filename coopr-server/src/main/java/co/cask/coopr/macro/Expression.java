@@ -64,9 +64,23 @@ public class Expression {
    * @throws IncompleteClusterException if a node is missing the property that is required for the lookup type.
    */
   public String evaluate(Cluster cluster, Set<Node> clusterNodes, Node node) throws IncompleteClusterException {
+    return evaluate(new ClusterMacroContext(cluster, clusterNodes), node);
+  }
+
+  /**
+   * Evaluate the expression against a precomputed cluster context. The context should be shared by all expressions
+   * that are evaluated against the same cluster nodes.
+   *
+   * @param context the cluster and cluster nodes to evaluate for.
+   * @param node the node of the cluster to evaluate the expression for.
+   * @return the replacement string for the expression, or null if the service required for replacement is not in
+   *         the cluster.
+   * @throws IncompleteClusterException if a node is missing the property that is required for the lookup type.
+   */
+  public String evaluate(ClusterMacroContext context, Node node) throws IncompleteClusterException {
     StringBuilder builder = new StringBuilder();
 
-    List<String> parts = evaluator.evaluate(cluster, clusterNodes, node);
+    List<String> parts = evaluator.evaluate(context, node);
     if (parts == null) {
       return null;
     }
@@ -0,0 +1,225 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A JSON tree with all its macros parsed ahead of time, so that it can be expanded many times, for example once for
+ * every node in a cluster, without scanning and parsing the tree again each time. Only the strings that contain
+ * macros are evaluated when expanding, and subtrees without macros are shared between the template and every
+ * expansion of it. Expansion follows the same rules as {@link Expander#expand(JsonElement, List, Cluster, Set, Node)}.
+ */
+public final class JsonTemplate {
+  private final JsonElement json;
+  // null if the tree does not contain any macros
+  private final Part root;
+
+  private JsonTemplate(JsonElement json, Part root) {
+    this.json = json;
+    this.root = root;
+  }
+
+  /**
+   * Parse all macros in the given JSON tree into a template. The tree must not be modified while the template is in
+   * use.
+   *
+   * @param json JSON tree to compile.
+   * @return Template for the JSON tree.
+   * @throws SyntaxException if a macro expression is ill-formed.
+   */
+  public static JsonTemplate compile(JsonElement json) throws SyntaxException {
+    return new JsonTemplate(json, compilePart(json));
+  }
+
+  /**
+   * Expand all macros in the template in the context of the given cluster and node. If a macro cannot be expanded
+   * due to the cluster object missing certain data, that macro will be left unexpanded.
+   *
+   * @param cluster the cluster to use for expanding macros.
+   * @param nodes the cluster nodes to use for expanding macros.
+   * @param node the cluster node to use for expanding macros.
+   * @return a new JSON tree if any expansion took place, and the original JSON tree otherwise.
+   * @throws IncompleteClusterException if the cluster does not have the meta data to expand all macros.
+   */
+  public JsonElement expand(Cluster cluster, Set<Node> nodes, Node node) throws IncompleteClusterException {
+    return root == null ? json : root.expand(json, new ClusterMacroContext(cluster, nodes), node);
+  }
+
+  /**
+   * Expand all macros in the template against the given cluster context and node. Use this instead of
+   * {@link #expand(Cluster, Set, Node)} when expanding the template for many nodes of the same cluster.
+   *
+   * @param context the cluster and cluster nodes to use for expanding macros.
+   * @param node the cluster node to use for expanding macros.
+   * @return a new JSON tree if any expansion took place, and the original JSON tree otherwise.
+   * @throws IncompleteClusterException if the cluster does not have the meta data to expand all macros.
+   */
+  public JsonElement expand(ClusterMacroContext context, Node node) throws IncompleteClusterException {
+    return root == null ? json : root.expand(json, context, node);
+  }
+
+  private static Part compilePart(JsonElement json) throws SyntaxException {
+    if (json.isJsonPrimitive()) {
+      JsonPrimitive primitive = json.getAsJsonPrimitive();
+      if (primitive.isString()) {
+        List<Object> segments = Expander.parseMacros(primitive.getAsString());
+        return segments == null ? null : new StringPart(segments);
+      }
+    } else if (json.isJsonArray()) {
+      Map<Integer, Part> children = Maps.newHashMap();
+      int index = 0;
+      for (JsonElement element : json.getAsJsonArray()) {
+        Part child = compilePart(element);
+        if (child != null) {
+          children.put(index, child);
+        }
+        index++;
+      }
+      return children.isEmpty() ? null : new ArrayPart(children);
+    } else if (json.isJsonObject()) {
+      Map<String, Part> children = Maps.newHashMap();
+      for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+        Part child = compilePart(entry.getValue());
+        if (child != null) {
+          children.put(entry.getKey(), child);
+        }
+      }
+      return children.isEmpty() ? null : new ObjectPart(children);
+    }
+    return null;
+  }
+
+  /**
+   * Part of a JSON tree that contains macros.
+   */
+  private abstract static class Part {
+    /**
+     * Expand the given element of the tree, returning the element itself if no expansion happened.
+     */
+    abstract JsonElement expand(JsonElement json, ClusterMacroContext context, Node node)
+      throws IncompleteClusterException;
+  }
+
+  /**
+   * String containing macros.
+   */
+  private static final class StringPart extends Part {
+    private final List<Object> segments;
+
+    private StringPart(List<Object> segments) {
+      this.segments = ImmutableList.copyOf(segments);
+    }
+
+    @Override
+    JsonElement expand(JsonElement json, ClusterMacroContext context, Node node)
+      throws IncompleteClusterException {
+      String expanded = Expander.expandMacros(segments, context, node);
+      if (expanded == null || expanded.equals(json.getAsString())) {
+        return json;
+      }
+      return new JsonPrimitive(expanded);
+    }
+  }
+
+  /**
+   * Array with elements that contain macros.
+   */
+  private static final class ArrayPart extends Part {
+    // index of element -> part for the element, for elements that contain macros
+    private final Map<Integer, Part> children;
+
+    private ArrayPart(Map<Integer, Part> children) {
+      this.children = children;
+    }
+
+    @Override
+    JsonElement expand(JsonElement json, ClusterMacroContext context, Node node)
+      throws IncompleteClusterException {
+      JsonArray array = json.getAsJsonArray();
+      Map<Integer, JsonElement> expandedChildren = null;
+      for (Map.Entry<Integer, Part> entry : children.entrySet()) {
+        JsonElement element = array.get(entry.getKey());
+        JsonElement expanded = entry.getValue().expand(element, context, node);
+        if (expanded != element) {
+          if (expandedChildren == null) {
+            expandedChildren = Maps.newHashMap();
+          }
+          expandedChildren.put(entry.getKey(), expanded);
+        }
+      }
+      if (expandedChildren == null) {
+        return json;
+      }
+      JsonArray array1 = new JsonArray();
+      for (int i = 0; i < array.size(); i++) {
+        JsonElement expanded = expandedChildren.get(i);
+        array1.add(expanded == null ? array.get(i) : expanded);
+      }
+      return array1;
+    }
+  }
+
+  /**
+   * Object with values that contain macros.
+   */
+  private static final class ObjectPart extends Part {
+    // key -> part for the value, for values that contain macros
+    private final Map<String, Part> children;
+
+    private ObjectPart(Map<String, Part> children) {
+      this.children = children;
+    }
+
+    @Override
+    JsonElement expand(JsonElement json, ClusterMacroContext context, Node node)
+      throws IncompleteClusterException {
+      JsonObject object = json.getAsJsonObject();
+      Map<String, JsonElement> expandedChildren = null;
+      for (Map.Entry<String, Part> entry : children.entrySet()) {
+        JsonElement value = object.get(entry.getKey());
+        JsonElement expanded = entry.getValue().expand(value, context, node);
+        if (expanded != value) {
+          if (expandedChildren == null) {
+            expandedChildren = Maps.newHashMap();
+          }
+          expandedChildren.put(entry.getKey(), expanded);
+        }
+      }
+      if (expandedChildren == null) {
+        return json;
+      }
+      JsonObject object1 = new JsonObject();
+      for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+        JsonElement expanded = expandedChildren.get(entry.getKey());
+        object1.add(entry.getKey(), expanded == null ? entry.getValue() : expanded);
+      }
+      return object1;
+    }
+  }
+}
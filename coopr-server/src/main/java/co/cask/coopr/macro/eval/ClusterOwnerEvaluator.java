@@ -15,13 +15,12 @@
  */
 package co.cask.coopr.macro.eval;
 
-import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.ClusterMacroContext;
 import co.cask.coopr.macro.IncompleteClusterException;
 import com.google.common.collect.ImmutableList;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * Evaluates a macro that expands to the cluster owner.
@@ -29,8 +28,8 @@ import java.util.Set;
 public class ClusterOwnerEvaluator implements Evaluator {
 
   @Override
-  public List<String> evaluate(Cluster cluster, Set<Node> clusterNodes, Node node) throws IncompleteClusterException {
-    return ImmutableList.of(cluster.getAccount().getUserId());
+  public List<String> evaluate(ClusterMacroContext context, Node node) throws IncompleteClusterException {
+    return ImmutableList.of(context.getCluster().getAccount().getUserId());
   }
 
 }
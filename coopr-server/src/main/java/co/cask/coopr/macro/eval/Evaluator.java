@@ -15,12 +15,11 @@
  */
 package co.cask.coopr.macro.eval;
 
-import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.ClusterMacroContext;
 import co.cask.coopr.macro.IncompleteClusterException;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * Evaluator for a specific type of expression, such as an IP expression or a hostname expression.
@@ -31,11 +30,10 @@ public interface Evaluator {
    * Evaluate the macro expression on the given node of the given cluster, with the given cluster nodes.
    * Returns null if the macro does not expand to anything.
    *
-   * @param cluster Cluster the macro is being expanded for.
-   * @param clusterNodes Nodes in the cluster the macro is being expanded for.
+   * @param context Cluster and cluster nodes the macro is being expanded for.
    * @param node The cluster node that the macro is being expanded for.
    * @return Evaluated macro expression.
    * @throws IncompleteClusterException if the cluster does not contain the information required to evaluate the macro.
    */
-  List<String> evaluate(Cluster cluster, Set<Node> clusterNodes, Node node) throws IncompleteClusterException;
+  List<String> evaluate(ClusterMacroContext context, Node node) throws IncompleteClusterException;
 }
@@ -15,15 +15,13 @@
  */
 package co.cask.coopr.macro.eval;
 
-import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.ClusterMacroContext;
 import co.cask.coopr.macro.IncompleteClusterException;
-import co.cask.coopr.spec.service.Service;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * Evaluates a macro that expands to be the number of nodes in the cluster that contain a given service.
@@ -36,16 +34,8 @@ public class ServiceCardinalityEvaluator implements Evaluator {
   }
 
   @Override
-  public List<String> evaluate(Cluster cluster, Set<Node> clusterNodes, Node node) throws IncompleteClusterException {
-    int count = 0;
-    for (Node clusterNode : clusterNodes) {
-      for (Service service : clusterNode.getServices()) {
-        if (serviceName.equals(service.getName())) {
-          count++;
-        }
-      }
-    }
-    return ImmutableList.of(String.valueOf(count));
+  public List<String> evaluate(ClusterMacroContext context, Node node) throws IncompleteClusterException {
+    return ImmutableList.of(String.valueOf(context.getServiceNodes(serviceName).size()));
   }
 
   @Override
@@ -15,13 +15,12 @@
  */
 package co.cask.coopr.macro.eval;
 
-import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.ClusterMacroContext;
 import co.cask.coopr.macro.IncompleteClusterException;
 import com.google.common.collect.ImmutableList;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * Evaluates a macro that expands to be the instance number of the given node that contains the given service. For
@@ -35,8 +34,8 @@ public class ServiceInstanceEvaluator extends ServiceEvaluator {
   }
 
   @Override
-  public List<String> evaluate(Cluster cluster, Set<Node> clusterNodes, Node node) throws IncompleteClusterException {
-    int instanceNum = getServiceInstanceNum(node, sortServiceNodes(clusterNodes));
+  public List<String> evaluate(ClusterMacroContext context, Node node) throws IncompleteClusterException {
+    int instanceNum = context.getServiceInstanceNum(serviceName, node);
     if (instanceNum < 0) {
       return null;
     }
@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.management;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit and miss counts of a cache used for JMX.
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class CacheStats {
+  private final AtomicLong hits = new AtomicLong(0);
+  private final AtomicLong misses = new AtomicLong(0);
+
+  public void recordHit() {
+    hits.incrementAndGet();
+  }
+
+  public void recordMiss() {
+    misses.incrementAndGet();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public double getHitRatio() {
+    long hitCount = hits.get();
+    long total = hitCount + misses.get();
+    return total == 0 ? 1.0 : (double) hitCount / total;
+  }
+}
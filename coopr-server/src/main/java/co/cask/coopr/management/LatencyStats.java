@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.management;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count, average and max of some latency in milliseconds used for JMX.
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class LatencyStats {
+  private final AtomicLong count = new AtomicLong(0);
+  private final AtomicLong totalMillis = new AtomicLong(0);
+  private final AtomicLong maxMillis = new AtomicLong(0);
+
+  public void record(long millis) {
+    count.incrementAndGet();
+    totalMillis.addAndGet(millis);
+    long max = maxMillis.get();
+    while (millis > max && !maxMillis.compareAndSet(max, millis)) {
+      max = maxMillis.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getTotalMillis() {
+    return totalMillis.get();
+  }
+
+  public long getMaxMillis() {
+    return maxMillis.get();
+  }
+
+  public double getAverageMillis() {
+    long numRecorded = count.get();
+    return numRecorded == 0 ? 0.0 : (double) totalMillis.get() / numRecorded;
+  }
+}
@@ -32,6 +32,11 @@ public class ServerStats implements ServerStatsMXBean {
   private final ClusterStats failedClusterStats;
   private final ClusterStats successfulClusterStats;
 
+  private final CacheStats layoutCacheStats;
+  private final CacheStats entityCacheStats;
+
+  private final LatencyStats stageTransitionLatencyStats;
+
   public ServerStats() {
     this.queueLength = new AtomicInteger(0);
 
@@ -43,6 +48,11 @@ public class ServerStats implements ServerStatsMXBean {
     this.clusterStats = new ClusterStats();
     this.failedClusterStats = new ClusterStats();
     this.successfulClusterStats = new ClusterStats();
+
+    this.layoutCacheStats = new CacheStats();
+    this.entityCacheStats = new CacheStats();
+
+    this.stageTransitionLatencyStats = new LatencyStats();
   }
 
   @Override
@@ -85,6 +95,21 @@ public class ServerStats implements ServerStatsMXBean {
     return successfulClusterStats;
   }
 
+  @Override
+  public CacheStats getLayoutCacheStats() {
+    return layoutCacheStats;
+  }
+
+  @Override
+  public CacheStats getEntityCacheStats() {
+    return entityCacheStats;
+  }
+
+  @Override
+  public LatencyStats getStageTransitionLatencyStats() {
+    return stageTransitionLatencyStats;
+  }
+
   public void setQueueLength(int queueLength) {
     this.queueLength.set(queueLength);
   }
@@ -34,5 +34,11 @@ public interface ServerStatsMXBean {
   ClusterStats getFailedClusterStats();
 
   ClusterStats getSuccessfulClusterStats();
+
+  CacheStats getLayoutCacheStats();
+
+  CacheStats getEntityCacheStats();
+
+  LatencyStats getStageTransitionLatencyStats();
 }
 
@@ -20,12 +20,17 @@ import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.spec.ProvisionerAction;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterTaskFilter;
+import co.cask.coopr.store.cluster.ClusterTaskProcessor;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
 import org.apache.commons.lang3.time.DateUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -54,30 +59,25 @@ public class MetricService {
   /**
    * Calculate statistics of nodes usage for given {@link ClusterTaskFilter}.
    * The start and end times are inclusive.
-   * Loads all tasks with CREATE or DELETE {@link ProvisionerAction}. Then, for each node, calculates node live time:
-   * finished time of CREATE task to finished time of DELETE task or finished time of CREATE task to current time.
-   * If required, then overlays {@code filter}'s start and end date.
+   * Streams all tasks with CREATE or DELETE {@link ProvisionerAction}, one cluster at a time. Then, for each node,
+   * calculates node live time: finished time of CREATE task to finished time of DELETE task or finished time of
+   * CREATE task to current time. If required, then overlays {@code filter}'s start and end date.
+   * Memory use is bounded by the number of intervals and the number of nodes in a single cluster.
    *
    * @param filter the filter
    * @return {@link TimeSeries} that presents node live time usage
    */
   public TimeSeries getNodesUsage(ClusterTaskFilter filter) throws IOException {
-    //TODO: implement this functionality without keeping all tasks in memory.
-    List<ClusterTask> tasks = clusterStore.getClusterTasks(filter);
     Long start = filter.getStart();
     Long end = filter.getEnd();
-    TimeUnit timeUnit = filter.getTimeUnit();
-    if (tasks.isEmpty()) {
-      long startTime = start != null ? start : 0;
-      return new TimeSeries(startTime, end != null ? end : TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
-                            Arrays.asList(new Interval(startTime)));
+    Long firstCreateTime = clusterStore.getEarliestClusterTaskTime(filter, ProvisionerAction.CREATE);
+    Long lastDeleteTime = clusterStore.getLatestClusterTaskTime(filter, ProvisionerAction.DELETE);
+    long now = System.currentTimeMillis();
+    if (firstCreateTime == null && lastDeleteTime == null) {
+      return getEmptyTimeSeries(start, end, now);
     }
-    List<ClusterTask> createTasks = getTasksByName(tasks, ProvisionerAction.CREATE);
-    List<ClusterTask> deleteTasks = getTasksByName(tasks, ProvisionerAction.DELETE);
-    long startDate = start != null ? TimeUnit.SECONDS.toMillis(start) : createTasks.isEmpty() ?
-      0 : createTasks.get(0).getStatusTime();
-    long endDate = end != null ? TimeUnit.SECONDS.toMillis(end) : deleteTasks.isEmpty() ?
-      System.currentTimeMillis() : deleteTasks.get(deleteTasks.size() - 1).getStatusTime();
+    long startDate = start != null ? TimeUnit.SECONDS.toMillis(start) : firstCreateTime == null ? 0 : firstCreateTime;
+    long endDate = end != null ? TimeUnit.SECONDS.toMillis(end) : lastDeleteTime == null ? now : lastDeleteTime;
     Periodicity periodicity = filter.getPeriodicity();
     long period;
     if (periodicity == null) {
@@ -85,74 +85,197 @@ public class MetricService {
     } else {
       period = getTimeStamp(periodicity);
     }
-    final List<Interval> intervals = getIntervalList(startDate, endDate, period);
-    for (ClusterTask createTask : createTasks) {
-      long deleteTaskTime = getDeleteTaskTime(deleteTasks, createTask);
-      long localStart = Math.max(createTask.getStatusTime(), startDate);
-      long localEnd = Math.min(deleteTaskTime, endDate);
-      int currentIndex = getNearestIndex(intervals, localStart);
-      Interval current = intervals.get(currentIndex);
-      long currentTimeInMillis = TimeUnit.SECONDS.toMillis(current.getTime());
-      while (currentTimeInMillis + period < localEnd) {
-        long increaseTime = localStart < currentTimeInMillis ? period : period + currentTimeInMillis - localStart;
-        current.increaseValue(timeUnit.convert(increaseTime, TimeUnit.MILLISECONDS));
-        current = intervals.get(++currentIndex);
-        currentTimeInMillis = TimeUnit.SECONDS.toMillis(current.getTime());
-      }
-      long increaseTime = localStart < currentTimeInMillis ? localEnd - currentTimeInMillis : localEnd - localStart;
-      if (increaseTime > 0) {
-        current.increaseValue(timeUnit.convert(increaseTime, TimeUnit.MILLISECONDS));
-      }
-    }
+    List<Interval> intervals = getIntervalList(startDate, endDate, period);
+    UsageAggregator aggregator = new UsageAggregator(intervals, startDate, endDate, period, filter.getTimeUnit(), now);
+    clusterStore.processClusterTasks(filter, aggregator);
+    aggregator.flushCluster();
     return new TimeSeries(TimeUnit.MILLISECONDS.toSeconds(startDate),
                           TimeUnit.MILLISECONDS.toSeconds(endDate), intervals);
   }
 
-  private long getDeleteTaskTime(List<ClusterTask> deleteTasks, ClusterTask createTask) {
-    ClusterTask result = null;
-    for (ClusterTask deleteTask : deleteTasks) {
-      if (createTask.getClusterId().equals(deleteTask.getClusterId()) &&
-        createTask.getNodeId().equals(deleteTask.getNodeId())) {
-        if (result == null) {
-          result = deleteTask;
-        } else if (deleteTask.getStatusTime() < result.getStatusTime()) {
-          result = deleteTask;
+  /**
+   * Calculate statistics of nodes usage for given {@link ClusterTaskFilter} from the node usage rollups, which are
+   * kept up to date as tasks complete. This gives the same results as {@link #getNodesUsage(ClusterTaskFilter)},
+   * except that the end time defaults to the current time, and usage within rollup buckets that are only partly
+   * covered by an interval is interpolated. Cost depends on the number of buckets in the time range and not on the
+   * number of tasks.
+   *
+   * @param filter the filter
+   * @return {@link TimeSeries} that presents node live time usage
+   */
+  public TimeSeries getNodesUsageFromRollups(ClusterTaskFilter filter) throws IOException {
+    Long start = filter.getStart();
+    Long end = filter.getEnd();
+    Long earliestTime = clusterStore.getEarliestNodeUsageTime(filter);
+    long now = System.currentTimeMillis();
+    if (earliestTime == null) {
+      return getEmptyTimeSeries(start, end, now);
+    }
+    long startDate = start != null ? TimeUnit.SECONDS.toMillis(start) : earliestTime;
+    long endDate = end != null ? TimeUnit.SECONDS.toMillis(end) : now;
+    Periodicity periodicity = filter.getPeriodicity();
+    long period = periodicity == null ? endDate : getTimeStamp(periodicity);
+    List<Interval> intervals = getIntervalList(startDate, endDate, period);
+    int numIntervals = intervals.size();
+
+    // interval boundaries in milliseconds, cut off at the current time since nothing is live in the future
+    long[] bounds = new long[numIntervals + 1];
+    bounds[0] = Math.min(startDate, now);
+    for (int i = 1; i < numIntervals; i++) {
+      bounds[i] = Math.min(TimeUnit.SECONDS.toMillis(intervals.get(i).getTime()), now);
+    }
+    bounds[numIntervals] = Math.max(bounds[numIntervals - 1], Math.min(endDate, now));
+
+    long[] usage = new long[numIntervals];
+    // change in the number of live nodes at the start of each interval
+    long[] liveChanges = new long[numIntervals];
+    for (NodeUsageBucket bucket : clusterStore.getNodeUsageBuckets(filter, startDate, endDate)) {
+      for (int i = getIntervalIndex(bounds, bucket.getStart()); i < numIntervals && bounds[i] < bucket.getEnd(); i++) {
+        usage[i] += bucket.getUsage(bounds[i + 1], now) - bucket.getUsage(bounds[i], now);
+      }
+      // nodes created in the bucket are live from its end onwards, until they are deleted in a later bucket
+      if (bucket.getEnd() < bounds[numIntervals]) {
+        int index = getIntervalIndex(bounds, bucket.getEnd());
+        usage[index] += bucket.getLiveDelta() * (bounds[index + 1] - Math.max(bucket.getEnd(), bounds[index]));
+        if (index + 1 < numIntervals) {
+          liveChanges[index + 1] += bucket.getLiveDelta();
         }
       }
     }
-    if (result == null) {
-      return System.currentTimeMillis();
-    }
-    return result.getStatusTime();
-  }
 
-  private List<ClusterTask> getTasksByName(List<ClusterTask> tasks, ProvisionerAction name) {
-    List<ClusterTask> result = new ArrayList<ClusterTask>();
-    for (ClusterTask task : tasks) {
-      if (task.getTaskName().equals(name)) {
-        result.add(task);
+    long liveNodes = clusterStore.getNodeUsageLiveNodes(filter, startDate);
+    TimeUnit timeUnit = filter.getTimeUnit();
+    for (int i = 0; i < numIntervals; i++) {
+      liveNodes += liveChanges[i];
+      usage[i] += liveNodes * (bounds[i + 1] - bounds[i]);
+      if (usage[i] > 0) {
+        intervals.get(i).increaseValue(timeUnit.convert(usage[i], TimeUnit.MILLISECONDS));
       }
     }
-    return result;
+    return new TimeSeries(TimeUnit.MILLISECONDS.toSeconds(startDate),
+                          TimeUnit.MILLISECONDS.toSeconds(endDate), intervals);
   }
 
   /**
-   * Retrieves nearest smaller {@link Interval} from {@code intervals} for {@code key}.
+   * Merge node usage rollups that are older than their retention into bigger buckets. Hourly buckets are merged into
+   * daily ones, and daily buckets into 30 day ones, which line up with the intervals of a monthly time series.
    *
-   * @param intervals the list of {@link Interval}s
-   * @param key the key
-   * @return nearest smaller {@link Interval}
+   * @param now current time in milliseconds
+   * @param hourlyRetention how long to keep hourly buckets for in milliseconds
+   * @param dailyRetention how long to keep daily buckets for in milliseconds
+   * @return number of buckets that were merged
+   * @throws IOException if there was a problem merging the buckets
    */
-  private int getNearestIndex(List<Interval> intervals, long key) {
-    int index = -1;
-    for (Interval value : intervals) {
-      if (TimeUnit.SECONDS.toMillis(value.getTime()) <= key) {
-        index++;
-      } else {
-        break;
+  public int compactRollups(long now, long hourlyRetention, long dailyRetention) throws IOException {
+    long hourlyBefore = now - hourlyRetention;
+    hourlyBefore -= hourlyBefore % NodeUsageBucket.DAY;
+    long dailyBefore = now - dailyRetention;
+    dailyBefore -= dailyBefore % NodeUsageBucket.MONTH;
+    return clusterStore.compactNodeUsage(NodeUsageBucket.HOUR, NodeUsageBucket.DAY, hourlyBefore) +
+      clusterStore.compactNodeUsage(NodeUsageBucket.DAY, NodeUsageBucket.MONTH, dailyBefore);
+  }
+
+  private TimeSeries getEmptyTimeSeries(Long start, Long end, long now) {
+    long startTime = start != null ? start : 0;
+    return new TimeSeries(startTime, end != null ? end : TimeUnit.MILLISECONDS.toSeconds(now),
+                          Arrays.asList(new Interval(startTime)));
+  }
+
+  // get the index of the interval containing the given time, or of the first interval if the time is before it.
+  private int getIntervalIndex(long[] bounds, long time) {
+    int index = Arrays.binarySearch(bounds, 0, bounds.length - 1, time);
+    return Math.max(0, index >= 0 ? index : -index - 2);
+  }
+
+  /**
+   * Adds up node live time into intervals. Tasks are given ordered by cluster, so create and delete tasks are paired
+   * for one cluster at a time, and only the tasks of the current cluster are kept in memory.
+   */
+  private static final class UsageAggregator implements ClusterTaskProcessor {
+    private final List<Interval> intervals;
+    // start times of the intervals in milliseconds, for binary search
+    private final long[] intervalStarts;
+    private final long startDate;
+    private final long endDate;
+    private final long period;
+    private final TimeUnit timeUnit;
+    private final long now;
+    // node id -> finished times of CREATE tasks of the node in the current cluster
+    private final ListMultimap<String, Long> createTimes = ArrayListMultimap.create();
+    // node id -> finished time of the earliest DELETE task of the node in the current cluster
+    private final Map<String, Long> deleteTimes = Maps.newHashMap();
+    private String clusterId;
+
+    private UsageAggregator(List<Interval> intervals, long startDate, long endDate, long period, TimeUnit timeUnit,
+                            long now) {
+      this.intervals = intervals;
+      this.intervalStarts = new long[intervals.size()];
+      for (int i = 0; i < intervalStarts.length; i++) {
+        intervalStarts[i] = TimeUnit.SECONDS.toMillis(intervals.get(i).getTime());
+      }
+      this.startDate = startDate;
+      this.endDate = endDate;
+      this.period = period;
+      this.timeUnit = timeUnit;
+      this.now = now;
+    }
+
+    @Override
+    public void process(ClusterTask task) {
+      if (!task.getClusterId().equals(clusterId)) {
+        flushCluster();
+        clusterId = task.getClusterId();
+      }
+      if (task.getTaskName() == ProvisionerAction.CREATE) {
+        createTimes.put(task.getNodeId(), task.getStatusTime());
+      } else if (task.getTaskName() == ProvisionerAction.DELETE) {
+        Long deleteTime = deleteTimes.get(task.getNodeId());
+        if (deleteTime == null || task.getStatusTime() < deleteTime) {
+          deleteTimes.put(task.getNodeId(), task.getStatusTime());
+        }
+      }
+    }
+
+    /**
+     * Add the live time of all nodes of the current cluster to the intervals.
+     */
+    private void flushCluster() {
+      for (Map.Entry<String, Long> entry : createTimes.entries()) {
+        Long deleteTime = deleteTimes.get(entry.getKey());
+        addUsage(entry.getValue(), deleteTime == null ? now : deleteTime);
       }
+      createTimes.clear();
+      deleteTimes.clear();
+    }
+
+    private void addUsage(long createTime, long deleteTime) {
+      long localStart = Math.max(createTime, startDate);
+      long localEnd = Math.min(deleteTime, endDate);
+      int currentIndex = getNearestIndex(localStart);
+      Interval current = intervals.get(currentIndex);
+      long currentTimeInMillis = intervalStarts[currentIndex];
+      while (currentTimeInMillis + period < localEnd) {
+        long increaseTime = localStart < currentTimeInMillis ? period : period + currentTimeInMillis - localStart;
+        current.increaseValue(timeUnit.convert(increaseTime, TimeUnit.MILLISECONDS));
+        current = intervals.get(++currentIndex);
+        currentTimeInMillis = intervalStarts[currentIndex];
+      }
+      long increaseTime = localStart < currentTimeInMillis ? localEnd - currentTimeInMillis : localEnd - localStart;
+      if (increaseTime > 0) {
+        current.increaseValue(timeUnit.convert(increaseTime, TimeUnit.MILLISECONDS));
+      }
+    }
+
+    /**
+     * Retrieves the index of the nearest smaller {@link Interval} for {@code key}.
+     *
+     * @param key the key
+     * @return index of the nearest smaller {@link Interval}
+     */
+    private int getNearestIndex(long key) {
+      int index = Arrays.binarySearch(intervalStarts, key);
+      return index >= 0 ? index : -index - 2;
     }
-    return index;
   }
 
   /**
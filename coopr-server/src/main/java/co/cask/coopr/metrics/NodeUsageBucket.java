@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.metrics;
+
+import com.google.common.base.Objects;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rollup of the node creates and deletes that happened within a period of time. Instead of the events themselves,
+ * the bucket keeps the net change in the number of live nodes, and the sum of the offsets of the events from the start
+ * of the bucket, with deletes counted negatively. That is enough to compute the node live time within the bucket
+ * exactly, and buckets can be merged into bigger ones without losing that.
+ */
+public class NodeUsageBucket {
+  public static final long HOUR = TimeUnit.HOURS.toMillis(1);
+  public static final long DAY = TimeUnit.DAYS.toMillis(1);
+  // same length as a month in the time series, so that month intervals line up with merged buckets
+  public static final long MONTH = DAY * 30;
+  private final long start;
+  private final long end;
+  private final long liveDelta;
+  private final long liveOffset;
+
+  public NodeUsageBucket(long start, long end, long liveDelta, long liveOffset) {
+    this.start = start;
+    this.end = end;
+    this.liveDelta = liveDelta;
+    this.liveOffset = liveOffset;
+  }
+
+  /**
+   * Get the start of the bucket in milliseconds, inclusive.
+   *
+   * @return start of the bucket
+   */
+  public long getStart() {
+    return start;
+  }
+
+  /**
+   * Get the end of the bucket in milliseconds, exclusive.
+   *
+   * @return end of the bucket
+   */
+  public long getEnd() {
+    return end;
+  }
+
+  /**
+   * Get the number of nodes created minus the number of nodes deleted within the bucket.
+   *
+   * @return net change in the number of live nodes
+   */
+  public long getLiveDelta() {
+    return liveDelta;
+  }
+
+  /**
+   * Get the sum of the milliseconds from the start of the bucket to each create, minus the same for each delete.
+   *
+   * @return sum of event offsets
+   */
+  public long getLiveOffset() {
+    return liveOffset;
+  }
+
+  /**
+   * Get the live time in milliseconds of the nodes created or deleted within the bucket, from the start of the bucket up
+   * to the given time. Nodes deleted within the bucket count negatively, for the time from their delete onwards. All
+   * events in the bucket happened before the current time, so the usage is exact from the time of the last possible
+   * event onwards. Before that, it is interpolated linearly, since the times of the individual events are not known.
+   *
+   * @param time time to get usage up to
+   * @param now current time
+   * @return node live time in milliseconds
+   */
+  public long getUsage(long time, long now) {
+    long elapsed = Math.min(time, end) - start;
+    if (elapsed <= 0) {
+      return 0;
+    }
+    long known = Math.min(end, now) - start;
+    if (elapsed >= known) {
+      return liveDelta * elapsed - liveOffset;
+    }
+    long knownUsage = liveDelta * known - liveOffset;
+    return (long) (knownUsage * ((double) elapsed / known));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    NodeUsageBucket that = (NodeUsageBucket) o;
+
+    return start == that.start && end == that.end && liveDelta == that.liveDelta && liveOffset == that.liveOffset;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(start, end, liveDelta, liveOffset);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("start", start)
+      .add("end", end)
+      .add("liveDelta", liveDelta)
+      .add("liveOffset", liveOffset)
+      .toString();
+  }
+}
@@ -14,9 +14,10 @@ import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.NoConnectionReuseStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +35,9 @@ public class HttpProvisionerRequestService implements ProvisionerRequestService
   private static final String BASE_TENANT_PATH = Constants.API_BASE + "/tenants/";
   private final int maxRetries;
   private final long msBetweenRetries;
+  private final long deadlineMs;
+  private final int socketTimeout;
+  private final int connectTimeout;
   private final CloseableHttpClient httpClient;
   private final Gson gson;
 
@@ -41,11 +45,18 @@ public class HttpProvisionerRequestService implements ProvisionerRequestService
   private HttpProvisionerRequestService(Configuration conf, Gson gson) {
     this.maxRetries = conf.getInt(Constants.PROVISIONER_REQUEST_MAX_RETRIES);
     this.msBetweenRetries = conf.getLong(Constants.PROVISIONER_REQUEST_MS_BETWEEN_RETRIES);
-    int socketTimeout = conf.getInt(Constants.PROVISIONER_REQUEST_SOCKET_TIMEOUT_MS);
-    int connectTimeout = conf.getInt(Constants.PROVISIONER_REQUEST_CONNECT_TIMEOUT_MS);
+    this.deadlineMs = conf.getLong(Constants.PROVISIONER_REQUEST_DEADLINE_MS);
+    // a single attempt should never be able to outlast the deadline for the whole request
+    this.socketTimeout = (int) Math.min(conf.getInt(Constants.PROVISIONER_REQUEST_SOCKET_TIMEOUT_MS), deadlineMs);
+    this.connectTimeout = (int) Math.min(conf.getInt(Constants.PROVISIONER_REQUEST_CONNECT_TIMEOUT_MS), deadlineMs);
+    int maxConnections = conf.getInt(Constants.PROVISIONER_REQUEST_MAX_CONNECTIONS);
 
+    // connections are kept alive and reused, since the same provisioners are called over and over
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    connectionManager.setMaxTotal(maxConnections);
     this.httpClient = HttpClients.custom()
-      .setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE)
+      .setConnectionManager(connectionManager)
       .setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(socketTimeout).build())
       .setDefaultRequestConfig(
         RequestConfig.custom().setSocketTimeout(socketTimeout).setConnectTimeout(connectTimeout).build())
@@ -105,9 +116,24 @@ public class HttpProvisionerRequestService implements ProvisionerRequestService
     return makeRequestWithRetries(put);
   }
 
+  // retries stop once the deadline has passed, and the timeouts of each attempt are cut short so that the attempt
+  // does not go past the deadline
   private boolean makeRequestWithRetries(HttpRequestBase request) {
+    long deadline = System.currentTimeMillis() + deadlineMs;
     int numRetried = 0;
     while (numRetried < maxRetries) {
+      long remainingMs = deadline - System.currentTimeMillis();
+      if (remainingMs <= 0) {
+        LOG.error("{} request to {} did not succeed within {} ms.",
+                  request.getMethod(), request.getURI().toString(), deadlineMs);
+        return false;
+      }
+      int remaining = (int) Math.min(remainingMs, Integer.MAX_VALUE);
+      request.setConfig(RequestConfig.custom()
+                          .setSocketTimeout(Math.min(socketTimeout, remaining))
+                          .setConnectTimeout(Math.min(connectTimeout, remaining))
+                          .setConnectionRequestTimeout(remaining)
+                          .build());
       try {
         int statusCode = makeRequest(request);
         if (statusCode / 100 == 2) {
@@ -122,8 +148,11 @@ public class HttpProvisionerRequestService implements ProvisionerRequestService
         request.releaseConnection();
       }
       numRetried++;
+      if (numRetried >= maxRetries) {
+        break;
+      }
       try {
-        TimeUnit.MILLISECONDS.sleep(msBetweenRetries);
+        TimeUnit.MILLISECONDS.sleep(Math.min(msBetweenRetries, Math.max(0, deadline - System.currentTimeMillis())));
       } catch (InterruptedException e) {
         LOG.error("Sleep between retries interrupted.", e);
         Throwables.propagate(e);
@@ -136,6 +165,8 @@ public class HttpProvisionerRequestService implements ProvisionerRequestService
   private int makeRequest(HttpRequestBase request) throws IOException {
     CloseableHttpResponse response = httpClient.execute(request);
     try {
+      // the response must be read fully for the connection to be reused
+      EntityUtils.consume(response.getEntity());
       return response.getStatusLine().getStatusCode();
     } finally {
       response.close();
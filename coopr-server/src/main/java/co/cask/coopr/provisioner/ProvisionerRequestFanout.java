@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.provisioner;
+
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.provisioner.plugin.ResourceCollection;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes the same kind of request to many provisioners at the same time through the {@link ProvisionerRequestService},
+ * so that updating all provisioners of a tenant takes about as long as updating the slowest one. Each provisioner has
+ * until a deadline, counted from when its request starts running, to respond, including retries. Provisioners that
+ * fail or miss the deadline are returned to the caller, who is expected to treat them as broken. Requests that are
+ * still waiting for a thread once the deadline has passed since the fanout began are never made, and the
+ * provisioners they were meant for are returned separately so that the caller can try them again later.
+ */
+public class ProvisionerRequestFanout {
+  private static final Logger LOG  = LoggerFactory.getLogger(ProvisionerRequestFanout.class);
+  private final ProvisionerRequestService provisionerRequestService;
+  private final ExecutorService executor;
+  private final long deadlineMs;
+
+  @Inject
+  private ProvisionerRequestFanout(ProvisionerRequestService provisionerRequestService, Configuration conf) {
+    this(provisionerRequestService, conf.getInt(Constants.PROVISIONER_REQUEST_THREADS),
+         conf.getLong(Constants.PROVISIONER_REQUEST_DEADLINE_MS));
+  }
+
+  ProvisionerRequestFanout(ProvisionerRequestService provisionerRequestService, int numThreads, long deadlineMs) {
+    this.provisionerRequestService = provisionerRequestService;
+    this.deadlineMs = deadlineMs;
+    this.executor = Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder()
+      .setNameFormat("provisioner-request-%d")
+      .setDaemon(true)
+      .build());
+  }
+
+  /**
+   * Request all the given provisioners to set the tenant information, such as number of workers and plugin resources
+   * it should be using.
+   *
+   * @param provisioners Provisioners to send the request to.
+   * @param tenantId Id of the tenant on the provisioners to write to.
+   * @param resourceCollection Metadata for all resources that can be used by the tenant workers for the provisioners.
+   * @return Provisioners that failed the request or did not respond in time, and provisioners that were not sent the
+   *         request at all.
+   */
+  public Result putTenant(Collection<Provisioner> provisioners, final String tenantId,
+                          final ResourceCollection resourceCollection) {
+    // requests that have not started by the time the deadline has passed since the fanout began are not made at all
+    long startDeadline = System.currentTimeMillis() + deadlineMs;
+    List<Request> requests = Lists.newArrayListWithCapacity(provisioners.size());
+    for (final Provisioner provisioner : provisioners) {
+      requests.add(new Request(provisioner, startDeadline, new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return provisionerRequestService.putTenant(provisioner, tenantId, resourceCollection);
+        }
+      }));
+    }
+    return getResult(requests);
+  }
+
+  // make all requests, wait for them to finish, and collect the provisioners that did not succeed
+  private Result getResult(List<Request> requests) {
+    for (Request request : requests) {
+      request.future = executor.submit(request);
+    }
+    List<Provisioner> failed = Lists.newArrayList();
+    List<Provisioner> notStarted = Lists.newArrayList();
+    for (Request request : requests) {
+      String provisionerId = request.provisioner.getId();
+      try {
+        long startTime = request.awaitStart();
+        if (startTime < 0) {
+          LOG.warn("Request to provisioner {} did not start within {} ms.", provisionerId, deadlineMs);
+          notStarted.add(request.provisioner);
+          continue;
+        }
+        long remainingMs = Math.max(0, startTime + deadlineMs - System.currentTimeMillis());
+        if (!request.future.get(remainingMs, TimeUnit.MILLISECONDS)) {
+          failed.add(request.provisioner);
+        }
+      } catch (TimeoutException e) {
+        LOG.error("Request to provisioner {} did not finish within {} ms.", provisionerId, deadlineMs);
+        request.future.cancel(true);
+        failed.add(request.provisioner);
+      } catch (ExecutionException e) {
+        LOG.error("Exception making request to provisioner {}.", provisionerId, e.getCause());
+        failed.add(request.provisioner);
+      } catch (InterruptedException e) {
+        LOG.error("Interrupted while waiting for provisioner requests.", e);
+        for (Request pending : requests) {
+          pending.future.cancel(true);
+        }
+        Thread.currentThread().interrupt();
+        throw Throwables.propagate(e);
+      }
+    }
+    return new Result(failed, notStarted);
+  }
+
+  /**
+   * Outcome of making a request to many provisioners.
+   */
+  public static class Result {
+    private final List<Provisioner> failed;
+    private final List<Provisioner> notStarted;
+
+    private Result(List<Provisioner> failed, List<Provisioner> notStarted) {
+      this.failed = failed;
+      this.notStarted = notStarted;
+    }
+
+    /**
+     * Get the provisioners that failed the request or did not respond before their deadline.
+     *
+     * @return Provisioners that failed the request.
+     */
+    public List<Provisioner> getFailed() {
+      return failed;
+    }
+
+    /**
+     * Get the provisioners that were never sent the request, because no thread was free to send it in time.
+     *
+     * @return Provisioners that were not sent the request.
+     */
+    public List<Provisioner> getNotStarted() {
+      return notStarted;
+    }
+  }
+
+  /**
+   * A request to a single provisioner. It records when it starts running so that its deadline can be counted from
+   * then, and can be skipped before it starts so that it is never made.
+   */
+  private static final class Request implements Callable<Boolean> {
+    private static final long SKIPPED = -1;
+    private final Provisioner provisioner;
+    private final long startDeadline;
+    private final Callable<Boolean> callable;
+    // 0 until the request starts running, then the time it started, or SKIPPED if it should never run
+    private final AtomicLong startTime = new AtomicLong(0);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private Future<Boolean> future;
+
+    private Request(Provisioner provisioner, long startDeadline, Callable<Boolean> callable) {
+      this.provisioner = provisioner;
+      this.startDeadline = startDeadline;
+      this.callable = callable;
+    }
+
+    @Override
+    public Boolean call() throws Exception {
+      long now = System.currentTimeMillis();
+      boolean run = now <= startDeadline && startTime.compareAndSet(0, now);
+      if (!run) {
+        startTime.compareAndSet(0, SKIPPED);
+      }
+      started.countDown();
+      return run && callable.call();
+    }
+
+    // wait until the request starts running or its start deadline passes, returning the time the request started or
+    // a negative number if it did not start in time, in which case it will never run.
+    private long awaitStart() throws InterruptedException {
+      started.await(Math.max(0, startDeadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      if (startTime.compareAndSet(0, SKIPPED)) {
+        future.cancel(false);
+      }
+      return startTime.get();
+    }
+  }
+}
@@ -18,6 +18,7 @@ import co.cask.coopr.store.cluster.ClusterStoreService;
 import co.cask.coopr.store.cluster.ClusterStoreView;
 import co.cask.coopr.store.entity.EntityStoreService;
 import co.cask.coopr.store.provisioner.ProvisionerStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.coopr.store.tenant.TenantStore;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -40,12 +41,17 @@ import java.util.concurrent.locks.Lock;
  */
 public class TenantProvisionerService {
   private static final Logger LOG  = LoggerFactory.getLogger(TenantProvisionerService.class);
+  // prefix for the ids of balance queue elements for tenants whose provisioners may not have been sent their latest
+  // tenant information
+  static final String RESEND_ELEMENT_PREFIX = "resend-";
   private final ProvisionerStore provisionerStore;
   private final TenantStore tenantStore;
+  private final TenantCache tenantCache;
+  private final LockService lockService;
   private final Lock tenantLock;
   private final long provisionerTimeoutSecs;
   private final TrackingQueue balanceQueue;
-  private final ProvisionerRequestService provisionerRequestService;
+  private final ProvisionerRequestFanout provisionerRequestFanout;
   private final ClusterStoreService clusterStoreService;
   private final ResourceService resourceService;
   private final EntityStoreService entityStoreService;
@@ -54,17 +60,19 @@ public class TenantProvisionerService {
   @Inject
   private TenantProvisionerService(ProvisionerStore provisionerStore,
                                    final TenantStore tenantStore,
+                                   TenantCache tenantCache,
                                    LockService lockService,
                                    @Named(Constants.Queue.WORKER_BALANCE) TrackingQueue balanceQueue,
                                    ClusterStoreService clusterStoreService,
-                                   ProvisionerRequestService provisionerRequestService,
+                                   ProvisionerRequestFanout provisionerRequestFanout,
                                    ResourceService resourceService,
                                    EntityStoreService entityStoreService,
                                    QueueService queueService,
                                    Configuration conf) {
     this.provisionerStore = provisionerStore;
     this.tenantStore = tenantStore;
-    this.provisionerRequestService = provisionerRequestService;
+    this.tenantCache = tenantCache;
+    this.provisionerRequestFanout = provisionerRequestFanout;
     this.clusterStoreService = clusterStoreService;
     this.resourceService = resourceService;
     this.entityStoreService = entityStoreService;
@@ -73,6 +81,9 @@ public class TenantProvisionerService {
     // tenant is added the same time a tenant is deleted, we don't want to be modifying the same provisioner at the
     // same time and cause conflicts. Similarly, if we're moving workers from one provisioner to another at the same
     // time as we're adding a tenant, we don't want to both add workers to the same provisioner at the same time.
+    // Requests to provisioners are made without holding the lock, so that a slow provisioner does not hold up
+    // changes for all other tenants.
+    this.lockService = lockService;
     this.tenantLock = lockService.getTenantProvisionerLock();
     this.provisionerTimeoutSecs = conf.getLong(Constants.PROVISIONER_TIMEOUT_SECS);
     this.balanceQueue = balanceQueue;
@@ -161,6 +172,7 @@ public class TenantProvisionerService {
 
       balanceQueue.add(new Element(id));
       tenantStore.writeTenant(updatedTenant);
+      tenantCache.tenantChanged(tenantSpecification.getName());
       return id;
     } finally {
       tenantLock.unlock();
@@ -235,6 +247,7 @@ public class TenantProvisionerService {
                                           "Cannot delete it until workers are set to 0.");
       }
       tenantStore.deleteTenantByName(name);
+      tenantCache.tenantChanged(name);
       for (QueueGroup queueGroup : queueService.getAllQueueGroups().values()) {
         queueGroup.removeAll(tenant.getId());
       }
@@ -315,32 +328,78 @@ public class TenantProvisionerService {
    * @throws IOException if there was an exception persisting the worker rebalance
    */
   public void rebalanceTenantWorkers(String tenantId) throws IOException, CapacityException {
-    // lock across all tenants to protect against conflicts in setting worker counts for different tenants across
-    // different provisioners
-    tenantLock.lock();
+    rebalanceTenantWorkers(tenantId, false);
+  }
+
+  /**
+   * Rebalance workers for the tenant across the provisioners taken from the given balance queue element. If the
+   * element was queued because some provisioners were not sent their latest tenant information, the tenant is written
+   * to all of its provisioners, even if no workers need to be moved.
+   *
+   * @param element Balance queue element, whose value is the id of the tenant whose workers need to be rebalanced
+   * @throws CapacityException if there is not enough capacity to rebalance tenant workers
+   * @throws IOException if there was an exception persisting the worker rebalance
+   */
+  public void rebalanceTenantWorkers(Element element) throws IOException, CapacityException {
+    rebalanceTenantWorkers(element.getValue(), element.getId().startsWith(RESEND_ELEMENT_PREFIX));
+  }
+
+  private void rebalanceTenantWorkers(String tenantId, boolean resend) throws IOException, CapacityException {
+    // requests to provisioners are made after the tenant lock is released, so a lock for the tenant is held while
+    // both deciding on and sending worker counts. Otherwise requests from an earlier rebalance could reach a
+    // provisioner after those of a later rebalance, leaving the provisioner with an outdated number of workers.
+    Lock requestLock = lockService.getTenantProvisionerRequestLock(tenantId);
+    requestLock.lock();
     try {
-      Tenant tenant = tenantStore.getTenantByID(tenantId);
-      if (tenant == null) {
-        return;
-      }
+      List<Provisioner> changedProvisioners = Lists.newArrayList();
+      Map<String, Provisioner> provisionersToWrite = Maps.newHashMap();
+      ResourceCollection liveResources;
+      int numNotAdded = 0;
+      // lock across all tenants to protect against conflicts in setting worker counts for different tenants across
+      // different provisioners
+      tenantLock.lock();
+      try {
+        Tenant tenant = tenantStore.getTenantByID(tenantId);
+        if (tenant == null) {
+          return;
+        }
 
-      int diff = tenant.getSpecification().getWorkers() - provisionerStore.getNumAssignedWorkers(tenantId);
-      if (diff < 0) {
-        Account tenantAdmin = new Account(Constants.ADMIN_USER, tenantId);
-        ResourceCollection liveResources = resourceService.getLiveResources(tenantAdmin);
-        // too many workers assigned, remove some.
-        int toRemove = 0 - diff;
-        LOG.debug("Removing {} workers from tenant {}", toRemove, tenantId);
-        removeWorkers(tenantId, toRemove, liveResources);
-      } else if (diff > 0) {
+        int diff = tenant.getSpecification().getWorkers() - provisionerStore.getNumAssignedWorkers(tenantId);
+        if (diff == 0 && !resend) {
+          return;
+        }
         Account tenantAdmin = new Account(Constants.ADMIN_USER, tenantId);
-        ResourceCollection liveResources = resourceService.getLiveResources(tenantAdmin);
-        // not enough workers assigned, assign some more.
-        LOG.debug("Adding {} workers to tenant {}", diff, tenantId);
-        addWorkers(tenantId, diff, liveResources);
+        liveResources = resourceService.getLiveResources(tenantAdmin);
+        if (diff < 0) {
+          // too many workers assigned, remove some.
+          int toRemove = 0 - diff;
+          LOG.debug("Removing {} workers from tenant {}", toRemove, tenantId);
+          removeWorkers(tenantId, toRemove, changedProvisioners);
+        } else if (diff > 0) {
+          // not enough workers assigned, assign some more.
+          LOG.debug("Adding {} workers to tenant {}", diff, tenantId);
+          numNotAdded = addWorkers(tenantId, diff, changedProvisioners);
+        }
+        if (resend) {
+          for (Provisioner provisioner : provisionerStore.getTenantProvisioners(tenantId)) {
+            provisionersToWrite.put(provisioner.getId(), provisioner);
+          }
+        }
+        // provisioners that just had all their workers for the tenant removed still need to be told about it
+        for (Provisioner provisioner : changedProvisioners) {
+          provisionersToWrite.put(provisioner.getId(), provisioner);
+        }
+      } finally {
+        tenantLock.unlock();
+      }
+
+      putTenant(tenantId, provisionersToWrite.values(), liveResources);
+      if (numNotAdded > 0) {
+        throw new CapacityException("Unable to add all " + numNotAdded + " workers to tenant "
+                                      + tenantId + " without exceeding worker capacity.");
       }
     } finally {
-      tenantLock.unlock();
+      requestLock.unlock();
     }
   }
 
@@ -352,14 +411,22 @@ public class TenantProvisionerService {
    * @throws IOException
    */
   public void syncResources(Account account) throws IOException {
-    // this will mean that a sync from one tenant will block a sync from another, but we need this because when
-    // workers are being re-balanced, the live resource collection is sent to the provisioners. We don't want a
+    // when workers are re-balanced, the live resource collection is sent to the provisioners. We don't want a
     // scenario where the live collection is read for rebalancing, a sync is called, and the sync and rebalance
     // fight over what resource versions should be live on the provisioners, resulting in inconsistent state.
-    // Since syncs are uncommon, this should be ok...
-    tenantLock.lock();
+    // Rebalancing holds the same lock for the tenant, so it cannot happen in the middle of a sync.
+    Lock requestLock = lockService.getTenantProvisionerRequestLock(account.getTenantId());
+    requestLock.lock();
     try {
-      ResourceCollection resources = resourceService.getResourcesToSync(account);
+      ResourceCollection resources;
+      Collection<Provisioner> provisioners;
+      tenantLock.lock();
+      try {
+        resources = resourceService.getResourcesToSync(account);
+        provisioners = provisionerStore.getTenantProvisioners(account.getTenantId());
+      } finally {
+        tenantLock.unlock();
+      }
 
       // TODO: failures will cause inconsistencies between metadata state and provisioner state.
       // We can add an ability to block tasks for a given tenant from going out here, then make the calls to the
@@ -368,24 +435,51 @@ public class TenantProvisionerService {
       // to the queue group interface.
 
       // update tenant provisioners
-      syncProvisionerResources(account.getTenantId(), resources);
+      putTenant(account.getTenantId(), provisioners, resources);
 
       // update metadata store
       resourceService.syncResourceMeta(account, resources);
 
     } finally {
-      tenantLock.unlock();
+      requestLock.unlock();
     }
   }
 
-  private void syncProvisionerResources(String tenantId, ResourceCollection resourceCollection) throws IOException {
-    for (Provisioner provisioner : provisionerStore.getTenantProvisioners(tenantId)) {
-      if (!provisionerRequestService.putTenant(provisioner, tenantId, resourceCollection)) {
-        LOG.error("Could not write resource metadata for tenant {} to provisioner {}. " +
+  // Write tenant information to all the given provisioners at the same time. Provisioners that fail are deleted and
+  // their tenant workers rebalanced. If some requests could not even be started in time, the tenant is queued to be
+  // written again to all its provisioners. Must not be called while holding the tenant lock, since it waits on the
+  // requests.
+  private void putTenant(String tenantId, Collection<Provisioner> provisioners,
+                         ResourceCollection resources) throws IOException {
+    if (provisioners.isEmpty()) {
+      return;
+    }
+    ProvisionerRequestFanout.Result result = provisionerRequestFanout.putTenant(provisioners, tenantId, resources);
+    if (!result.getNotStarted().isEmpty()) {
+      LOG.warn("Could not send tenant {} to {} provisioners in time, queueing it to be sent again.",
+               tenantId, result.getNotStarted().size());
+      balanceQueue.add(new Element(RESEND_ELEMENT_PREFIX + UUID.randomUUID().toString(), tenantId));
+    }
+    List<Provisioner> failed = result.getFailed();
+    if (failed.isEmpty()) {
+      return;
+    }
+    tenantLock.lock();
+    try {
+      for (Provisioner provisioner : failed) {
+        // TODO: what if this fails due to db failure or something of that sort?
+        // should be ok as long as the tenant balance task is in the queue and retried.
+        LOG.error("Could not write tenant {} to provisioner {}. " +
                     "The provisioner appears broken, deleting it and rebalancing its tenant workers",
                   tenantId, provisioner.getId());
-        deleteProvisioner(provisioner);
+        // other tenants may have been assigned to the provisioner since the request was made
+        Provisioner current = provisionerStore.getProvisioner(provisioner.getId());
+        if (current != null) {
+          deleteProvisioner(current);
+        }
       }
+    } finally {
+      tenantLock.unlock();
     }
   }
 
@@ -429,32 +523,30 @@ public class TenantProvisionerService {
 
   // TODO: abstract out to support different types of balancing policies
   // Currently a greedy approach, just remove from first available.
-  private void removeWorkers(String tenantId, int numToRemove, ResourceCollection resources) throws IOException {
+  // Provisioners whose workers changed are added to the given list, and must be sent the new worker counts.
+  private void removeWorkers(String tenantId, int numToRemove, List<Provisioner> changedProvisioners)
+    throws IOException {
     // go through each provisioner, removing workers for the tenant until we've removed enough.
     for (Provisioner provisioner : provisionerStore.getTenantProvisioners(tenantId)) {
+      if (numToRemove <= 0) {
+        break;
+      }
       int numRemoved = provisioner.tryRemoveTenantAssignments(tenantId, numToRemove);
       if (numRemoved > 0) {
         provisionerStore.writeProvisioner(provisioner);
         LOG.debug("Requesting provisioner {} to set workers to {} for tenant {} (removing {})",
                   provisioner.getId(), provisioner.getAssignedWorkers(tenantId), tenantId, numRemoved);
-        if (provisionerRequestService.putTenant(provisioner, tenantId, resources)) {
-          numToRemove -= numRemoved;
-        } else {
-          // request failed with retries. something is wrong with the provisioner, delete it and rebalance its workers
-          // TODO: what if this fails?
-          LOG.error("Could not set workers for tenant {} to provisioner {}. " +
-                      "The provisioner appears broken, deleting it and rebalancing its tenant workers",
-                    tenantId, provisioner.getId());
-          deleteProvisioner(provisioner);
-        }
+        changedProvisioners.add(provisioner);
+        numToRemove -= numRemoved;
       }
     }
   }
 
   // TODO: abstract out to support different types of balancing policies
   // Currently a greedy approach, just add to first available.
-  private void addWorkers(String tenantId, int numToAdd, ResourceCollection resources)
-    throws CapacityException, IOException {
+  // Provisioners whose workers changed are added to the given list, and must be sent the new worker counts.
+  // Returns the number of workers that could not be added due to lack of capacity.
+  private int addWorkers(String tenantId, int numToAdd, List<Provisioner> changedProvisioners) throws IOException {
     for (Provisioner provisioner : provisionerStore.getProvisionersWithFreeCapacity()) {
       if (numToAdd <= 0) {
         break;
@@ -464,25 +556,11 @@ public class TenantProvisionerService {
         provisionerStore.writeProvisioner(provisioner);
         LOG.debug("Requesting provisioner {} to set workers to {} for tenant {} (adding {})",
                   provisioner.getId(), provisioner.getAssignedWorkers(tenantId), tenantId, numAdded);
-        if (provisionerRequestService.putTenant(provisioner, tenantId, resources)) {
-          numToAdd -= numAdded;
-        } else {
-          // request failed with retries. something is wrong with the provisioner, delete it and rebalance its workers.
-          // Rebalancing will be queued, but will not be triggered until after this method finishes due to the
-          // lock that is held.
-          // TODO: what if this fails due to db failure or something of that sort?
-          // should be ok as long as the tenant balance task is in the queue and retried.
-          LOG.error("Could not set workers for tenant {} to provisioner {}. " +
-                      "The provisioner appears broken, deleting it and rebalancing its tenant workers",
-                    tenantId, provisioner.getId());
-          deleteProvisioner(provisioner);
-        }
+        changedProvisioners.add(provisioner);
+        numToAdd -= numAdded;
       }
     }
-    if (numToAdd > 0) {
-      throw new CapacityException("Unable to add all " + numToAdd + " workers to tenant "
-                                    + tenantId + " without exceeding worker capacity.");
-    }
+    return Math.max(0, numToAdd);
   }
 
   /**
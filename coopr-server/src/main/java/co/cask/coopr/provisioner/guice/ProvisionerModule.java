@@ -1,6 +1,7 @@
 package co.cask.coopr.provisioner.guice;
 
 import co.cask.coopr.provisioner.HttpProvisionerRequestService;
+import co.cask.coopr.provisioner.ProvisionerRequestFanout;
 import co.cask.coopr.provisioner.ProvisionerRequestService;
 import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
@@ -13,5 +14,6 @@ public class ProvisionerModule extends AbstractModule {
   @Override
   protected void configure() {
     bind(ProvisionerRequestService.class).to(HttpProvisionerRequestService.class).in(Scopes.SINGLETON);
+    bind(ProvisionerRequestFanout.class).in(Scopes.SINGLETON);
   }
 }
@@ -27,11 +27,11 @@ import co.cask.coopr.store.entity.EntityStoreService;
 import co.cask.coopr.store.entity.EntityStoreView;
 import co.cask.coopr.store.provisioner.PluginMetaStoreService;
 import co.cask.coopr.store.provisioner.PluginResourceTypeView;
+import co.cask.coopr.store.provisioner.AbstractPluginStore;
 import co.cask.coopr.store.provisioner.PluginStore;
 import co.cask.http.BodyConsumer;
 import co.cask.http.HttpResponder;
 import com.google.common.collect.Sets;
-import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
@@ -40,6 +40,7 @@ import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -53,7 +54,7 @@ import java.util.concurrent.locks.Lock;
 public class ResourceService extends AbstractIdleService {
   private static final Logger LOG  = LoggerFactory.getLogger(ResourceService.class);
   private final Configuration conf;
-  private final PluginStore pluginStore;
+  private final AbstractPluginStore pluginStore;
   private final EntityStoreService entityStoreService;
   private final PluginMetaStoreService metaStoreService;
   private final LockService lockService;
@@ -67,7 +68,7 @@ public class ResourceService extends AbstractIdleService {
                           Configuration conf,
                           Gson gson) {
     this.conf = conf;
-    this.pluginStore = pluginStore;
+    this.pluginStore = AbstractPluginStore.of(pluginStore);
     this.entityStoreService = entityStoreService;
     this.metaStoreService = metaStoreService;
     this.lockService = lockService;
@@ -187,36 +188,13 @@ public class ResourceService extends AbstractIdleService {
     int version = meta.getVersion();
     Lock lock = getResourceLock(account, type, name);
     lock.lock();
-    InputStream inStream = null;
-    OutputStream outStream = null;
     try {
-      inStream = pluginStore.getResourceInputStream(Account.SUPERADMIN, type, name, version);
-      outStream = pluginStore.getResourceOutputStream(account, type, name, version);
-      if (inStream == null) {
-        LOG.error("Could not get input stream for version {} of resource {} of type {} for account {}.",
-                  version, name, type, account);
-        throw new IOException("Unable to get plugin data.");
-      }
-      ByteStreams.copy(inStream, outStream);
+      pluginStore.copyResource(Account.SUPERADMIN, account, type, name, version);
       PluginResourceTypeView metaView = metaStoreService.getResourceTypeView(account, type);
       if (!metaView.exists(name, version)) {
         metaView.add(meta);
       }
     } finally {
-      if (outStream != null) {
-        try {
-          outStream.close();
-        } catch (IOException e) {
-          LOG.error("Exception closing output stream while copying superadmin resource.", e);
-        }
-      }
-      if (inStream != null) {
-        try {
-          inStream.close();
-        } catch (IOException e) {
-          LOG.error("Exception closing input stream while copying superadmin resource.", e);
-        }
-      }
       lock.unlock();
     }
   }
@@ -244,6 +222,44 @@ public class ResourceService extends AbstractIdleService {
     return pluginStore.getResourceInputStream(account, resourceType, meta.getName(), meta.getVersion());
   }
 
+  /**
+   * Get the local file holding the plugin resource, so that it can be sent without being copied through memory.
+   *
+   * @param account Account the resource belongs to
+   * @param resourceType Type of resource
+   * @param name Name of resource to get the file for
+   * @param version Version of resource to get the file for
+   * @return File holding the plugin resource, or null if the plugin store does not keep it in a local file
+   * @throws MissingEntityException if there is no such resource version
+   * @throws IOException if there was an error getting the file for the resource
+   */
+  public File getResourceFile(Account account, ResourceType resourceType, String name, int version)
+    throws MissingEntityException, IOException {
+    if (metaStoreService.getResourceTypeView(account, resourceType).get(name, version) == null) {
+      throw new MissingEntityException("Resource not found.");
+    }
+    return pluginStore.getResourceFile(account, resourceType, name, version);
+  }
+
+  /**
+   * Get the SHA-256 hash of the contents of the plugin resource, as a hex string.
+   *
+   * @param account Account the resource belongs to
+   * @param resourceType Type of resource
+   * @param name Name of resource to get the hash of
+   * @param version Version of resource to get the hash of
+   * @return Hash of the plugin resource contents, or null if the plugin store has no contents for the resource
+   * @throws MissingEntityException if there is no such resource version
+   * @throws IOException if there was an error reading the resource
+   */
+  public String getResourceHash(Account account, ResourceType resourceType, String name, int version)
+    throws MissingEntityException, IOException {
+    if (metaStoreService.getResourceTypeView(account, resourceType).get(name, version) == null) {
+      throw new MissingEntityException("Resource not found.");
+    }
+    return pluginStore.getResourceHash(account, resourceType, name, version);
+  }
+
   /**
    * Atomically stage the specified resource version for the given account and recall the previous staged version.
    * A staged version will get pushed to provisioners during a sync, and will stay staged unless explicitly recalled.
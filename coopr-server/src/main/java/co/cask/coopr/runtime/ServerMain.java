@@ -164,7 +164,7 @@ public final class ServerMain extends DaemonMain {
         new ConfigurationModule(conf),
         new ZookeeperModule(zkClientService),
         new StoreModule(conf),
-        new QueueModule(zkClientService),
+        new QueueModule(zkClientService, conf),
         new SchedulerModule(conf, callbackExecutorService, solverExecutorService),
         new HttpModule(),
         new ManagementModule(),
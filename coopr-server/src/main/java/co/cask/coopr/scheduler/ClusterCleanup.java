@@ -26,17 +26,21 @@ import co.cask.coopr.common.queue.QueueService;
 import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.queue.QueuedElement;
 import co.cask.coopr.http.request.ClusterOperationRequest;
+import co.cask.coopr.scheduler.task.ClusterSnapshotStore;
 import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.NodeService;
 import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.scheduler.task.TaskService;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -54,7 +58,9 @@ public class ClusterCleanup implements Runnable {
   private final TaskService taskService;
   private final QueueGroup jobQueues;
   private final QueueGroup provisionerQueues;
+  private final ClusterSnapshotStore clusterSnapshotStore;
   private final long taskTimeout;
+  private final long snapshotRetention;
   private final long myMod;
   private final long incrementBy;
 
@@ -64,11 +70,14 @@ public class ClusterCleanup implements Runnable {
                          NodeService nodeService,
                          TaskService taskService,
                          QueueService queueService,
+                         ClusterSnapshotStore clusterSnapshotStore,
                          Configuration conf) {
     this(clusterStoreService.getSystemView(), clusterService, nodeService, taskService,
          queueService.getQueueGroup(QueueType.JOB),
          queueService.getQueueGroup(QueueType.PROVISIONER),
+         clusterSnapshotStore,
          conf.getLong(Constants.TASK_TIMEOUT_SECS),
+         conf.getLong(Constants.TASK_SNAPSHOT_RETENTION_SECS),
          conf.getLong(Constants.ID_START_NUM),
          conf.getLong(Constants.ID_INCREMENT_BY));
   }
@@ -81,13 +90,27 @@ public class ClusterCleanup implements Runnable {
                  QueueGroup jobQueues,
                  QueueGroup provisionerQueues,
                  long taskTimeout, long startId, long incrementBy) {
+    this(clusterStore, clusterService, nodeService, taskService, jobQueues, provisionerQueues, null,
+         taskTimeout, 0, startId, incrementBy);
+  }
+
+  private ClusterCleanup(ClusterStore clusterStore,
+                         ClusterService clusterService,
+                         NodeService nodeService,
+                         TaskService taskService,
+                         QueueGroup jobQueues,
+                         QueueGroup provisionerQueues,
+                         ClusterSnapshotStore clusterSnapshotStore,
+                         long taskTimeout, long snapshotRetention, long startId, long incrementBy) {
     this.clusterStore = clusterStore;
     this.clusterService = clusterService;
     this.nodeService = nodeService;
     this.taskService = taskService;
     this.jobQueues = jobQueues;
     this.provisionerQueues = provisionerQueues;
+    this.clusterSnapshotStore = clusterSnapshotStore;
     this.taskTimeout = taskTimeout;
+    this.snapshotRetention = snapshotRetention;
     this.incrementBy = incrementBy;
     this.myMod = startId % incrementBy;
     LOG.info("Task timeout in seconds = {}", this.taskTimeout);
@@ -104,6 +127,10 @@ public class ClusterCleanup implements Runnable {
 
       expireClusters(currentTime);
 
+      if (clusterSnapshotStore != null) {
+        deleteClusterSnapshots(currentTime);
+      }
+
     } catch (Throwable e) {
       LOG.error("Got exception: ", e);
     }
@@ -114,8 +141,8 @@ public class ClusterCleanup implements Runnable {
       long taskFailTime = currentTime - TimeUnit.MILLISECONDS.convert(taskTimeout, TimeUnit.SECONDS);
       LOG.debug("Task fail time = {}", taskFailTime);
 
+      List<QueuedElement> timedOut = Lists.newArrayList();
       Iterator<QueuedElement> beingConsumed = provisionerQueues.getBeingConsumed(queueName);
-
       while (beingConsumed.hasNext()) {
         QueuedElement queuedElement = beingConsumed.next();
 
@@ -124,9 +151,21 @@ public class ClusterCleanup implements Runnable {
                     queuedElement.getStatusTime());
           continue;
         }
+        timedOut.add(queuedElement);
+      }
+      if (timedOut.isEmpty()) {
+        return;
+      }
+
+      List<TaskId> taskIds = Lists.newArrayListWithCapacity(timedOut.size());
+      for (QueuedElement queuedElement : timedOut) {
+        taskIds.add(TaskId.fromString(queuedElement.getElement().getId()));
+      }
+      Map<String, ClusterTask> tasks = clusterStore.getClusterTasks(taskIds);
 
+      for (QueuedElement queuedElement : timedOut) {
         String taskId = queuedElement.getElement().getId();
-        ClusterTask task = clusterStore.getClusterTask(TaskId.fromString(taskId));
+        ClusterTask task = tasks.get(taskId);
 
         if (task == null) {
           LOG.warn("provisioner queue contains task {} which is not in the cluster store, removing it from the queue.",
@@ -156,6 +195,16 @@ public class ClusterCleanup implements Runnable {
     }
   }
 
+  private void deleteClusterSnapshots(long currentTime) {
+    try {
+      long deleteTime = currentTime - TimeUnit.MILLISECONDS.convert(snapshotRetention, TimeUnit.SECONDS);
+      int numDeleted = clusterSnapshotStore.deleteWrittenBefore(deleteTime);
+      LOG.debug("Deleted {} cluster snapshots last written before {}", numDeleted, deleteTime);
+    } catch (Throwable e) {
+      LOG.error("Got exception: ", e);
+    }
+  }
+
   private void expireClusters(long currentTime) {
     try {
       LOG.debug("Expiring clusters older than {}", currentTime);
@@ -17,6 +17,8 @@ package co.cask.coopr.scheduler;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.common.queue.GroupElement;
 import co.cask.coopr.common.queue.QueueGroup;
@@ -24,6 +26,7 @@ import co.cask.coopr.common.queue.QueueService;
 import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.queue.TrackingQueue;
 import co.cask.coopr.common.zookeeper.IdService;
+import co.cask.coopr.scheduler.dag.TaskDag;
 import co.cask.coopr.scheduler.dag.TaskNode;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.scheduler.task.ClusterTask;
@@ -37,6 +40,8 @@ import co.cask.coopr.store.cluster.ClusterStoreService;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
@@ -63,6 +68,7 @@ public class ClusterScheduler implements Runnable {
   private final TaskService taskService;
   private final IdService idService;
   private final QueueGroup clusterQueues;
+  private final boolean dagDispatch;
 
   private final Actions actions = Actions.getInstance();
 
@@ -71,12 +77,14 @@ public class ClusterScheduler implements Runnable {
                            ClusterStoreService clusterStoreService,
                            TaskService taskService,
                            IdService idService,
-                           QueueService queueService) {
+                           QueueService queueService,
+                           Configuration conf) {
     this.id = id;
     this.clusterStore = clusterStoreService.getSystemView();
     this.taskService = taskService;
     this.idService = idService;
     this.clusterQueues = queueService.getQueueGroup(QueueType.CLUSTER);
+    this.dagDispatch = conf.getBoolean(Constants.SCHEDULER_DAG_DISPATCH_ENABLED);
   }
 
   @Override
@@ -110,18 +118,26 @@ public class ClusterScheduler implements Runnable {
 
           LOG.trace("Cluster {}", cluster);
           JobPlanner jobPlanner = new JobPlanner(job, clusterNodes);
-          List<Set<TaskNode>> linearizedTasks = jobPlanner.linearizeDependentTasks();
-
-          // Create cluster tasks.
-          List<Set<ClusterTask>> clusterTasks = createClusterTasks(linearizedTasks, cluster, job,
-                                                                   jobPlanner.getServiceMap(),
-                                                                   clusterAction, jobPlanner.getNodeMap());
-
-          // Make sure multiple actions on a same node do not happen simultaneously.
-          clusterTasks = JobPlanner.deDupNodePerStage(clusterTasks);
-
-          for (Set<ClusterTask> stageTasks : clusterTasks) {
-            job.addStage(Sets.newHashSet(Iterables.transform(stageTasks, CLUSTER_TASK_STRING_FUNCTION)));
+          if (dagDispatch) {
+            TaskDag taskDag = jobPlanner.createTaskDag();
+            List<Set<ClusterTask>> clusterTasks = createClusterTasks(taskDag.linearize(), cluster, job,
+                                                                     jobPlanner.getServiceMap(),
+                                                                     clusterAction, jobPlanner.getNodeMap());
+            addDependentTasks(job, taskDag, clusterTasks);
+          } else {
+            List<Set<TaskNode>> linearizedTasks = jobPlanner.linearizeDependentTasks();
+
+            // Create cluster tasks.
+            List<Set<ClusterTask>> clusterTasks = createClusterTasks(linearizedTasks, cluster, job,
+                                                                     jobPlanner.getServiceMap(),
+                                                                     clusterAction, jobPlanner.getNodeMap());
+
+            // Make sure multiple actions on a same node do not happen simultaneously.
+            clusterTasks = JobPlanner.deDupNodePerStage(clusterTasks);
+
+            for (Set<ClusterTask> stageTasks : clusterTasks) {
+              job.addStage(Sets.newHashSet(Iterables.transform(stageTasks, CLUSTER_TASK_STRING_FUNCTION)));
+            }
           }
           taskService.startJob(job, cluster);
 
@@ -160,6 +176,7 @@ public class ClusterScheduler implements Runnable {
                                             Map<String, Node> nodeMap)
     throws Exception {
     List<Set<ClusterTask>> runnableTasks = Lists.newArrayListWithExpectedSize(tasks.size());
+    List<ClusterTask> allTasks = Lists.newArrayList();
     for (Set<TaskNode> taskNodes : tasks) {
       // Create tasks for a stage
       Set<ClusterTask> stageTasks = Sets.newHashSet();
@@ -178,16 +195,36 @@ public class ClusterScheduler implements Runnable {
         TaskId taskId = idService.getNewTaskId(JobId.fromString(job.getJobId()));
         ClusterTask task = new ClusterTask(action, taskId, taskNode.getHostId(), taskNode.getService(), clusterAction,
                                            cluster.getClusterTemplate().getName(), cluster.getAccount());
-        clusterStore.writeClusterTask(task);
         stageTasks.add(task);
+        allTasks.add(task);
       }
       if (!stageTasks.isEmpty()) {
         runnableTasks.add(stageTasks);
       }
     }
+    clusterStore.writeClusterTasks(allTasks);
     return runnableTasks;
   }
 
+  // add all tasks to a single stage, along with the dependencies between them, so that the job scheduler can run each
+  // task as soon as the tasks it depends on have completed instead of waiting for the slowest task of each stage.
+  static void addDependentTasks(ClusterJob job, TaskDag taskDag, List<Set<ClusterTask>> clusterTasks) {
+    Map<TaskNode, String> taskIds = Maps.newHashMap();
+    for (ClusterTask task : Iterables.concat(clusterTasks)) {
+      taskIds.put(new TaskNode(task.getNodeId(), task.getTaskName().name(), task.getService()), task.getTaskId());
+    }
+    SetMultimap<TaskNode, TaskNode> dependencies = taskDag.getDependencies(taskIds.keySet());
+
+    job.addStage(Sets.newHashSet(taskIds.values()));
+    for (Map.Entry<TaskNode, String> entry : taskIds.entrySet()) {
+      Set<String> dependencyIds = Sets.newHashSet();
+      for (TaskNode dependency : dependencies.get(entry.getKey())) {
+        dependencyIds.add(taskIds.get(dependency));
+      }
+      job.setTaskDependencies(entry.getValue(), dependencyIds);
+    }
+  }
+
   private static final Function<ClusterTask, String> CLUSTER_TASK_STRING_FUNCTION =
     new Function<ClusterTask, String>() {
       @Override
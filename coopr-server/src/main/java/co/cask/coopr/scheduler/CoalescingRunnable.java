@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Wraps a scheduler so that it can be run both at a fixed rate and whenever it is triggered, without ever running it
+ * more than once at the same time. Runs that are requested while the scheduler is running are combined into a
+ * single run that starts as soon as the current one finishes, so that work added during a run is not missed.
+ */
+final class CoalescingRunnable implements Runnable {
+  private final Runnable runnable;
+  private final Executor executor;
+  // whether a run was requested that has not started yet
+  private final AtomicBoolean pending = new AtomicBoolean(false);
+  private final AtomicBoolean running = new AtomicBoolean(false);
+
+  /**
+   * Create a runnable that runs the given runnable, using the given executor for triggered runs.
+   *
+   * @param runnable Runnable to run.
+   * @param executor Executor to run the runnable with when it is triggered.
+   */
+  CoalescingRunnable(Runnable runnable, Executor executor) {
+    this.runnable = runnable;
+    this.executor = executor;
+  }
+
+  /**
+   * Request a run of the runnable on the executor. Returns right away, and does nothing if there is already a run
+   * that has been requested but has not started yet.
+   *
+   * @throws RejectedExecutionException if the executor did not accept the run, in which case later triggers will
+   *                                    try again.
+   */
+  void trigger() {
+    if (pending.compareAndSet(false, true)) {
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        // the run will never start, so it must not keep later triggers from requesting one
+        pending.set(false);
+        throw e;
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    pending.set(true);
+    // if some other thread is running, it will see the pending flag when it finishes and run again.
+    while (pending.get() && running.compareAndSet(false, true)) {
+      try {
+        pending.set(false);
+        runnable.run();
+      } finally {
+        running.set(false);
+      }
+    }
+  }
+}
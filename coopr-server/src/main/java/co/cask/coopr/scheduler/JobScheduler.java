@@ -26,11 +26,15 @@ import co.cask.coopr.common.queue.QueueService;
 import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.queue.TrackingQueue;
 import co.cask.coopr.common.zookeeper.LockService;
-import co.cask.coopr.macro.Expander;
+import co.cask.coopr.macro.ClusterMacroContext;
+import co.cask.coopr.macro.JsonTemplate;
+import co.cask.coopr.management.ServerStats;
 import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterSnapshotStore;
 import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.SchedulableTask;
+import co.cask.coopr.scheduler.task.TakeTaskWaiters;
 import co.cask.coopr.scheduler.task.TaskConfig;
 import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.scheduler.task.TaskService;
@@ -38,8 +42,12 @@ import co.cask.coopr.spec.service.Service;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
 import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
@@ -49,10 +57,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 
 /**
@@ -74,12 +86,22 @@ public class JobScheduler implements Runnable {
   private final Gson gson;
   private final QueueGroup jobQueues;
   private final QueueGroup provisionerQueues;
+  private final TakeTaskWaiters takeTaskWaiters;
+  private final ClusterSnapshotStore clusterSnapshotStore;
+  private final JobStateCache jobStateCache;
+  private final ServerStats serverStats;
+  // job id -> time the last task of the previous stage completed, for jobs whose current stage was not submitted yet
+  private final Cache<String, Long> stageCompleteTimes;
 
   @Inject
   private JobScheduler(ClusterStoreService clusterStoreService,
                        QueueService queueService,
                        LockService lockService,
                        TaskService taskService,
+                       TakeTaskWaiters takeTaskWaiters,
+                       ClusterSnapshotStore clusterSnapshotStore,
+                       JobStateCache jobStateCache,
+                       ServerStats serverStats,
                        Configuration conf,
                        Gson gson) {
     this.clusterStore = clusterStoreService.getSystemView();
@@ -89,6 +111,11 @@ public class JobScheduler implements Runnable {
     this.gson = gson;
     this.jobQueues = queueService.getQueueGroup(QueueType.JOB);
     this.provisionerQueues = queueService.getQueueGroup(QueueType.PROVISIONER);
+    this.takeTaskWaiters = takeTaskWaiters;
+    this.clusterSnapshotStore = clusterSnapshotStore;
+    this.jobStateCache = jobStateCache;
+    this.serverStats = serverStats;
+    this.stageCompleteTimes = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.HOURS).build();
   }
 
   @Override
@@ -106,7 +133,7 @@ public class JobScheduler implements Runnable {
         Lock lock = lockService.getJobLock(queueName, jobId.getClusterId());
         lock.lock();
         try {
-          ClusterJob job = clusterStore.getClusterJob(jobId);
+          ClusterJob job = jobStateCache.getJob(queueName, jobId);
           Cluster cluster = clusterStore.getCluster(job.getClusterId());
           // this can happen if 2 tasks complete around the same time and the first one places the job in the queue,
           // sees 0 in progress tasks, and sets the cluster status. The job is still in the queue as another element
@@ -124,16 +151,18 @@ public class JobScheduler implements Runnable {
           boolean jobFailed = job.getJobStatus() == ClusterJob.Status.FAILED;
           int completedTasks = 0;
           int inProgressTasks = 0;
+          long lastCompleteTime = 0;
           Set<ClusterTask> notSubmittedTasks = Sets.newHashSet();
           Set<ClusterTask> retryTasks = Sets.newHashSet();
-          // TODO: avoid looking up every single task every time, or at least do a batch lookup
           LOG.debug("Verifying task statuses for stage {} for job {}", job.getCurrentStageNumber(), jobIdStr);
+          Map<String, ClusterTask> stageTasks = jobStateCache.getStageTasks(job);
           for (String taskId : currentStage) {
-            ClusterTask task = clusterStore.getClusterTask(TaskId.fromString(taskId));
+            ClusterTask task = stageTasks.get(taskId);
             job.setTaskStatus(task.getTaskId(), task.getStatus());
             LOG.debug("Status of task {} is {}", taskId, task.getStatus());
             if (task.getStatus() == ClusterTask.Status.COMPLETE) {
               ++completedTasks;
+              lastCompleteTime = Math.max(lastCompleteTime, task.getStatusTime());
             } else if (task.getStatus() == ClusterTask.Status.NOT_SUBMITTED) {
               notSubmittedTasks.add(task);
             } else if (task.getStatus() == ClusterTask.Status.FAILED) {
@@ -150,23 +179,36 @@ public class JobScheduler implements Runnable {
 
           // If the job has not failed continue with scheduling other tasks.
           if (!jobFailed) {
-
-            Set<Node> clusterNodes = clusterStore.getClusterNodes(job.getClusterId());
-            Map<String, Node> nodeMap = Maps.newHashMap();
-            for (Node node : clusterNodes) {
-              nodeMap.put(node.getId(), node);
-            }
+            // writes that only record the status of tasks in the current stage can be deferred, since those statuses
+            // are read from the tasks themselves whenever the job is loaded again.
+            boolean deferrable = true;
 
             // Handle retry tasks if any
             if (!retryTasks.isEmpty()) {
               for (ClusterTask task : retryTasks) {
                 notSubmittedTasks.add(scheduleRetry(job, task));
               }
+              jobStateCache.updateStageTasks(job, notSubmittedTasks);
+              deferrable = false;
+            }
+
+            // If tasks have dependencies, only submit the ones whose dependencies have completed
+            if (job.hasTaskDependencies()) {
+              notSubmittedTasks = getRunnableTasks(job, stageTasks, notSubmittedTasks);
             }
 
             // Submit any tasks not yet submitted
             if (!notSubmittedTasks.isEmpty()) {
+              Set<Node> clusterNodes = clusterStore.getClusterNodes(job.getClusterId());
+              Map<String, Node> nodeMap = Maps.newHashMap();
+              for (Node node : clusterNodes) {
+                nodeMap.put(node.getId(), node);
+              }
               submitTasks(notSubmittedTasks, cluster, nodeMap, clusterNodes, job, queueName);
+              // the submitted tasks are the ones in the cache, so this only picks up tasks new to the stage
+              jobStateCache.updateStageTasks(job, notSubmittedTasks);
+              deferrable = false;
+              recordStageTransition(jobIdStr);
             }
 
             // Note: before moving cluster out of pending state, make sure that all in progress tasks are done.
@@ -175,12 +217,16 @@ public class JobScheduler implements Runnable {
               if (job.hasNextStage()) {
                 LOG.debug("Advancing to next stage {} for job {}", job.getCurrentStageNumber(), job.getJobId());
                 job.advanceStage();
+                deferrable = false;
+                stageCompleteTimes.put(jobIdStr, lastCompleteTime);
                 jobQueues.add(queueName, new Element(jobIdStr));
               } else {
                 taskService.completeJob(job, cluster);
+                jobStateCache.invalidate(jobIdStr);
+                deferrable = false;
               }
             }
-            clusterStore.writeClusterJob(job);
+            jobStateCache.writeJob(job, deferrable);
           } else if (inProgressTasks == 0) {
             // special case: if all tasks were create tasks and all of them failed before they created anything,
             // set the cluster state to 'terminated' instead of letting it go to 'incomplete'.
@@ -195,38 +241,84 @@ public class JobScheduler implements Runnable {
               // Job failed and no in progress tasks remaining, update cluster status
               taskService.failJobAndSetClusterStatus(job, cluster);
             }
+            jobStateCache.invalidate(jobIdStr);
           } else {
             // Job failed but tasks are still in progress, wait for them to finish before setting cluster status
             taskService.failJob(job);
           }
+        } catch (Exception e) {
+          // the cached job may have been partly changed, read it again the next time
+          jobStateCache.invalidate(jobIdStr);
+          throw Throwables.propagate(e);
         } finally {
           lock.unlock();
           jobQueues.recordProgress(consumerId, queueName, element.getId(),
                                   TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, "");
         }
       }
+      writeDeferredJobs(true);
     } catch (Throwable e) {
       LOG.error("Got exception: ", e);
     }
   }
 
+  /**
+   * Perform all deferred job writes, whether they are due or not. Called when the scheduler stops being the leader,
+   * so that no deferred write is left behind for a server that will not perform it.
+   */
+  void flushDeferredJobs() {
+    try {
+      writeDeferredJobs(false);
+    } catch (Throwable e) {
+      LOG.error("Exception while writing deferred jobs.", e);
+    }
+  }
+
+  // write jobs whose writes were deferred, either all of them or only the ones whose write interval has passed.
+  private void writeDeferredJobs(boolean dueOnly) throws IOException {
+    for (Map.Entry<String, String> entry : jobStateCache.getDeferredWrites(dueOnly).entrySet()) {
+      String jobIdStr = entry.getKey();
+      Lock lock = lockService.getJobLock(entry.getValue(), JobId.fromString(jobIdStr).getClusterId());
+      lock.lock();
+      try {
+        jobStateCache.writeDeferred(jobIdStr);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  // record how long it took from the last task of the previous stage completing to the next stage being submitted.
+  private void recordStageTransition(String jobId) {
+    Long stageCompleteTime = stageCompleteTimes.getIfPresent(jobId);
+    if (stageCompleteTime != null) {
+      stageCompleteTimes.invalidate(jobId);
+      long latency = System.currentTimeMillis() - stageCompleteTime;
+      LOG.debug("Submitted next stage of job {} {} ms after the previous stage completed", jobId, latency);
+      serverStats.getStageTransitionLatencyStats().record(latency);
+    }
+  }
+
   // check that every task that ran failed, and that every failure was a cluster create, and that every failure
   // failed in a way where no resources were actually created (for ex, if provider settings are wrong).
   private boolean allCreateTasksFailed(ClusterJob job) throws IOException {
+    List<String> failedTaskIds = Lists.newArrayList();
     for (Map.Entry<String, ClusterTask.Status> entry : job.getTaskStatus().entrySet()) {
-      String taskId = entry.getKey();
       ClusterTask.Status taskStatus = entry.getValue();
       // no task can succeed or be in progress
       if (taskStatus == ClusterTask.Status.COMPLETE || taskStatus == ClusterTask.Status.IN_PROGRESS) {
         return false;
       }
       if (taskStatus == ClusterTask.Status.FAILED) {
-        // looks up every failed task... not so great.  But it should be roughly equal to the # of nodes in the cluster.
-        ClusterTask task = clusterStore.getClusterTask(TaskId.fromString(taskId));
-        // check it is a create task
-        if (!task.failedBeforeCreate()) {
-          return false;
-        }
+        failedTaskIds.add(entry.getKey());
+      }
+    }
+    // should be roughly equal to the # of nodes in the cluster.
+    Map<String, ClusterTask> failedTasks = clusterStore.getClusterTasks(toTaskIds(failedTaskIds));
+    for (String taskId : failedTaskIds) {
+      // check it is a create task
+      if (!failedTasks.get(taskId).failedBeforeCreate()) {
+        return false;
       }
     }
     // if we get here, we only have failed, dropped, or not submitted tasks, and all the failed tasks failed before
@@ -237,16 +329,27 @@ public class JobScheduler implements Runnable {
   private void submitTasks(Set<ClusterTask> notSubmittedTasks, Cluster cluster, Map<String, Node> nodeMap,
                            Set<Node> clusterNodes, ClusterJob job, String queueName) throws Exception {
     JsonObject unexpandedClusterConfig = cluster.getConfig();
+    // macros are parsed once for the whole stage, and then only evaluated for each task
+    JsonTemplate clusterConfigTemplate = null;
+    // service lookups for macros are indexed once for the stage, since the cluster nodes do not change within it
+    ClusterMacroContext macroContext = null;
+    // all tasks in the stage share one copy of the cluster nodes instead of each carrying their own
+    String nodesSnapshotId = notSubmittedTasks.isEmpty() ? null : clusterSnapshotStore.put(clusterNodes);
+    List<ClusterTask> tasksToSubmit = Lists.newArrayListWithCapacity(notSubmittedTasks.size());
+    List<Element> elementsToSubmit = Lists.newArrayListWithCapacity(notSubmittedTasks.size());
 
     for (final ClusterTask task : notSubmittedTasks) {
       Node taskNode = nodeMap.get(task.getNodeId());
       JsonObject clusterConfig = unexpandedClusterConfig;
 
-      // TODO: do this only once and save it
       if (!task.getTaskName().isHardwareAction()) {
         try {
+          if (clusterConfigTemplate == null) {
+            clusterConfigTemplate = JsonTemplate.compile(unexpandedClusterConfig);
+            macroContext = new ClusterMacroContext(cluster, clusterNodes);
+          }
           // expansion does not modify the original input, but creates a new object
-          clusterConfig = Expander.expand(clusterConfig, null, cluster, clusterNodes, taskNode).getAsJsonObject();
+          clusterConfig = clusterConfigTemplate.expand(macroContext, taskNode).getAsJsonObject();
         } catch (Throwable e) {
           LOG.error("Exception while expanding macros for task {}", task.getTaskId(), e);
           taskService.failTask(task, -1);
@@ -264,21 +367,32 @@ public class JobScheduler implements Runnable {
           break;
         }
       }
-      TaskConfig taskConfig = TaskConfig.from(cluster, taskNode, tService, clusterConfig,
-                                              task.getTaskName(), clusterNodes);
+      TaskConfig taskConfig = TaskConfig.fromSnapshot(cluster, taskNode, tService, clusterConfig,
+                                                      task.getTaskName(), nodesSnapshotId);
       LOG.debug("Submitting task {}", task.getTaskId());
       LOG.trace("Task {}", task);
       SchedulableTask schedulableTask = new SchedulableTask(task, taskConfig);
       LOG.trace("Schedulable task {}", schedulableTask);
+      tasksToSubmit.add(task);
+      elementsToSubmit.add(new Element(task.getTaskId(), gson.toJson(schedulableTask)));
+    }
 
+    if (tasksToSubmit.isEmpty()) {
+      return;
+    }
+
+    // tasks are written as in progress in one batch before they are queued, so that a provisioner cannot finish a
+    // task before it is marked as started.
+    taskService.startTasks(tasksToSubmit);
+    for (int i = 0; i < tasksToSubmit.size(); i++) {
       // Submit task
       // Note: the job has to be scheduled for processing when the task is complete.
-      provisionerQueues.add(
-        queueName, new Element(task.getTaskId(), gson.toJson(schedulableTask)));
-
-      job.setTaskStatus(task.getTaskId(), ClusterTask.Status.IN_PROGRESS);
-      taskService.startTask(task);
+      provisionerQueues.add(queueName, elementsToSubmit.get(i));
+      job.setTaskStatus(tasksToSubmit.get(i).getTaskId(), ClusterTask.Status.IN_PROGRESS);
     }
+
+    // wake up provisioner workers that are waiting for tasks instead of waiting for them to poll again
+    takeTaskWaiters.tasksAdded(queueName, tasksToSubmit.size());
   }
 
   ClusterTask scheduleRetry(ClusterJob job, ClusterTask task) throws Exception {
@@ -291,8 +405,14 @@ public class JobScheduler implements Runnable {
     }
 
     // store all retry tasks
-    for (ClusterTask t : retryTasks) {
-      clusterStore.writeClusterTask(t);
+    clusterStore.writeClusterTasks(retryTasks);
+
+    if (job.hasTaskDependencies()) {
+      // the failed task is last, and is run again once the other retry tasks have run one after the other
+      job.insertTasksBefore(task.getTaskId(), Lists.transform(retryTasks.subList(0, retryTasks.size() - 1),
+                                                              CLUSTER_TASK_STRING_FUNCTION));
+      LOG.trace("Retry job {} for task {}", job, task);
+      return retryTasks.get(0);
     }
 
     // Remove self from current stage
@@ -307,6 +427,65 @@ public class JobScheduler implements Runnable {
     return retryTasks.get(0);
   }
 
+  /**
+   * Get the tasks that can be submitted for a job whose tasks have dependencies. A task can be submitted once all the
+   * tasks it depends on have completed, as long as no other task is running on its node. Tasks that were planned
+   * earlier are preferred when several tasks for a node can be submitted.
+   *
+   * @param job Job the tasks are for.
+   * @param stageTasks All tasks in the current stage of the job.
+   * @param notSubmittedTasks Tasks that have not been submitted yet.
+   * @return Tasks that can be submitted.
+   */
+  static Set<ClusterTask> getRunnableTasks(ClusterJob job, Map<String, ClusterTask> stageTasks,
+                                           Collection<ClusterTask> notSubmittedTasks) {
+    Set<String> busyNodes = Sets.newHashSet();
+    for (ClusterTask task : stageTasks.values()) {
+      if (task.getStatus() == ClusterTask.Status.IN_PROGRESS) {
+        busyNodes.add(task.getNodeId());
+      }
+    }
+
+    List<ClusterTask> candidates = Lists.newArrayList(notSubmittedTasks);
+    Collections.sort(candidates, PLANNED_ORDER);
+    Set<ClusterTask> runnableTasks = Sets.newHashSet();
+    for (ClusterTask task : candidates) {
+      if (busyNodes.contains(task.getNodeId()) || !dependenciesComplete(job, task, stageTasks)) {
+        continue;
+      }
+      runnableTasks.add(task);
+      busyNodes.add(task.getNodeId());
+    }
+    return runnableTasks;
+  }
+
+  private static boolean dependenciesComplete(ClusterJob job, ClusterTask task, Map<String, ClusterTask> stageTasks) {
+    for (String dependency : job.getTaskDependencies(task.getTaskId())) {
+      ClusterTask dependencyTask = stageTasks.get(dependency);
+      if (dependencyTask == null || dependencyTask.getStatus() != ClusterTask.Status.COMPLETE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final Comparator<ClusterTask> PLANNED_ORDER = new Comparator<ClusterTask>() {
+    @Override
+    public int compare(ClusterTask task1, ClusterTask task2) {
+      long num1 = TaskId.fromString(task1.getTaskId()).getTaskNum();
+      long num2 = TaskId.fromString(task2.getTaskId()).getTaskNum();
+      return num1 < num2 ? -1 : (num1 == num2 ? 0 : 1);
+    }
+  };
+
+  private static List<TaskId> toTaskIds(Collection<String> taskIds) {
+    List<TaskId> ids = Lists.newArrayListWithCapacity(taskIds.size());
+    for (String taskId : taskIds) {
+      ids.add(TaskId.fromString(taskId));
+    }
+    return ids;
+  }
+
   private static final Function<ClusterTask, String> CLUSTER_TASK_STRING_FUNCTION =
     new Function<ClusterTask, String>() {
       @Override
@@ -0,0 +1,278 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.store.cluster.ClusterStore;
+import co.cask.coopr.store.cluster.ClusterStoreService;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-through cache of running jobs and the tasks in their current stage, used by the {@link JobScheduler} so that
+ * it does not have to read the whole job and every task in the stage each time a task finishes. Only tasks that were
+ * in progress can change status outside of the scheduler, so only those are checked against the store, and only the
+ * ones that changed are read. A cached job is checked against the version of the job in the store before it is used,
+ * and is reloaded if the job was written by anything else since it was cached, for example aborted, paused or resumed
+ * by a user on another server.
+ *
+ * If a write interval is configured, writes of a job that only change the status of tasks in its current stage can be
+ * deferred, so that a job with many tasks finishing at once is written at most once per write interval. Deferred
+ * writes are performed once they are due, and all remaining ones are performed when the server stops being the leader
+ * or shuts down. A deferred write is dropped if the job was written elsewhere in the
+ * meantime, which is fine since the status of tasks in the current stage is read from the tasks themselves whenever a
+ * job is loaded.
+ *
+ * Not thread safe for a single job. Callers must hold the lock for a job while using it.
+ */
+public class JobStateCache {
+  private static final Logger LOG = LoggerFactory.getLogger(JobStateCache.class);
+  private static final int MAX_CACHED_JOBS = 1000;
+
+  private final ClusterStore clusterStore;
+  private final long writeIntervalMillis;
+  private final Cache<String, JobState> jobStates;
+
+  /**
+   * Cached state of a job.
+   */
+  private static final class JobState {
+    private final String queueName;
+    private final ClusterJob job;
+    // version of the job in the store, as of the last time it was read or written through the cache
+    private long version;
+    // tasks in the current stage of the job, or null if they need to be read from the store
+    private Map<String, ClusterTask> stageTasks;
+    private long lastWriteTime;
+    private boolean writeDeferred;
+
+    private JobState(String queueName, ClusterJob job, long version) {
+      this.queueName = queueName;
+      this.job = job;
+      this.version = version;
+    }
+  }
+
+  @Inject
+  private JobStateCache(ClusterStoreService clusterStoreService, Configuration conf) {
+    this(clusterStoreService.getSystemView(), conf.getLong(Constants.SCHEDULER_JOB_WRITE_INTERVAL_SECS));
+  }
+
+  JobStateCache(ClusterStore clusterStore, long writeIntervalSecs) {
+    this.clusterStore = clusterStore;
+    this.writeIntervalMillis = TimeUnit.MILLISECONDS.convert(writeIntervalSecs, TimeUnit.SECONDS);
+    this.jobStates = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_JOBS).build();
+  }
+
+  /**
+   * Get a job, reading it from the store if it is not cached or if it was changed outside of the scheduler.
+   *
+   * @param queueName Name of the job queue the job is in.
+   * @param jobId Id of the job to get.
+   * @return The job, or null if it does not exist.
+   * @throws IOException if there was a problem reading from the store.
+   */
+  public ClusterJob getJob(String queueName, JobId jobId) throws IOException {
+    String id = jobId.getId();
+    JobState state = jobStates.getIfPresent(id);
+    // read the version before the job, so that a write in between is caught the next time instead of being missed
+    Long version = clusterStore.getClusterJobVersion(jobId);
+    if (state != null) {
+      if (version != null && version == state.version) {
+        return state.job;
+      }
+      LOG.debug("Job {} was changed outside of the scheduler, reading it again.", id);
+    }
+    ClusterJob job = version == null ? null : clusterStore.getClusterJob(jobId);
+    if (job == null) {
+      jobStates.invalidate(id);
+      return null;
+    }
+    jobStates.put(id, new JobState(queueName, job, version));
+    return job;
+  }
+
+  /**
+   * Get the tasks in the current stage of a job that was returned by {@link #getJob(String, JobId)}, reading only the
+   * tasks that changed since the last call if possible.
+   *
+   * @param job Job to get the current stage tasks of.
+   * @return Unmodifiable mapping of task id to task for all existing tasks in the current stage of the job.
+   * @throws IOException if there was a problem reading from the store.
+   */
+  public Map<String, ClusterTask> getStageTasks(ClusterJob job) throws IOException {
+    JobState state = jobStates.getIfPresent(job.getJobId());
+    if (state == null || state.job != job) {
+      return Collections.unmodifiableMap(clusterStore.getClusterTasks(toTaskIds(job.getCurrentStage())));
+    }
+    if (state.stageTasks == null || !state.stageTasks.keySet().equals(job.getCurrentStage())) {
+      state.stageTasks = Maps.newHashMap(clusterStore.getClusterTasks(toTaskIds(job.getCurrentStage())));
+    } else {
+      List<TaskId> inProgress = Lists.newArrayList();
+      for (ClusterTask task : state.stageTasks.values()) {
+        if (task.getStatus() == ClusterTask.Status.IN_PROGRESS) {
+          inProgress.add(TaskId.fromString(task.getTaskId()));
+        }
+      }
+      if (!inProgress.isEmpty()) {
+        state.stageTasks.putAll(clusterStore.getClusterTasksNotInStatus(inProgress, ClusterTask.Status.IN_PROGRESS));
+      }
+    }
+    return Collections.unmodifiableMap(state.stageTasks);
+  }
+
+  /**
+   * Update the cached tasks of the current stage of a job with tasks that the scheduler just wrote, for example when
+   * submitting or retrying them, so that the whole stage does not have to be read again. Tasks that are no longer in
+   * the current stage of the job are dropped from the cache, and tasks that were added to the stage but are not given
+   * are read from the store. Must be called whenever the scheduler changes tasks in the current stage.
+   *
+   * @param job Job that was returned by {@link #getJob(String, JobId)}, with its current stage already updated.
+   * @param tasks Tasks that were written, which may include tasks that are not in the current stage.
+   * @throws IOException if there was a problem reading from the store.
+   */
+  public void updateStageTasks(ClusterJob job, Collection<ClusterTask> tasks) throws IOException {
+    JobState state = jobStates.getIfPresent(job.getJobId());
+    if (state == null || state.job != job || state.stageTasks == null) {
+      return;
+    }
+    Set<String> currentStage = job.getCurrentStage();
+    for (ClusterTask task : tasks) {
+      if (currentStage.contains(task.getTaskId())) {
+        state.stageTasks.put(task.getTaskId(), task);
+      }
+    }
+    state.stageTasks.keySet().retainAll(currentStage);
+    List<String> missing = Lists.newArrayList();
+    for (String taskId : currentStage) {
+      if (!state.stageTasks.containsKey(taskId)) {
+        missing.add(taskId);
+      }
+    }
+    if (!missing.isEmpty()) {
+      state.stageTasks.putAll(clusterStore.getClusterTasks(toTaskIds(missing)));
+    }
+  }
+
+  /**
+   * Write a job to the store. If the write is deferrable and the job was written less than the write interval ago,
+   * the write is deferred until {@link #writeDeferred(String)} is called for the job.
+   *
+   * @param job Job to write.
+   * @param deferrable Whether the write can be deferred.
+   * @throws IOException if there was a problem writing to the store.
+   */
+  public void writeJob(ClusterJob job, boolean deferrable) throws IOException {
+    JobState state = jobStates.getIfPresent(job.getJobId());
+    if (state != null && state.job != job) {
+      state = null;
+    }
+    long now = System.currentTimeMillis();
+    if (deferrable && state != null && now - state.lastWriteTime < writeIntervalMillis) {
+      state.writeDeferred = true;
+      return;
+    }
+    clusterStore.writeClusterJob(job);
+    if (state != null) {
+      // every write increments the version by one. If anything else wrote the job in the meantime, the version will not
+      // match the next time and the job is read again.
+      state.version++;
+      state.lastWriteTime = now;
+      state.writeDeferred = false;
+    }
+  }
+
+  /**
+   * Get the jobs that have deferred writes, either all of them or only the ones that are due.
+   *
+   * @param dueOnly Whether to only get the jobs whose deferred writes are due.
+   * @return Mapping of job id to the name of the queue the job is in, for jobs that have deferred writes.
+   */
+  public Map<String, String> getDeferredWrites(boolean dueOnly) {
+    Map<String, String> deferred = Maps.newHashMap();
+    long writeTime = dueOnly ? System.currentTimeMillis() - writeIntervalMillis : Long.MAX_VALUE;
+    for (Map.Entry<String, JobState> entry : jobStates.asMap().entrySet()) {
+      JobState state = entry.getValue();
+      if (state.writeDeferred && state.lastWriteTime <= writeTime) {
+        deferred.put(entry.getKey(), state.queueName);
+      }
+    }
+    return deferred;
+  }
+
+  /**
+   * Perform the deferred write of a job, if it still has one. If the job was changed outside of the scheduler since
+   * it was cached, the write is dropped and the job is read again the next time it is needed.
+   *
+   * @param jobId Id of the job to write.
+   * @throws IOException if there was a problem writing to the store.
+   */
+  public void writeDeferred(String jobId) throws IOException {
+    JobState state = jobStates.getIfPresent(jobId);
+    if (state == null || !state.writeDeferred) {
+      return;
+    }
+    Long version = clusterStore.getClusterJobVersion(JobId.fromString(jobId));
+    if (version == null || version != state.version) {
+      LOG.debug("Job {} was changed outside of the scheduler, dropping its deferred write.", jobId);
+      jobStates.invalidate(jobId);
+      return;
+    }
+    writeJob(state.job, false);
+  }
+
+  /**
+   * Forget the cached state of a job. Must be called whenever the job is changed outside of the scheduler.
+   *
+   * @param jobId Id of the job.
+   */
+  public void invalidate(String jobId) {
+    jobStates.invalidate(jobId);
+  }
+
+  /**
+   * Forget the cached state of all jobs.
+   */
+  public void invalidateAll() {
+    jobStates.invalidateAll();
+  }
+
+  private static List<TaskId> toTaskIds(Iterable<String> taskIds) {
+    List<TaskId> ids = Lists.newArrayList();
+    for (String taskId : taskIds) {
+      ids.add(TaskId.fromString(taskId));
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.metrics.MetricService;
+import co.cask.coopr.store.cluster.ClusterStoreService;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges old node usage rollups into bigger buckets, so that the number of buckets read for a long time range stays
+ * small. Only runs on the leader server.
+ */
+public class NodeUsageCompactor implements Runnable {
+  private static final Logger LOG = LoggerFactory.getLogger(NodeUsageCompactor.class);
+
+  private final MetricService metricService;
+  private final long hourlyRetention;
+  private final long dailyRetention;
+
+  @Inject
+  private NodeUsageCompactor(ClusterStoreService clusterStoreService, Configuration conf) {
+    this.metricService = new MetricService(clusterStoreService.getSystemView());
+    this.hourlyRetention = TimeUnit.DAYS.toMillis(conf.getLong(Constants.Metrics.ROLLUP_HOURLY_RETENTION_DAYS));
+    this.dailyRetention = TimeUnit.DAYS.toMillis(conf.getLong(Constants.Metrics.ROLLUP_DAILY_RETENTION_DAYS));
+  }
+
+  @Override
+  public void run() {
+    try {
+      int numMerged = metricService.compactRollups(System.currentTimeMillis(), hourlyRetention, dailyRetention);
+      if (numMerged > 0) {
+        LOG.debug("Merged {} node usage buckets.", numMerged);
+      }
+    } catch (Throwable e) {
+      LOG.error("Got exception while compacting node usage rollups. Ignoring...", e);
+    }
+  }
+}
@@ -17,12 +17,16 @@ package co.cask.coopr.scheduler;
 
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.queue.QueueGroup;
+import co.cask.coopr.common.queue.QueueService;
+import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.zookeeper.ElectionHandler;
 import co.cask.coopr.common.zookeeper.LeaderElection;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.common.Threads;
 import org.apache.twill.zookeeper.ZKClient;
 import org.slf4j.Logger;
@@ -31,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -38,7 +43,10 @@ import java.util.concurrent.TimeUnit;
 /**
  * Runs the different schedulers for solving cluster layouts and planning and coordinating cluster jobs. Leader election
  * is run so that only a single server in a server cluster will be running these schedulers at any given time,
- * where a server cluster is defined as all servers using the same zookeeper quorum.
+ * where a server cluster is defined as all servers using the same zookeeper quorum. Schedulers that read from a
+ * {@link QueueGroup} are run at a fixed rate, and if event driven scheduling is enabled, they are also run as soon as
+ * elements are added to their queues, so that jobs do not sit idle until the next run. The fixed rate runs still
+ * pick up anything that was missed.
  */
 public class Scheduler extends AbstractIdleService {
   private static final Logger LOG = LoggerFactory.getLogger(Scheduler.class);
@@ -47,40 +55,55 @@ public class Scheduler extends AbstractIdleService {
   private final int schedulerRunInterval;
   private final int clusterCleanupRunInterval;
   private final int provisionerCleanupRunInterval;
+  private final int nodeUsageCompactionRunInterval;
+  private final boolean eventDriven;
   private final JobScheduler jobScheduler;
+  private final JobStateCache jobStateCache;
   private final ClusterScheduler clusterScheduler;
   private final SolverScheduler solverScheduler;
   private final CallbackScheduler callbackScheduler;
   private final ClusterCleanup clusterCleanup;
   private final WorkerBalanceScheduler workerBalanceScheduler;
   private final TenantProvisionerCleanup tenantProvisionerCleanup;
+  private final NodeUsageCompactor nodeUsageCompactor;
+  private final QueueService queueService;
   private final Set<ScheduledFuture<?>> scheduledFutures;
+  private final Set<Cancellable> queueListeners;
   private final LeaderElection leaderElection;
 
   @Inject
   private Scheduler(Configuration conf,
                     JobScheduler jobScheduler,
+                    JobStateCache jobStateCache,
                     ClusterScheduler clusterScheduler,
                     SolverScheduler solverScheduler,
                     CallbackScheduler callbackScheduler,
                     WorkerBalanceScheduler workerBalanceScheduler,
                     TenantProvisionerCleanup tenantProvisionerCleanup,
                     ClusterCleanup clusterCleanup,
+                    NodeUsageCompactor nodeUsageCompactor,
+                    QueueService queueService,
                     ZKClient zkClient) {
     this.schedulerRunInterval = conf.getInt(Constants.SCHEDULER_INTERVAL_SECS);
     this.clusterCleanupRunInterval = conf.getInt(Constants.CLUSTER_CLEANUP_SECS);
     this.provisionerCleanupRunInterval = conf.getInt(Constants.PROVISIONER_TIMEOUT_CHECK_INTERVAL_SECS);
+    this.nodeUsageCompactionRunInterval = conf.getInt(Constants.Metrics.ROLLUP_COMPACTION_SECONDS);
+    this.eventDriven = conf.getBoolean(Constants.SCHEDULER_EVENT_DRIVEN_ENABLED);
     this.executorService = Executors.newScheduledThreadPool(5,
                                                             new ThreadFactoryBuilder()
                                                               .setNameFormat("scheduler-%d")
                                                               .build());
     this.jobScheduler = jobScheduler;
+    this.jobStateCache = jobStateCache;
     this.clusterScheduler = clusterScheduler;
     this.solverScheduler = solverScheduler;
     this.callbackScheduler = callbackScheduler;
     this.workerBalanceScheduler = workerBalanceScheduler;
     this.clusterCleanup = clusterCleanup;
+    this.nodeUsageCompactor = nodeUsageCompactor;
+    this.queueService = queueService;
     this.scheduledFutures = Sets.newHashSet();
+    this.queueListeners = Sets.newHashSet();
     this.tenantProvisionerCleanup = tenantProvisionerCleanup;
 
     this.leaderElection = new LeaderElection(zkClient, "/server-election", new ElectionHandler() {
@@ -122,29 +145,17 @@ public class Scheduler extends AbstractIdleService {
     leaderElection.cancel();
     executorService.shutdown();
     executorService.awaitTermination(100, TimeUnit.SECONDS);
+    jobScheduler.flushDeferredJobs();
   }
 
   private void schedule() {
+    // jobs may have been changed by another server while this one was not the leader
+    jobStateCache.invalidateAll();
 
-    LOG.info("Scheduling cluster scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(clusterScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
-    );
-
-    LOG.info("Scheduling job scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(jobScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
-    );
-
-    LOG.info("Scheduling solver scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(solverScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
-    );
-
-    LOG.info("Scheduling callback scheduler every {} secs...", schedulerRunInterval);
-    scheduledFutures.add(
-      executorService.scheduleAtFixedRate(callbackScheduler, 1, schedulerRunInterval, TimeUnit.SECONDS)
-    );
+    scheduleQueueReader("cluster scheduler", clusterScheduler, QueueType.CLUSTER);
+    scheduleQueueReader("job scheduler", jobScheduler, QueueType.JOB);
+    scheduleQueueReader("solver scheduler", solverScheduler, QueueType.SOLVER);
+    scheduleQueueReader("callback scheduler", callbackScheduler, QueueType.CALLBACK);
 
     LOG.info("Scheduling worker balancer every {} secs...", schedulerRunInterval);
     scheduledFutures.add(
@@ -163,9 +174,43 @@ public class Scheduler extends AbstractIdleService {
       executorService.scheduleAtFixedRate(tenantProvisionerCleanup, provisionerCleanupRunInterval,
                                           provisionerCleanupRunInterval, TimeUnit.SECONDS)
     );
+
+    LOG.info("Scheduling node usage compaction every {} secs...", nodeUsageCompactionRunInterval);
+    scheduledFutures.add(
+      executorService.scheduleAtFixedRate(nodeUsageCompactor, nodeUsageCompactionRunInterval,
+                                          nodeUsageCompactionRunInterval, TimeUnit.SECONDS)
+    );
+  }
+
+  // run the scheduler at a fixed rate, and also whenever elements are added to the given queues if enabled.
+  private void scheduleQueueReader(final String name, Runnable scheduler, QueueType queueType) {
+    final CoalescingRunnable runnable = new CoalescingRunnable(scheduler, executorService);
+    LOG.info("Scheduling {} every {} secs...", name, schedulerRunInterval);
+    scheduledFutures.add(
+      executorService.scheduleAtFixedRate(runnable, 1, schedulerRunInterval, TimeUnit.SECONDS)
+    );
+
+    if (eventDriven) {
+      LOG.info("Running {} whenever {} queues get new elements...", name, queueType.name().toLowerCase());
+      queueListeners.add(queueService.getQueueGroup(queueType).addListener(new QueueGroup.Listener() {
+        @Override
+        public void elementsAdded() {
+          try {
+            runnable.trigger();
+          } catch (RejectedExecutionException e) {
+            // can happen while shutting down, there is nothing left to run then
+            LOG.debug("Not running {} since the scheduler is shutting down.", name);
+          }
+        }
+      }));
+    }
   }
 
   private void unschedule() {
+    for (Cancellable queueListener : queueListeners) {
+      queueListener.cancel();
+    }
+    queueListeners.clear();
     for (ScheduledFuture<?> future : scheduledFutures) {
       try {
         future.cancel(false);
@@ -174,5 +219,6 @@ public class Scheduler extends AbstractIdleService {
       }
     }
     scheduledFutures.clear();
+    jobScheduler.flushDeferredJobs();
   }
 }
@@ -56,7 +56,7 @@ public class WorkerBalanceScheduler implements Runnable {
       }
 
       try {
-        tenantProvisionerService.rebalanceTenantWorkers(element.getValue());
+        tenantProvisionerService.rebalanceTenantWorkers(element);
         balanceQueue.recordProgress(id, element.getId(),
                                     TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, "balanced");
       } catch (CapacityException e) {
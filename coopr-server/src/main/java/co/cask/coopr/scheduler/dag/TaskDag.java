@@ -18,8 +18,11 @@ package co.cask.coopr.scheduler.dag;
 import com.google.common.base.Objects;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.TreeMultimap;
@@ -28,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -125,6 +129,46 @@ public class TaskDag {
     return linearizedNodes;
   }
 
+  /**
+   * Get the dependencies between the given nodes of the DAG, for running each node as soon as the nodes it depends on
+   * have completed instead of stage by stage. Nodes of the DAG that are not given are skipped over, so that if a
+   * given node depends on a node that is not given, it depends on whatever given nodes the skipped node depends on.
+   *
+   * @param taskNodes Nodes to get dependencies for.
+   * @return Mapping of each given node to the given nodes that must complete before it can run.
+   */
+  public SetMultimap<TaskNode, TaskNode> getDependencies(Set<TaskNode> taskNodes) {
+    SetMultimap<TaskNode, TaskNode> reverseEdges = HashMultimap.create();
+    Multimaps.invertFrom(edges, reverseEdges);
+
+    SetMultimap<TaskNode, TaskNode> dependencies = HashMultimap.create();
+    // skipped node -> given nodes it depends on, directly or through other skipped nodes
+    Map<TaskNode, Set<TaskNode>> skippedDependencies = Maps.newHashMap();
+    for (TaskNode taskNode : taskNodes) {
+      for (TaskNode fromNode : reverseEdges.get(taskNode)) {
+        dependencies.putAll(taskNode, resolveDependency(fromNode, taskNodes, reverseEdges, skippedDependencies));
+      }
+    }
+    return dependencies;
+  }
+
+  private Set<TaskNode> resolveDependency(TaskNode fromNode, Set<TaskNode> taskNodes,
+                                          SetMultimap<TaskNode, TaskNode> reverseEdges,
+                                          Map<TaskNode, Set<TaskNode>> skippedDependencies) {
+    if (taskNodes.contains(fromNode)) {
+      return ImmutableSet.of(fromNode);
+    }
+    Set<TaskNode> resolved = skippedDependencies.get(fromNode);
+    if (resolved == null) {
+      resolved = Sets.newHashSet();
+      for (TaskNode node : reverseEdges.get(fromNode)) {
+        resolved.addAll(resolveDependency(node, taskNodes, reverseEdges, skippedDependencies));
+      }
+      skippedDependencies.put(fromNode, resolved);
+    }
+    return resolved;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
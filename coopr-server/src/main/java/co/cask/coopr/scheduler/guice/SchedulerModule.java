@@ -2,17 +2,25 @@ package co.cask.coopr.scheduler.guice;
 
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.layout.LayoutSolutionCache;
+import co.cask.coopr.layout.Solver;
 import co.cask.coopr.scheduler.ClusterCleanup;
 import co.cask.coopr.scheduler.ClusterScheduler;
 import co.cask.coopr.scheduler.JobScheduler;
+import co.cask.coopr.scheduler.JobStateCache;
+import co.cask.coopr.scheduler.NodeUsageCompactor;
 import co.cask.coopr.scheduler.TenantProvisionerCleanup;
 import co.cask.coopr.scheduler.Scheduler;
 import co.cask.coopr.scheduler.SolverScheduler;
 import co.cask.coopr.scheduler.WorkerBalanceScheduler;
 import co.cask.coopr.scheduler.callback.ClusterCallback;
+import co.cask.coopr.scheduler.task.ClusterSnapshotStore;
+import co.cask.coopr.scheduler.task.TakeTaskWaiters;
+import co.cask.coopr.store.entity.EntityStoreListener;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
+import com.google.inject.multibindings.Multibinder;
 import com.google.inject.name.Names;
 
 /**
@@ -48,9 +56,16 @@ public class SchedulerModule extends AbstractModule {
     bind(JobScheduler.class).in(Scopes.SINGLETON);
     bind(ClusterScheduler.class).in(Scopes.SINGLETON);
     bind(SolverScheduler.class).in(Scopes.SINGLETON);
+    bind(Solver.class).in(Scopes.SINGLETON);
+    bind(LayoutSolutionCache.class).in(Scopes.SINGLETON);
+    Multibinder.newSetBinder(binder(), EntityStoreListener.class).addBinding().to(LayoutSolutionCache.class);
     bind(Scheduler.class).in(Scopes.SINGLETON);
     bind(WorkerBalanceScheduler.class).in(Scopes.SINGLETON);
     bind(ClusterCleanup.class).in(Scopes.SINGLETON);
     bind(TenantProvisionerCleanup.class).in(Scopes.SINGLETON);
+    bind(NodeUsageCompactor.class).in(Scopes.SINGLETON);
+    bind(TakeTaskWaiters.class).in(Scopes.SINGLETON);
+    bind(ClusterSnapshotStore.class).in(Scopes.SINGLETON);
+    bind(JobStateCache.class).in(Scopes.SINGLETON);
   }
 }
@@ -20,14 +20,18 @@ import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * A job contains information related to what needs to be done to perform and coordinate a cluster operation. It keeps
- * track of node level tasks that must be executed, and the stages in which tasks must be executed.
+ * track of node level tasks that must be executed, and the stages in which tasks must be executed. A job may instead
+ * keep all its tasks in a single stage along with the dependencies between them, in which case each task can be run
+ * as soon as the tasks it depends on have completed.
  */
 public class ClusterJob {
 
@@ -49,6 +53,8 @@ public class ClusterJob {
   private final Set<String> plannedNodes;
   private int currentStageNumber;
   private final Map<String, ClusterTask.Status> taskStatus;
+  // task id -> ids of tasks that must complete before the task can run. Null for jobs that run tasks stage by stage.
+  private Map<String, Set<String>> taskDependencies;
   private Status jobStatus;
   private String statusMessage;
 
@@ -156,6 +162,59 @@ public class ClusterJob {
     }
   }
 
+  /**
+   * Set the tasks that must complete before a task in the job can run. Once dependencies are set for any task, tasks in
+   * a stage are no longer all run in parallel, but are each run as soon as the tasks they depend on have completed.
+   *
+   * @param taskId Id of the task.
+   * @param dependencies Ids of tasks that must complete before the task can run.
+   */
+  public void setTaskDependencies(String taskId, Set<String> dependencies) {
+    if (taskDependencies == null) {
+      taskDependencies = Maps.newHashMap();
+    }
+    taskDependencies.put(taskId, Sets.newHashSet(dependencies));
+  }
+
+  /**
+   * Get the ids of tasks that must complete before the given task can run.
+   *
+   * @param taskId Id of the task.
+   * @return Ids of tasks that must complete before the given task can run.
+   */
+  public Set<String> getTaskDependencies(String taskId) {
+    Set<String> dependencies = taskDependencies == null ? null : taskDependencies.get(taskId);
+    return dependencies == null ? ImmutableSet.<String>of() : Collections.unmodifiableSet(dependencies);
+  }
+
+  /**
+   * Return whether or not tasks are run as soon as the tasks they depend on have completed, instead of stage by stage.
+   *
+   * @return true if tasks are run as soon as their dependencies have completed, false if they are run stage by stage.
+   */
+  public boolean hasTaskDependencies() {
+    return taskDependencies != null;
+  }
+
+  /**
+   * Inserts a list of tasks into the current stage that must run, one after the other, before the given task can run.
+   * The first task inherits the dependencies of the given task. This is required for retries of jobs with task
+   * dependencies.
+   *
+   * @param taskId Id of the task to insert tasks before.
+   * @param tasks Tasks to run before the given task, in the order they must run.
+   */
+  public void insertTasksBefore(String taskId, List<String> tasks) {
+    Set<String> dependencies = Sets.newHashSet(getTaskDependencies(taskId));
+    for (String task : tasks) {
+      getCurrentStage().add(task);
+      taskStatus.put(task, ClusterTask.Status.NOT_SUBMITTED);
+      setTaskDependencies(task, dependencies);
+      dependencies = ImmutableSet.of(task);
+    }
+    setTaskDependencies(taskId, dependencies);
+  }
+
   /**
    * Get all the task ids for the current stage.
    *
@@ -171,6 +230,9 @@ public class ClusterJob {
   public void clearTasks() {
     stagedTasks.clear();
     taskStatus.clear();
+    if (taskDependencies != null) {
+      taskDependencies.clear();
+    }
   }
 
   /**
@@ -273,6 +335,7 @@ public class ClusterJob {
       .add("stagedTasks", stagedTasks)
       .add("currentStageNumber", currentStageNumber)
       .add("taskStatus", taskStatus)
+      .add("taskDependencies", taskDependencies)
       .add("jobStatus", jobStatus)
       .add("statusMessage", statusMessage)
       .toString();
@@ -289,12 +352,14 @@ public class ClusterJob {
       Objects.equal(stagedTasks, other.stagedTasks) &&
       Objects.equal(currentStageNumber, other.currentStageNumber) &&
       Objects.equal(taskStatus, other.taskStatus) &&
+      Objects.equal(taskDependencies, other.taskDependencies) &&
       Objects.equal(jobStatus, other.jobStatus) &&
       Objects.equal(statusMessage, statusMessage);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(jobId, clusterId, stagedTasks, currentStageNumber, taskStatus, jobStatus, statusMessage);
+    return Objects.hashCode(jobId, clusterId, stagedTasks, currentStageNumber, taskStatus, taskDependencies,
+                            jobStatus, statusMessage);
   }
 }
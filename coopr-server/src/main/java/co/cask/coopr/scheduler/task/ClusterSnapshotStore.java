@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler.task;
+
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.common.zookeeper.ZKClientExt;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.inject.Inject;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Stores snapshots of the properties of all nodes in a cluster, so that the tasks of a job stage can all refer to a
+ * single copy of the cluster nodes instead of each task carrying its own copy. Snapshots are stored in zookeeper as
+ * gzipped json, with the hash of the json as their id. Storing the same nodes twice therefore results in the same
+ * snapshot, and a snapshot never changes once it has been written. Recently used snapshots are cached in memory.
+ */
+public class ClusterSnapshotStore {
+  private static final Logger LOG = LoggerFactory.getLogger(ClusterSnapshotStore.class);
+  private static final String BASE_PATH = "/clustersnapshots";
+  private static final Type NODES_TYPE = new TypeToken<Map<String, NodeProperties>>() { }.getType();
+  private static final int CACHE_MAX_ENTRIES = 50;
+
+  private final ZKClient zkClient;
+  private final Gson gson;
+  private final Cache<String, Map<String, NodeProperties>> cache;
+
+  @Inject
+  private ClusterSnapshotStore(ZKClient zkClient, Gson gson) {
+    this.zkClient = zkClient;
+    this.gson = gson;
+    this.cache = CacheBuilder.newBuilder().maximumSize(CACHE_MAX_ENTRIES).build();
+  }
+
+  /**
+   * Store a snapshot of the given cluster nodes, returning the id of the snapshot.
+   *
+   * @param clusterNodes Nodes in the cluster.
+   * @return Id of the snapshot.
+   */
+  public String put(Collection<Node> clusterNodes) {
+    // sorted so that the same nodes always give the same json
+    Map<String, NodeProperties> nodes = Maps.newTreeMap();
+    for (Node node : clusterNodes) {
+      nodes.put(node.getId(), node.getProperties());
+    }
+    String json = gson.toJson(nodes, NODES_TYPE);
+    String snapshotId = Hashing.sha256().hashString(json, Charsets.UTF_8).toString();
+    // the write also refreshes the modified time of an existing snapshot, so that it is not cleaned up while in use
+    Futures.getUnchecked(ZKClientExt.createOrSet(zkClient, getPath(snapshotId), compress(json),
+                                                 CreateMode.PERSISTENT));
+    cache.put(snapshotId, ImmutableMap.copyOf(nodes));
+    return snapshotId;
+  }
+
+  /**
+   * Get the nodes in the snapshot with the given id, or null if the snapshot does not exist.
+   *
+   * @param snapshotId Id of the snapshot to get.
+   * @return Mapping of node id to node properties for all nodes in the snapshot, or null if it does not exist.
+   */
+  @Nullable
+  public Map<String, NodeProperties> get(String snapshotId) {
+    Map<String, NodeProperties> nodes = cache.getIfPresent(snapshotId);
+    if (nodes != null) {
+      return nodes;
+    }
+    NodeData nodeData = Futures.getUnchecked(ZKClientExt.getDataOrNull(zkClient, getPath(snapshotId)));
+    if (nodeData == null || nodeData.getData() == null) {
+      return null;
+    }
+    Map<String, NodeProperties> snapshotNodes = gson.fromJson(decompress(nodeData.getData()), NODES_TYPE);
+    nodes = ImmutableMap.copyOf(snapshotNodes);
+    cache.put(snapshotId, nodes);
+    return nodes;
+  }
+
+  /**
+   * Delete all snapshots that were last written before the given time.
+   *
+   * @param time Timestamp in milliseconds. Snapshots last written before this time are deleted.
+   * @return Number of snapshots deleted.
+   */
+  public int deleteWrittenBefore(long time) {
+    NodeChildren children = Futures.getUnchecked(ZKClientExt.getChildrenOrNull(zkClient, BASE_PATH));
+    if (children == null) {
+      return 0;
+    }
+    int numDeleted = 0;
+    for (String snapshotId : children.getChildren()) {
+      String path = getPath(snapshotId);
+      Stat stat = Futures.getUnchecked(zkClient.exists(path));
+      if (stat != null && stat.getMtime() < time) {
+        LOG.debug("Deleting cluster snapshot {} last written at {}", snapshotId, stat.getMtime());
+        Futures.getUnchecked(ZKClientExt.delete(zkClient, path, true));
+        cache.invalidate(snapshotId);
+        numDeleted++;
+      }
+    }
+    return numDeleted;
+  }
+
+  private String getPath(String snapshotId) {
+    return BASE_PATH + "/" + snapshotId;
+  }
+
+  private static byte[] compress(String json) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), Charsets.UTF_8);
+      try {
+        writer.write(json);
+      } finally {
+        writer.close();
+      }
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      // cannot happen when writing to a byte array
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private static String decompress(byte[] data) {
+    try {
+      Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(data)), Charsets.UTF_8);
+      try {
+        return CharStreams.toString(reader);
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+}
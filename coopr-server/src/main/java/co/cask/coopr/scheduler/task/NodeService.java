@@ -21,6 +21,7 @@ import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.utils.StringUtils;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,7 +47,9 @@ public class NodeService {
   }
 
   /**
-   * Start an action on a node. Updates the node in the persistent store.
+   * Start an action on a node. Updates the node in the persistent store, and adds the action to the action history
+   * of the node. Only the most recent actions are kept in the node itself, and only the latest one keeps its logs,
+   * since the full history is kept separately.
    *
    * @param node Node the action will take place on.
    * @param taskId Id of the task associated with the action.
@@ -55,17 +58,35 @@ public class NodeService {
    * @throws IOException
    */
   public void startAction(Node node, String taskId, String service, String action) throws IOException {
+    // actions from before the action history existed are only kept in the node, so they are added to the history
+    // before they are removed from the node or lose their logs
+    List<Node.Action> trimmed = Lists.newArrayList();
     if (node.getActions().size() >= maxActions) {
       Node.Action removed = node.removeFirstAction();
       LOG.debug("Removing action {} from node {} since num actions is more than {}",
                 removed, node.getId(), maxActions);
+      trimmed.add(removed);
     }
-    node.addAction(new Node.Action(taskId, service, action));
+    for (Node.Action previous : node.getActions()) {
+      if (previous.getStdout() != null || previous.getStderr() != null) {
+        trimmed.add(previous);
+      }
+    }
+    clusterStore.writeNodeActionsIfMissing(node, trimmed);
+
+    // logs of earlier actions are still in the action history
+    for (Node.Action previous : node.getActions()) {
+      previous.setStdout(null);
+      previous.setStderr(null);
+    }
+    Node.Action nodeAction = new Node.Action(taskId, service, action);
+    node.addAction(nodeAction);
+    clusterStore.writeNodeAction(node, nodeAction);
     clusterStore.writeNode(node);
   }
 
   /**
-   * Complete an action on a node. Updates the node in the persistent store.
+   * Complete an action on a node. Updates the node and its action history in the persistent store.
    *
    * @param node Node the completed action took place on.
    * @throws IOException
@@ -74,11 +95,13 @@ public class NodeService {
     Node.Action action = validateAndGetAction(node);
     action.setStatus(Node.Status.COMPLETE);
     action.setStatusTime(System.currentTimeMillis());
+    clusterStore.writeNodeAction(node, action);
     clusterStore.writeNode(node);
   }
 
   /**
-   * Fail an action on a node with optional logs on what went wrong. Updates the node in the persistent store.
+   * Fail an action on a node with optional logs on what went wrong. Updates the node and its action history in the
+   * persistent store.
    *
    * @param node Node the action failed on.
    * @param stdout Stdout of failed action.
@@ -91,6 +114,7 @@ public class NodeService {
     action.setStatusTime(System.currentTimeMillis());
     action.setStdout(truncateLog(stdout, maxLogLength));
     action.setStderr(truncateLog(stderr, maxLogLength));
+    clusterStore.writeNodeAction(node, action);
     clusterStore.writeNode(node);
   }
 
@@ -0,0 +1,337 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler.task;
+
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of long-poll requests to take tasks, so that idle provisioner workers do not have to keep polling for
+ * tasks, which takes a distributed lock every time. A take request that finds no tasks is parked until it is woken by
+ * {@link #tasksAdded(String, int)} for its tenant, or until it times out. Waiters are woken in the order they were
+ * parked, and a woken waiter that does not get a task is parked again. Tasks can also get into a queue without a
+ * notification, for example when they are added by another server or when a timed out task is put back in the queue,
+ * so the first waiter of each tenant is also woken at a configurable interval. Whenever a woken waiter gets a task, the
+ * next waiter is woken as well, since there may be more tasks in the queue.
+ */
+public class TakeTaskWaiters {
+  private static final Logger LOG = LoggerFactory.getLogger(TakeTaskWaiters.class);
+
+  private final long maxWaitMillis;
+  // tenant id -> waiters for the tenant. Entries without waiters are removed when queues are checked.
+  private final Map<String, TenantWaiters> tenantWaiters;
+  private final ScheduledExecutorService timerExecutor;
+  private final ExecutorService takeExecutor;
+  // last version given to any tenant, so that a tenant entry that is removed and added again never repeats a version
+  private long lastVersion;
+
+  @Inject
+  private TakeTaskWaiters(Configuration conf) {
+    this.maxWaitMillis = TimeUnit.SECONDS.toMillis(Math.max(0, conf.getInt(Constants.TASK_TAKE_MAX_WAIT_SECS)));
+    int numTakeThreads = Math.max(1, conf.getInt(Constants.TASK_TAKE_NUM_THREADS));
+    long checkIntervalMillis = Math.max(1, conf.getLong(Constants.TASK_TAKE_CHECK_INTERVAL_MS));
+    this.tenantWaiters = Maps.newHashMap();
+    this.timerExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+      .setNameFormat("take-task-timer-%d")
+      .setDaemon(true)
+      .build());
+    this.takeExecutor = Executors.newFixedThreadPool(numTakeThreads, new ThreadFactoryBuilder()
+      .setNameFormat("take-task-waiter-%d")
+      .setDaemon(true)
+      .build());
+    timerExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        checkQueues();
+      }
+    }, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * A request waiting to take tasks. Exactly one of {@link #tryTake()} returning true or {@link #timedOut()} is what
+   * responds to the request.
+   */
+  public abstract static class Waiter {
+    private long deadlineNanos;
+    private ScheduledFuture<?> timeoutFuture;
+    // guarded by the TakeTaskWaiters instance
+    private boolean expired;
+    private boolean cancelled;
+
+    /**
+     * Try to take tasks, responding to the request if any were taken or if there was an error taking them.
+     *
+     * @return Whether or not the request was responded to.
+     */
+    protected abstract boolean tryTake();
+
+    /**
+     * Respond to the request after waiting for the max time without getting any tasks.
+     */
+    protected abstract void timedOut();
+
+    /**
+     * Whether the client that sent the request is still connected. Tasks are not taken for disconnected waiters,
+     * since they could not be handed out.
+     *
+     * @return Whether the client is still connected.
+     */
+    protected boolean isConnected() {
+      return true;
+    }
+  }
+
+  /**
+   * Try to take tasks for the given waiter, waiting for tasks to be added to the tenant queue if there are none.
+   * The wait time is capped by the max wait time in the server configuration.
+   *
+   * @param tenantId Id of the tenant whose queue the tasks are taken from.
+   * @param waitSeconds Max number of seconds to wait for tasks.
+   * @param waiter Waiter that takes tasks and responds to the request.
+   */
+  public void take(final String tenantId, int waitSeconds, final Waiter waiter) {
+    if (!waiter.isConnected()) {
+      return;
+    }
+    long version = getVersion(tenantId);
+    if (waiter.tryTake()) {
+      return;
+    }
+    long waitMillis = Math.min(TimeUnit.SECONDS.toMillis(waitSeconds), maxWaitMillis);
+    if (waitMillis <= 0) {
+      waiter.timedOut();
+      return;
+    }
+    waiter.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+    waiter.timeoutFuture = timerExecutor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        expire(tenantId, waiter);
+      }
+    }, waitMillis, TimeUnit.MILLISECONDS);
+    park(tenantId, waiter, version);
+  }
+
+  /**
+   * Stop waiting for tasks for the given waiter, for example because its client disconnected. The waiter is not
+   * responded to.
+   *
+   * @param tenantId Id of the tenant whose queue the waiter is waiting for.
+   * @param waiter Waiter to stop waiting for.
+   */
+  public void cancel(String tenantId, Waiter waiter) {
+    synchronized (this) {
+      getTenantWaiters(tenantId).waiting.remove(waiter);
+      // if it is busy taking tasks, it will see that it was cancelled when it is parked
+      waiter.cancelled = true;
+    }
+    if (waiter.timeoutFuture != null) {
+      waiter.timeoutFuture.cancel(false);
+    }
+  }
+
+  /**
+   * Notify waiters that tasks were added to the queue of the given tenant, waking up to one waiter per task.
+   *
+   * @param tenantId Id of the tenant whose queue the tasks were added to.
+   * @param numTasks Number of tasks that were added.
+   */
+  public void tasksAdded(String tenantId, int numTasks) {
+    List<Waiter> toWake;
+    synchronized (this) {
+      TenantWaiters waiters = getTenantWaiters(tenantId);
+      waiters.version = ++lastVersion;
+      toWake = waiters.poll(numTasks);
+    }
+    for (Waiter waiter : toWake) {
+      wake(tenantId, waiter);
+    }
+  }
+
+  /**
+   * Get the number of waiters currently parked for the given tenant.
+   *
+   * @param tenantId Id of the tenant to get the number of waiters for.
+   * @return Number of waiters parked for the tenant.
+   */
+  public synchronized int getNumWaiters(String tenantId) {
+    TenantWaiters waiters = tenantWaiters.get(tenantId);
+    return waiters == null ? 0 : waiters.waiting.size();
+  }
+
+  /**
+   * Get the number of tenants that waiters are currently tracked for, including tenants whose waiters were all
+   * responded to since queues were last checked.
+   *
+   * @return Number of tenants that waiters are tracked for.
+   */
+  public synchronized int getNumTenants() {
+    return tenantWaiters.size();
+  }
+
+  private synchronized long getVersion(String tenantId) {
+    return getTenantWaiters(tenantId).version;
+  }
+
+  // park the waiter unless tasks were added after the given version was read, in which case it tries again.
+  private void park(String tenantId, Waiter waiter, long version) {
+    if (!waiter.isConnected()) {
+      cancel(tenantId, waiter);
+      return;
+    }
+    boolean timedOut = false;
+    synchronized (this) {
+      TenantWaiters waiters = getTenantWaiters(tenantId);
+      if (waiter.cancelled) {
+        return;
+      }
+      if (waiter.expired || System.nanoTime() - waiter.deadlineNanos >= 0) {
+        timedOut = true;
+      } else if (waiters.version == version) {
+        waiters.waiting.add(waiter);
+        return;
+      }
+    }
+    if (timedOut) {
+      waiter.timedOut();
+    } else {
+      wake(tenantId, waiter);
+    }
+  }
+
+  private void wake(final String tenantId, final Waiter waiter) {
+    takeExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (!waiter.isConnected()) {
+          cancel(tenantId, waiter);
+          // the task this waiter was woken for may still be in the queue
+          wakeNext(tenantId);
+          return;
+        }
+        long version = getVersion(tenantId);
+        boolean responded;
+        try {
+          responded = waiter.tryTake();
+        } catch (Throwable t) {
+          // should not happen, since errors are responded to by the waiter. Let it time out instead of losing it.
+          LOG.error("Exception while taking tasks for tenant {}.", tenantId, t);
+          responded = false;
+        }
+        if (responded) {
+          waiter.timeoutFuture.cancel(false);
+          wakeNext(tenantId);
+        } else {
+          park(tenantId, waiter, version);
+        }
+      }
+    });
+  }
+
+  private void wakeNext(String tenantId) {
+    List<Waiter> toWake;
+    synchronized (this) {
+      toWake = getTenantWaiters(tenantId).poll(1);
+    }
+    for (Waiter waiter : toWake) {
+      wake(tenantId, waiter);
+    }
+  }
+
+  // respond to the waiter if it is parked. If it is busy taking tasks, it will see that it expired when it is parked.
+  private void expire(String tenantId, Waiter waiter) {
+    synchronized (this) {
+      if (waiter.cancelled) {
+        return;
+      }
+      if (!getTenantWaiters(tenantId).waiting.remove(waiter)) {
+        waiter.expired = true;
+        return;
+      }
+    }
+    waiter.timedOut();
+  }
+
+  private void checkQueues() {
+    List<String> tenantIds = Lists.newArrayList();
+    synchronized (this) {
+      Iterator<Map.Entry<String, TenantWaiters>> iter = tenantWaiters.entrySet().iterator();
+      while (iter.hasNext()) {
+        Map.Entry<String, TenantWaiters> entry = iter.next();
+        if (entry.getValue().waiting.isEmpty()) {
+          // waiters busy taking tasks that read its version will see a different one when they are parked, and retry
+          iter.remove();
+        } else {
+          tenantIds.add(entry.getKey());
+        }
+      }
+    }
+    for (String tenantId : tenantIds) {
+      wakeNext(tenantId);
+    }
+  }
+
+  // must be called while holding the lock on this
+  private TenantWaiters getTenantWaiters(String tenantId) {
+    TenantWaiters waiters = tenantWaiters.get(tenantId);
+    if (waiters == null) {
+      waiters = new TenantWaiters(++lastVersion);
+      tenantWaiters.put(tenantId, waiters);
+    }
+    return waiters;
+  }
+
+  /**
+   * Waiters for a tenant, along with a version that changes every time tasks are added to the tenant queue.
+   * Waiters read the version before trying to take tasks, so they know whether tasks were added while they were
+   * trying, in which case they would have missed the notification.
+   */
+  private static final class TenantWaiters {
+    private final Set<Waiter> waiting = Sets.newLinkedHashSet();
+    private long version;
+
+    private TenantWaiters(long version) {
+      this.version = version;
+    }
+
+    private List<Waiter> poll(int max) {
+      List<Waiter> polled = Lists.newArrayList();
+      Iterator<Waiter> iter = waiting.iterator();
+      while (iter.hasNext() && polled.size() < max) {
+        polled.add(iter.next());
+        iter.remove();
+      }
+      return polled;
+    }
+  }
+}
@@ -27,6 +27,7 @@ import com.google.gson.JsonObject;
 
 import java.util.Collection;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * The config section of a cluster task sent to provisioners. Part of a {@link SchedulableTask}.
@@ -36,6 +37,8 @@ public class TaskConfig {
   private final Provider provider;
   // list of other nodes in the cluster
   private final Map<String, NodeProperties> nodes;
+  // id of the cluster snapshot holding the other nodes in the cluster, if they are not included directly
+  private final String nodesSnapshotId;
   // service action to perform
   private final TaskServiceAction taskServiceAction;
   // arbitrary cluster config that comes from the cluster template
@@ -71,11 +74,40 @@ public class TaskConfig {
                           taskServiceAction, clusterConfig, provisionerResults);
   }
 
+  /**
+   * Create a task config from the given input, which refers to a cluster snapshot for the other nodes in the cluster
+   * instead of including them directly. The nodes must be filled in from the snapshot with {@link #withNodes(Map)}
+   * before the task is sent to a provisioner.
+   *
+   * @param cluster Cluster the task is operating on.
+   * @param node Node the task should take place on.
+   * @param service Service the task is operating on.
+   *                May be null for tasks that are on the node itself but not on a service.
+   * @param clusterConfig Cluster config with expanded macros.
+   * @param action Action to perform.
+   * @param nodesSnapshotId Id of the {@link ClusterSnapshotStore} snapshot containing all nodes in the cluster.
+   * @return Task config created from the given input.
+   */
+  public static TaskConfig fromSnapshot(Cluster cluster, Node node, Service service, JsonObject clusterConfig,
+                                        ProvisionerAction action, String nodesSnapshotId) {
+    TaskConfig taskConfig = from(cluster, node, service, clusterConfig, action, null);
+    return new TaskConfig(taskConfig.nodeProperties, taskConfig.provider, ImmutableMap.<String, NodeProperties>of(),
+                          taskConfig.taskServiceAction, taskConfig.clusterConfig, taskConfig.provisionerResults,
+                          nodesSnapshotId);
+  }
+
   public TaskConfig(NodeProperties nodeProperties, Provider provider, Map<String, NodeProperties> nodes,
                     TaskServiceAction taskServiceAction, JsonObject clusterConfig, JsonObject provisionerResults) {
+    this(nodeProperties, provider, nodes, taskServiceAction, clusterConfig, provisionerResults, null);
+  }
+
+  public TaskConfig(NodeProperties nodeProperties, Provider provider, Map<String, NodeProperties> nodes,
+                    TaskServiceAction taskServiceAction, JsonObject clusterConfig, JsonObject provisionerResults,
+                    String nodesSnapshotId) {
     this.nodeProperties = nodeProperties;
     this.provider = provider;
     this.nodes = nodes;
+    this.nodesSnapshotId = nodesSnapshotId;
     this.taskServiceAction = taskServiceAction;
     this.clusterConfig = clusterConfig;
     this.provisionerResults = provisionerResults;
@@ -99,6 +131,26 @@ public class TaskConfig {
     return nodes;
   }
 
+  /**
+   * Get the id of the cluster snapshot that holds all nodes in the cluster, or null if the nodes are included directly.
+   *
+   * @return Id of the cluster snapshot that holds all nodes in the cluster, or null if there is none.
+   */
+  @Nullable
+  public String getNodesSnapshotId() {
+    return nodesSnapshotId;
+  }
+
+  /**
+   * Get a copy of this task config that includes the given nodes directly instead of referring to a cluster snapshot.
+   *
+   * @param nodes Mapping of node id to node properties for all nodes in the cluster.
+   * @return Copy of this task config with the given nodes.
+   */
+  public TaskConfig withNodes(Map<String, NodeProperties> nodes) {
+    return new TaskConfig(nodeProperties, provider, nodes, taskServiceAction, clusterConfig, provisionerResults, null);
+  }
+
   /**
    * Get the condensed service object containing just the relevant action to perform.
    *
@@ -151,12 +203,14 @@ public class TaskConfig {
       Objects.equal(taskServiceAction, that.taskServiceAction) &&
       Objects.equal(provisionerResults, that.provisionerResults) &&
       Objects.equal(clusterConfig, that.clusterConfig) &&
-      Objects.equal(nodes, that.nodes);
+      Objects.equal(nodes, that.nodes) &&
+      Objects.equal(nodesSnapshotId, that.nodesSnapshotId);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(nodeProperties, provider, taskServiceAction, provisionerResults, clusterConfig, nodes);
+    return Objects.hashCode(nodeProperties, provider, taskServiceAction, provisionerResults, clusterConfig, nodes,
+                            nodesSnapshotId);
   }
 
   @Override
@@ -168,6 +222,7 @@ public class TaskConfig {
       .add("provisionerResults", provisionerResults)
       .add("clusterConfig", clusterConfig)
       .add("nodes", nodes)
+      .add("nodesSnapshotId", nodesSnapshotId)
       .toString();
   }
 }
@@ -16,6 +16,7 @@
 package co.cask.coopr.scheduler.task;
 
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.Element;
@@ -33,10 +34,12 @@ import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
 import co.cask.coopr.store.credential.CredentialStore;
 import co.cask.coopr.store.tenant.TenantStore;
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
@@ -44,6 +47,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -59,11 +63,13 @@ public class TaskQueueService {
   private final NodeService nodeService;
   private final TenantProvisionerService tenantProvisionerService;
   private final CredentialStore credentialStore;
+  private final ClusterSnapshotStore clusterSnapshotStore;
   private final ServerStats serverStats;
   private final QueueGroup taskQueues;
   private final QueueGroup jobQueues;
   private final Gson gson;
   private final LoadingCache<String, QueueMetrics> queueMetricsCache;
+  private final int maxTakeBatchSize;
 
   @Inject
   private TaskQueueService(QueueService queueService,
@@ -73,6 +79,7 @@ public class TaskQueueService {
                            NodeService nodeService,
                            TenantStore tenantStore,
                            CredentialStore credentialStore,
+                           ClusterSnapshotStore clusterSnapshotStore,
                            Configuration conf,
                            ServerStats serverStats,
                            Gson gson) {
@@ -81,11 +88,13 @@ public class TaskQueueService {
     this.nodeService = nodeService;
     this.tenantProvisionerService = tenantProvisionerService;
     this.credentialStore = credentialStore;
+    this.clusterSnapshotStore = clusterSnapshotStore;
     this.serverStats = serverStats;
     this.taskQueues = queueService.getQueueGroup(QueueType.PROVISIONER);
     this.jobQueues = queueService.getQueueGroup(QueueType.JOB);
     this.tenantStore = tenantStore;
     this.gson = gson;
+    this.maxTakeBatchSize = Math.max(1, conf.getInt(Constants.TASK_TAKE_MAX_BATCH_SIZE));
     final int queueCacheSeconds = conf.getInt(Constants.Metrics.QUEUE_CACHE_SECONDS);
     // queue metrics can be expensive to fetch
     this.queueMetricsCache = CacheBuilder.newBuilder()
@@ -137,6 +146,26 @@ public class TaskQueueService {
    * @throws IOException if there was an error persisting task information.
    */
   public String takeNextClusterTask(TakeTaskRequest takeRequest) throws IOException, MissingEntityException {
+    List<String> taskJsons = takeNextClusterTasks(takeRequest, 1);
+    return taskJsons.isEmpty() ? null : taskJsons.get(0);
+  }
+
+  /**
+   * Returns up to the given number of tasks from the task queue that can be handed out for provisioning, taking them
+   * from the queue in batches instead of one at a time. All tasks are given to the worker in the request, which must
+   * finish each of them before it times out. Tasks whose job is already marked as FAILED are dropped and skipped,
+   * just like in {@link #takeNextClusterTask(TakeTaskRequest)}. The number of tasks is capped by
+   * {@link Constants#TASK_TAKE_MAX_BATCH_SIZE}. If a task cannot be prepared, it and the rest of its batch are put
+   * back into the queue, and the tasks that were already prepared are returned.
+   *
+   * @param takeRequest Request to take tasks.
+   * @param maxTasks Max number of tasks to take.
+   * @return Task JSONs to be handed over to the provisioner, which is empty if there are no tasks to take.
+   * @throws MissingEntityException if there is no provisioner for the provisioner id in the request.
+   * @throws IOException if there was an error persisting task information.
+   */
+  public List<String> takeNextClusterTasks(TakeTaskRequest takeRequest, int maxTasks)
+    throws IOException, MissingEntityException {
     String tenantId = takeRequest.getTenantId();
     String provisionerId = takeRequest.getProvisionerId();
     String workerId = takeRequest.getWorkerId();
@@ -146,52 +175,132 @@ public class TaskQueueService {
       throw new MissingEntityException("provisioner " + provisionerId + " not found.");
     }
 
-    ClusterTask clusterTask = null;
-    String taskJson = null;
+    int batchSize = Math.min(maxTasks, maxTakeBatchSize);
+    List<String> taskJsons = Lists.newArrayList();
+    // tasks taken together usually belong to the same jobs, so jobs and credentials are only looked up once per call
+    Map<String, ClusterJob> clusterJobs = Maps.newHashMap();
+    Map<String, Map<String, Object>> clusterCredentials = Maps.newHashMap();
 
-    while (clusterTask == null) {
-      Element task = taskQueues.take(tenantId, consumerId);
-      if (task == null) {
+    boolean failed = false;
+    while (!failed && taskJsons.size() < batchSize) {
+      List<Element> tasks = taskQueues.take(tenantId, consumerId, batchSize - taskJsons.size());
+      if (tasks.isEmpty()) {
         break;
       }
 
-      clusterTask = clusterStore.getClusterTask(TaskId.fromString(task.getId()));
-      if (clusterTask != null) {
-        String jobId = clusterTask.getJobId();
-        ClusterJob clusterJob = clusterStore.getClusterJob(JobId.fromString(jobId));
-
-        if (clusterJob == null || clusterJob.getJobStatus() == ClusterJob.Status.FAILED) {
-          // we don't want to give out tasks for failed jobs.  Remove from the queue and move on.
-          taskQueues.recordProgress(consumerId, tenantId, clusterTask.getTaskId(),
-                                    TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
-                                    "Skipped due to job failure.");
-          taskService.dropTask(clusterTask);
-          jobQueues.add(tenantId, new Element(clusterTask.getJobId()));
-          clusterTask = null;
-        } else {
-          SchedulableTask taskObject = gson.fromJson(task.getValue(), SchedulableTask.class);
-          TaskConfig taskConfig = taskObject.getConfig();
-          // fetch any sensitive fields and add them to the provider
-          String clusterId = clusterJob.getClusterId();
-          Map<String, Object> sensitiveFields = credentialStore.get(tenantId, clusterId);
-          taskConfig.getProvider().addFields(sensitiveFields);
-          taskJson = gson.toJson(taskObject);
-          startNodeAction(clusterTask);
+      for (int i = 0; i < tasks.size(); i++) {
+        Element task = tasks.get(i);
+        try {
+          String taskJson = prepareTask(task, tenantId, consumerId, clusterJobs, clusterCredentials);
+          if (taskJson != null) {
+            LOG.trace("task {} given to worker {}", task.getId(), workerId);
+            taskJsons.add(taskJson);
+          }
+        } catch (Exception e) {
+          // put back this and all remaining tasks so other workers can take them, but still hand out the tasks that
+          // were already prepared, since their node actions have been started.
+          for (Element unprepared : tasks.subList(i, tasks.size())) {
+            giveBackTask(unprepared.getId(), tenantId, consumerId);
+          }
+          if (taskJsons.isEmpty()) {
+            Throwables.propagateIfPossible(e, IOException.class);
+            throw Throwables.propagate(e);
+          }
+          LOG.error("Exception preparing task {} for worker {}, returning {} tasks that were already prepared.",
+                    task.getId(), workerId, taskJsons.size(), e);
+          failed = true;
+          break;
         }
-      } else {
-        LOG.error("Got empty task JSON for {}, skipping it.", task.getId());
-        taskQueues.recordProgress(consumerId, tenantId, task.getId(),
-                                  TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
-                                  "Skipped due to empty task JSON.");
       }
     }
 
-    LOG.trace("task {} given to worker {}", clusterTask, workerId);
-    if (clusterTask != null) {
+    if (!taskJsons.isEmpty()) {
       // no point in updating stats if no task was taken
       serverStats.setQueueLength(getTotalQueueSize());
     }
 
+    return taskJsons;
+  }
+
+  /**
+   * Put tasks that were taken but could not be handed over to the provisioner back into the queue, so that other
+   * workers can take them without waiting for them to time out.
+   *
+   * @param takeRequest Request the tasks were taken for.
+   * @param taskJsons Task JSONs that were returned when taking the tasks.
+   */
+  public void giveBackTasks(TakeTaskRequest takeRequest, List<String> taskJsons) {
+    String consumerId = takeRequest.getProvisionerId() + "." + takeRequest.getWorkerId();
+    for (String taskJson : taskJsons) {
+      String taskId = gson.fromJson(taskJson, SchedulableTask.class).getTaskId();
+      giveBackTask(taskId, takeRequest.getTenantId(), consumerId);
+    }
+  }
+
+  // put a task that was taken but not handed out back into the queue.
+  private void giveBackTask(String taskId, String tenantId, String consumerId) {
+    try {
+      taskQueues.recordProgress(consumerId, tenantId, taskId, TrackingQueue.ConsumingStatus.FAILED,
+                                "Not handed out.");
+    } catch (Exception e) {
+      // it will be put back once the worker times out
+      LOG.error("Exception putting task {} back into the queue.", taskId, e);
+    }
+  }
+
+  // get the json to hand out for a task that was taken from the queue, or null if the task should be skipped.
+  private String prepareTask(Element task, String tenantId, String consumerId, Map<String, ClusterJob> clusterJobs,
+                             Map<String, Map<String, Object>> clusterCredentials) throws IOException {
+    ClusterTask clusterTask = clusterStore.getClusterTask(TaskId.fromString(task.getId()));
+    if (clusterTask == null) {
+      LOG.error("Got empty task JSON for {}, skipping it.", task.getId());
+      taskQueues.recordProgress(consumerId, tenantId, task.getId(),
+                                TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
+                                "Skipped due to empty task JSON.");
+      return null;
+    }
+
+    String jobId = clusterTask.getJobId();
+    if (!clusterJobs.containsKey(jobId)) {
+      clusterJobs.put(jobId, clusterStore.getClusterJob(JobId.fromString(jobId)));
+    }
+    ClusterJob clusterJob = clusterJobs.get(jobId);
+
+    if (clusterJob == null || clusterJob.getJobStatus() == ClusterJob.Status.FAILED) {
+      // we don't want to give out tasks for failed jobs.  Remove from the queue and move on.
+      taskQueues.recordProgress(consumerId, tenantId, clusterTask.getTaskId(),
+                                TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
+                                "Skipped due to job failure.");
+      taskService.dropTask(clusterTask);
+      jobQueues.add(tenantId, new Element(clusterTask.getJobId()));
+      return null;
+    }
+
+    SchedulableTask taskObject = gson.fromJson(task.getValue(), SchedulableTask.class);
+    TaskConfig taskConfig = taskObject.getConfig();
+    String clusterId = clusterJob.getClusterId();
+    // fill in the cluster nodes from the snapshot the task refers to
+    String nodesSnapshotId = taskConfig.getNodesSnapshotId();
+    if (nodesSnapshotId != null) {
+      Map<String, NodeProperties> nodes = clusterSnapshotStore.get(nodesSnapshotId);
+      if (nodes == null) {
+        LOG.warn("Cluster snapshot {} for task {} not found, using current cluster nodes.",
+                 nodesSnapshotId, clusterTask.getTaskId());
+        nodes = Maps.newHashMap();
+        for (Node node : clusterStore.getClusterNodes(clusterId)) {
+          nodes.put(node.getId(), node.getProperties());
+        }
+      }
+      taskConfig = taskConfig.withNodes(nodes);
+      taskObject = new SchedulableTask(clusterTask, taskConfig);
+    }
+    // fetch any sensitive fields and add them to the provider
+    if (!clusterCredentials.containsKey(clusterId)) {
+      clusterCredentials.put(clusterId, credentialStore.get(tenantId, clusterId));
+    }
+    taskConfig.getProvider().addFields(clusterCredentials.get(clusterId));
+    String taskJson = gson.toJson(taskObject);
+    startNodeAction(clusterTask);
     return taskJson;
   }
 
@@ -22,6 +22,7 @@ import co.cask.coopr.common.queue.QueueService;
 import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.zookeeper.IdService;
 import co.cask.coopr.management.ServerStats;
+import co.cask.coopr.metrics.NodeUsageBucket;
 import co.cask.coopr.scheduler.Actions;
 import co.cask.coopr.scheduler.ClusterAction;
 import co.cask.coopr.scheduler.callback.CallbackData;
@@ -37,6 +38,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -256,6 +258,26 @@ public class TaskService {
     serverStats.getProvisionerStats().incrementStat(clusterTask.getTaskName());
   }
 
+  /**
+   * Starts the given tasks as in {@link #startTask(ClusterTask)}, writing them all to the store at once.
+   *
+   * @param clusterTasks Tasks to start.
+   * @throws IOException
+   */
+  public void startTasks(Collection<ClusterTask> clusterTasks) throws IOException {
+    long submitTime = System.currentTimeMillis();
+    for (ClusterTask clusterTask : clusterTasks) {
+      clusterTask.setStatus(ClusterTask.Status.IN_PROGRESS);
+      clusterTask.setSubmitTime(submitTime);
+    }
+    clusterStore.writeClusterTasks(clusterTasks);
+
+    // Update stats
+    for (ClusterTask clusterTask : clusterTasks) {
+      serverStats.getProvisionerStats().incrementStat(clusterTask.getTaskName());
+    }
+  }
+
   /**
    * Drop a task by setting the status of the task to {@link ClusterTask.Status#DROPPED} and the status time to the
    * current timestamp. Tasks can be dropped if there is no longer any point in executing them. For example, if another
@@ -305,6 +327,12 @@ public class TaskService {
     clusterTask.setStatusCode(status);
     clusterTask.setStatusTime(System.currentTimeMillis());
     clusterStore.writeClusterTask(clusterTask);
+    try {
+      clusterStore.writeNodeUsageEvent(clusterTask, NodeUsageBucket.HOUR);
+    } catch (IOException e) {
+      // the task itself is complete, so only the usage metrics are affected
+      LOG.error("Unable to record node usage of task {}", clusterTask.getTaskId(), e);
+    }
 
     // update stats
     serverStats.getSuccessfulProvisionerStats().incrementStat(clusterTask.getTaskName());
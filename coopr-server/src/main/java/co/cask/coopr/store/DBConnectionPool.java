@@ -34,6 +34,7 @@ public class DBConnectionPool {
   private static final Logger LOG  = LoggerFactory.getLogger(DBConnectionPool.class);
   private final DataSource datasource;
   private final boolean isEmbeddedDerbyDB;
+  private final boolean isMySQLDB;
 
   @Inject
   private DBConnectionPool(Configuration conf) throws SQLException {
@@ -97,6 +98,7 @@ public class DBConnectionPool {
     this.datasource = new DataSource();
     datasource.setPoolProperties(poolProperties);
     this.isEmbeddedDerbyDB = driverClass.equals(Constants.EMBEDDED_DERBY_DRIVER);
+    this.isMySQLDB = driverClass.startsWith("com.mysql.");
   }
 
   /**
@@ -108,6 +110,15 @@ public class DBConnectionPool {
     return isEmbeddedDerbyDB;
   }
 
+  /**
+   * Returns whether or not the connection pool is connected to a MySQL db.
+   *
+   * @return true if connected to a MySQL db, false if not.
+   */
+  public boolean isMySQLDB() {
+    return isMySQLDB;
+  }
+
   /**
    * Get a {@link Connection} from the pool with auto commit on.
    *
@@ -60,6 +60,38 @@ public final class DBHelper {
     }
   }
 
+  /**
+   * Try and add a column to an embedded derby table if it doesn't already exist, for tables created by older versions.
+   * Returns whether or not the column was added.
+   *
+   * @param connectionPool Connection pool to use to add the column.
+   * @param table Name of the table to add the column to.
+   * @param columnDefinition Definition of the column, as it would appear in a create table statement.
+   * @return Whether or not the column was added.
+   * @throws SQLException
+   */
+  public static boolean addDerbyColumnIfNotExists(DBConnectionPool connectionPool, String table,
+                                                  String columnDefinition) throws SQLException {
+    Connection conn = connectionPool.getConnection();
+    try {
+      Statement statement = conn.createStatement();
+      try {
+        statement.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + columnDefinition);
+        return true;
+      } catch (SQLException e) {
+        // same code as for tables that already exist
+        if (!e.getSQLState().equals("X0Y32")) {
+          throw e;
+        }
+        return false;
+      } finally {
+        statement.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
+
   /**
    * Create an index on given columns in a table for an embedded derby table.
    *
@@ -17,6 +17,7 @@ package co.cask.coopr.store;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
@@ -25,8 +26,12 @@ import com.google.common.io.Closeables;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.sql.Blob;
 import java.sql.PreparedStatement;
@@ -34,6 +39,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Executes prepared statements against databases while taking care of serialization/deserialization of blobs.
@@ -228,6 +235,27 @@ public final class DBQueryExecutor {
     }
   }
 
+  /**
+   * Queries for a single long, returning the value of the long or null if there are no results.
+   * Statement passed in must be closed by the caller.
+   *
+   * @param statement PreparedStatement of the query, ready for execution.
+   * @return Result of the query, or null if no results.
+   * @throws SQLException
+   */
+  public Long getLong(PreparedStatement statement) throws SQLException {
+    ResultSet results = statement.executeQuery();
+    try {
+      if (!results.next()) {
+        return null;
+      } else {
+        return results.getLong(1);
+      }
+    } finally {
+      results.close();
+    }
+  }
+
   /**
    * Performs the query and returns whether or not there are results. Statement passed in must be closed by the caller.
    *
@@ -278,4 +306,55 @@ public final class DBQueryExecutor {
   public <T> byte[] toBytes(T object, Type type) {
     return gson.toJson(object, type).getBytes(Charsets.UTF_8);
   }
+
+  /**
+   * Deserialize a blob into an object. Assumes blob was gzipped json, as written by
+   * {@link #toCompressedBytes(Object, Type)}.
+   *
+   * @param blob Blob to deserialize.
+   * @param clazz Class of the object to deserialize the blob into.
+   * @param <T> Type of the object to deserialize.
+   * @return Deserialized object.
+   * @throws SQLException
+   */
+  public <T> T deserializeCompressedBlob(Blob blob, Class<T> clazz) throws SQLException {
+    if (blob == null) {
+      return null;
+    }
+    try {
+      Reader reader = new InputStreamReader(new GZIPInputStream(blob.getBinaryStream()), Charsets.UTF_8);
+      try {
+        return gson.fromJson(reader, clazz);
+      } finally {
+        Closeables.closeQuietly(reader);
+      }
+    } catch (IOException e) {
+      throw new SQLException("Unable to decompress blob", e);
+    }
+  }
+
+  /**
+   * Serialize the given object into json, then into gzipped bytes of that json. Meant for objects with large text
+   * fields, such as logs, that compress well.
+   *
+   * @param object Object to serialize.
+   * @param type Type of the object to serialize.
+   * @param <T> Type of the object to serialize.
+   * @return Object as compressed bytes.
+   */
+  public <T> byte[] toCompressedBytes(T object, Type type) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), Charsets.UTF_8);
+      try {
+        gson.toJson(object, type, writer);
+      } finally {
+        writer.close();
+      }
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      // cannot happen when writing to a byte array
+      throw Throwables.propagate(e);
+    }
+  }
 }
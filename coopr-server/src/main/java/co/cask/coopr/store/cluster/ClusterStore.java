@@ -2,13 +2,17 @@ package co.cask.coopr.store.cluster;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.metrics.NodeUsageBucket;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.spec.ProvisionerAction;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -24,6 +28,15 @@ public interface ClusterStore extends ClusterStoreView {
    */
   ClusterJob getClusterJob(JobId jobId) throws IOException;
 
+  /**
+   * Get the version of a cluster job without getting the rest of the job. The version is incremented by one every time
+   * the job is written, so it can be used to tell whether a job was changed since it was last read or written.
+   * @param jobId Id of the cluster job to get the version of.
+   * @return Version of the cluster job with the given id, or null if none exists.
+   * @throws IOException if there was a problem getting the version of the cluster job.
+   */
+  Long getClusterJobVersion(JobId jobId) throws IOException;
+
   /**
    * Write a cluster job to the store.
    * @param clusterJob The cluster job to write.
@@ -47,13 +60,110 @@ public interface ClusterStore extends ClusterStoreView {
   ClusterTask getClusterTask(TaskId taskId) throws IOException;
 
   /**
-   * Retrieves tasks according to the {@code filter} filters.
+   * Get the cluster tasks with the given ids, using as few queries as possible.
+   * @param taskIds Ids of the cluster tasks to get.
+   * @return Mapping of task id to cluster task for the tasks that exist. Ids of tasks that do not exist are left out.
+   * @throws IOException if there was a problem getting the cluster tasks.
+   */
+  Map<String, ClusterTask> getClusterTasks(Collection<TaskId> taskIds) throws IOException;
+
+  /**
+   * Get the cluster tasks with the given ids whose status is not the given status, using as few queries as possible.
+   * Useful for finding out which of a set of tasks has changed status.
+   * @param taskIds Ids of the cluster tasks to get.
+   * @param status Status of tasks to leave out.
+   * @return Mapping of task id to cluster task for the tasks that exist and do not have the given status.
+   * @throws IOException if there was a problem getting the cluster tasks.
+   */
+  Map<String, ClusterTask> getClusterTasksNotInStatus(Collection<TaskId> taskIds,
+                                                      ClusterTask.Status status) throws IOException;
+
+  /**
+   * Reads the completed CREATE and DELETE tasks according to the {@code filter} filters and passes them to the
+   * given processor one at a time, ordered by cluster id and then by status time. Tasks are not held in memory.
    *
    * @param filter the object wrapper around filters
-   * @return list of cluster tasks according to the {@code filter} filters
-   * @throws IOException if there was a problem getting the cluster task.
+   * @param processor the processor to pass each task to
+   * @throws IOException if there was a problem reading the cluster tasks.
+   */
+  void processClusterTasks(ClusterTaskFilter filter, ClusterTaskProcessor processor) throws IOException;
+
+  /**
+   * Retrieves the status time of the earliest completed task with the given action according to the {@code filter}
+   * filters.
+   *
+   * @param filter the object wrapper around filters
+   * @param action the action of the tasks
+   * @return status time in milliseconds, or null if there are no such tasks
+   * @throws IOException if there was a problem getting the status time.
+   */
+  Long getEarliestClusterTaskTime(ClusterTaskFilter filter, ProvisionerAction action) throws IOException;
+
+  /**
+   * Retrieves the status time of the latest completed task with the given action according to the {@code filter}
+   * filters.
+   *
+   * @param filter the object wrapper around filters
+   * @param action the action of the tasks
+   * @return status time in milliseconds, or null if there are no such tasks
+   * @throws IOException if there was a problem getting the status time.
+   */
+  Long getLatestClusterTaskTime(ClusterTaskFilter filter, ProvisionerAction action) throws IOException;
+
+  /**
+   * Records the node create or delete of a completed CREATE or DELETE task in the node usage rollups, in the rollup
+   * bucket that contains the status time of the task. A node counts as live from a create until the next delete, so
+   * creates of live nodes and deletes of nodes that are not live are ignored, as are all other tasks.
+   *
+   * @param task the completed task
+   * @param bucketSize size in milliseconds of the bucket to create if no bucket contains the status time yet
+   * @throws IOException if there was a problem writing the rollups.
    */
-  List<ClusterTask> getClusterTasks(ClusterTaskFilter filter) throws IOException;
+  void writeNodeUsageEvent(ClusterTask task, long bucketSize) throws IOException;
+
+  /**
+   * Retrieves the node usage rollup buckets that overlap the given time range according to the {@code filter}
+   * filters, summed over all matching clusters and ordered by start time.
+   *
+   * @param filter the object wrapper around filters
+   * @param start start of the time range in milliseconds, inclusive
+   * @param end end of the time range in milliseconds, exclusive
+   * @return node usage buckets overlapping the time range
+   * @throws IOException if there was a problem reading the rollups.
+   */
+  List<NodeUsageBucket> getNodeUsageBuckets(ClusterTaskFilter filter, long start, long end) throws IOException;
+
+  /**
+   * Retrieves the number of nodes that were live at the given time according to the {@code filter} filters, counting
+   * only the rollup buckets that end at or before that time.
+   *
+   * @param filter the object wrapper around filters
+   * @param time the time in milliseconds
+   * @return number of live nodes
+   * @throws IOException if there was a problem reading the rollups.
+   */
+  long getNodeUsageLiveNodes(ClusterTaskFilter filter, long time) throws IOException;
+
+  /**
+   * Retrieves the start time of the earliest node usage rollup bucket according to the {@code filter} filters.
+   *
+   * @param filter the object wrapper around filters
+   * @return start time in milliseconds, or null if there are no rollups
+   * @throws IOException if there was a problem reading the rollups.
+   */
+  Long getEarliestNodeUsageTime(ClusterTaskFilter filter) throws IOException;
+
+  /**
+   * Merges all node usage rollup buckets of the given size that end at or before the given time into buckets of the
+   * new size. The new size must be a multiple of the old size, and the time must be a multiple of the new size.
+   *
+   * @param bucketSize size in milliseconds of the buckets to merge
+   * @param newBucketSize size in milliseconds of the merged buckets
+   * @param before time in milliseconds that merged buckets must end at or before
+   * @return number of buckets that were merged
+   * @throws IOException if there was a problem merging the rollups.
+   */
+  int compactNodeUsage(long bucketSize, long newBucketSize, long before) throws IOException;
 
   /**
    * Write a cluster task to the store using its id.
@@ -62,6 +172,13 @@ public interface ClusterStore extends ClusterStoreView {
    */
   void writeClusterTask(ClusterTask clusterTask) throws IOException;
 
+  /**
+   * Write the given cluster tasks to the store in a single transaction.
+   * @param clusterTasks The cluster tasks to write.
+   * @throws IOException if there was a problem writing the cluster tasks. None of the tasks are written in that case.
+   */
+  void writeClusterTasks(Collection<ClusterTask> clusterTasks) throws IOException;
+
   /**
    * Deletes the cluster task that has the given id.
    * @param taskId Id of the cluster task to delete.
@@ -91,6 +208,37 @@ public interface ClusterStore extends ClusterStoreView {
    */
   void deleteNode(String nodeId) throws IOException;
 
+  /**
+   * Write the given action to the action history of the given node, replacing the action with the same task id and
+   * submit time if it was written before. Unlike the actions in the node itself, the history is not trimmed.
+   * @param node The node the action took place on.
+   * @param action The action to write.
+   * @throws IOException if there was a problem writing the action.
+   */
+  void writeNodeAction(Node node, Node.Action action) throws IOException;
+
+  /**
+   * Write the given actions to the action history of the given node, skipping actions that are already in the history.
+   * Used for actions from before the history existed, which were only kept in the node itself.
+   * @param node The node the actions took place on.
+   * @param actions The actions to write if they are not in the history yet.
+   * @throws IOException if there was a problem writing the actions.
+   */
+  void writeNodeActionsIfMissing(Node node, List<Node.Action> actions) throws IOException;
+
+  /**
+   * Get a page of the action history of the node with the given id, most recently submitted actions first. Actions
+   * submitted at the same time are ordered by task id, largest first.
+   * @param nodeId Id of the node to get actions for.
+   * @param before Only return actions submitted before this timestamp in milliseconds.
+   * @param beforeTaskId If not null, also return actions submitted at the before timestamp whose task id is smaller
+   *                     than this one, which is the task id of the last action in the previous page.
+   * @param limit Max number of actions to return.
+   * @return List of actions submitted before the given time and task, most recent first.
+   * @throws IOException if there was a problem getting the actions.
+   */
+  List<Node.Action> getNodeActions(String nodeId, long before, String beforeTaskId, int limit) throws IOException;
+
   /**
    * Returns an immutable set of all IN_PROGRESS tasks that were submitted before timestamp.
    * @param timestamp timestamp in milliseconds.
@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.cluster;
+
+import co.cask.coopr.scheduler.task.ClusterTask;
+
+import java.io.IOException;
+
+/**
+ * Processor that is given cluster tasks one at a time as they are read from a {@link ClusterStore}, so that large
+ * numbers of tasks can be aggregated without holding them all in memory.
+ */
+public interface ClusterTaskProcessor {
+
+  /**
+   * Called for each task that is read.
+   *
+   * @param task Task that was read.
+   * @throws IOException if there was a problem processing the task.
+   */
+  void process(ClusterTask task) throws IOException;
+}
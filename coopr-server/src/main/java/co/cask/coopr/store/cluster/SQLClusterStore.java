@@ -3,6 +3,7 @@ package co.cask.coopr.store.cluster;
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.ClusterSummary;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.metrics.NodeUsageBucket;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
@@ -12,21 +13,49 @@ import co.cask.coopr.store.DBConnectionPool;
 import co.cask.coopr.store.DBHelper;
 import co.cask.coopr.store.DBPut;
 import co.cask.coopr.store.DBQueryExecutor;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A full view of the cluster store backed by a sql database.
  */
 public class SQLClusterStore implements ClusterStore {
   private static final Logger LOG  = LoggerFactory.getLogger(SQLClusterStore.class);
+  // max number of task ids to put in a single IN clause
+  private static final int MAX_IN_LIST_SIZE = 500;
+  private static final int TASK_FETCH_SIZE = 1000;
+  private static final int NODE_USAGE_BATCH_SIZE = 1000;
+  private static final int NODE_USAGE_WRITE_ATTEMPTS = 5;
+  private static final String UPDATE_TASK_SQL =
+    "UPDATE tasks SET task=?, status=?, submit_time=?, status_time=?, type=?, " +
+      "cluster_template_name=?, user_id=?, tenant_id=?" +
+      " WHERE task_num=? AND job_num=? AND cluster_id=?";
+  private static final String INSERT_TASK_SQL =
+    "INSERT INTO tasks (task_num, job_num, cluster_id, status, submit_time, task, type, " +
+      "cluster_template_name, user_id, tenant_id)" +
+      " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final String INSERT_NODE_USAGE_SQL =
+    "INSERT INTO node_usage (cluster_id, bucket_start, bucket_end, tenant_id, user_id, cluster_template_name, " +
+      "live_delta, live_offset) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
   private final DBQueryExecutor dbQueryExecutor;
   private final DBConnectionPool dbConnectionPool;
   private final ClusterStoreView systemView;
@@ -59,6 +88,29 @@ public class SQLClusterStore implements ClusterStore {
     }
   }
 
+  @Override
+  public Long getClusterJobVersion(JobId jobId) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement =
+          conn.prepareStatement("SELECT version FROM jobs WHERE job_num=? AND cluster_id=?");
+        try {
+          statement.setLong(1, jobId.getJobNum());
+          statement.setLong(2, Long.parseLong(jobId.getClusterId()));
+          return dbQueryExecutor.getLong(statement);
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting version of cluster job {}", jobId, e);
+      throw new IOException("Exception getting version of cluster job " + jobId, e);
+    }
+  }
+
   @Override
   public void writeClusterJob(ClusterJob clusterJob) throws IOException {
     JobId jobId = JobId.fromString(clusterJob.getJobId());
@@ -123,28 +175,312 @@ public class SQLClusterStore implements ClusterStore {
   }
 
   @Override
-  public List<ClusterTask> getClusterTasks(ClusterTaskFilter filter) throws IOException {
+  public Map<String, ClusterTask> getClusterTasks(Collection<TaskId> taskIds) throws IOException {
+    return getClusterTasks(taskIds, null);
+  }
+
+  @Override
+  public Map<String, ClusterTask> getClusterTasksNotInStatus(Collection<TaskId> taskIds,
+                                                             ClusterTask.Status status) throws IOException {
+    return getClusterTasks(taskIds, status);
+  }
+
+  // get the tasks with the given ids, leaving out tasks with the given status if it is not null.
+  private Map<String, ClusterTask> getClusterTasks(Collection<TaskId> taskIds,
+                                                   ClusterTask.Status excludedStatus) throws IOException {
+    Map<String, ClusterTask> tasks = Maps.newHashMapWithExpectedSize(taskIds.size());
+    if (taskIds.isEmpty()) {
+      return tasks;
+    }
+    String statusFilter = excludedStatus == null ? "" : " AND status<>?";
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        StringBuilder builder = new StringBuilder("SELECT task FROM tasks WHERE status = ? AND type IN (?,?)")
-          .append(addFilter("tenant_id = ", filter.getTenantId()))
-          .append(addFilter("user_id = ", filter.getUserId()))
-          .append(addFilter("cluster_id = ", filter.getClusterId()))
-          .append(addFilter("cluster_template_name = ", filter.getClusterTemplate()))
-          .append(" ORDER BY status_time ASC");
+        for (Collection<TaskId> jobTaskIds : groupByJob(taskIds)) {
+          for (List<TaskId> batch : Iterables.partition(jobTaskIds, MAX_IN_LIST_SIZE)) {
+            PreparedStatement statement = conn.prepareStatement(
+              "SELECT task FROM tasks WHERE cluster_id=? AND job_num=? AND task_num IN " + inList(batch.size()) +
+                statusFilter);
+            try {
+              setTaskIds(statement, batch);
+              if (excludedStatus != null) {
+                statement.setString(batch.size() + 3, excludedStatus.name());
+              }
+              for (ClusterTask task : dbQueryExecutor.getQueryList(statement, ClusterTask.class)) {
+                tasks.put(task.getTaskId(), task);
+              }
+            } finally {
+              statement.close();
+            }
+          }
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting {} cluster tasks", taskIds.size(), e);
+      throw new IOException("Exception getting cluster tasks", e);
+    }
+    return tasks;
+  }
 
-        PreparedStatement statement =
-          conn.prepareStatement(builder.toString());
+  @Override
+  public void processClusterTasks(ClusterTaskFilter filter, ClusterTaskProcessor processor) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = prepareTaskFilterStatement(
+          conn, "SELECT task FROM tasks WHERE status = ? AND type IN (?,?)", filter,
+          " ORDER BY cluster_id ASC, status_time ASC", ProvisionerAction.CREATE, ProvisionerAction.DELETE);
+        try {
+          // hint to the driver to stream the results instead of reading them all at once. The MySQL driver ignores
+          // regular fetch sizes and only streams forward only, read only results with a fetch size of MIN_VALUE.
+          // Nothing else can use the connection until the results are closed, which is fine since processors use
+          // their own connections.
+          statement.setFetchSize(dbConnectionPool.isMySQLDB() ? Integer.MIN_VALUE : TASK_FETCH_SIZE);
+          ResultSet rs = statement.executeQuery();
+          try {
+            while (rs.next()) {
+              processor.process(dbQueryExecutor.deserializeBlob(rs.getBlob(1), ClusterTask.class));
+            }
+          } finally {
+            rs.close();
+          }
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception reading cluster tasks by filters {}", filter, e);
+      throw new IOException("Exception reading cluster tasks by filters " + filter, e);
+    }
+  }
+
+  @Override
+  public Long getEarliestClusterTaskTime(ClusterTaskFilter filter, ProvisionerAction action) throws IOException {
+    return getClusterTaskTime("MIN", filter, action);
+  }
+
+  @Override
+  public Long getLatestClusterTaskTime(ClusterTaskFilter filter, ProvisionerAction action) throws IOException {
+    return getClusterTaskTime("MAX", filter, action);
+  }
+
+  // get the result of the given aggregate function over the status times of completed tasks matching the filter.
+  private Long getClusterTaskTime(String function, ClusterTaskFilter filter,
+                                  ProvisionerAction action) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = prepareTaskFilterStatement(
+          conn, "SELECT " + function + "(status_time) FROM tasks WHERE status = ? AND type IN (?)", filter, "",
+          action);
+        try {
+          ResultSet rs = statement.executeQuery();
+          try {
+            if (!rs.next()) {
+              return null;
+            }
+            Timestamp time = rs.getTimestamp(1);
+            return time == null ? null : time.getTime();
+          } finally {
+            rs.close();
+          }
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting {} time of {} tasks by filters {}", function, action, filter, e);
+      throw new IOException("Exception getting " + function + " time of " + action + " tasks by filters " + filter, e);
+    }
+  }
+
+  // prepare a statement selecting completed tasks with one of the given actions that match the filter.
+  private PreparedStatement prepareTaskFilterStatement(Connection conn, String select, ClusterTaskFilter filter,
+                                                       String suffix, ProvisionerAction... actions)
+    throws SQLException {
+    StringBuilder builder = new StringBuilder(select)
+      .append(addFilter("tenant_id = ", filter.getTenantId()))
+      .append(addFilter("user_id = ", filter.getUserId()))
+      .append(addFilter("cluster_id = ", filter.getClusterId()))
+      .append(addFilter("cluster_template_name = ", filter.getClusterTemplate()))
+      .append(suffix);
+
+    PreparedStatement statement = conn.prepareStatement(builder.toString(), ResultSet.TYPE_FORWARD_ONLY,
+                                                        ResultSet.CONCUR_READ_ONLY);
+    try {
+      int index = initializeFilter(statement, ClusterTask.Status.COMPLETE.name(), 1);
+      for (ProvisionerAction action : actions) {
+        index = initializeFilter(statement, action.name(), index);
+      }
+      index = initializeFilter(statement, filter.getTenantId(), index);
+      index = initializeFilter(statement, filter.getUserId(), index);
+      index = initializeFilter(statement, filter.getClusterId(), index);
+      initializeFilter(statement, filter.getClusterTemplate(), index);
+      return statement;
+    } catch (SQLException e) {
+      statement.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public void writeNodeUsageEvent(ClusterTask task, long bucketSize) throws IOException {
+    if (getNodeUsageSign(task) == 0) {
+      return;
+    }
+    try {
+      // tasks of the same cluster complete at the same time without any lock, so two of them can both find no row
+      // and both insert one. The one that loses gets a duplicate key or deadlock error, and is retried from the start,
+      // at which point it sees the row written by the other.
+      int attempt = 1;
+      while (true) {
+        Connection conn = dbConnectionPool.getConnection(false);
         try {
-          int index = initializeFilter(statement, ClusterTask.Status.COMPLETE.name(), 1);
-          index = initializeFilter(statement, ProvisionerAction.CREATE.name(), index);
-          index = initializeFilter(statement, ProvisionerAction.DELETE.name(), index);
-          index = initializeFilter(statement, filter.getTenantId(), index);
-          index = initializeFilter(statement, filter.getUserId(), index);
-          index = initializeFilter(statement, filter.getClusterId(), index);
-          initializeFilter(statement, filter.getClusterTemplate(), index);
-          return dbQueryExecutor.getQueryList(statement, ClusterTask.class);
+          writeNodeUsageEvent(conn, task, bucketSize);
+          conn.commit();
+          return;
+        } catch (SQLException e) {
+          conn.rollback();
+          if (attempt >= NODE_USAGE_WRITE_ATTEMPTS || !isConflict(e)) {
+            throw e;
+          }
+          LOG.debug("Conflict writing node usage of task {} on attempt #{}, retrying.", task.getTaskId(), attempt, e);
+          attempt++;
+        } finally {
+          conn.close();
+        }
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception writing node usage of task {}", task.getTaskId(), e);
+      throw new IOException("Exception writing node usage of task " + task.getTaskId(), e);
+    }
+  }
+
+  // write the node usage event of the task using the given connection, without committing.
+  private void writeNodeUsageEvent(Connection conn, ClusterTask task, long bucketSize) throws SQLException {
+    int sign = getNodeUsageSign(task);
+    if (sign == 0) {
+      return;
+    }
+    long clusterId = Long.parseLong(task.getClusterId());
+    if (setNodeLive(conn, task.getNodeId(), clusterId, sign > 0)) {
+      addNodeUsageEvent(conn, task, clusterId, sign, bucketSize);
+    }
+  }
+
+  // whether the exception is from a concurrent write of the same row, either a duplicate key or a deadlock.
+  private static boolean isConflict(SQLException e) {
+    String state = e.getSQLState();
+    return state != null && (state.startsWith("23") || state.startsWith("40"));
+  }
+
+  // 1 for completed node creates, -1 for completed node deletes, and 0 for tasks that do not change node usage.
+  private static int getNodeUsageSign(ClusterTask task) {
+    if (task.getNodeId() == null || task.getStatus() != ClusterTask.Status.COMPLETE) {
+      return 0;
+    }
+    if (task.getTaskName() == ProvisionerAction.CREATE) {
+      return 1;
+    } else if (task.getTaskName() == ProvisionerAction.DELETE) {
+      return -1;
+    }
+    return 0;
+  }
+
+  // mark the node as live or not live, returning whether anything changed.
+  private boolean setNodeLive(Connection conn, String nodeId, long clusterId, boolean live) throws SQLException {
+    if (!live) {
+      PreparedStatement statement = conn.prepareStatement("DELETE FROM live_nodes WHERE cluster_id=? AND node_id=?");
+      try {
+        statement.setLong(1, clusterId);
+        statement.setString(2, nodeId);
+        return statement.executeUpdate() > 0;
+      } finally {
+        statement.close();
+      }
+    }
+    PreparedStatement statement = conn.prepareStatement(
+      "SELECT node_id FROM live_nodes WHERE cluster_id=? AND node_id=?");
+    try {
+      statement.setLong(1, clusterId);
+      statement.setString(2, nodeId);
+      if (dbQueryExecutor.hasResults(statement)) {
+        return false;
+      }
+    } finally {
+      statement.close();
+    }
+    statement = conn.prepareStatement("INSERT INTO live_nodes (cluster_id, node_id) VALUES (?, ?)");
+    try {
+      statement.setLong(1, clusterId);
+      statement.setString(2, nodeId);
+      statement.executeUpdate();
+      return true;
+    } finally {
+      statement.close();
+    }
+  }
+
+  // add the event to the bucket containing its time, which may already have been merged into a bigger bucket,
+  // or to a new bucket if there is none.
+  private void addNodeUsageEvent(Connection conn, ClusterTask task, long clusterId, int sign,
+                                 long bucketSize) throws SQLException {
+    long time = task.getStatusTime();
+    PreparedStatement statement = conn.prepareStatement(
+      "UPDATE node_usage SET live_delta=live_delta+?, live_offset=live_offset+?*(?-bucket_start)" +
+        " WHERE cluster_id=? AND bucket_start<=? AND bucket_end>?");
+    try {
+      statement.setLong(1, sign);
+      statement.setLong(2, sign);
+      statement.setLong(3, time);
+      statement.setLong(4, clusterId);
+      statement.setLong(5, time);
+      statement.setLong(6, time);
+      if (statement.executeUpdate() > 0) {
+        return;
+      }
+    } finally {
+      statement.close();
+    }
+    long bucketStart = time - time % bucketSize;
+    statement = conn.prepareStatement(INSERT_NODE_USAGE_SQL);
+    try {
+      setNodeUsageInsertParams(statement, clusterId, bucketStart, bucketStart + bucketSize,
+                               task.getAccount().getTenantId(), task.getAccount().getUserId(),
+                               task.getClusterTemplateName(), sign, sign * (time - bucketStart));
+      statement.executeUpdate();
+    } finally {
+      statement.close();
+    }
+  }
+
+  @Override
+  public List<NodeUsageBucket> getNodeUsageBuckets(ClusterTaskFilter filter, long start,
+                                                   long end) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = prepareNodeUsageStatement(
+          conn, "SELECT bucket_start, bucket_end, SUM(live_delta), SUM(live_offset) FROM node_usage" +
+            " WHERE bucket_end > ? AND bucket_start < ?", filter,
+          " GROUP BY bucket_start, bucket_end ORDER BY bucket_start ASC", start, end);
+        try {
+          ResultSet rs = statement.executeQuery();
+          try {
+            List<NodeUsageBucket> buckets = Lists.newArrayList();
+            while (rs.next()) {
+              buckets.add(new NodeUsageBucket(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)));
+            }
+            return buckets;
+          } finally {
+            rs.close();
+          }
         } finally {
           statement.close();
         }
@@ -152,11 +488,247 @@ public class SQLClusterStore implements ClusterStore {
         conn.close();
       }
     } catch (SQLException e) {
-      LOG.error("Exception getting cluster tasks by filters {}", filter, e);
-      throw new IOException("Exception getting cluster tasks by filters " + filter, e);
+      LOG.error("Exception getting node usage by filters {}", filter, e);
+      throw new IOException("Exception getting node usage by filters " + filter, e);
     }
   }
 
+  @Override
+  public long getNodeUsageLiveNodes(ClusterTaskFilter filter, long time) throws IOException {
+    Long liveNodes = getNodeUsageAggregate("SELECT SUM(live_delta) FROM node_usage WHERE bucket_end <= ?",
+                                           filter, time);
+    return liveNodes == null ? 0 : liveNodes;
+  }
+
+  @Override
+  public Long getEarliestNodeUsageTime(ClusterTaskFilter filter) throws IOException {
+    return getNodeUsageAggregate("SELECT MIN(bucket_start) FROM node_usage WHERE bucket_start < ?",
+                                 filter, Long.MAX_VALUE);
+  }
+
+  // get the single long result of an aggregate query over the node usage rollups, or null if there is none.
+  private Long getNodeUsageAggregate(String select, ClusterTaskFilter filter, long time) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = prepareNodeUsageStatement(conn, select, filter, "", time);
+        try {
+          ResultSet rs = statement.executeQuery();
+          try {
+            if (!rs.next()) {
+              return null;
+            }
+            long result = rs.getLong(1);
+            return rs.wasNull() ? null : result;
+          } finally {
+            rs.close();
+          }
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting node usage by filters {}", filter, e);
+      throw new IOException("Exception getting node usage by filters " + filter, e);
+    }
+  }
+
+  // prepare a statement over the node usage rollups that match the filter, with the given times as the first params.
+  private PreparedStatement prepareNodeUsageStatement(Connection conn, String select, ClusterTaskFilter filter,
+                                                      String suffix, long... times) throws SQLException {
+    StringBuilder builder = new StringBuilder(select)
+      .append(addFilter("tenant_id = ", filter.getTenantId()))
+      .append(addFilter("user_id = ", filter.getUserId()))
+      .append(addFilter("cluster_id = ", filter.getClusterId()))
+      .append(addFilter("cluster_template_name = ", filter.getClusterTemplate()))
+      .append(suffix);
+
+    PreparedStatement statement = conn.prepareStatement(builder.toString());
+    try {
+      int index = 1;
+      for (long time : times) {
+        statement.setLong(index++, time);
+      }
+      index = initializeFilter(statement, filter.getTenantId(), index);
+      index = initializeFilter(statement, filter.getUserId(), index);
+      index = initializeFilter(statement, filter.getClusterId(), index);
+      initializeFilter(statement, filter.getClusterTemplate(), index);
+      return statement;
+    } catch (SQLException e) {
+      statement.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public int compactNodeUsage(long bucketSize, long newBucketSize, long before) throws IOException {
+    int numMerged = 0;
+    try {
+      Connection conn = dbConnectionPool.getConnection(false);
+      try {
+        PreparedStatement select = conn.prepareStatement(
+          "SELECT cluster_id, bucket_start, tenant_id, user_id, cluster_template_name, live_delta, live_offset" +
+            " FROM node_usage WHERE bucket_end-bucket_start=? AND bucket_end<=? ORDER BY cluster_id, bucket_start");
+        try {
+          PreparedStatement insert = conn.prepareStatement(INSERT_NODE_USAGE_SQL);
+          try {
+            select.setLong(1, bucketSize);
+            select.setLong(2, before);
+            ResultSet rs = select.executeQuery();
+            try {
+              // buckets are read in order, so a merged bucket is complete as soon as a row for another one is read
+              long clusterId = 0;
+              long mergedStart = 0;
+              long liveDelta = 0;
+              long liveOffset = 0;
+              String tenantId = null;
+              String userId = null;
+              String template = null;
+              while (rs.next()) {
+                long rowClusterId = rs.getLong(1);
+                long rowStart = rs.getLong(2);
+                long rowMergedStart = rowStart - rowStart % newBucketSize;
+                if (numMerged > 0 && (rowClusterId != clusterId || rowMergedStart != mergedStart)) {
+                  setNodeUsageInsertParams(insert, clusterId, mergedStart, mergedStart + newBucketSize,
+                                           tenantId, userId, template, liveDelta, liveOffset);
+                  insert.addBatch();
+                  liveDelta = 0;
+                  liveOffset = 0;
+                }
+                clusterId = rowClusterId;
+                mergedStart = rowMergedStart;
+                tenantId = rs.getString(3);
+                userId = rs.getString(4);
+                template = rs.getString(5);
+                long rowDelta = rs.getLong(6);
+                liveDelta += rowDelta;
+                // offsets are relative to the start of the bucket
+                liveOffset += rs.getLong(7) + rowDelta * (rowStart - mergedStart);
+                numMerged++;
+              }
+              if (numMerged > 0) {
+                setNodeUsageInsertParams(insert, clusterId, mergedStart, mergedStart + newBucketSize,
+                                         tenantId, userId, template, liveDelta, liveOffset);
+                insert.addBatch();
+              }
+            } finally {
+              rs.close();
+            }
+            if (numMerged == 0) {
+              return 0;
+            }
+            PreparedStatement delete = conn.prepareStatement(
+              "DELETE FROM node_usage WHERE bucket_end-bucket_start=? AND bucket_end<=?");
+            try {
+              delete.setLong(1, bucketSize);
+              delete.setLong(2, before);
+              delete.executeUpdate();
+            } finally {
+              delete.close();
+            }
+            insert.executeBatch();
+          } finally {
+            insert.close();
+          }
+        } finally {
+          select.close();
+        }
+        conn.commit();
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception merging node usage buckets of size {}", bucketSize, e);
+      throw new IOException("Exception merging node usage buckets of size " + bucketSize, e);
+    }
+    return numMerged;
+  }
+
+  /**
+   * Rebuild the node usage rollups from the task history if there are none yet, which is the case when the rollups are
+   * first introduced. Should only be called before the server starts completing tasks, and only if no other server
+   * uses the same database.
+   *
+   * @throws IOException if there was a problem reading the tasks or writing the rollups.
+   */
+  void rebuildNodeUsageIfEmpty() throws IOException {
+    ClusterTaskFilter all = new ClusterTaskFilter(null, null, null, null, null, null, null, null);
+    if (getEarliestNodeUsageTime(all) != null || getEarliestClusterTaskTime(all, ProvisionerAction.CREATE) == null) {
+      return;
+    }
+    rebuildNodeUsage();
+  }
+
+  /**
+   * Rebuild the node usage rollups from the task history, replacing any existing rollups. Tasks are written in batches,
+   * each in their own transaction, so a failed rebuild leaves partial rollups behind and should be run again.
+   * Should only be called while no server is completing tasks.
+   *
+   * @throws IOException if there was a problem reading the tasks or writing the rollups.
+   */
+  void rebuildNodeUsage() throws IOException {
+    LOG.info("Building node usage rollups from the task history...");
+    final AtomicInteger numTasks = new AtomicInteger(0);
+    try {
+      final Connection conn = dbConnectionPool.getConnection(false);
+      try {
+        Statement statement = conn.createStatement();
+        try {
+          statement.executeUpdate("DELETE FROM node_usage");
+          statement.executeUpdate("DELETE FROM live_nodes");
+        } finally {
+          statement.close();
+        }
+        ClusterTaskFilter all = new ClusterTaskFilter(null, null, null, null, null, null, null, null);
+        processClusterTasks(all, new ClusterTaskProcessor() {
+          @Override
+          public void process(ClusterTask task) throws IOException {
+            try {
+              writeNodeUsageEvent(conn, task, NodeUsageBucket.HOUR);
+              if (numTasks.incrementAndGet() % NODE_USAGE_BATCH_SIZE == 0) {
+                conn.commit();
+                LOG.info("Added node usage of {} tasks.", numTasks.get());
+              }
+            } catch (SQLException e) {
+              throw new IOException("Exception writing node usage of task " + task.getTaskId(), e);
+            }
+          }
+        });
+        conn.commit();
+      } catch (IOException e) {
+        conn.rollback();
+        throw e;
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception building node usage rollups", e);
+      throw new IOException("Exception building node usage rollups", e);
+    }
+    LOG.info("Finished building node usage rollups from {} tasks.", numTasks.get());
+  }
+
+  private static void setNodeUsageInsertParams(PreparedStatement statement, long clusterId, long bucketStart,
+                                               long bucketEnd, String tenantId, String userId, String template,
+                                               long liveDelta, long liveOffset) throws SQLException {
+    statement.setLong(1, clusterId);
+    statement.setLong(2, bucketStart);
+    statement.setLong(3, bucketEnd);
+    statement.setString(4, tenantId);
+    statement.setString(5, userId);
+    statement.setString(6, template);
+    statement.setLong(7, liveDelta);
+    statement.setLong(8, liveOffset);
+  }
+
   private String addFilter(String key, Object value) {
     if (value == null) {
       return "";
@@ -190,6 +762,127 @@ public class SQLClusterStore implements ClusterStore {
     }
   }
 
+  @Override
+  public void writeClusterTasks(Collection<ClusterTask> clusterTasks) throws IOException {
+    if (clusterTasks.isEmpty()) {
+      return;
+    }
+    Map<String, ClusterTask> tasks = Maps.newLinkedHashMap();
+    List<TaskId> taskIds = Lists.newArrayListWithCapacity(clusterTasks.size());
+    for (ClusterTask clusterTask : clusterTasks) {
+      TaskId taskId = TaskId.fromString(clusterTask.getTaskId());
+      // if the same task is given more than once, the last one wins
+      if (tasks.put(taskId.getId(), clusterTask) == null) {
+        taskIds.add(taskId);
+      }
+    }
+    Connection conn = null;
+    try {
+      conn = dbConnectionPool.getConnection(false);
+      try {
+        Set<String> existing = getExistingTaskIds(conn, taskIds);
+        PreparedStatement updateStatement = conn.prepareStatement(UPDATE_TASK_SQL);
+        try {
+          PreparedStatement insertStatement = conn.prepareStatement(INSERT_TASK_SQL);
+          try {
+            boolean hasUpdates = false;
+            boolean hasInserts = false;
+            for (TaskId taskId : taskIds) {
+              ClusterTask clusterTask = tasks.get(taskId.getId());
+              byte[] taskBytes = dbQueryExecutor.toBytes(clusterTask, ClusterTask.class);
+              long clusterId = Long.parseLong(taskId.getClusterId());
+              if (existing.contains(taskId.getId())) {
+                setTaskUpdateParams(updateStatement, clusterTask, taskBytes, taskId, clusterId);
+                updateStatement.addBatch();
+                hasUpdates = true;
+              } else {
+                setTaskInsertParams(insertStatement, clusterTask, taskBytes, taskId, clusterId);
+                insertStatement.addBatch();
+                hasInserts = true;
+              }
+            }
+            if (hasUpdates) {
+              updateStatement.executeBatch();
+            }
+            if (hasInserts) {
+              insertStatement.executeBatch();
+            }
+          } finally {
+            insertStatement.close();
+          }
+        } finally {
+          updateStatement.close();
+        }
+        conn.commit();
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      if (conn != null) {
+        LOG.error("Exception writing {} cluster tasks. Rolling back...", tasks.size(), e);
+        try {
+          conn.rollback();
+        } catch (SQLException se) {
+          LOG.error("Exception rolling back.", se);
+        }
+      }
+      throw new IOException(e);
+    }
+  }
+
+  // get the ids of the given tasks that are already in the store.
+  private Set<String> getExistingTaskIds(Connection conn, Collection<TaskId> taskIds) throws SQLException {
+    Set<String> existing = Sets.newHashSet();
+    for (Collection<TaskId> jobTaskIds : groupByJob(taskIds)) {
+      for (List<TaskId> batch : Iterables.partition(jobTaskIds, MAX_IN_LIST_SIZE)) {
+        PreparedStatement statement = conn.prepareStatement(
+          "SELECT task_num FROM tasks WHERE cluster_id=? AND job_num=? AND task_num IN " + inList(batch.size()));
+        try {
+          setTaskIds(statement, batch);
+          ResultSet rs = statement.executeQuery();
+          try {
+            JobId jobId = batch.get(0).getJobId();
+            while (rs.next()) {
+              existing.add(new TaskId(jobId, rs.getLong(1)).getId());
+            }
+          } finally {
+            rs.close();
+          }
+        } finally {
+          statement.close();
+        }
+      }
+    }
+    return existing;
+  }
+
+  // tasks are almost always looked up a stage at a time, so they usually all belong to the same job.
+  private static Collection<Collection<TaskId>> groupByJob(Collection<TaskId> taskIds) {
+    Multimap<String, TaskId> jobTaskIds = LinkedHashMultimap.create();
+    for (TaskId taskId : taskIds) {
+      jobTaskIds.put(taskId.getJobId().getId(), taskId);
+    }
+    return jobTaskIds.asMap().values();
+  }
+
+  // set the cluster id, job num, and task nums of the given tasks, which must all belong to the same job.
+  private static void setTaskIds(PreparedStatement statement, List<TaskId> taskIds) throws SQLException {
+    statement.setLong(1, Long.parseLong(taskIds.get(0).getClusterId()));
+    statement.setLong(2, taskIds.get(0).getJobNum());
+    int index = 3;
+    for (TaskId taskId : taskIds) {
+      statement.setLong(index++, taskId.getTaskNum());
+    }
+  }
+
+  private static String inList(int size) {
+    StringBuilder builder = new StringBuilder("(?");
+    for (int i = 1; i < size; i++) {
+      builder.append(", ?");
+    }
+    return builder.append(")").toString();
+  }
+
   @Override
   public void deleteClusterTask(TaskId taskId) throws IOException {
     try {
@@ -261,6 +954,13 @@ public class SQLClusterStore implements ClusterStore {
         } finally {
           statement.close();
         }
+        statement = conn.prepareStatement("DELETE FROM node_actions WHERE node_id=?");
+        try {
+          statement.setString(1, nodeId);
+          statement.executeUpdate();
+        } finally {
+          statement.close();
+        }
       } finally {
         conn.close();
       }
@@ -269,6 +969,99 @@ public class SQLClusterStore implements ClusterStore {
     }
   }
 
+  @Override
+  public void writeNodeAction(Node node, Node.Action action) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        byte[] actionBytes = dbQueryExecutor.toCompressedBytes(action, Node.Action.class);
+        DBPut actionPut = new NodeActionDBPut(node, action, actionBytes);
+        actionPut.executePut(conn);
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception writing action {} of node {}", action.getTaskId(), node.getId(), e);
+      throw new IOException("Exception writing action " + action.getTaskId() + " of node " + node.getId(), e);
+    }
+  }
+
+  @Override
+  public void writeNodeActionsIfMissing(Node node, List<Node.Action> actions) throws IOException {
+    if (actions.isEmpty()) {
+      return;
+    }
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement select = conn.prepareStatement(
+          "SELECT task_id FROM node_actions WHERE node_id=? AND submit_time=? AND task_id=?");
+        try {
+          for (Node.Action action : actions) {
+            select.setString(1, node.getId());
+            select.setLong(2, action.getSubmitTime());
+            select.setString(3, action.getTaskId());
+            if (dbQueryExecutor.hasResults(select)) {
+              continue;
+            }
+            byte[] actionBytes = dbQueryExecutor.toCompressedBytes(action, Node.Action.class);
+            PreparedStatement insert = new NodeActionDBPut(node, action, actionBytes).createInsertStatement(conn);
+            try {
+              insert.executeUpdate();
+            } finally {
+              insert.close();
+            }
+          }
+        } finally {
+          select.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception writing actions of node {}", node.getId(), e);
+      throw new IOException("Exception writing actions of node " + node.getId(), e);
+    }
+  }
+
+  @Override
+  public List<Node.Action> getNodeActions(String nodeId, long before, String beforeTaskId,
+                                         int limit) throws IOException {
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = conn.prepareStatement(
+          "SELECT action FROM node_actions WHERE node_id=? AND (submit_time<? OR (submit_time=? AND task_id<?)) " +
+            "ORDER BY submit_time DESC, task_id DESC");
+        try {
+          statement.setString(1, nodeId);
+          statement.setLong(2, before);
+          statement.setLong(3, before);
+          // no task id sorts before the empty string, so only actions submitted before the timestamp are returned
+          statement.setString(4, beforeTaskId == null ? "" : beforeTaskId);
+          statement.setMaxRows(limit);
+          ResultSet rs = statement.executeQuery();
+          try {
+            List<Node.Action> actions = Lists.newArrayList();
+            while (rs.next()) {
+              actions.add(dbQueryExecutor.deserializeCompressedBlob(rs.getBlob(1), Node.Action.class));
+            }
+            return actions;
+          } finally {
+            rs.close();
+          }
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting actions of node {}", nodeId, e);
+      throw new IOException("Exception getting actions of node " + nodeId, e);
+    }
+  }
+
   @Override
   public Set<ClusterTask> getRunningTasks(long timestamp) throws IOException {
     try {
@@ -380,7 +1173,7 @@ public class SQLClusterStore implements ClusterStore {
     @Override
     public PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
       PreparedStatement updateStatement =
-        conn.prepareStatement("UPDATE jobs SET job=?, status=? WHERE job_num=? AND cluster_id=?");
+        conn.prepareStatement("UPDATE jobs SET job=?, status=?, version=version+1 WHERE job_num=? AND cluster_id=?");
       updateStatement.setBytes(1, jobBytes);
       updateStatement.setString(2, clusterJob.getJobStatus().name());
       updateStatement.setLong(3, jobId.getJobNum());
@@ -391,7 +1184,7 @@ public class SQLClusterStore implements ClusterStore {
     @Override
     public PreparedStatement createInsertStatement(Connection conn) throws SQLException {
       PreparedStatement statement = conn.prepareStatement(
-        "INSERT INTO jobs (job_num, cluster_id, status, create_time, job) VALUES (?, ?, ?, ?, ?)");
+        "INSERT INTO jobs (job_num, cluster_id, status, version, create_time, job) VALUES (?, ?, ?, 0, ?, ?)");
       statement.setLong(1, jobId.getJobNum());
       statement.setLong(2, clusterId);
       statement.setString(3, clusterJob.getJobStatus().name());
@@ -414,42 +1207,84 @@ public class SQLClusterStore implements ClusterStore {
       this.clusterId = clusterId;
     }
 
+    @Override
+    public PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
+      PreparedStatement statement = conn.prepareStatement(UPDATE_TASK_SQL);
+      setTaskUpdateParams(statement, clusterTask, taskBytes, taskId, clusterId);
+      return statement;
+    }
+
+    @Override
+    public PreparedStatement createInsertStatement(Connection conn) throws SQLException {
+      PreparedStatement statement = conn.prepareStatement(INSERT_TASK_SQL);
+      setTaskInsertParams(statement, clusterTask, taskBytes, taskId, clusterId);
+      return statement;
+    }
+  }
+
+  private static void setTaskUpdateParams(PreparedStatement statement, ClusterTask clusterTask, byte[] taskBytes,
+                                          TaskId taskId, long clusterId) throws SQLException {
+    statement.setBytes(1, taskBytes);
+    statement.setString(2, clusterTask.getStatus().name());
+    statement.setTimestamp(3, DBHelper.getTimestamp(clusterTask.getSubmitTime()));
+    statement.setTimestamp(4, DBHelper.getTimestamp(clusterTask.getStatusTime()));
+    statement.setString(5, clusterTask.getTaskName().name());
+    statement.setString(6, clusterTask.getClusterTemplateName());
+    statement.setString(7, clusterTask.getAccount().getUserId());
+    statement.setString(8, clusterTask.getAccount().getTenantId());
+    statement.setLong(9, taskId.getTaskNum());
+    statement.setLong(10, taskId.getJobNum());
+    statement.setLong(11, clusterId);
+  }
+
+  private static void setTaskInsertParams(PreparedStatement statement, ClusterTask clusterTask, byte[] taskBytes,
+                                          TaskId taskId, long clusterId) throws SQLException {
+    statement.setLong(1, taskId.getTaskNum());
+    statement.setLong(2, taskId.getJobNum());
+    statement.setLong(3, clusterId);
+    statement.setString(4, clusterTask.getStatus().name());
+    statement.setTimestamp(5, DBHelper.getTimestamp(clusterTask.getSubmitTime()));
+    statement.setBytes(6, taskBytes);
+    statement.setString(7, clusterTask.getTaskName().name());
+    statement.setString(8, clusterTask.getClusterTemplateName());
+    statement.setString(9, clusterTask.getAccount().getUserId());
+    statement.setString(10, clusterTask.getAccount().getTenantId());
+  }
+
+  private class NodeActionDBPut extends DBPut {
+    private final Node node;
+    private final Node.Action action;
+    private final byte[] actionBytes;
+
+    private NodeActionDBPut(Node node, Node.Action action, byte[] actionBytes) {
+      this.node = node;
+      this.action = action;
+      this.actionBytes = actionBytes;
+    }
+
     @Override
     public PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
       PreparedStatement statement = conn.prepareStatement(
-        "UPDATE tasks SET task=?, status=?, submit_time=?, status_time=?, type=?, " +
-          "cluster_template_name=?, user_id=?, tenant_id=?" +
-          " WHERE task_num=? AND job_num=? AND cluster_id=?");
-      statement.setBytes(1, dbQueryExecutor.toBytes(clusterTask, ClusterTask.class));
-      statement.setString(2, clusterTask.getStatus().name());
-      statement.setTimestamp(3, DBHelper.getTimestamp(clusterTask.getSubmitTime()));
-      statement.setTimestamp(4, DBHelper.getTimestamp(clusterTask.getStatusTime()));
-      statement.setString(5, clusterTask.getTaskName().name());
-      statement.setString(6, clusterTask.getClusterTemplateName());
-      statement.setString(7, clusterTask.getAccount().getUserId());
-      statement.setString(8, clusterTask.getAccount().getTenantId());
-      statement.setLong(9, taskId.getTaskNum());
-      statement.setLong(10, taskId.getJobNum());
-      statement.setLong(11, clusterId);
+        "UPDATE node_actions SET status=?, action=? WHERE node_id=? AND submit_time=? AND task_id=?");
+      statement.setString(1, action.getStatus().name());
+      statement.setBytes(2, actionBytes);
+      statement.setString(3, node.getId());
+      statement.setLong(4, action.getSubmitTime());
+      statement.setString(5, action.getTaskId());
       return statement;
     }
 
     @Override
     public PreparedStatement createInsertStatement(Connection conn) throws SQLException {
       PreparedStatement statement = conn.prepareStatement(
-        "INSERT INTO tasks (task_num, job_num, cluster_id, status, submit_time, task, type, " +
-          "cluster_template_name, user_id, tenant_id)" +
-          " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
-      statement.setLong(1, taskId.getTaskNum());
-      statement.setLong(2, taskId.getJobNum());
-      statement.setLong(3, clusterId);
-      statement.setString(4, clusterTask.getStatus().name());
-      statement.setTimestamp(5, DBHelper.getTimestamp(clusterTask.getSubmitTime()));
-      statement.setBytes(6, taskBytes);
-      statement.setString(7, clusterTask.getTaskName().name());
-      statement.setString(8, clusterTask.getClusterTemplateName());
-      statement.setString(9, clusterTask.getAccount().getUserId());
-      statement.setString(10, clusterTask.getAccount().getTenantId());
+        "INSERT INTO node_actions (node_id, submit_time, task_id, cluster_id, status, action)" +
+          " VALUES (?, ?, ?, ?, ?, ?)");
+      statement.setString(1, node.getId());
+      statement.setLong(2, action.getSubmitTime());
+      statement.setString(3, action.getTaskId());
+      statement.setLong(4, Long.parseLong(node.getClusterId()));
+      statement.setString(5, action.getStatus().name());
+      statement.setBytes(6, actionBytes);
       return statement;
     }
   }
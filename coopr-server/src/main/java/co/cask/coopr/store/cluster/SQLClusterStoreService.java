@@ -9,6 +9,7 @@ import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -20,7 +21,7 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
   private static final Logger LOG  = LoggerFactory.getLogger(SQLClusterStoreService.class);
   private final DBConnectionPool dbConnectionPool;
   private final DBQueryExecutor dbQueryExecutor;
-  private final ClusterStore clusterStore;
+  private final SQLClusterStore clusterStore;
 
   @Inject
   public SQLClusterStoreService(DBConnectionPool dbConnectionPool, DBQueryExecutor dbQueryExecutor) {
@@ -42,6 +43,12 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
         stmt.execute("DELETE FROM tasks");
         stmt = conn.createStatement();
         stmt.execute("DELETE FROM nodes");
+        stmt = conn.createStatement();
+        stmt.execute("DELETE FROM node_usage");
+        stmt = conn.createStatement();
+        stmt.execute("DELETE FROM live_nodes");
+        stmt = conn.createStatement();
+        stmt.execute("DELETE FROM node_actions");
       } finally {
         stmt.close();
       }
@@ -78,6 +85,7 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
                                                        "cluster_id BIGINT, " +
                                                        "job_num BIGINT, " +
                                                        "status VARCHAR(32), " +
+                                                       "version BIGINT NOT NULL DEFAULT 0, " +
                                                        "create_time TIMESTAMP, " +
                                                        "job BLOB, " +
                                                        "PRIMARY KEY (job_num, cluster_id) )",
@@ -85,6 +93,8 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
       if (created) {
         DBHelper.createDerbyIndex(dbConnectionPool, "jobs_ctime_index", "jobs", "create_time");
         DBHelper.createDerbyIndex(dbConnectionPool, "jobs_status_index", "jobs", "status");
+      } else {
+        DBHelper.addDerbyColumnIfNotExists(dbConnectionPool, "jobs", "version BIGINT NOT NULL DEFAULT 0");
       }
 
       created = DBHelper.createDerbyTableIfNotExists("CREATE TABLE tasks ( " +
@@ -105,6 +115,8 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
         DBHelper.createDerbyIndex(dbConnectionPool, "tasks_status_time_index", "tasks", "status_time");
         DBHelper.createDerbyIndex(dbConnectionPool, "tasks_submit_time_index", "tasks", "submit_time");
         DBHelper.createDerbyIndex(dbConnectionPool, "tasks_status_index", "tasks", "status");
+        DBHelper.createDerbyIndex(dbConnectionPool, "tasks_cluster_status_time_index", "tasks",
+                                  "cluster_id", "status_time");
       }
 
       created = DBHelper.createDerbyTableIfNotExists("CREATE TABLE nodes ( " +
@@ -116,7 +128,54 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
       if (created) {
         DBHelper.createDerbyIndex(dbConnectionPool, "nodes_cluster_index", "nodes", "cluster_id", "id");
       }
+
+      DBHelper.createDerbyTableIfNotExists("CREATE TABLE node_actions ( " +
+                                             "node_id VARCHAR(64), " +
+                                             "submit_time BIGINT, " +
+                                             "task_id VARCHAR(255), " +
+                                             "cluster_id BIGINT, " +
+                                             "status VARCHAR(32), " +
+                                             "action BLOB, " +
+                                             "PRIMARY KEY (node_id, submit_time, task_id) )",
+                                           dbConnectionPool);
+
+      created = DBHelper.createDerbyTableIfNotExists("CREATE TABLE node_usage ( " +
+                                                       "cluster_id BIGINT, " +
+                                                       "bucket_start BIGINT, " +
+                                                       "bucket_end BIGINT, " +
+                                                       "tenant_id VARCHAR(64), " +
+                                                       "user_id VARCHAR(255), " +
+                                                       "cluster_template_name VARCHAR(255), " +
+                                                       "live_delta BIGINT, " +
+                                                       "live_offset BIGINT, " +
+                                                       "PRIMARY KEY (cluster_id, bucket_start, bucket_end) )",
+                                                     dbConnectionPool);
+      if (created) {
+        DBHelper.createDerbyIndex(dbConnectionPool, "node_usage_bucket_index", "node_usage",
+                                  "bucket_start", "bucket_end");
+      }
+
+      DBHelper.createDerbyTableIfNotExists("CREATE TABLE live_nodes ( " +
+                                             "cluster_id BIGINT, " +
+                                             "node_id VARCHAR(64), " +
+                                             "PRIMARY KEY (cluster_id, node_id) )",
+                                           dbConnectionPool);
     }
+    // an embedded db is only used by this server, so nothing else can be completing tasks yet. External dbs may be
+    // shared by several servers, and have their rollups built by the upgrade tool instead.
+    if (dbConnectionPool.isEmbeddedDerbyDB()) {
+      clusterStore.rebuildNodeUsageIfEmpty();
+    }
+  }
+
+  /**
+   * Rebuild the node usage rollups from the task history, replacing any existing rollups. Should only be run while no
+   * server is running, for example when upgrading.
+   *
+   * @throws IOException if there was a problem reading the tasks or writing the rollups.
+   */
+  public void rebuildNodeUsage() throws IOException {
+    clusterStore.rebuildNodeUsage();
   }
 
   @Override
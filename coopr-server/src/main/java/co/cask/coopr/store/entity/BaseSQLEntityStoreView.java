@@ -19,6 +19,7 @@ import co.cask.coopr.account.Account;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.store.DBConnectionPool;
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 
@@ -36,12 +37,14 @@ import java.util.List;
 public abstract class BaseSQLEntityStoreView extends BaseEntityStoreView {
   protected final Account account;
   protected final DBConnectionPool dbConnectionPool;
+  protected final EntityCache entityCache;
   protected final String accountErrorSnippet;
 
-  BaseSQLEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson) {
+  BaseSQLEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson, EntityCache entityCache) {
     super(gson);
     this.account = account;
     this.dbConnectionPool = dbConnectionPool;
+    this.entityCache = entityCache;
     this.accountErrorSnippet = " from tenant " + account.getTenantId();
   }
 
@@ -76,6 +79,18 @@ public abstract class BaseSQLEntityStoreView extends BaseEntityStoreView {
 
   @Override
   protected byte[] getEntity(EntityType entityType, String entityName, int entityVersion) throws IOException {
+    String tenantId = getTenantId(entityType);
+    Optional<byte[]> cached = entityCache.get(tenantId, entityType, entityName, entityVersion);
+    if (cached != null) {
+      return cached.orNull();
+    }
+    long readGeneration = entityCache.getGeneration();
+    byte[] entityBytes = readEntity(entityType, entityName, entityVersion);
+    entityCache.put(readGeneration, tenantId, entityType, entityName, entityVersion, entityBytes);
+    return entityBytes;
+  }
+
+  private byte[] readEntity(EntityType entityType, String entityName, int entityVersion) throws IOException {
     try {
       byte[] entityBytes = null;
       Connection conn = dbConnectionPool.getConnection();
@@ -106,16 +121,27 @@ public abstract class BaseSQLEntityStoreView extends BaseEntityStoreView {
   @Override
   protected <T> Collection<T> getAllLatestEntities(EntityType entityType,
                                                    Function<byte[], T> transform) throws IOException {
+    String tenantId = getTenantId(entityType);
+    List<byte[]> entityList = entityCache.getAllLatest(tenantId, entityType);
+    if (entityList == null) {
+      long readGeneration = entityCache.getGeneration();
+      entityList = readAllLatestEntities(entityType);
+      entityCache.putAllLatest(readGeneration, tenantId, entityType, entityList);
+    }
+    return Lists.newArrayList(Lists.transform(entityList, transform));
+  }
+
+  private List<byte[]> readAllLatestEntities(EntityType entityType) throws IOException {
     try {
       Connection conn = dbConnectionPool.getConnection();
-      List<T> entities = Lists.newLinkedList();
+      List<byte[]> entities = Lists.newArrayList();
       try {
         PreparedStatement statement = getSelectAllLatestStatement(conn, entityType);
         try {
           ResultSet rs = statement.executeQuery();
           try {
             while (rs.next()) {
-              entities.add(transform.apply(rs.getBytes(1)));
+              entities.add(rs.getBytes(1));
             }
           } finally {
             rs.close();
@@ -159,8 +185,7 @@ public abstract class BaseSQLEntityStoreView extends BaseEntityStoreView {
     } else {
       queryStr.append("?");
     }
-    String tenantId = (entityType == EntityType.AUTOMATOR_TYPE || entityType == EntityType.PROVIDER_TYPE) ?
-      Constants.SUPERADMIN_TENANT : account.getTenantId();
+    String tenantId = getTenantId(entityType);
     PreparedStatement statement = conn.prepareStatement(queryStr.toString());
     statement.setString(1, entityName);
     statement.setString(2, tenantId);
@@ -187,14 +212,17 @@ public abstract class BaseSQLEntityStoreView extends BaseEntityStoreView {
     queryBuilder.append(" WHERE t.tenant_id=?");
     String queryString = queryBuilder.toString();
 
-    // TODO: remove once types are defined through server instead of through provisioner
-    // automator and provider types are constant across tenants and defined only in the superadmin tenant.
-    String tenantId = (entityType == EntityType.AUTOMATOR_TYPE || entityType == EntityType.PROVIDER_TYPE) ?
-      Constants.SUPERADMIN_TENANT : account.getTenantId();
-
+    String tenantId = getTenantId(entityType);
     PreparedStatement statement = conn.prepareStatement(queryString);
     statement.setString(1, tenantId);
     statement.setString(2, tenantId);
     return statement;
   }
+
+  // TODO: remove once types are defined through server instead of through provisioner
+  // automator and provider types are constant across tenants and defined only in the superadmin tenant.
+  private String getTenantId(EntityType entityType) {
+    return (entityType == EntityType.AUTOMATOR_TYPE || entityType == EntityType.PROVIDER_TYPE) ?
+      Constants.SUPERADMIN_TENANT : account.getTenantId();
+  }
 }
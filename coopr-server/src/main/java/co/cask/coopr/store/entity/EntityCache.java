@@ -0,0 +1,262 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.entity;
+
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.management.CacheStats;
+import co.cask.coopr.management.ServerStats;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of entities as they are stored in the entity store, so that repeatedly looking up the same services, types,
+ * and templates does not go to the database each time. Entities are cached per tenant by type, name, and version,
+ * with the latest version of an entity cached under {@link Constants#FIND_MAX_VERSION}. The cache holds the stored
+ * bytes rather than entity objects, since callers are free to modify the entities they get back. Views must call
+ * {@link #invalidate(String, BaseEntityStoreView.EntityType, String)} whenever they write or delete an entity.
+ * Entities written through other servers are dropped through {@link EntityChangeWatcher}, and cached entities
+ * also expire after a while in case a change notification is missed.
+ */
+public class EntityCache {
+  private static final long CACHE_EXPIRE_SECONDS = 300;
+  private static final Optional<byte[]> ABSENT = Optional.absent();
+
+  // null if caching is disabled
+  private final Cache<EntityKey, ConcurrentMap<Integer, Optional<byte[]>>> entities;
+  private final Cache<TypeKey, List<byte[]>> latestEntities;
+  private final CacheStats stats;
+  // incremented whenever anything is invalidated, to detect entities that changed while they were being read
+  private final AtomicLong generation;
+
+  @Inject
+  private EntityCache(Configuration conf, ServerStats serverStats) {
+    this(conf.getInt(Constants.ENTITY_CACHE_MAX_ENTRIES), serverStats.getEntityCacheStats());
+  }
+
+  EntityCache(int maxEntries, CacheStats stats) {
+    if (maxEntries <= 0) {
+      this.entities = null;
+      this.latestEntities = null;
+    } else {
+      this.entities = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS)
+        .build();
+      this.latestEntities = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS)
+        .build();
+    }
+    this.stats = stats;
+    this.generation = new AtomicLong();
+  }
+
+  /**
+   * Get an entity from the cache.
+   *
+   * @param tenantId Id of the tenant the entity belongs to.
+   * @param entityType Type of entity.
+   * @param entityName Name of entity.
+   * @param entityVersion Version of entity, or {@link Constants#FIND_MAX_VERSION} for the latest version.
+   * @return Null if the entity is not cached, an absent value if the entity is cached as not existing, or the
+   *         entity as bytes.
+   */
+  Optional<byte[]> get(String tenantId, BaseEntityStoreView.EntityType entityType,
+                       String entityName, int entityVersion) {
+    if (entities == null) {
+      return null;
+    }
+    ConcurrentMap<Integer, Optional<byte[]>> versions = entities.getIfPresent(
+      new EntityKey(tenantId, entityType, entityName));
+    Optional<byte[]> entity = versions == null ? null : versions.get(entityVersion);
+    if (entity == null) {
+      stats.recordMiss();
+    } else {
+      stats.recordHit();
+    }
+    return entity;
+  }
+
+  /**
+   * Add an entity read from the store to the cache, unless something was invalidated since the given generation.
+   *
+   * @param readGeneration Generation from {@link #getGeneration()} before the entity was read from the store.
+   * @param tenantId Id of the tenant the entity belongs to.
+   * @param entityType Type of entity.
+   * @param entityName Name of entity.
+   * @param entityVersion Version of entity, or {@link Constants#FIND_MAX_VERSION} for the latest version.
+   * @param entity Entity as bytes, or null if it does not exist.
+   */
+  void put(long readGeneration, String tenantId, BaseEntityStoreView.EntityType entityType,
+           String entityName, int entityVersion, byte[] entity) {
+    if (entities == null) {
+      return;
+    }
+    EntityKey key = new EntityKey(tenantId, entityType, entityName);
+    ConcurrentMap<Integer, Optional<byte[]>> versions = entities.getIfPresent(key);
+    if (versions == null) {
+      versions = Maps.newConcurrentMap();
+      ConcurrentMap<Integer, Optional<byte[]>> existing = entities.asMap().putIfAbsent(key, versions);
+      versions = existing == null ? versions : existing;
+    }
+    versions.put(entityVersion, entity == null ? ABSENT : Optional.of(entity));
+    // if the entity changed while it was being read, the cached copy may be stale
+    if (generation.get() != readGeneration) {
+      entities.invalidate(key);
+    }
+  }
+
+  /**
+   * Get the latest version of all entities of a type from the cache.
+   *
+   * @param tenantId Id of the tenant the entities belong to.
+   * @param entityType Type of entity.
+   * @return Latest version of all entities of the given type as bytes, or null if they are not cached.
+   */
+  List<byte[]> getAllLatest(String tenantId, BaseEntityStoreView.EntityType entityType) {
+    if (latestEntities == null) {
+      return null;
+    }
+    List<byte[]> entityList = latestEntities.getIfPresent(new TypeKey(tenantId, entityType));
+    if (entityList == null) {
+      stats.recordMiss();
+    } else {
+      stats.recordHit();
+    }
+    return entityList;
+  }
+
+  /**
+   * Add the latest version of all entities of a type read from the store to the cache, unless something was
+   * invalidated since the given generation.
+   *
+   * @param readGeneration Generation from {@link #getGeneration()} before the entities were read from the store.
+   * @param tenantId Id of the tenant the entities belong to.
+   * @param entityType Type of entity.
+   * @param entityList Latest version of all entities of the given type as bytes.
+   */
+  void putAllLatest(long readGeneration, String tenantId, BaseEntityStoreView.EntityType entityType,
+                    List<byte[]> entityList) {
+    if (latestEntities == null) {
+      return;
+    }
+    TypeKey key = new TypeKey(tenantId, entityType);
+    latestEntities.put(key, ImmutableList.copyOf(entityList));
+    if (generation.get() != readGeneration) {
+      latestEntities.invalidate(key);
+    }
+  }
+
+  /**
+   * Get the current generation of the cache, which changes whenever anything is invalidated. Must be called before
+   * reading entities from the store that will be added to the cache.
+   *
+   * @return Current generation of the cache.
+   */
+  long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Drop all cached versions of an entity, along with the cached latest versions of all entities of its type.
+   *
+   * @param tenantId Id of the tenant the entity belongs to.
+   * @param entityType Type of entity.
+   * @param entityName Name of entity.
+   */
+  public void invalidate(String tenantId, BaseEntityStoreView.EntityType entityType, String entityName) {
+    generation.incrementAndGet();
+    if (entities == null) {
+      return;
+    }
+    entities.invalidate(new EntityKey(tenantId, entityType, entityName));
+    latestEntities.invalidate(new TypeKey(tenantId, entityType));
+  }
+
+  /**
+   * Drop all cached entities.
+   */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    if (entities == null) {
+      return;
+    }
+    entities.invalidateAll();
+    latestEntities.invalidateAll();
+  }
+
+  private static class TypeKey {
+    private final String tenantId;
+    private final BaseEntityStoreView.EntityType entityType;
+
+    private TypeKey(String tenantId, BaseEntityStoreView.EntityType entityType) {
+      this.tenantId = tenantId;
+      this.entityType = entityType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof TypeKey)) {
+        return false;
+      }
+      TypeKey other = (TypeKey) o;
+      return Objects.equal(tenantId, other.tenantId) && entityType == other.entityType;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(tenantId, entityType);
+    }
+  }
+
+  private static class EntityKey {
+    private final String tenantId;
+    private final BaseEntityStoreView.EntityType entityType;
+    private final String entityName;
+
+    private EntityKey(String tenantId, BaseEntityStoreView.EntityType entityType, String entityName) {
+      this.tenantId = tenantId;
+      this.entityType = entityType;
+      this.entityName = entityName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof EntityKey)) {
+        return false;
+      }
+      EntityKey other = (EntityKey) o;
+      return Objects.equal(tenantId, other.tenantId) && entityType == other.entityType &&
+        Objects.equal(entityName, other.entityName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(tenantId, entityType, entityName);
+    }
+  }
+}
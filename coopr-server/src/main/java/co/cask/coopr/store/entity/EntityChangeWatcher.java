@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.entity;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.zookeeper.ZKChangeNotifier;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.inject.Inject;
+import org.apache.twill.zookeeper.ZKClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the {@link EntityCache} of every server up to date with entity changes made through other servers. Whenever
+ * an entity is written or deleted, the tenant, type and name of the entity are published through a
+ * {@link ZKChangeNotifier}, and servers drop their cached copies of just that entity.
+ */
+public class EntityChangeWatcher implements EntityStoreListener {
+  private static final Logger LOG = LoggerFactory.getLogger(EntityChangeWatcher.class);
+  private static final String CHANGES_PATH = "/entitychanges";
+  private static final Gson GSON = new Gson();
+
+  private final ZKChangeNotifier changeNotifier;
+
+  @Inject
+  private EntityChangeWatcher(final EntityCache entityCache, ZKClient zkClient) {
+    this.changeNotifier = new ZKChangeNotifier(zkClient, CHANGES_PATH, new ZKChangeNotifier.ChangeListener() {
+      @Override
+      public void changed(String key) {
+        EntityChange change;
+        try {
+          change = GSON.fromJson(key, EntityChange.class);
+        } catch (JsonParseException e) {
+          LOG.warn("Invalid entity change {}, dropping all cached entities.", key, e);
+          entityCache.invalidateAll();
+          return;
+        }
+        entityCache.invalidate(change.tenantId, change.entityType, change.entityName);
+      }
+
+      @Override
+      public void allChanged() {
+        entityCache.invalidateAll();
+      }
+    });
+    changeNotifier.start();
+  }
+
+  @Override
+  public void entityChanged(Account account, BaseEntityStoreView.EntityType entityType, String entityName) {
+    changeNotifier.notifyChange(GSON.toJson(new EntityChange(account.getTenantId(), entityType, entityName)));
+  }
+
+  /**
+   * Entity that changed, as published to other servers.
+   */
+  private static class EntityChange {
+    private final String tenantId;
+    private final BaseEntityStoreView.EntityType entityType;
+    private final String entityName;
+
+    private EntityChange(String tenantId, BaseEntityStoreView.EntityType entityType, String entityName) {
+      this.tenantId = tenantId;
+      this.entityType = entityType;
+      this.entityName = entityName;
+    }
+  }
+}
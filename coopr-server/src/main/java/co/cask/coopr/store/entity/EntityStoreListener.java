@@ -0,0 +1,33 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.entity;
+
+import co.cask.coopr.account.Account;
+
+/**
+ * Listener that is notified whenever an entity is written or deleted through an {@link EntityStoreView}.
+ */
+public interface EntityStoreListener {
+
+  /**
+   * Called after an entity has been written or deleted.
+   *
+   * @param account Account that changed the entity.
+   * @param entityType Type of entity that changed.
+   * @param entityName Name of the entity that changed.
+   */
+  void entityChanged(Account account, BaseEntityStoreView.EntityType entityType, String entityName);
+}
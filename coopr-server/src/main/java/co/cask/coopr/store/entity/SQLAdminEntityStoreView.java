@@ -25,15 +25,19 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Set;
 
 /**
  * Implementation of {@link BaseSQLEntityStoreView} from the view of a tenant admin.
  */
 public class SQLAdminEntityStoreView extends BaseSQLEntityStoreView {
+  private final Set<EntityStoreListener> listeners;
 
-  SQLAdminEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson) {
-    super(account, dbConnectionPool, gson);
+  SQLAdminEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson, EntityCache entityCache,
+                          Set<EntityStoreListener> listeners) {
+    super(account, dbConnectionPool, gson, entityCache);
     Preconditions.checkArgument(account.isAdmin(), "Entity store only writable by admins");
+    this.listeners = listeners;
   }
 
   @Override
@@ -46,6 +50,7 @@ public class SQLAdminEntityStoreView extends BaseSQLEntityStoreView {
       } finally {
         conn.close();
       }
+      entityChanged(entityType, entityName);
     } catch (SQLException e) {
       throw new IOException("Exception writing entity of type " + entityType.name().toLowerCase()
                               + " with name " + entityName + accountErrorSnippet);
@@ -66,6 +71,7 @@ public class SQLAdminEntityStoreView extends BaseSQLEntityStoreView {
       } finally {
         conn.close();
       }
+      entityChanged(entityType, entityName);
     } catch (SQLException e) {
       throw new IOException("Exception deleting all versions of type " + entityType.name().toLowerCase()
                               + " with name " + entityName + accountErrorSnippet);
@@ -87,12 +93,20 @@ public class SQLAdminEntityStoreView extends BaseSQLEntityStoreView {
       } finally {
         conn.close();
       }
+      entityChanged(entityType, entityName);
     } catch (SQLException e) {
       throw new IOException("Exception deleting entity of type " + entityType.name().toLowerCase()
                               + " with name " + entityName + " and version " + entityVersion + accountErrorSnippet);
     }
   }
 
+  private void entityChanged(EntityType entityType, String entityName) {
+    entityCache.invalidate(account.getTenantId(), entityType, entityName);
+    for (EntityStoreListener listener : listeners) {
+      listener.entityChanged(account, entityType, entityName);
+    }
+  }
+
   private PreparedStatement getDeleteStatementWithoutVersion(Connection conn, EntityType entityType,
                                                              String entityName) throws SQLException {
     String entityTypeId = entityType.getId();
@@ -16,6 +16,7 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Set;
 
 /**
  * Implementation of {@link EntityStoreService} that provides views of the entity store backed by a SQL database.
@@ -23,11 +24,16 @@ import java.sql.Statement;
 public class SQLEntityStoreService extends AbstractIdleService implements EntityStoreService {
   private final DBConnectionPool dbConnectionPool;
   private final Gson gson;
+  private final EntityCache entityCache;
+  private final Set<EntityStoreListener> listeners;
 
   @Inject
-  private SQLEntityStoreService(DBConnectionPool dbConnectionPool, Gson gson) {
+  private SQLEntityStoreService(DBConnectionPool dbConnectionPool, Gson gson, EntityCache entityCache,
+                                Set<EntityStoreListener> listeners) {
     this.dbConnectionPool = dbConnectionPool;
     this.gson = gson;
+    this.entityCache = entityCache;
+    this.listeners = listeners;
   }
 
   // for unit tests only
@@ -45,6 +51,7 @@ public class SQLEntityStoreService extends AbstractIdleService implements Entity
     } finally {
       conn.close();
     }
+    entityCache.invalidateAll();
   }
 
   @Override
@@ -69,9 +76,9 @@ public class SQLEntityStoreService extends AbstractIdleService implements Entity
   @Override
   public EntityStoreView getView(Account account) {
     if (account.isAdmin()) {
-      return new SQLAdminEntityStoreView(account, dbConnectionPool, gson);
+      return new SQLAdminEntityStoreView(account, dbConnectionPool, gson, entityCache, listeners);
     } else {
-      return new SQLUserEntityStoreView(account, dbConnectionPool, gson);
+      return new SQLUserEntityStoreView(account, dbConnectionPool, gson, entityCache);
     }
   }
 
@@ -26,8 +26,8 @@ import java.io.IOException;
  */
 public class SQLUserEntityStoreView extends BaseSQLEntityStoreView {
 
-  SQLUserEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson) {
-    super(account, dbConnectionPool, gson);
+  SQLUserEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson, EntityCache entityCache) {
+    super(account, dbConnectionPool, gson, entityCache);
   }
 
   @Override
@@ -3,6 +3,8 @@ package co.cask.coopr.store.guice;
 import co.cask.coopr.store.DBConnectionPool;
 import co.cask.coopr.store.cluster.ClusterStoreService;
 import co.cask.coopr.store.cluster.SQLClusterStoreService;
+import co.cask.coopr.store.entity.EntityCache;
+import co.cask.coopr.store.entity.EntityStoreListener;
 import co.cask.coopr.store.entity.EntityStoreService;
 import co.cask.coopr.store.entity.SQLEntityStoreService;
 import co.cask.coopr.store.node.NodeStoreService;
@@ -17,6 +19,7 @@ import co.cask.coopr.store.user.SQLUserStore;
 import co.cask.coopr.store.user.UserStore;
 import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
+import com.google.inject.multibindings.Multibinder;
 
 /**
  *
@@ -42,9 +45,12 @@ public abstract class AbstractStoreModule extends AbstractModule {
     bind(DBConnectionPool.class).in(Scopes.SINGLETON);
     bind(SQLClusterStoreService.class).in(Scopes.SINGLETON);
     bind(SQLEntityStoreService.class).in(Scopes.SINGLETON);
+    bind(EntityCache.class).in(Scopes.SINGLETON);
     bind(SQLTenantStore.class).in(Scopes.SINGLETON);
     bind(SQLProvisionerStore.class).in(Scopes.SINGLETON);
     bind(SQLPluginMetaStoreService.class).in(Scopes.SINGLETON);
     bind(SQLUserStore.class).in(Scopes.SINGLETON);
+    // other modules can add listeners that are notified when entities are written or deleted
+    Multibinder.newSetBinder(binder(), EntityStoreListener.class);
   }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.provisioner;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.provisioner.plugin.ResourceType;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Base class for {@link PluginStore} implementations, with operations that a store can do more efficiently than
+ * through the input and output streams of the {@link PluginStore} interface. Each operation falls back to using the
+ * streams, so that stores only need to override the ones they can do better. Stores that only implement
+ * {@link PluginStore} are wrapped with {@link #of(PluginStore)}.
+ */
+public abstract class AbstractPluginStore implements PluginStore {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Get a plugin store with the operations of this class for the given store. If the store does not extend this class,
+   * it is wrapped in one that uses the fallbacks for every operation.
+   *
+   * @param pluginStore Store to get the operations of this class for
+   * @return The given store, or a wrapper around it
+   */
+  public static AbstractPluginStore of(final PluginStore pluginStore) {
+    if (pluginStore instanceof AbstractPluginStore) {
+      return (AbstractPluginStore) pluginStore;
+    }
+    return new AbstractPluginStore() {
+      @Override
+      public void initialize(Configuration conf) {
+        pluginStore.initialize(conf);
+      }
+
+      @Override
+      public OutputStream getResourceOutputStream(Account account, ResourceType type, String name, int version)
+        throws IOException {
+        return pluginStore.getResourceOutputStream(account, type, name, version);
+      }
+
+      @Override
+      public InputStream getResourceInputStream(Account account, ResourceType type, String name, int version)
+        throws IOException {
+        return pluginStore.getResourceInputStream(account, type, name, version);
+      }
+
+      @Override
+      public void deleteResource(Account account, ResourceType type, String name, int version) throws IOException {
+        pluginStore.deleteResource(account, type, name, version);
+      }
+    };
+  }
+
+  /**
+   * Copy a plugin resource from one account to another, overwriting the resource in the other account if it exists.
+   * By default, the resource is read from one account and written to the other.
+   *
+   * @param fromAccount Account to copy the plugin resource from
+   * @param toAccount Account to copy the plugin resource to
+   * @param type Type of resource to copy
+   * @param name Name of the resource to copy
+   * @param version Version of the resource to copy
+   * @throws IOException if there is no resource to copy or there was an error copying it
+   */
+  public void copyResource(Account fromAccount, Account toAccount, ResourceType type, String name, int version)
+    throws IOException {
+    InputStream inputStream = getResourceInputStream(fromAccount, type, name, version);
+    if (inputStream == null) {
+      throw new IOException("Resource " + name + " version " + version + " does not exist.");
+    }
+    try {
+      OutputStream outputStream = getResourceOutputStream(toAccount, type, name, version);
+      try {
+        ByteStreams.copy(inputStream, outputStream);
+      } finally {
+        outputStream.close();
+      }
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Get the local file holding a plugin resource, so that it can be sent without being copied through memory. Stores
+   * that do not keep resources in local files return null, in which case the resource should be read through
+   * {@link #getResourceInputStream(Account, ResourceType, String, int)} instead. Returns null by default.
+   *
+   * @param account Account that owns the plugin resource
+   * @param type Type of resource to get
+   * @param name Name of the resource to get
+   * @param version Version of the resource to get
+   * @return File holding the plugin resource, or null if there is no resource or it is not kept in a local file
+   * @throws IOException if there is an error getting the file
+   */
+  public File getResourceFile(Account account, ResourceType type, String name, int version) throws IOException {
+    return null;
+  }
+
+  /**
+   * Get the SHA-256 hash of the contents of a plugin resource, as a hex string. By default, the hash is computed by
+   * reading the whole resource.
+   *
+   * @param account Account that owns the plugin resource
+   * @param type Type of resource to get the hash of
+   * @param name Name of the resource to get the hash of
+   * @param version Version of the resource to get the hash of
+   * @return Hash of the plugin resource contents, or null if there is no resource
+   * @throws IOException if there is an error reading the resource
+   */
+  public String getResourceHash(Account account, ResourceType type, String name, int version) throws IOException {
+    InputStream inputStream = getResourceInputStream(account, type, name, version);
+    if (inputStream == null) {
+      return null;
+    }
+    try {
+      Hasher hasher = Hashing.sha256().newHasher();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int numRead = inputStream.read(buffer);
+      while (numRead >= 0) {
+        hasher.putBytes(buffer, 0, numRead);
+        numRead = inputStream.read(buffer);
+      }
+      return hasher.hash().toString();
+    } finally {
+      inputStream.close();
+    }
+  }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.provisioner;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.provisioner.plugin.ResourceType;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Striped;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Plugin store that writes the contents of resources to the local file system once for each distinct content,
+ * named by the SHA-256 hash of the content. The resource versions of each account only point to the hash of their
+ * content, and each content keeps a count of the resource versions that point to it, so that it is deleted once no
+ * resource version points to it anymore. Copying a resource to another account, as is done when bootstrapping a
+ * tenant, therefore only writes a pointer instead of copying the content.
+ *
+ * Under the data directory given in the configuration, contents are written to 'blobs', and pointers are written to
+ * 'resources', namespaced by account, plugin type, plugin name, resource type, resource name, and resource version.
+ * Reference counts and pointers are updated under file locks, so that multiple servers can share the data directory.
+ */
+public class ContentAddressedPluginStore extends AbstractPluginStore {
+  private static final int NUM_LOCK_STRIPES = 64;
+  private final Striped<Lock> blobLocks = Striped.lock(NUM_LOCK_STRIPES);
+  private final Striped<Lock> pointerLocks = Striped.lock(NUM_LOCK_STRIPES);
+  private File blobDir;
+  private File resourceDir;
+  private File tmpDir;
+
+  @Override
+  public void initialize(Configuration conf) {
+    File baseDir = new File(conf.get(Constants.ContentAddressedPluginStore.DATA_DIR));
+    blobDir = new File(baseDir, "blobs");
+    resourceDir = new File(baseDir, "resources");
+    tmpDir = new File(baseDir, "tmp");
+  }
+
+  /**
+   * Get an output stream for the given resource. Contents are written to a temporary file while they are hashed, and
+   * only become the contents of the resource once the stream is closed.
+   *
+   * @param account Account that owns the plugin resource
+   * @param type Type of resource
+   * @param name Name of the resource being written
+   * @param version Version of the resource being written
+   * @return Output stream for the resource contents
+   * @throws IOException if there was an error creating the temporary file
+   */
+  @Override
+  public OutputStream getResourceOutputStream(Account account, ResourceType type, String name, int version)
+    throws IOException {
+    return new BlobOutputStream(createTmpFile(), getPointerFile(account, type, name, version));
+  }
+
+  @Override
+  public InputStream getResourceInputStream(Account account, ResourceType type, String name, int version)
+    throws IOException {
+    File blob = getResourceFile(account, type, name, version);
+    return blob == null ? null : new FileInputStream(blob);
+  }
+
+  @Override
+  public void copyResource(Account fromAccount, Account toAccount, ResourceType type, String name, int version)
+    throws IOException {
+    String hash = readPointer(getPointerFile(fromAccount, type, name, version));
+    if (hash == null) {
+      throw new IOException("Resource " + name + " of type " + type + " for account " + fromAccount +
+                              " does not exist.");
+    }
+    addReference(hash, null);
+    setPointer(getPointerFile(toAccount, type, name, version), hash);
+  }
+
+  @Override
+  public File getResourceFile(Account account, ResourceType type, String name, int version) throws IOException {
+    String hash = readPointer(getPointerFile(account, type, name, version));
+    if (hash == null) {
+      return null;
+    }
+    File blob = getBlobFile(hash);
+    return blob.exists() ? blob : null;
+  }
+
+  @Override
+  public String getResourceHash(Account account, ResourceType type, String name, int version) throws IOException {
+    return readPointer(getPointerFile(account, type, name, version));
+  }
+
+  @Override
+  public void deleteResource(Account account, ResourceType type, String name, int version) throws IOException {
+    File pointer = getPointerFile(account, type, name, version);
+    if (!pointer.exists()) {
+      return;
+    }
+    Lock lock = pointerLocks.get(pointer.getPath());
+    lock.lock();
+    try {
+      RandomAccessFile lockFile = openPointerLockFile(pointer);
+      try {
+        FileLock fileLock = lockFile.getChannel().lock();
+        try {
+          String hash = readPointer(pointer);
+          if (hash == null) {
+            return;
+          }
+          if (!pointer.delete()) {
+            throw new IOException("Unable to delete file " + pointer.getAbsolutePath());
+          }
+          removeReference(hash);
+        } finally {
+          fileLock.release();
+        }
+      } finally {
+        lockFile.close();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Point a resource version at the given content, which must already have a reference added for the resource
+   * version. The reference of the content the resource version previously pointed to is removed. The pointer is
+   * locked while doing so, since two writes of the same resource version that both read the same previous content
+   * would otherwise both remove its reference, and never remove the reference of the content that lost.
+   */
+  private void setPointer(File pointer, String hash) throws IOException {
+    File tmpFile = createTmpFile();
+    Files.write(hash, tmpFile, Charsets.UTF_8);
+    Lock lock = pointerLocks.get(pointer.getPath());
+    lock.lock();
+    try {
+      RandomAccessFile lockFile = openPointerLockFile(pointer);
+      try {
+        FileLock fileLock = lockFile.getChannel().lock();
+        try {
+          String prevHash = readPointer(pointer);
+          // rename so that the pointer is never seen half written
+          if (!tmpFile.renameTo(pointer)) {
+            tmpFile.delete();
+            removeReference(hash);
+            throw new IOException("Unable to write file " + pointer.getAbsolutePath());
+          }
+          if (prevHash != null) {
+            removeReference(prevHash);
+          }
+        } finally {
+          fileLock.release();
+        }
+      } finally {
+        lockFile.close();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // the file locked while changing a pointer, which is kept since another server may be waiting on its lock
+  private RandomAccessFile openPointerLockFile(File pointer) throws IOException {
+    mkdirs(pointer.getParentFile());
+    return new RandomAccessFile(new File(pointer.getParentFile(), pointer.getName() + ".lock"), "rw");
+  }
+
+  private String readPointer(File pointer) throws IOException {
+    return pointer.exists() ? Files.toString(pointer, Charsets.UTF_8).trim() : null;
+  }
+
+  /**
+   * Add a reference to the content with the given hash. If the content does not exist yet, it is created by moving the
+   * given file, which must then be non-null. If it does exist, the given file is deleted.
+   */
+  private void addReference(String hash, File contents) throws IOException {
+    File blob = getBlobFile(hash);
+    Lock lock = blobLocks.get(hash);
+    lock.lock();
+    try {
+      RandomAccessFile refCountFile = openRefCountFile(hash);
+      try {
+        FileLock fileLock = refCountFile.getChannel().lock();
+        try {
+          if (!blob.exists()) {
+            if (contents == null || !contents.renameTo(blob)) {
+              throw new IOException("Unable to write file " + blob.getAbsolutePath());
+            }
+          } else if (contents != null) {
+            contents.delete();
+          }
+          writeRefCount(refCountFile, readRefCount(refCountFile) + 1);
+        } finally {
+          fileLock.release();
+        }
+      } finally {
+        refCountFile.close();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Remove a reference to the content with the given hash, deleting the content if nothing refers to it anymore.
+   * The file holding the reference count is kept, since another server may be waiting on its lock.
+   */
+  private void removeReference(String hash) throws IOException {
+    Lock lock = blobLocks.get(hash);
+    lock.lock();
+    try {
+      RandomAccessFile refCountFile = openRefCountFile(hash);
+      try {
+        FileLock fileLock = refCountFile.getChannel().lock();
+        try {
+          int refCount = Math.max(0, readRefCount(refCountFile) - 1);
+          writeRefCount(refCountFile, refCount);
+          if (refCount == 0) {
+            getBlobFile(hash).delete();
+          }
+        } finally {
+          fileLock.release();
+        }
+      } finally {
+        refCountFile.close();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private RandomAccessFile openRefCountFile(String hash) throws IOException {
+    File blob = getBlobFile(hash);
+    mkdirs(blob.getParentFile());
+    return new RandomAccessFile(new File(blob.getParentFile(), hash + ".refs"), "rw");
+  }
+
+  private int readRefCount(RandomAccessFile refCountFile) throws IOException {
+    if (refCountFile.length() < 4) {
+      return 0;
+    }
+    refCountFile.seek(0);
+    return refCountFile.readInt();
+  }
+
+  private void writeRefCount(RandomAccessFile refCountFile, int refCount) throws IOException {
+    refCountFile.seek(0);
+    refCountFile.writeInt(refCount);
+  }
+
+  private File createTmpFile() throws IOException {
+    mkdirs(tmpDir);
+    File tmpFile = new File(tmpDir, UUID.randomUUID().toString());
+    if (!tmpFile.createNewFile()) {
+      throw new IOException("Unable to create file " + tmpFile.getAbsolutePath());
+    }
+    return tmpFile;
+  }
+
+  private void mkdirs(File dir) throws IOException {
+    if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("Unable to create directory " + dir.getAbsolutePath());
+    }
+  }
+
+  // contents are spread over directories named by the start of their hash, to keep directories small
+  private File getBlobFile(String hash) {
+    return new File(new File(blobDir, hash.substring(0, 2)), hash);
+  }
+
+  private File getPointerFile(Account account, ResourceType type, String name, int version) {
+    String path = new StringBuilder()
+      .append(account.getTenantId())
+      .append(File.separator)
+      .append(type.getPluginType().name().toLowerCase())
+      .append(File.separator)
+      .append(type.getPluginName())
+      .append(File.separator)
+      .append(type.getTypeName())
+      .append(File.separator)
+      .append(name)
+      .append(File.separator)
+      .append(version)
+      .toString();
+    return new File(resourceDir, path);
+  }
+
+  /**
+   * Output stream that hashes the contents while writing them to a temporary file, and turns the file into the
+   * contents of a resource version when closed.
+   */
+  private final class BlobOutputStream extends FilterOutputStream {
+    private final File tmpFile;
+    private final File pointer;
+    private final Hasher hasher;
+    private boolean closed;
+
+    private BlobOutputStream(File tmpFile, File pointer) throws IOException {
+      super(new FileOutputStream(tmpFile));
+      this.tmpFile = tmpFile;
+      this.pointer = pointer;
+      this.hasher = Hashing.sha256().newHasher();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      hasher.putByte((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      hasher.putBytes(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        super.close();
+      } catch (IOException e) {
+        tmpFile.delete();
+        throw e;
+      }
+      String hash = hasher.hash().toString();
+      try {
+        addReference(hash, tmpFile);
+      } finally {
+        // already moved or deleted unless adding the reference failed
+        tmpFile.delete();
+      }
+      setPointer(pointer, hash);
+    }
+  }
+}
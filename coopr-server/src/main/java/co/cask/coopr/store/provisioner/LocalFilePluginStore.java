@@ -19,6 +19,10 @@ import co.cask.coopr.account.Account;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.provisioner.plugin.ResourceType;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -31,7 +35,11 @@ import java.io.OutputStream;
  * Plugin store that writes resources to the local file system. Modules are namespaced by the data directory given
  * in the configuration, plugin type, plugin type id, resource type, name, and version.
  */
-public class LocalFilePluginStore implements PluginStore {
+public class LocalFilePluginStore extends AbstractPluginStore {
+  private static final int HASH_CACHE_MAX_ENTRIES = 1000;
+  // hashes by file path, so that files are not read every time their hash is needed
+  private final Cache<String, FileHash> hashCache =
+    CacheBuilder.newBuilder().maximumSize(HASH_CACHE_MAX_ENTRIES).build();
   private String baseDir;
 
   @Override
@@ -83,6 +91,44 @@ public class LocalFilePluginStore implements PluginStore {
     return new FileInputStream(file);
   }
 
+  @Override
+  public void copyResource(Account fromAccount, Account toAccount, ResourceType type, String name, int version)
+    throws IOException {
+    File fromFile = getFile(fromAccount, type, name, version);
+    if (!fromFile.exists()) {
+      throw new IOException("Resource " + fromFile.getAbsolutePath() + " does not exist.");
+    }
+    OutputStream outputStream = getResourceOutputStream(toAccount, type, name, version);
+    try {
+      Files.copy(fromFile, outputStream);
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  @Override
+  public File getResourceFile(Account account, ResourceType type, String name, int version) throws IOException {
+    File file = getFile(account, type, name, version);
+    return file.exists() ? file : null;
+  }
+
+  @Override
+  public String getResourceHash(Account account, ResourceType type, String name, int version) throws IOException {
+    File file = getFile(account, type, name, version);
+    if (!file.exists()) {
+      return null;
+    }
+    // a cached hash is only used if the file has not been rewritten since it was hashed
+    long length = file.length();
+    long lastModified = file.lastModified();
+    FileHash fileHash = hashCache.getIfPresent(file.getPath());
+    if (fileHash == null || fileHash.length != length || fileHash.lastModified != lastModified) {
+      fileHash = new FileHash(length, lastModified, Files.hash(file, Hashing.sha256()).toString());
+      hashCache.put(file.getPath(), fileHash);
+    }
+    return fileHash.hash;
+  }
+
   @Override
   public void deleteResource(Account account, ResourceType type, String name, int version) throws IOException {
     File file = getFile(account, type, name, version);
@@ -90,6 +136,7 @@ public class LocalFilePluginStore implements PluginStore {
       // TODO: delete directory structure if empty
       file.delete();
     }
+    hashCache.invalidate(file.getPath());
   }
 
   private File getFile(Account account, ResourceType type,  String name, int version) {
@@ -109,4 +156,19 @@ public class LocalFilePluginStore implements PluginStore {
       .toString();
     return new File(path);
   }
+
+  /**
+   * Hash of a file, along with the length and modification time the file had when it was hashed.
+   */
+  private static final class FileHash {
+    private final long length;
+    private final long lastModified;
+    private final String hash;
+
+    private FileHash(long length, long lastModified, String hash) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+  }
 }
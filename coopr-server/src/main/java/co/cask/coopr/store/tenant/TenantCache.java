@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.tenant;
+
+import co.cask.coopr.common.zookeeper.ZKChangeNotifier;
+import co.cask.coopr.spec.Tenant;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import org.apache.twill.zookeeper.ZKClient;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of tenants by name in front of the {@link TenantStore}, so that authenticating a request does not need to read
+ * the tenant from the store each time. Whenever a tenant is written or deleted, {@link #tenantChanged(String)} must be
+ * called. It notifies every server through a {@link ZKChangeNotifier}, so that all servers drop their cached copy of
+ * the tenant. Cached tenants also expire after a while, in case a change notification is missed.
+ */
+public class TenantCache {
+  private static final String CHANGES_PATH = "/tenantchanges";
+  private static final long CACHE_EXPIRE_SECONDS = 300;
+
+  private final TenantStore tenantStore;
+  private final ZKChangeNotifier changeNotifier;
+  private final Cache<String, Tenant> cache;
+  // incremented whenever the cache is invalidated, to detect tenants that changed while they were being read
+  private final AtomicLong generation;
+
+  @Inject
+  TenantCache(TenantStore tenantStore, ZKClient zkClient) {
+    this.tenantStore = tenantStore;
+    this.cache = CacheBuilder.newBuilder().expireAfterWrite(CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS).build();
+    this.generation = new AtomicLong();
+    this.changeNotifier = new ZKChangeNotifier(zkClient, CHANGES_PATH, new ZKChangeNotifier.ChangeListener() {
+      @Override
+      public void changed(String name) {
+        invalidate(name);
+      }
+
+      @Override
+      public void allChanged() {
+        invalidateAll();
+      }
+    });
+    changeNotifier.start();
+  }
+
+  /**
+   * Get the tenant with the given name, reading it from the store if it is not cached.
+   *
+   * @param name Name of the tenant to get.
+   * @return Tenant with the given name, or null if none exists.
+   * @throws IOException if there was an exception reading the tenant from the store.
+   */
+  public Tenant getTenantByName(String name) throws IOException {
+    Tenant tenant = cache.getIfPresent(name);
+    if (tenant != null) {
+      return tenant;
+    }
+    long readGeneration = generation.get();
+    tenant = tenantStore.getTenantByName(name);
+    // tenants that do not exist are not cached, since they may be created at any time
+    if (tenant != null) {
+      cache.put(name, tenant);
+      // if the tenant changed while it was being read, the cached copy may be stale
+      if (generation.get() != readGeneration) {
+        cache.invalidate(name);
+      }
+    }
+    return tenant;
+  }
+
+  /**
+   * Notify all servers that a tenant has been written or deleted, so that they stop using their cached copy of it.
+   *
+   * @param name Name of the tenant that changed.
+   */
+  public void tenantChanged(String name) {
+    invalidate(name);
+    changeNotifier.notifyChange(name);
+  }
+
+  /**
+   * Drop the tenant with the given name if it is cached by this server.
+   *
+   * @param name Name of the tenant to drop.
+   */
+  public void invalidate(String name) {
+    generation.incrementAndGet();
+    cache.invalidate(name);
+  }
+
+  /**
+   * Drop all tenants cached by this server.
+   */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    cache.invalidateAll();
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.upgrade;
+
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.store.cluster.ClusterStore;
+import co.cask.coopr.store.cluster.SQLClusterStoreService;
+import co.cask.coopr.store.guice.StoreModule;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Upgrades database to work with Coopr 0.9.10. Must be run after the upgrade-tables-0.9.9-to-0.9.10.sql script, and
+ * while no server is running.
+ */
+public class UpgradeTo0_9_10 {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UpgradeTo0_9_10.class);
+
+  private final SQLClusterStoreService sqlClusterStoreService;
+
+  @Inject
+  public UpgradeTo0_9_10(SQLClusterStoreService sqlClusterStoreService) {
+    this.sqlClusterStoreService = sqlClusterStoreService;
+  }
+
+  public void run() throws IOException {
+    buildNodeUsageRollups();
+    moveNodeActionsToHistory();
+  }
+
+  private void buildNodeUsageRollups() throws IOException {
+    LOG.info("Building node usage rollups from completed tasks");
+    sqlClusterStoreService.rebuildNodeUsage();
+  }
+
+  // nodes only keep their most recent actions now, so add the actions they have to the action history
+  private void moveNodeActionsToHistory() throws IOException {
+    LOG.info("Adding node actions to the node action history");
+    ClusterStore clusterStore = sqlClusterStoreService.getSystemView();
+    for (Cluster cluster : clusterStore.getAllClusters()) {
+      LOG.info("Adding node actions of cluster {}", cluster.getId());
+      for (Node node : clusterStore.getClusterNodes(cluster.getId())) {
+        clusterStore.writeNodeActionsIfMissing(node, node.getActions());
+      }
+    }
+  }
+
+  public static void main(String[] args) throws ClassNotFoundException {
+    final Configuration configuration = Configuration.create();
+    String jdbcConnectionString = configuration.get(Constants.JDBC_CONNECTION_STRING);
+    if (jdbcConnectionString == null) {
+      LOG.error("Missing property '{}' in coopr-site.xml", Constants.JDBC_CONNECTION_STRING);
+      System.exit(1);
+    }
+
+    Injector injector = Guice.createInjector(
+      new AbstractModule() {
+        @Override
+        protected void configure() {
+          bind(Configuration.class).toInstance(configuration);
+        }
+      },
+      new StoreModule(configuration));
+
+    UpgradeTo0_9_10 upgrade = injector.getInstance(UpgradeTo0_9_10.class);
+    try {
+      upgrade.run();
+    } catch (Exception e) {
+      LOG.error("Error running upgrade", e);
+    }
+  }
+}
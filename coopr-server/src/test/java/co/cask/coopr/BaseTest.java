@@ -30,6 +30,7 @@ import co.cask.coopr.common.zookeeper.IdService;
 import co.cask.coopr.common.zookeeper.guice.ZookeeperModule;
 import co.cask.coopr.http.guice.HttpModule;
 import co.cask.coopr.provisioner.MockProvisionerRequestService;
+import co.cask.coopr.provisioner.ProvisionerRequestFanout;
 import co.cask.coopr.provisioner.ProvisionerRequestService;
 import co.cask.coopr.provisioner.plugin.ResourceService;
 import co.cask.coopr.scheduler.callback.ClusterCallback;
@@ -47,6 +48,7 @@ import co.cask.coopr.store.provisioner.ProvisionerStore;
 import co.cask.coopr.store.provisioner.SQLPluginMetaStoreService;
 import co.cask.coopr.store.provisioner.SQLProvisionerStore;
 import co.cask.coopr.store.tenant.SQLTenantStore;
+import co.cask.coopr.store.tenant.TenantCache;
 import co.cask.coopr.store.tenant.TenantStore;
 import co.cask.coopr.store.user.SQLUserStore;
 import co.cask.coopr.store.user.UserStore;
@@ -91,6 +93,7 @@ public class BaseTest {
   protected static ResourceService resourceService;
   protected static ClusterStore clusterStore;
   protected static TenantStore tenantStore;
+  protected static TenantCache tenantCache;
   protected static UserStore userStore;
   protected static ProvisionerStore provisionerStore;
   protected static MemoryPluginStore pluginStore;
@@ -151,7 +154,7 @@ public class BaseTest {
         new ConfigurationModule(conf),
         new ZookeeperModule(zkClientService),
         new TestStoreModule(),
-        new QueueModule(zkClientService),
+        new QueueModule(zkClientService, conf),
         new HttpModule(),
         new SchedulerModule(conf, MoreExecutors.sameThreadExecutor(), MoreExecutors.sameThreadExecutor()),
         new CodecModules().getModule(),
@@ -166,6 +169,7 @@ public class BaseTest {
             bind(ClusterCallback.class).toInstance(mockClusterCallback);
             bind(ProvisionerRequestService.class).to(MockProvisionerRequestService.class).in(Scopes.SINGLETON);
             bind(MockProvisionerRequestService.class).in(Scopes.SINGLETON);
+            bind(ProvisionerRequestFanout.class).in(Scopes.SINGLETON);
           }
         }
       )
@@ -190,6 +194,7 @@ public class BaseTest {
     resourceService.startAndWait();
     sqlTenantStore = injector.getInstance(SQLTenantStore.class);
     tenantStore = sqlTenantStore;
+    tenantCache = injector.getInstance(TenantCache.class);
     gson = injector.getInstance(Gson.class);
     pluginStore = injector.getInstance(MemoryPluginStore.class);
     credentialStore = injector.getInstance(CredentialStore.class);
@@ -211,6 +216,7 @@ public class BaseTest {
   public void cleanupBaseTest() throws Exception {
     if (shouldClearDataBetweenTests()) {
       sqlTenantStore.clearData();
+      tenantCache.invalidateAll();
       sqlClusterStoreService.clearData();
       sqlProvisionerStore.clearData();
       sqlMetaStoreService.clearData();
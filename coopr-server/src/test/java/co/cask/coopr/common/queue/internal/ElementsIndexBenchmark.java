@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.queue.internal;
+
+import co.cask.coopr.common.queue.Element;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Compares how many takes per second {@link ZKElementsTracking} can do when it finds the next element to consume
+ * with an {@link ElementsIndex} against walking thru all elements in the queue, for different queue sizes. A take
+ * marks the element with the highest priority as being consumed, and every taken element is finished right away and
+ * replaced by a new one, so the queue size stays the same. Zookeeper is left out, so only the in-memory work done
+ * while holding the queue lock is measured. Not run as part of the unit tests.
+ *
+ * Usage: ElementsIndexBenchmark [takes] [queueSize...]
+ */
+public class ElementsIndexBenchmark {
+
+  public static void main(String[] args) {
+    int takes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int[] queueSizes = { 1000, 10000, 100000 };
+    if (args.length > 1) {
+      queueSizes = new int[args.length - 1];
+      for (int i = 1; i < args.length; i++) {
+        queueSizes[i - 1] = Integer.parseInt(args[i]);
+      }
+    }
+
+    for (int queueSize : queueSizes) {
+      for (boolean useIndex : new boolean[] { true, false }) {
+        Map<String, ZKElementsTracking.Entry> entries = Maps.newHashMap();
+        // the index is only kept up to date when it is used
+        ElementsIndex index = useIndex ? new ElementsIndex() : null;
+        Random random = new Random(0);
+        for (int i = 0; i < queueSize; i++) {
+          add(entries, index, "element" + i, random.nextInt(queueSize));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < takes; i++) {
+          ZKElementsTracking.Entry entry = useIndex ?
+            index.getNotStartedWithHighestPriority() : getNotStartedWithHighestPriority(entries);
+          entry.consumerId = "consumer";
+          entries.remove(entry.element.getId());
+          if (useIndex) {
+            index.entryChanged(entry.element.getId(), entry);
+            index.entryRemoved(entry.element.getId());
+          }
+          add(entries, index, "new" + i, queueSize + i);
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println(String.format("%d queued elements, %s: %.0f takes/sec", queueSize,
+                                         useIndex ? "index" : "scan",
+                                         (double) takes * TimeUnit.SECONDS.toNanos(1) / nanos));
+      }
+    }
+  }
+
+  private static void add(Map<String, ZKElementsTracking.Entry> entries, @Nullable ElementsIndex index,
+                          String id, long priority) {
+    ZKElementsTracking.Entry entry = new ZKElementsTracking.Entry(new Element(id, "value"), priority);
+    entries.put(id, entry);
+    if (index != null) {
+      index.entryChanged(id, entry);
+    }
+  }
+
+  // how the next element was found before the index was added
+  private static ZKElementsTracking.Entry getNotStartedWithHighestPriority(
+    Map<String, ZKElementsTracking.Entry> entries) {
+    ZKElementsTracking.Entry result = null;
+    for (ZKElementsTracking.Entry entry : entries.values()) {
+      if (!ZKElementsTracking.NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
+        continue;
+      }
+      if (result == null || result.priority > entry.priority) {
+        result = entry;
+      }
+    }
+    return result;
+  }
+}
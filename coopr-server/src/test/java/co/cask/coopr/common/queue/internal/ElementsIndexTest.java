@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.queue.internal;
+
+import co.cask.coopr.common.queue.Element;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ *
+ */
+public class ElementsIndexTest {
+
+  @Test
+  public void testPriorityOrder() {
+    ElementsIndex index = new ElementsIndex();
+    Assert.assertNull(index.getNotStartedWithHighestPriority());
+
+    ZKElementsTracking.Entry entry1 = new ZKElementsTracking.Entry(new Element("1", "v1"), 30L);
+    ZKElementsTracking.Entry entry2 = new ZKElementsTracking.Entry(new Element("2", "v2"), 10L);
+    ZKElementsTracking.Entry entry3 = new ZKElementsTracking.Entry(new Element("3", "v3"), 20L);
+    index.entryChanged("1", entry1);
+    index.entryChanged("2", entry2);
+    index.entryChanged("3", entry3);
+    Assert.assertSame(entry2, index.getNotStartedWithHighestPriority());
+    Assert.assertEquals(ImmutableList.of(entry2, entry3, entry1), index.getNotStarted());
+
+    // entries are changed in place before they are written back
+    entry1.priority = 0L;
+    index.entryChanged("1", entry1);
+    Assert.assertEquals(ImmutableList.of(entry1, entry2, entry3), index.getNotStarted());
+
+    index.entryRemoved("2");
+    index.entryRemoved("2");
+    Assert.assertEquals(ImmutableList.of(entry1, entry3), index.getNotStarted());
+    Assert.assertTrue(index.getBeingConsumed().isEmpty());
+  }
+
+  @Test
+  public void testConsuming() {
+    ElementsIndex index = new ElementsIndex();
+    ZKElementsTracking.Entry entry1 = new ZKElementsTracking.Entry(new Element("1", "v1"), 10L);
+    ZKElementsTracking.Entry entry2 = new ZKElementsTracking.Entry(new Element("2", "v2"), 20L);
+    ZKElementsTracking.Entry entry3 = new ZKElementsTracking.Entry(new Element("3", "v3"), 30L);
+    index.entryChanged("1", entry1);
+    index.entryChanged("2", entry2);
+    index.entryChanged("3", entry3);
+
+    entry1.consumerId = "consumer1";
+    index.entryChanged("1", entry1);
+    entry2.consumerId = "consumer2";
+    index.entryChanged("2", entry2);
+    Assert.assertSame(entry3, index.getNotStartedWithHighestPriority());
+    assertSameEntries(ImmutableSet.of(entry1, entry2), index.getBeingConsumed());
+
+    // consumer gives the element back
+    entry1.consumerId = ZKElementsTracking.NO_CONSUMER_ASSIGNED;
+    index.entryChanged("1", entry1);
+    Assert.assertEquals(ImmutableList.of(entry1, entry3), index.getNotStarted());
+    assertSameEntries(ImmutableSet.of(entry2), index.getBeingConsumed());
+
+    // consumer finishes the element
+    index.entryRemoved("2");
+    Assert.assertTrue(index.getBeingConsumed().isEmpty());
+    Assert.assertEquals(ImmutableList.of(entry1, entry3), index.getNotStarted());
+  }
+
+  private void assertSameEntries(ImmutableSet<ZKElementsTracking.Entry> expected,
+                                 List<ZKElementsTracking.Entry> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    Assert.assertEquals(expected, Sets.newHashSet(actual));
+  }
+}
@@ -25,6 +25,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -168,6 +169,40 @@ public abstract class ElementsTrackingQueueTestBase {
     Assert.assertNull(queue.take("worker6"));
   }
 
+  @Test
+  public void testTakeBatch() throws Exception {
+    ElementsTrackingQueue queue = getQueue();
+    for (int i = 1; i <= 3; i++) {
+      queue.add(new Element("work" + i, "data" + i));
+      // make sure entries are added at different ts, so they are taken in the order they were added
+      Thread.sleep(1);
+    }
+
+    List<Element> taken = queue.take("worker1", 2);
+    Assert.assertEquals(2, taken.size());
+    Assert.assertEquals("work1", taken.get(0).getId());
+    Assert.assertEquals("work2", taken.get(1).getId());
+    Assert.assertEquals(1, getQueuedCount(queue));
+    Assert.assertEquals(2, Iterators.size(queue.getBeingConsumed()));
+
+    taken = queue.take("worker2", 5);
+    Assert.assertEquals(1, taken.size());
+    Assert.assertEquals("work3", taken.get(0).getId());
+    Assert.assertTrue(queue.take("worker3", 5).isEmpty());
+
+    // elements taken in a batch are tracked like elements taken one at a time
+    Assert.assertEquals(TrackingQueue.PossessionState.NOT_POSSESSES,
+                        queue.recordProgress("worker2", "work1",
+                                             TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, null));
+    Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES,
+                        queue.recordProgress("worker1", "work1",
+                                             TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, null));
+    Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES,
+                        queue.recordProgress("worker1", "work2", TrackingQueue.ConsumingStatus.FAILED, null));
+    Assert.assertEquals("work2", queue.take("worker3").getId());
+    Assert.assertEquals(2, Iterators.size(queue.getBeingConsumed()));
+  }
+
   @Test(timeout = 90000)
   public void testConcurrentAccess() throws Exception {
     final ElementsTrackingQueue queue = getQueue();
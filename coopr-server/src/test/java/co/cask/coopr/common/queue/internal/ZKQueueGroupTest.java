@@ -9,6 +9,7 @@ import co.cask.coopr.common.zookeeper.guice.ZookeeperModule;
 import com.google.common.collect.Sets;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
 import org.apache.twill.zookeeper.ZKClientService;
 import org.junit.After;
@@ -21,7 +22,9 @@ import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -107,6 +110,42 @@ public class ZKQueueGroupTest extends QueueGroupTest {
     instance2.stop();
   }
 
+  @Test
+  public void testListenersSeeAddsAcrossInstances() throws Exception {
+    QueueGroup instance1 = new ZKQueueGroup(zkClient, QueueType.JOB);
+    QueueGroup instance2 = new ZKQueueGroup(zkClient, QueueType.JOB);
+    instance1.startAndWait();
+    instance2.startAndWait();
+
+    final AtomicInteger localAdds = new AtomicInteger(0);
+    final Semaphore remoteAdds = new Semaphore(0);
+    Cancellable localListener = instance1.addListener(new QueueGroup.Listener() {
+      @Override
+      public void elementsAdded() {
+        localAdds.incrementAndGet();
+      }
+    });
+    instance2.addListener(new QueueGroup.Listener() {
+      @Override
+      public void elementsAdded() {
+        remoteAdds.release();
+      }
+    });
+
+    // listeners of the instance that added the element are called right away, others are called through zookeeper
+    instance1.add("tenant1", new Element("val1"));
+    Assert.assertTrue(localAdds.get() > 0);
+    Assert.assertTrue(remoteAdds.tryAcquire(10, TimeUnit.SECONDS));
+
+    localListener.cancel();
+    int numLocalAdds = localAdds.get();
+    instance1.add("tenant1", new Element("val2"));
+    Assert.assertTrue(remoteAdds.tryAcquire(10, TimeUnit.SECONDS));
+    Assert.assertEquals(numLocalAdds, localAdds.get());
+    instance1.stop();
+    instance2.stop();
+  }
+
   private void waitForQueueNames(Set<String> expectedQueueNames, QueueGroup queueGroup) throws InterruptedException {
     for (int i = 0; i < 20; i++) {
       Set<String> queueNames = queueGroup.getQueueNames();
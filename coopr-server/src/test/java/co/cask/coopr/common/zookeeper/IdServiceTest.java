@@ -15,9 +15,12 @@
  */
 package co.cask.coopr.common.zookeeper;
 
+import co.cask.coopr.scheduler.task.JobId;
 import com.google.common.base.Throwables;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
+import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKClientService;
+import org.apache.twill.zookeeper.ZKClients;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -27,6 +30,9 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
@@ -58,7 +64,7 @@ public class IdServiceTest {
 
   @Test
   public void testIds() throws InterruptedException, SQLException, ClassNotFoundException {
-    final IdService idService = new IdService(zkClient, 3, 10);
+    final IdService idService = new IdService(zkClient, 3, 10, 100);
     idService.startAndWait();
     final int incrementsPerThread = 100;
     final int numThreads = 20;
@@ -91,4 +97,50 @@ public class IdServiceTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testIdsUniqueAcrossServices() throws InterruptedException {
+    // services share the counter, as if they were different servers
+    final ZKClient namespacedClient = ZKClients.namespace(zkClient, "/uniqueacrossservices");
+    final int numServices = 4;
+    final int idsPerService = 250;
+    final Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    final CountDownLatch latch = new CountDownLatch(numServices);
+    ExecutorService executor = Executors.newFixedThreadPool(numServices);
+    for (int i = 0; i < numServices; i++) {
+      final IdService idService = new IdService(namespacedClient, 5, 7, 16);
+      idService.startAndWait();
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < idsPerService; j++) {
+            ids.add(idService.getNewJobId("1").getId());
+          }
+          latch.countDown();
+        }
+      });
+    }
+    latch.await();
+    executor.shutdownNow();
+
+    Assert.assertEquals(numServices * idsPerService, ids.size());
+    for (String id : ids) {
+      Assert.assertEquals(5, JobId.fromString(id).getJobNum() % 7);
+    }
+  }
+
+  @Test
+  public void testRestartSkipsLeasedIds() {
+    ZKClient namespacedClient = ZKClients.namespace(zkClient, "/restart");
+    IdService idService = new IdService(namespacedClient, 1, 1, 10);
+    idService.startAndWait();
+    long first = Long.valueOf(idService.getNewClusterId());
+    idService.stopAndWait();
+
+    // unused ids from the first lease are never handed out again
+    idService = new IdService(namespacedClient, 1, 1, 10);
+    idService.startAndWait();
+    Assert.assertEquals(first + 10, (long) Long.valueOf(idService.getNewClusterId()));
+    idService.stopAndWait();
+  }
+
 }
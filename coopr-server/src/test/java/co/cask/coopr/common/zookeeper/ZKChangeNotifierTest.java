@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.zookeeper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ZKChangeNotifier}.
+ */
+public class ZKChangeNotifierTest extends BaseZKTest {
+  private static final String PATH = "/changes";
+  private static final String ALL = "*";
+
+  @Test
+  public void testChangesSeenByOtherNotifiers() throws Exception {
+    RecordingListener listener1 = new RecordingListener();
+    RecordingListener listener2 = new RecordingListener();
+    ZKChangeNotifier notifier1 = new ZKChangeNotifier(zkClient, PATH, listener1);
+    ZKChangeNotifier notifier2 = new ZKChangeNotifier(zkClient, PATH, listener2);
+    notifier1.start().get();
+    notifier2.start().get();
+
+    // every change is seen by every notifier as a change of its key, including the first one that creates the node
+    notifier1.notifyChange("a");
+    Assert.assertEquals("a", listener1.changes.poll(10, TimeUnit.SECONDS));
+    Assert.assertEquals("a", listener2.changes.poll(10, TimeUnit.SECONDS));
+    notifier2.notifyChange("b");
+    Assert.assertEquals("b", listener1.changes.poll(10, TimeUnit.SECONDS));
+    Assert.assertEquals("b", listener2.changes.poll(10, TimeUnit.SECONDS));
+
+    // changes made before a notifier started are not passed on
+    RecordingListener listener3 = new RecordingListener();
+    ZKChangeNotifier notifier3 = new ZKChangeNotifier(zkClient, PATH, listener3);
+    notifier3.start().get();
+    notifier1.notifyChange("c");
+    Assert.assertEquals("c", listener3.changes.poll(10, TimeUnit.SECONDS));
+    Assert.assertTrue(listener3.changes.isEmpty());
+  }
+
+  @Test
+  public void testDeletedNodeChangesAll() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ZKChangeNotifier notifier = new ZKChangeNotifier(zkClient, PATH, listener);
+    notifier.start().get();
+    notifier.notifyChange("a");
+    Assert.assertEquals("a", listener.changes.poll(10, TimeUnit.SECONDS));
+
+    zkClient.delete(PATH).get();
+    Assert.assertEquals(ALL, listener.changes.poll(10, TimeUnit.SECONDS));
+
+    // changes are passed on again once the node is created again
+    notifier.notifyChange("b");
+    Assert.assertEquals("b", listener.changes.poll(10, TimeUnit.SECONDS));
+  }
+
+  private static class RecordingListener implements ZKChangeNotifier.ChangeListener {
+    private final BlockingQueue<String> changes = new LinkedBlockingQueue<String>();
+
+    @Override
+    public void changed(String key) {
+      changes.add(key);
+    }
+
+    @Override
+    public void allChanged() {
+      changes.add(ALL);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.zookeeper.lib;
+
+import com.google.common.io.Files;
+import org.apache.twill.internal.zookeeper.InMemoryZKServer;
+import org.apache.twill.zookeeper.ZKClientService;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long {@link SynchronizedZKMap} operations take against an in memory zookeeper once the map holds many
+ * entries, both when one map does all the writes and when the view of another map has to catch up with those writes.
+ * Not run as part of the unit tests.
+ *
+ * Usage: SynchronizedZKMapBenchmark [numEntries] [iterations]
+ */
+public class SynchronizedZKMapBenchmark {
+
+  public static void main(String[] args) {
+    int numEntries = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+    File dataDir = Files.createTempDir();
+    InMemoryZKServer zkServer = InMemoryZKServer.builder().setDataDir(dataDir).setTickTime(1000).build();
+    zkServer.startAndWait();
+    ZKClientService zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+    try {
+      SynchronizedZKMap<String> map = new SynchronizedZKMap<String>(zkClient, "/map", Serializers.stringSerializer());
+      SynchronizedZKMap<String> otherMap =
+        new SynchronizedZKMap<String>(zkClient, "/map", Serializers.stringSerializer());
+
+      long start = System.nanoTime();
+      for (int i = 0; i < numEntries; i++) {
+        map.put("key" + i, "value" + i);
+      }
+      print("fill", start, numEntries);
+
+      start = System.nanoTime();
+      otherMap.size();
+      print("first read of other map", start, 1);
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        map.get("key" + i);
+      }
+      print("get", start, iterations);
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        map.put("key" + i, "newValue" + i);
+      }
+      print("put", start, iterations);
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        map.remove("key" + i);
+      }
+      print("remove", start, iterations);
+
+      // every write from one map forces the other map to catch up on its next call
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        map.put("key" + i, "value" + i);
+        otherMap.get("key" + i);
+      }
+      print("put followed by get from other map", start, iterations);
+    } finally {
+      zkClient.stopAndWait();
+      zkServer.stopAndWait();
+    }
+  }
+
+  private static void print(String operation, long startNanos, int count) {
+    long nanos = System.nanoTime() - startNanos;
+    System.out.println(String.format("%s: %.3f ms per call", operation,
+                                     (double) nanos / count / TimeUnit.MILLISECONDS.toNanos(1)));
+  }
+}
@@ -16,9 +16,13 @@
 package co.cask.coopr.common.zookeeper.lib;
 
 import co.cask.coopr.common.zookeeper.BaseZKTest;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import org.apache.zookeeper.CreateMode;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -93,6 +97,79 @@ public class SynchronizedZKMapTest extends BaseZKTest {
     Assert.assertEquals(0, map2.size());
   }
 
+  @Test(timeout = 10000)
+  public void testLeftoverNodes() throws ExecutionException, InterruptedException {
+    final String path = "/foo/map";
+    SynchronizedZKMap<String> map1 =
+      new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer(), null, true);
+    SynchronizedZKMap<String> map2 =
+      new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer(), null, true);
+    map1.put("key1", "value1");
+    Assert.assertEquals("value1", map2.get("key1"));
+
+    // node written before sequential nodes were used, and a node left behind by a put that did not finish
+    zkClient.create(path + "/entries/key2", "value2".getBytes(Charsets.UTF_8), CreateMode.PERSISTENT).get();
+    zkClient.create(path + "/entries/~key1-", "value1_m".getBytes(Charsets.UTF_8),
+                    CreateMode.PERSISTENT_SEQUENTIAL).get();
+    Assert.assertEquals(2, map1.size());
+    Assert.assertEquals("value1_m", map1.get("key1"));
+    Assert.assertEquals("value2", map1.get("key2"));
+    Assert.assertEquals("value1_m", map2.get("key1"));
+    // the legacy node was rewritten as a sequential node
+    List<String> children = zkClient.getChildren(path + "/entries").get().getChildren();
+    Assert.assertEquals(2, children.size());
+    Assert.assertFalse(children.contains("key2"));
+
+    map2.put("key2", "value2_m");
+    Assert.assertEquals("value2_m", map1.get("key2"));
+    Assert.assertEquals("value1_m", map1.remove("key1"));
+    Assert.assertNull(map2.get("key1"));
+    Assert.assertEquals(1, zkClient.getChildren(path + "/entries").get().getChildren().size());
+  }
+
+  @Test(timeout = 10000)
+  public void testLegacyNodesKeptUntilSequentialNodesEnabled() throws ExecutionException, InterruptedException {
+    final String path = "/foo/legacymap";
+    SynchronizedZKMap<String> legacyMap = new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer());
+    legacyMap.put("key1", "value1");
+    legacyMap.put("key2-0000000001", "value2");
+    Assert.assertEquals(Sets.newHashSet("key1", "key2-0000000001"),
+                        Sets.newHashSet(zkClient.getChildren(path + "/entries").get().getChildren()));
+
+    // a sequential node of a key, and a legacy node written for the same key afterwards by an older process
+    zkClient.create(path + "/entries/~key1-", "value1_s".getBytes(Charsets.UTF_8),
+                    CreateMode.PERSISTENT_SEQUENTIAL).get();
+    zkClient.delete(path + "/entries/key1").get();
+    zkClient.create(path + "/entries/key1", "value1_m".getBytes(Charsets.UTF_8), CreateMode.PERSISTENT).get();
+
+    // the legacy node wins, and legacy nodes are not removed while sequential nodes are disabled
+    SynchronizedZKMap<String> map = new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer());
+    Assert.assertEquals(2, map.size());
+    Assert.assertEquals("value1_m", map.get("key1"));
+    Assert.assertEquals("value2", map.get("key2-0000000001"));
+    Assert.assertEquals(Sets.newHashSet("key1", "key2-0000000001"),
+                        Sets.newHashSet(zkClient.getChildren(path + "/entries").get().getChildren()));
+
+    map.put("key1", "value1_n");
+    Assert.assertEquals("value1_n", legacyMap.get("key1"));
+    Assert.assertEquals(Sets.newHashSet("key1", "key2-0000000001"),
+                        Sets.newHashSet(zkClient.getChildren(path + "/entries").get().getChildren()));
+
+    // once enabled, legacy nodes are rewritten as sequential nodes
+    SynchronizedZKMap<String> sequentialMap =
+      new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer(), null, true);
+    Assert.assertEquals("value1_n", sequentialMap.get("key1"));
+    Assert.assertEquals("value2", sequentialMap.get("key2-0000000001"));
+    List<String> children = zkClient.getChildren(path + "/entries").get().getChildren();
+    Assert.assertEquals(2, children.size());
+    for (String child : children) {
+      Assert.assertTrue(child.startsWith("~"));
+    }
+    sequentialMap.put("key2-0000000001", "value2_m");
+    Assert.assertEquals("value2_m", map.get("key2-0000000001"));
+    Assert.assertEquals(2, map.size());
+  }
+
   @Test (timeout = 30000)
   public void testConcurrent() throws Exception {
     int workersCount = 6;
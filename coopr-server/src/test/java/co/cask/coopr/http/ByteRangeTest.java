@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for parsing byte ranges.
+ */
+public class ByteRangeTest {
+
+  @Test
+  public void testParseRanges() {
+    ByteRange range = ByteRange.parse("bytes=10-19", 100);
+    Assert.assertEquals(10, range.getFirst());
+    Assert.assertEquals(19, range.getLast());
+    Assert.assertEquals(10, range.getLength());
+    Assert.assertTrue(range.isSatisfiable());
+
+    // open ended ranges go to the end of the content
+    Assert.assertEquals(ByteRange.parse("bytes=90-99", 100), ByteRange.parse("bytes=90-", 100));
+    // suffix ranges are for the final bytes of the content
+    Assert.assertEquals(ByteRange.parse("bytes=90-99", 100), ByteRange.parse("bytes=-10", 100));
+    Assert.assertEquals(ByteRange.parse("bytes=0-99", 100), ByteRange.parse("bytes=-1000", 100));
+    // the last byte is clipped to the end of the content
+    Assert.assertEquals(ByteRange.parse("bytes=90-99", 100), ByteRange.parse("bytes=90-1000", 100));
+  }
+
+  @Test
+  public void testUnsatisfiableRanges() {
+    Assert.assertFalse(ByteRange.parse("bytes=100-", 100).isSatisfiable());
+    Assert.assertFalse(ByteRange.parse("bytes=100-199", 100).isSatisfiable());
+    Assert.assertFalse(ByteRange.parse("bytes=-0", 100).isSatisfiable());
+    Assert.assertFalse(ByteRange.parse("bytes=0-", 0).isSatisfiable());
+  }
+
+  @Test
+  public void testIgnoredHeaders() {
+    Assert.assertNull(ByteRange.parse(null, 100));
+    Assert.assertNull(ByteRange.parse("items=0-10", 100));
+    Assert.assertNull(ByteRange.parse("bytes=0-10,20-30", 100));
+    Assert.assertNull(ByteRange.parse("bytes=20-10", 100));
+    Assert.assertNull(ByteRange.parse("bytes=a-b", 100));
+    Assert.assertNull(ByteRange.parse("bytes=-", 100));
+    Assert.assertNull(ByteRange.parse("bytes=10", 100));
+  }
+}
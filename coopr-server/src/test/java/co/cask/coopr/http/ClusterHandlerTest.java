@@ -1189,6 +1189,67 @@ public class ClusterHandlerTest extends ServiceTestBase {
     verifyInitialLeaseDuration(10000, HttpResponseStatus.OK, -1, smallTemplate.getName());
   }
 
+  @Test
+  public void testGetNodeActions() throws Exception {
+    Cluster cluster = Entities.ClusterExample.createCluster();
+    clusterStoreService.getView(cluster.getAccount()).writeCluster(cluster);
+    Node node = Entities.ClusterExample.NODE1;
+    clusterStore.writeNode(node);
+    // the last three actions are submitted at the same time
+    for (int i = 0; i < 4; i++) {
+      long submitTime = i == 0 ? 1000 : 2000;
+      Node.Action action = gson.fromJson("{ \"taskId\": \"2-1-" + i + "\", \"service\": \"service\", " +
+                                           "\"action\": \"action" + i + "\", \"status\": \"COMPLETE\", " +
+                                           "\"submitTime\": " + submitTime + " }",
+                                         Node.Action.class);
+      clusterStore.writeNodeAction(node, action);
+    }
+    String path = "/clusters/" + cluster.getId() + "/nodes/" + node.getId() + "/actions";
+
+    // pages are most recent first, and actions submitted at the same time are not skipped between pages
+    List<Node.Action> page = getNodeActions(path + "?limit=2");
+    Assert.assertEquals(2, page.size());
+    Assert.assertEquals("2-1-3", page.get(0).getTaskId());
+    Assert.assertEquals("2-1-2", page.get(1).getTaskId());
+    page = getNodeActions(path + "?limit=2&before=" + page.get(1).getSubmitTime() +
+                            "&beforeTask=" + page.get(1).getTaskId());
+    Assert.assertEquals(2, page.size());
+    Assert.assertEquals("2-1-1", page.get(0).getTaskId());
+    Assert.assertEquals("2-1-0", page.get(1).getTaskId());
+    page = getNodeActions(path + "?limit=2&before=" + page.get(1).getSubmitTime() +
+                            "&beforeTask=" + page.get(1).getTaskId());
+    Assert.assertTrue(page.isEmpty());
+
+    // without a task, only actions submitted before the timestamp are returned
+    page = getNodeActions(path + "?before=2000");
+    Assert.assertEquals(1, page.size());
+    Assert.assertEquals("2-1-0", page.get(0).getTaskId());
+
+    // limits above the max are capped
+    Assert.assertEquals(4, getNodeActions(path + "?limit=" + Integer.MAX_VALUE).size());
+
+    // nodes not in the cluster, clusters that do not exist and clusters of other users are not found
+    assertResponseStatus(doGetExternalAPI("/clusters/" + cluster.getId() + "/nodes/node3/actions", USER1_HEADERS),
+                         HttpResponseStatus.NOT_FOUND);
+    assertResponseStatus(doGetExternalAPI("/clusters/567/nodes/" + node.getId() + "/actions", USER1_HEADERS),
+                         HttpResponseStatus.NOT_FOUND);
+    assertResponseStatus(doGetExternalAPI(path, USER2_HEADERS), HttpResponseStatus.NOT_FOUND);
+
+    // params must be numbers, and the limit must be positive
+    assertResponseStatus(doGetExternalAPI(path + "?before=yesterday", USER1_HEADERS), HttpResponseStatus.BAD_REQUEST);
+    assertResponseStatus(doGetExternalAPI(path + "?limit=all", USER1_HEADERS), HttpResponseStatus.BAD_REQUEST);
+    assertResponseStatus(doGetExternalAPI(path + "?limit=0", USER1_HEADERS), HttpResponseStatus.BAD_REQUEST);
+    assertResponseStatus(doGetExternalAPI(path + "?limit=-1", USER1_HEADERS), HttpResponseStatus.BAD_REQUEST);
+
+    clusterStore.deleteNode(node.getId());
+  }
+
+  private List<Node.Action> getNodeActions(String path) throws Exception {
+    HttpResponse response = doGetExternalAPI(path, USER1_HEADERS);
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    return gson.fromJson(EntityUtils.toString(response.getEntity()), new TypeToken<List<Node.Action>>() { }.getType());
+  }
+
   @Test
   public void testClusterTemplateSync() throws Exception {
     Cluster cluster = Entities.ClusterExample.createCluster();
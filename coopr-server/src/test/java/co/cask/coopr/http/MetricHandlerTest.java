@@ -18,11 +18,14 @@ package co.cask.coopr.http;
 
 import co.cask.coopr.account.Account;
 import co.cask.coopr.metrics.Interval;
+import co.cask.coopr.metrics.MetricService;
+import co.cask.coopr.metrics.NodeUsageBucket;
 import co.cask.coopr.metrics.TimeSeries;
 import co.cask.coopr.scheduler.ClusterAction;
 import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.store.cluster.ClusterTaskFilter;
 import com.google.common.base.Charsets;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
@@ -36,6 +39,7 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -251,6 +255,34 @@ public class MetricHandlerTest extends ServiceTestBase {
                                        22 * millisPerHour / millisPerSecond, expectedList), actual);
   }
 
+  @Test
+  public void rollupsMatchTaskHistoryTest() throws Exception {
+    long millisPerHour = 3600000;
+    long secondsPerHour = 3600;
+    ClusterTask[] tasks = { CLUSTER_TASK1, CLUSTER_TASK2, CLUSTER_TASK3, CLUSTER_TASK4, CLUSTER_TASK5, CLUSTER_TASK6 };
+    long[] statusHours = { 2, 17, 9, 20, 25, 11 };
+    for (int i = 0; i < tasks.length; i++) {
+      clusterStore.writeClusterTask(tasks[i]);
+      tasks[i].setStatus(ClusterTask.Status.COMPLETE);
+      tasks[i].setStatusTime(statusHours[i] * millisPerHour);
+      clusterStore.writeClusterTask(tasks[i]);
+      clusterStore.writeNodeUsageEvent(tasks[i], NodeUsageBucket.HOUR);
+    }
+
+    MetricService metricService = new MetricService(clusterStore);
+    ClusterTaskFilter hourly = new ClusterTaskFilter("tenant1", null, null, null, 5 * secondsPerHour,
+                                                     22 * secondsPerHour, MetricService.Periodicity.hour,
+                                                     TimeUnit.MINUTES);
+    Assert.assertEquals(metricService.getNodesUsage(hourly), metricService.getNodesUsageFromRollups(hourly));
+
+    // merge the hourly buckets into daily ones, usage over whole days stays the same
+    long day = NodeUsageBucket.DAY;
+    Assert.assertTrue(metricService.compactRollups(40 * day, day, 40 * day) > 0);
+    ClusterTaskFilter total = new ClusterTaskFilter("tenant1", null, null, null, 0L,
+                                                    TimeUnit.MILLISECONDS.toSeconds(2 * day), null, null);
+    Assert.assertEquals(metricService.getNodesUsage(total), metricService.getNodesUsageFromRollups(total));
+  }
+
   private void addInterval(List<Interval> intervals, long start, long seconds) {
     Interval interval = new Interval(start);
     interval.increaseValue(seconds);
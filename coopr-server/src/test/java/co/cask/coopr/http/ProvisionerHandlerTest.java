@@ -4,6 +4,8 @@ import co.cask.coopr.Entities;
 import co.cask.coopr.account.Account;
 import co.cask.coopr.provisioner.Provisioner;
 import co.cask.coopr.provisioner.ProvisionerHeartbeat;
+import co.cask.coopr.provisioner.plugin.PluginType;
+import co.cask.coopr.provisioner.plugin.ResourceMeta;
 import co.cask.coopr.provisioner.plugin.ResourceType;
 import co.cask.coopr.spec.Tenant;
 import co.cask.coopr.spec.TenantSpecification;
@@ -13,12 +15,16 @@ import co.cask.coopr.store.provisioner.SQLProvisionerStore;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.junit.Assert;
 import org.junit.Before;
@@ -155,6 +161,36 @@ public class ProvisionerHandlerTest extends ServiceTestBase {
     Assert.assertEquals(heartbeat.getUsage(), actualProvisioner.getUsage());
   }
 
+  @Test
+  public void testGetResourceSendsContentsUnlessUnchanged() throws Exception {
+    ResourceType type = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
+    String contents = "hadoop cookbook contents";
+    metaStoreService.getResourceTypeView(ADMIN_ACCOUNT, type).add(new ResourceMeta("hadoop", 1));
+    OutputStream outputStream = pluginStore.getResourceOutputStream(ADMIN_ACCOUNT, type, "hadoop", 1);
+    try {
+      outputStream.write(contents.getBytes(Charsets.UTF_8));
+    } finally {
+      outputStream.close();
+    }
+    String path = "/tenants/" + ADMIN_ACCOUNT.getTenantId() + "/automatortypes/chef-solo/cookbooks/hadoop/versions/1";
+    String etag = "\"" + Hashing.sha256().hashString(contents, Charsets.UTF_8) + "\"";
+
+    HttpResponse response = doGetInternalAPI(path);
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Assert.assertEquals(etag, response.getFirstHeader(HttpHeaders.Names.ETAG).getValue());
+    Assert.assertEquals(contents, EntityUtils.toString(response.getEntity(), Charsets.UTF_8));
+
+    // contents are not sent again if the provisioner already has them
+    Header[] headers = { new BasicHeader(HttpHeaders.Names.IF_NONE_MATCH, etag) };
+    assertResponseStatus(doGetInternalAPI(path, headers), HttpResponseStatus.NOT_MODIFIED);
+    headers = new Header[] { new BasicHeader(HttpHeaders.Names.IF_NONE_MATCH, "\"somethingelse\"") };
+    response = doGetInternalAPI(path, headers);
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    Assert.assertEquals(contents, EntityUtils.toString(response.getEntity(), Charsets.UTF_8));
+
+    assertResponseStatus(doGetInternalAPI(path.replace("versions/1", "versions/2")), HttpResponseStatus.NOT_FOUND);
+  }
+
   @Test
   public void testProviderTypes() throws Exception {
     testNonPostRestAPIs("providertypes", gson.toJsonTree(Entities.ProviderTypeExample.JOYENT).getAsJsonObject(),
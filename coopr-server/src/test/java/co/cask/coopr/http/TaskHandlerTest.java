@@ -20,6 +20,7 @@ import co.cask.coopr.TestHelper;
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
 import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.http.request.FinishTaskRequest;
 import co.cask.coopr.http.request.TakeTaskRequest;
@@ -28,6 +29,7 @@ import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.SchedulableTask;
+import co.cask.coopr.scheduler.task.TakeTaskWaiters;
 import co.cask.coopr.scheduler.task.TaskConfig;
 import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.scheduler.task.TaskServiceAction;
@@ -38,6 +40,7 @@ import co.cask.coopr.spec.template.ClusterTemplate;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import org.apache.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
@@ -47,7 +50,14 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.net.Socket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -86,6 +96,142 @@ public class TaskHandlerTest extends ServiceTestBase {
     Assert.assertEquals(clusterTask.getTaskId(), responseJson.get("taskId").getAsString());
   }
 
+  @Test
+  public void testTakeTaskBatch() throws Exception {
+    String tenantId = USER1_ACCOUNT.getTenantId();
+    ClusterJob clusterJob = new ClusterJob(JobId.fromString("1-1"), ClusterAction.CLUSTER_CREATE);
+    clusterStore.writeClusterJob(clusterJob);
+    TaskConfig taskConfig = new TaskConfig(
+      NodeProperties.builder().build(),
+      Entities.ProviderExample.JOYENT,
+      ImmutableMap.<String, NodeProperties>of(),
+      new TaskServiceAction("svcA", new ServiceAction("shell", ImmutableMap.<String, String>of())),
+      new JsonObject(),
+      new JsonObject()
+    );
+    for (int i = 1; i <= 3; i++) {
+      ClusterTask clusterTask = new ClusterTask(
+        ProvisionerAction.CREATE, TaskId.fromString("1-1-" + i), "node_id", "service", ClusterAction.CLUSTER_CREATE,
+        "test", USER1_ACCOUNT);
+      clusterStore.writeClusterTask(clusterTask);
+      SchedulableTask schedulableTask = new SchedulableTask(clusterTask, taskConfig);
+      provisionerQueues.add(tenantId, new Element(clusterTask.getTaskId(), gson.toJson(schedulableTask)));
+      // make sure tasks have different priorities so the order they are taken in is known
+      TimeUnit.MILLISECONDS.sleep(2);
+    }
+
+    TakeTaskRequest takeRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, 2);
+    HttpResponse response = doPostInternalAPI("/tasks/take", gson.toJson(takeRequest));
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    JsonArray tasks = getResponseJsonArray(response);
+    Assert.assertEquals(2, tasks.size());
+    Assert.assertEquals("1-1-1", tasks.get(0).getAsJsonObject().get("taskId").getAsString());
+    Assert.assertEquals("1-1-2", tasks.get(1).getAsJsonObject().get("taskId").getAsString());
+
+    takeRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, 5);
+    response = doPostInternalAPI("/tasks/take", gson.toJson(takeRequest));
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    tasks = getResponseJsonArray(response);
+    Assert.assertEquals(1, tasks.size());
+    Assert.assertEquals("1-1-3", tasks.get(0).getAsJsonObject().get("taskId").getAsString());
+
+    assertResponseStatus(doPostInternalAPI("/tasks/take", gson.toJson(takeRequest)), HttpResponseStatus.NO_CONTENT);
+  }
+
+  @Test(timeout = 20000)
+  public void testTakeTaskWaitsForTasks() throws Exception {
+    String tenantId = USER1_ACCOUNT.getTenantId();
+    TakeTaskWaiters takeTaskWaiters = injector.getInstance(TakeTaskWaiters.class);
+    ClusterTask clusterTask = new ClusterTask(
+      ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node_id", "service", ClusterAction.CLUSTER_CREATE,
+      "test", USER1_ACCOUNT);
+    clusterStore.writeClusterTask(clusterTask);
+    ClusterJob clusterJob = new ClusterJob(JobId.fromString("1-1"), ClusterAction.CLUSTER_CREATE);
+    clusterStore.writeClusterJob(clusterJob);
+    TaskConfig taskConfig = new TaskConfig(
+      NodeProperties.builder().build(),
+      Entities.ProviderExample.JOYENT,
+      ImmutableMap.<String, NodeProperties>of(),
+      new TaskServiceAction("svcA", new ServiceAction("shell", ImmutableMap.<String, String>of())),
+      new JsonObject(),
+      new JsonObject()
+    );
+
+    final TakeTaskRequest takeRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, null, 10);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<HttpResponse> responseFuture = executor.submit(new Callable<HttpResponse>() {
+        @Override
+        public HttpResponse call() throws Exception {
+          return doPostInternalAPI("/tasks/take", gson.toJson(takeRequest));
+        }
+      });
+      while (takeTaskWaiters.getNumWaiters(tenantId) == 0) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+
+      SchedulableTask schedulableTask = new SchedulableTask(clusterTask, taskConfig);
+      provisionerQueues.add(tenantId, new Element(clusterTask.getTaskId(), gson.toJson(schedulableTask)));
+      takeTaskWaiters.tasksAdded(tenantId, 1);
+
+      HttpResponse response = responseFuture.get();
+      assertResponseStatus(response, HttpResponseStatus.OK);
+      Assert.assertEquals(clusterTask.getTaskId(), getResponseJson(response).get("taskId").getAsString());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testTakeTaskWaiterRemovedWhenClientDisconnects() throws Exception {
+    String tenantId = USER1_ACCOUNT.getTenantId();
+    TakeTaskWaiters takeTaskWaiters = injector.getInstance(TakeTaskWaiters.class);
+    TakeTaskRequest takeRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, null, 10);
+    byte[] body = gson.toJson(takeRequest).getBytes(Charsets.UTF_8);
+    String header = "POST " + Constants.API_BASE + "/tasks/take HTTP/1.1\r\n" +
+      "Host: " + HOSTNAME + "\r\n" +
+      "Content-Length: " + body.length + "\r\n\r\n";
+
+    Socket socket = new Socket(HOSTNAME, internalHandlerServer.getBindAddress().getPort());
+    try {
+      OutputStream out = socket.getOutputStream();
+      out.write(header.getBytes(Charsets.UTF_8));
+      out.write(body);
+      out.flush();
+      while (takeTaskWaiters.getNumWaiters(tenantId) == 0) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+    } finally {
+      socket.close();
+    }
+
+    // the waiter goes away with the connection instead of when it times out
+    while (takeTaskWaiters.getNumWaiters(tenantId) > 0) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testTakeTaskWaitTimesOut() throws Exception {
+    TakeTaskRequest takeRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, null, 1);
+    long start = System.currentTimeMillis();
+    assertResponseStatus(doPostInternalAPI("/tasks/take", gson.toJson(takeRequest)), HttpResponseStatus.NO_CONTENT);
+    Assert.assertTrue(System.currentTimeMillis() - start >= 1000);
+    Assert.assertEquals(0, injector.getInstance(TakeTaskWaiters.class).getNumWaiters(TENANT_ID));
+  }
+
+  @Test(timeout = 20000)
+  public void testIdleTenantWaitersAreRemoved() throws Exception {
+    TakeTaskWaiters takeTaskWaiters = injector.getInstance(TakeTaskWaiters.class);
+    takeTaskWaiters.tasksAdded("idle-tenant", 1);
+    Assert.assertTrue(takeTaskWaiters.getNumTenants() > 0);
+
+    // tenants without waiters are dropped the next time queues are checked
+    while (takeTaskWaiters.getNumTenants() > 0) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+  }
+
   @Test
   public void testTakeTaskForDeadProvisionerErrors() throws Exception {
     TakeTaskRequest takeRequest = new TakeTaskRequest("workerX", "nonexistant-provider", "tenantY");
@@ -208,4 +354,9 @@ public class TaskHandlerTest extends ServiceTestBase {
     Reader reader = new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8);
     return gson.fromJson(reader, JsonObject.class);
   }
+
+  private JsonArray getResponseJsonArray(HttpResponse response) throws IOException {
+    Reader reader = new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8);
+    return gson.fromJson(reader, JsonArray.class);
+  }
 }
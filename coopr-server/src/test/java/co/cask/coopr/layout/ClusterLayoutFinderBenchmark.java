@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.spec.template.ClusterDefaults;
+import co.cask.coopr.spec.template.ClusterTemplate;
+import co.cask.coopr.spec.template.Constraints;
+import co.cask.coopr.spec.template.LayoutConstraint;
+import co.cask.coopr.spec.template.ServiceConstraint;
+import co.cask.coopr.spec.template.SizeConstraint;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how long {@link ClusterLayoutFinder} takes to find node counts with its search against checking every
+ * candidate from a {@link SlottedCombinationIterator}. Worker node layouts are preferred over master node layouts,
+ * so the most preferred candidates all break the master min counts. Not run as part of the unit tests.
+ *
+ * Usage: ClusterLayoutFinderBenchmark [numMachines] [numWorkerLayouts] [numMasters] [iterations]
+ */
+public class ClusterLayoutFinderBenchmark {
+
+  public static void main(String[] args) {
+    int numMachines = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int numWorkerLayouts = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+    int numMasters = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+    int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+    Set<String> services = Sets.newHashSet("datanode");
+    Map<String, ServiceConstraint> serviceConstraints = Maps.newHashMap();
+    serviceConstraints.put("datanode", new ServiceConstraint(null, null, 1, null));
+    List<NodeLayout> nodePreferences = Lists.newArrayList();
+    for (int i = 0; i < numWorkerLayouts; i++) {
+      nodePreferences.add(new NodeLayout("worker" + i, "centos6", ImmutableSet.of("datanode")));
+    }
+    for (int i = 0; i < numMasters; i++) {
+      String master = "master" + i;
+      services.add(master);
+      serviceConstraints.put(master, new ServiceConstraint(null, null, 1, 1));
+      nodePreferences.add(new NodeLayout("master", "centos6", ImmutableSet.of(master)));
+    }
+    ClusterTemplate template = ClusterTemplate.builder()
+      .setName("benchmark")
+      .setClusterDefaults(ClusterDefaults.builder().setServices(services).setProvider("joyent").build())
+      .setConstraints(
+        new Constraints(serviceConstraints, LayoutConstraint.EMPTY_LAYOUT_CONSTRAINT, SizeConstraint.EMPTY))
+      .build();
+
+    System.out.println(String.format("%d machines, %d node layouts", numMachines, nodePreferences.size()));
+    for (boolean useSearch : new boolean[] { true, false }) {
+      long totalNanos = 0;
+      int[] nodeCounts = null;
+      for (int i = 0; i < iterations; i++) {
+        ClusterLayoutFinder finder = new ClusterLayoutFinder(nodePreferences, template, services, numMachines);
+        long start = System.nanoTime();
+        nodeCounts = useSearch ? finder.findValidNodeCounts() : finder.findValidNodeCountsByIteration();
+        totalNanos += System.nanoTime() - start;
+      }
+      System.out.println(String.format("%s: %.3f ms per solve, node counts %s",
+                                       useSearch ? "search" : "iterator",
+                                       (double) totalNanos / iterations / TimeUnit.MILLISECONDS.toNanos(1),
+                                       Arrays.toString(nodeCounts)));
+    }
+  }
+}
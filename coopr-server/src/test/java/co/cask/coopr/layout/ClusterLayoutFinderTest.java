@@ -25,12 +25,19 @@ import co.cask.coopr.spec.template.SizeConstraint;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  *
@@ -124,6 +131,89 @@ public class ClusterLayoutFinderTest extends BaseSolverTest {
     Assert.assertNull(finder.findValidNodeCounts());
   }
 
+  @Test
+  public void testSearchMatchesIteration() {
+    ExecutorService searchExecutor = Executors.newFixedThreadPool(4);
+    try {
+      assertSearchMatchesIteration(searchExecutor);
+    } finally {
+      searchExecutor.shutdownNow();
+    }
+  }
+
+  private void assertSearchMatchesIteration(ExecutorService searchExecutor) {
+    Random random = new Random(0);
+    for (int trial = 0; trial < 2000; trial++) {
+      int numServices = 1 + random.nextInt(5);
+      Set<String> services = Sets.newHashSet();
+      Map<String, ServiceConstraint> serviceConstraints = Maps.newHashMap();
+      for (int i = 0; i < numServices; i++) {
+        String service = "svc" + i;
+        services.add(service);
+        if (random.nextInt(3) > 0) {
+          int min = random.nextInt(4);
+          serviceConstraints.put(service, new ServiceConstraint(null, null, min, min + random.nextInt(5)));
+        }
+      }
+      int numLayouts = 1 + random.nextInt(6);
+      List<NodeLayout> nodePreferences = Lists.newArrayList();
+      for (int i = 0; i < numLayouts; i++) {
+        Set<String> nodeServices = Sets.newHashSet("svc" + random.nextInt(numServices));
+        for (String service : services) {
+          if (random.nextInt(3) == 0) {
+            nodeServices.add(service);
+          }
+        }
+        nodePreferences.add(new NodeLayout("medium", "centos6", nodeServices));
+      }
+      ClusterTemplate template = ClusterTemplate.builder()
+        .setName("random")
+        .setClusterDefaults(ClusterDefaults.builder().setServices(services).setProvider("joyent").build())
+        .setConstraints(
+          new Constraints(serviceConstraints, LayoutConstraint.EMPTY_LAYOUT_CONSTRAINT, SizeConstraint.EMPTY))
+        .build();
+      int numMachines = 1 + random.nextInt(12);
+      ClusterLayoutFinder finder = new ClusterLayoutFinder(nodePreferences, template, services, numMachines);
+
+      int[] expected = finder.findValidNodeCountsByIteration();
+      int[] actual = finder.findValidNodeCounts();
+      if (expected != null) {
+        Assert.assertArrayEquals(expected, actual);
+      }
+      if (actual != null) {
+        Assert.assertTrue(finder.isValidCluster(actual));
+      }
+
+      // splitting the search across threads should not change the answer
+      ClusterLayoutFinder parallelFinder =
+        new ClusterLayoutFinder(nodePreferences, template, services, numMachines, searchExecutor);
+      Assert.assertArrayEquals(actual, parallelFinder.findValidNodeCounts());
+    }
+  }
+
+  @Test
+  public void testSearchFindsLayoutMissedByGreedyStart() {
+    Set<String> services = ImmutableSet.of("svc1", "svc2");
+    ClusterTemplate template = ClusterTemplate.builder()
+      .setName("simple")
+      .setClusterDefaults(ClusterDefaults.builder().setServices(services).setProvider("joyent").build())
+      .setConstraints(new Constraints(
+        ImmutableMap.<String, ServiceConstraint>of(
+          "svc1", new ServiceConstraint(null, null, 1, 1),
+          "svc2", new ServiceConstraint(null, null, 1, 1)),
+        LayoutConstraint.EMPTY_LAYOUT_CONSTRAINT,
+        SizeConstraint.EMPTY))
+      .build();
+    // using the first layout leaves no room for a second machine, so the only valid layout skips it.
+    List<NodeLayout> nodePreferences = ImmutableList.of(
+      new NodeLayout("small", "centos6", ImmutableSet.of("svc1", "svc2")),
+      new NodeLayout("small", "centos6", ImmutableSet.of("svc1")),
+      new NodeLayout("small", "centos6", ImmutableSet.of("svc2"))
+    );
+    ClusterLayoutFinder finder = new ClusterLayoutFinder(nodePreferences, template, services, 2);
+    Assert.assertArrayEquals(new int[]{0, 1, 1}, finder.findValidNodeCounts());
+  }
+
   private void assertClusterLayout(List<NodeLayout> nodeLayouts, ClusterTemplate template,
                                    int[] nodeCounts, int numMachines, boolean expected) {
     ClusterLayoutFinder clusterLayoutFinder =
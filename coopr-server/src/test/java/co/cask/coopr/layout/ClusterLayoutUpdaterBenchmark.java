@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.layout.change.ClusterLayoutTracker;
+import co.cask.coopr.spec.template.Constraints;
+import co.cask.coopr.spec.template.LayoutConstraint;
+import co.cask.coopr.spec.template.ServiceConstraint;
+import co.cask.coopr.spec.template.SizeConstraint;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how long {@link ClusterLayoutUpdater} takes to add services to a large cluster with its search against
+ * applying every change from an {@link co.cask.coopr.layout.change.AddServiceChangeIterator} and validating the
+ * whole layout. The cluster has a master node and worker nodes spread across several hardware types. Resourcemanager
+ * must go on the master, nodemanager on every worker, and zookeeper can go on neither, so there is no solution and
+ * every way of adding the first two services gets tried. The iterator tries every way of spreading nodemanager
+ * across the worker node layouts, so it slows down quickly as the number of workers grows. Not run as part of the
+ * unit tests.
+ *
+ * Usage: ClusterLayoutUpdaterBenchmark [numWorkers] [numHardwareTypes] [iterations]
+ */
+public class ClusterLayoutUpdaterBenchmark {
+
+  public static void main(String[] args) {
+    int numWorkers = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+    int numHardwareTypes = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    Constraints constraints = new Constraints(
+      ImmutableMap.of(
+        "resourcemanager", new ServiceConstraint(null, null, 1, 1),
+        "nodemanager", new ServiceConstraint(null, null, 1, null),
+        "zookeeper", new ServiceConstraint(null, null, 1, null)),
+      new LayoutConstraint(
+        ImmutableSet.<Set<String>>of(ImmutableSet.of("namenode", "resourcemanager"),
+                                     ImmutableSet.of("datanode", "nodemanager")),
+        ImmutableSet.<Set<String>>of(ImmutableSet.of("namenode", "zookeeper"),
+                                     ImmutableSet.of("datanode", "zookeeper"))),
+      SizeConstraint.EMPTY);
+    Multiset<NodeLayout> nodeLayouts = HashMultiset.create();
+    nodeLayouts.add(new NodeLayout("large", "centos6", ImmutableSet.of("namenode")));
+    for (int i = 0; i < numWorkers; i++) {
+      nodeLayouts.add(new NodeLayout("hardware" + (i % numHardwareTypes), "centos6", ImmutableSet.of("datanode")));
+    }
+    ClusterLayout clusterLayout = new ClusterLayout(constraints, nodeLayouts);
+    Set<String> servicesToAdd = ImmutableSet.of("resourcemanager", "nodemanager", "zookeeper");
+
+    System.out.println(String.format("%d nodes, %d node layouts", nodeLayouts.size(),
+                                     nodeLayouts.elementSet().size()));
+    ClusterLayoutUpdater updater = new ClusterLayoutUpdater();
+    for (boolean useSearch : new boolean[] { true, false }) {
+      long totalNanos = 0;
+      ClusterLayoutTracker tracker = null;
+      for (int i = 0; i < iterations; i++) {
+        long start = System.nanoTime();
+        tracker = useSearch ? updater.addServices(clusterLayout, servicesToAdd) :
+          updater.addServicesByIteration(clusterLayout, servicesToAdd);
+        totalNanos += System.nanoTime() - start;
+      }
+      System.out.println(String.format("%s: %.3f ms per update, solution found: %s",
+                                       useSearch ? "search" : "iterator",
+                                       (double) totalNanos / iterations / TimeUnit.MILLISECONDS.toNanos(1),
+                                       tracker != null));
+    }
+  }
+}
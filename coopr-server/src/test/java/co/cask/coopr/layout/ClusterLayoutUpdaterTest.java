@@ -20,14 +20,25 @@ import co.cask.coopr.account.Account;
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
 import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.layout.change.ClusterLayoutTracker;
+import co.cask.coopr.spec.template.Constraints;
+import co.cask.coopr.spec.template.LayoutConstraint;
+import co.cask.coopr.spec.template.ServiceConstraint;
+import co.cask.coopr.spec.template.SizeConstraint;
 import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 
@@ -89,6 +100,95 @@ public class ClusterLayoutUpdaterTest extends BaseSolverTest {
       resourcemanager.getName(), nodemanager.getName(), zookeeper.getName())));
   }
 
+  @Test
+  public void testAllServicesAddedAfterFailedBranch() {
+    // adding y to both nodes leaves no room for z, so the search has to go back and add y to just one node.
+    Constraints constraints = new Constraints(
+      ImmutableMap.of("x", new ServiceConstraint(null, null, null, 1),
+                      "y", new ServiceConstraint(null, null, null, 2),
+                      "z", new ServiceConstraint(null, null, null, 5)),
+      new LayoutConstraint(null, ImmutableSet.<Set<String>>of(ImmutableSet.of("y", "z"))),
+      SizeConstraint.EMPTY);
+    Multiset<NodeLayout> startingCounts = HashMultiset.create();
+    startingCounts.add(new NodeLayout("medium", "centos6", ImmutableSet.of("base")), 2);
+    ClusterLayout startingLayout = new ClusterLayout(constraints, startingCounts);
+
+    Multiset<NodeLayout> expectedCounts = HashMultiset.create();
+    expectedCounts.add(new NodeLayout("medium", "centos6", ImmutableSet.of("base", "x", "y")), 1);
+    expectedCounts.add(new NodeLayout("medium", "centos6", ImmutableSet.of("base", "z")), 1);
+    ClusterLayout expected = new ClusterLayout(constraints, expectedCounts);
+
+    Set<String> servicesToAdd = ImmutableSet.of("x", "y", "z");
+    Assert.assertEquals(expected, updater.addServices(startingLayout, servicesToAdd).getCurrentLayout());
+    Assert.assertEquals(expected, updater.addServicesByIteration(startingLayout, servicesToAdd).getCurrentLayout());
+  }
+
+  @Test
+  public void testSearchMatchesIteration() {
+    Random random = new Random(0);
+    for (int i = 0; i < 300; i++) {
+      int numServices = 3 + random.nextInt(4);
+      List<String> services = Lists.newArrayList();
+      for (int j = 0; j < numServices; j++) {
+        services.add("service" + j);
+      }
+      Map<String, ServiceConstraint> serviceConstraints = Maps.newHashMap();
+      for (String service : services) {
+        if (random.nextBoolean()) {
+          Integer min = random.nextBoolean() ? null : random.nextInt(3);
+          Integer max = random.nextBoolean() ? null : (min == null ? 0 : min) + random.nextInt(10);
+          Set<String> hardwareTypes = random.nextInt(4) == 0 ? ImmutableSet.of("hw" + random.nextInt(2)) : null;
+          serviceConstraints.put(service, new ServiceConstraint(hardwareTypes, null, min, max));
+        }
+      }
+      Set<Set<String>> mustCoexist = Sets.newHashSet();
+      Set<Set<String>> cantCoexist = Sets.newHashSet();
+      int numLayoutConstraints = random.nextInt(4);
+      for (int j = 0; j < numLayoutConstraints; j++) {
+        Set<String> constraint =
+          ImmutableSet.of(services.get(random.nextInt(numServices)), services.get(random.nextInt(numServices)));
+        if (random.nextBoolean()) {
+          mustCoexist.add(constraint);
+        } else if (constraint.size() > 1) {
+          cantCoexist.add(constraint);
+        }
+      }
+      Constraints constraints =
+        new Constraints(serviceConstraints, new LayoutConstraint(mustCoexist, cantCoexist), SizeConstraint.EMPTY);
+
+      // the first few services are on the cluster, and some of the others are added to it
+      int numExisting = 1 + random.nextInt(numServices - 1);
+      Multiset<NodeLayout> counts = HashMultiset.create();
+      int numNodeLayouts = 1 + random.nextInt(4);
+      for (int j = 0; j < numNodeLayouts; j++) {
+        Set<String> nodeServices = Sets.newHashSet(services.get(0));
+        for (int k = 1; k < numExisting; k++) {
+          if (random.nextBoolean()) {
+            nodeServices.add(services.get(k));
+          }
+        }
+        counts.add(new NodeLayout("hw" + random.nextInt(2), "centos6", nodeServices), 1 + random.nextInt(5));
+      }
+      ClusterLayout layout = new ClusterLayout(constraints, counts);
+      Set<String> servicesToAdd = Sets.newHashSet();
+      int numToAdd = 1 + random.nextInt(Math.min(3, numServices - numExisting));
+      for (int j = 0; j < numToAdd; j++) {
+        servicesToAdd.add(services.get(numExisting + random.nextInt(numServices - numExisting)));
+      }
+
+      ClusterLayoutTracker expected = updater.addServicesByIteration(layout, servicesToAdd);
+      ClusterLayoutTracker actual = updater.addServices(layout, servicesToAdd);
+      if (expected == null) {
+        Assert.assertNull(actual);
+      } else {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(Lists.newArrayList(expected.getChanges()), Lists.newArrayList(actual.getChanges()));
+        Assert.assertEquals(expected.getCurrentLayout(), actual.getCurrentLayout());
+        Assert.assertTrue(actual.getCurrentLayout().isValid());
+      }
+    }
+  }
+
   @Before
   public void beforeLayoutUpdater() throws Exception {
     updater = injector.getInstance(ClusterLayoutUpdater.class);
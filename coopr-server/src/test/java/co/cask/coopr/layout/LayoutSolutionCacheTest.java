@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.management.CacheStats;
+import co.cask.coopr.spec.template.ClusterDefaults;
+import co.cask.coopr.spec.template.ClusterTemplate;
+import co.cask.coopr.spec.template.Constraints;
+import co.cask.coopr.spec.template.LayoutConstraint;
+import co.cask.coopr.spec.template.ServiceConstraint;
+import co.cask.coopr.spec.template.SizeConstraint;
+import co.cask.coopr.store.entity.BaseEntityStoreView;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ *
+ */
+public class LayoutSolutionCacheTest {
+  private static final Set<String> SERVICES = ImmutableSet.of("namenode", "datanode");
+  private static final Set<String> HARDWARE_TYPES = ImmutableSet.of("small", "large");
+  private static final Set<String> IMAGE_TYPES = ImmutableSet.of("centos6");
+  private static final List<NodeLayout> NODE_LAYOUTS = ImmutableList.of(
+    new NodeLayout("large", "centos6", ImmutableSet.of("namenode")),
+    new NodeLayout("small", "centos6", ImmutableSet.of("datanode")),
+    new NodeLayout("small", "centos6", ImmutableSet.of("namenode", "datanode")));
+  private static final LayoutSolution SOLUTION = new LayoutSolution(NODE_LAYOUTS, new int[] { 1, 4, 0 });
+
+  @Test
+  public void testSolutionOnlyKeepsUsedLayouts() {
+    Assert.assertEquals(ImmutableList.of(NODE_LAYOUTS.get(0), NODE_LAYOUTS.get(1)), SOLUTION.getNodeLayouts());
+    Assert.assertArrayEquals(new int[] { 1, 4 }, SOLUTION.getNodeCounts());
+    Assert.assertEquals(5, SOLUTION.getNumNodes());
+  }
+
+  @Test
+  public void testRepeatedSolvesAreCached() {
+    CacheStats stats = new CacheStats();
+    LayoutSolutionCache cache = new LayoutSolutionCache(10, stats);
+    CountingSolver solver = new CountingSolver(SOLUTION);
+    ClusterTemplate template = createTemplate(1);
+
+    Assert.assertSame(SOLUTION, cache.getSolution(template, SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5, solver));
+    // same inputs in a different order should not solve again
+    Assert.assertSame(SOLUTION, cache.getSolution(createTemplate(1), ImmutableSet.of("datanode", "namenode"),
+                                                  ImmutableSet.of("large", "small"), IMAGE_TYPES, 5, solver));
+    Assert.assertEquals(1, solver.numSolves);
+    Assert.assertEquals(1, stats.getHits());
+    Assert.assertEquals(1, stats.getMisses());
+
+    // any change to the inputs should solve again
+    cache.getSolution(template, SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 6, solver);
+    cache.getSolution(template, ImmutableSet.of("namenode"), HARDWARE_TYPES, IMAGE_TYPES, 5, solver);
+    cache.getSolution(template, SERVICES, ImmutableSet.of("small"), IMAGE_TYPES, 5, solver);
+    cache.getSolution(template, SERVICES, HARDWARE_TYPES, ImmutableSet.of("ubuntu12"), 5, solver);
+    cache.getSolution(createTemplate(2), SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5, solver);
+    Assert.assertEquals(6, solver.numSolves);
+    Assert.assertEquals(1, stats.getHits());
+    Assert.assertEquals(6, stats.getMisses());
+  }
+
+  @Test
+  public void testNoSolutionIsCached() {
+    LayoutSolutionCache cache = new LayoutSolutionCache(10, new CacheStats());
+    CountingSolver solver = new CountingSolver(null);
+    ClusterTemplate template = createTemplate(1);
+
+    Assert.assertNull(cache.getSolution(template, SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5, solver));
+    Assert.assertNull(cache.getSolution(template, SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5, solver));
+    Assert.assertEquals(1, solver.numSolves);
+  }
+
+  @Test
+  public void testEntityChangesInvalidateCache() {
+    CacheStats stats = new CacheStats();
+    LayoutSolutionCache cache = new LayoutSolutionCache(10, stats);
+    CountingSolver solver = new CountingSolver(SOLUTION);
+    ClusterTemplate template = createTemplate(1);
+
+    cache.getSolution(template, SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5, solver);
+    // services and providers do not change how clusters are laid out
+    cache.entityChanged(Account.SUPERADMIN, BaseEntityStoreView.EntityType.SERVICE, "namenode");
+    cache.entityChanged(Account.SUPERADMIN, BaseEntityStoreView.EntityType.PROVIDER, "joyent");
+    cache.getSolution(template, SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5, solver);
+    Assert.assertEquals(1, solver.numSolves);
+
+    int expectedSolves = 1;
+    for (BaseEntityStoreView.EntityType type : ImmutableSet.of(BaseEntityStoreView.EntityType.HARDWARE_TYPE,
+                                                               BaseEntityStoreView.EntityType.IMAGE_TYPE,
+                                                               BaseEntityStoreView.EntityType.CLUSTER_TEMPLATE,
+                                                               BaseEntityStoreView.EntityType.PARTIAL_TEMPLATE)) {
+      cache.entityChanged(Account.SUPERADMIN, type, "name");
+      cache.getSolution(template, SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5, solver);
+      expectedSolves++;
+      Assert.assertEquals(expectedSolves, solver.numSolves);
+    }
+  }
+
+  @Test
+  public void testDisabledCache() {
+    CacheStats stats = new CacheStats();
+    LayoutSolutionCache cache = new LayoutSolutionCache(0, stats);
+    CountingSolver solver = new CountingSolver(SOLUTION);
+    ClusterTemplate template = createTemplate(1);
+
+    cache.getSolution(template, SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5, solver);
+    cache.getSolution(template, SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5, solver);
+    Assert.assertEquals(2, solver.numSolves);
+    Assert.assertEquals(0, stats.getHits() + stats.getMisses());
+  }
+
+  @Test
+  public void testKeyDependsOnConstraints() {
+    ClusterTemplate template = createTemplate(1);
+    ClusterTemplate mustCoexist = ClusterTemplate.builder()
+      .setName("must-coexist")
+      .setClusterDefaults(template.getClusterDefaults())
+      .setConstraints(new Constraints(
+        template.getConstraints().getServiceConstraints(),
+        new LayoutConstraint(ImmutableSet.<Set<String>>of(SERVICES), null),
+        SizeConstraint.EMPTY))
+      .build();
+    ClusterTemplate cantCoexist = ClusterTemplate.builder()
+      .setName("cant-coexist")
+      .setClusterDefaults(template.getClusterDefaults())
+      .setConstraints(new Constraints(
+        template.getConstraints().getServiceConstraints(),
+        new LayoutConstraint(null, ImmutableSet.<Set<String>>of(SERVICES)),
+        SizeConstraint.EMPTY))
+      .build();
+    ClusterTemplate requiredHardware = ClusterTemplate.builder()
+      .setName("required-hardware")
+      .setClusterDefaults(template.getClusterDefaults())
+      .setConstraints(new Constraints(
+        ImmutableMap.of("namenode", new ServiceConstraint(ImmutableSet.of("large"), null, 1, 1)),
+        LayoutConstraint.EMPTY_LAYOUT_CONSTRAINT,
+        SizeConstraint.EMPTY))
+      .build();
+
+    Set<Object> keys = Sets.newHashSet();
+    for (ClusterTemplate candidate : ImmutableList.of(template, mustCoexist, cantCoexist, requiredHardware)) {
+      keys.add(LayoutSolutionCache.getKey(candidate, SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5));
+    }
+    Assert.assertEquals(4, keys.size());
+    // the template name does not change how clusters are laid out
+    Assert.assertEquals(
+      LayoutSolutionCache.getKey(template, SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5),
+      LayoutSolutionCache.getKey(ClusterTemplate.builder()
+                                   .setName("other")
+                                   .setClusterDefaults(template.getClusterDefaults())
+                                   .setConstraints(template.getConstraints())
+                                   .build(), SERVICES, HARDWARE_TYPES, IMAGE_TYPES, 5));
+  }
+
+  private ClusterTemplate createTemplate(int maxNamenodes) {
+    return ClusterTemplate.builder()
+      .setName("hdfs")
+      .setClusterDefaults(ClusterDefaults.builder().setServices(SERVICES).setProvider("joyent").build())
+      .setConstraints(new Constraints(
+        ImmutableMap.of("namenode", new ServiceConstraint(null, null, 1, maxNamenodes)),
+        LayoutConstraint.EMPTY_LAYOUT_CONSTRAINT,
+        SizeConstraint.EMPTY))
+      .build();
+  }
+
+  private static class CountingSolver implements Supplier<LayoutSolution> {
+    private final LayoutSolution solution;
+    private int numSolves = 0;
+
+    private CountingSolver(LayoutSolution solution) {
+      this.solution = solution;
+    }
+
+    @Override
+    public LayoutSolution get() {
+      numSolves++;
+      return solution;
+    }
+  }
+}
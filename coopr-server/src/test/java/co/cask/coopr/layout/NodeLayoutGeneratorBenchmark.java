@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.Entities;
+import co.cask.coopr.spec.template.ClusterDefaults;
+import co.cask.coopr.spec.template.ClusterTemplate;
+import co.cask.coopr.spec.template.Constraints;
+import co.cask.coopr.spec.template.LayoutConstraint;
+import co.cask.coopr.spec.template.ServiceConstraint;
+import co.cask.coopr.spec.template.SizeConstraint;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how long {@link NodeLayoutGenerator} takes to find valid service sets by enumerating bitmasks against
+ * checking every candidate set of service names, for the example templates used in tests plus a generated template
+ * with many constrained services. Not run as part of the unit tests.
+ *
+ * Usage: NodeLayoutGeneratorBenchmark [numGeneratedServices] [iterations]
+ */
+public class NodeLayoutGeneratorBenchmark {
+
+  public static void main(String[] args) {
+    int numGeneratedServices = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    for (ClusterTemplate template : ImmutableList.of(Entities.ClusterTemplateExample.HDFS,
+                                                     Entities.ClusterTemplateExample.REACTOR,
+                                                     Entities.ClusterTemplateExample.HADOOP_DISTRIBUTED,
+                                                     Entities.ClusterTemplateExample.REACTOR2,
+                                                     generateTemplate(numGeneratedServices))) {
+      Set<String> services = template.getClusterDefaults().getServices();
+      NodeLayoutGenerator generator =
+        new NodeLayoutGenerator(template, services, ImmutableSet.<String>of(), ImmutableSet.<String>of());
+      Set<String> constrained = Sets.newHashSet(Sets.difference(services, generator.findUnconstrainedServices()));
+
+      for (boolean useBitmasks : new boolean[] { true, false }) {
+        long totalNanos = 0;
+        int numValid = 0;
+        for (int i = 0; i < iterations; i++) {
+          long start = System.nanoTime();
+          Set<Set<String>> valid = useBitmasks ?
+            generator.findValidServiceSets(constrained) : generator.findValidServiceSetsByIteration(constrained);
+          totalNanos += System.nanoTime() - start;
+          numValid = valid.size();
+        }
+        System.out.println(String.format("%s, %d constrained services, %s: %.3f ms, %d valid service sets",
+                                         template.getName(), constrained.size(),
+                                         useBitmasks ? "bitmasks" : "iteration",
+                                         (double) totalNanos / iterations / TimeUnit.MILLISECONDS.toNanos(1),
+                                         numValid));
+      }
+    }
+  }
+
+  // every service has a max count, and every pair of neighboring services cannot coexist.
+  private static ClusterTemplate generateTemplate(int numServices) {
+    Set<String> services = Sets.newHashSet();
+    Map<String, ServiceConstraint> serviceConstraints = Maps.newHashMap();
+    Set<Set<String>> cantCoexist = Sets.newHashSet();
+    for (int i = 0; i < numServices; i++) {
+      services.add("svc" + i);
+      serviceConstraints.put("svc" + i, new ServiceConstraint(null, null, null, 1));
+      if (i > 0) {
+        cantCoexist.add(ImmutableSet.of("svc" + (i - 1), "svc" + i));
+      }
+    }
+    return ClusterTemplate.builder()
+      .setName("generated")
+      .setClusterDefaults(ClusterDefaults.builder().setServices(services).setProvider("joyent").build())
+      .setConstraints(new Constraints(serviceConstraints, new LayoutConstraint(null, cantCoexist),
+                                      SizeConstraint.EMPTY))
+      .build();
+  }
+}
@@ -25,11 +25,14 @@ import co.cask.coopr.spec.template.SizeConstraint;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -237,6 +240,47 @@ public class NodeLayoutGeneratorTest extends BaseSolverTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testServiceSetEnumerationMatchesIteration() {
+    Random random = new Random(0);
+    for (int trial = 0; trial < 500; trial++) {
+      int numServices = 1 + random.nextInt(10);
+      List<String> services = Lists.newArrayList();
+      for (int i = 0; i < numServices; i++) {
+        services.add("svc" + i);
+      }
+      // some services in the constraints are not on the cluster
+      Set<Set<String>> mustCoexist = randomServiceSets(random, numServices + 2);
+      Set<Set<String>> cantCoexist = randomServiceSets(random, numServices + 2);
+      Set<String> clusterServices = ImmutableSet.copyOf(services);
+      ClusterTemplate template = ClusterTemplate.builder()
+        .setName("random")
+        .setClusterDefaults(ClusterDefaults.builder().setServices(clusterServices).setProvider("joyent").build())
+        .setConstraints(new Constraints(null, new LayoutConstraint(mustCoexist, cantCoexist), SizeConstraint.EMPTY))
+        .build();
+      NodeLayoutGenerator nodeLayoutGenerator =
+        new NodeLayoutGenerator(template, clusterServices, ImmutableSet.<String>of(), ImmutableSet.<String>of());
+      // only enumerate some of the cluster services
+      Set<String> enumerated = Sets.newHashSet(services.subList(0, 1 + random.nextInt(numServices)));
+      Assert.assertEquals(nodeLayoutGenerator.findValidServiceSetsByIteration(enumerated),
+                          nodeLayoutGenerator.findValidServiceSets(enumerated));
+    }
+  }
+
+  private Set<Set<String>> randomServiceSets(Random random, int numServices) {
+    Set<Set<String>> serviceSets = Sets.newHashSet();
+    int numSets = random.nextInt(4);
+    for (int i = 0; i < numSets; i++) {
+      Set<String> serviceSet = Sets.newHashSet();
+      int setSize = 1 + random.nextInt(3);
+      for (int j = 0; j < setSize; j++) {
+        serviceSet.add("svc" + random.nextInt(numServices));
+      }
+      serviceSets.add(serviceSet);
+    }
+    return serviceSets;
+  }
+
   private void assertSatisfiesServiceConstraints(String hardwareType, String imageType, Set<String> services,
                                            Map<String, ServiceConstraint> serviceConstraints) {
     NodeLayout nodeLayout = new NodeLayout(hardwareType, imageType, services);
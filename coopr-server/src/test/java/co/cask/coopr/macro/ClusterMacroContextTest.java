@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.eval.HostServiceEvaluator;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the service indexes of the cluster macro context.
+ */
+public class ClusterMacroContextTest {
+  private static final String IP_TYPE = "access_v4";
+  private static final ClusterMacroContext CONTEXT =
+    new ClusterMacroContext(ExpressionTest.cluster, ExpressionTest.clusterNodes);
+
+  @Test
+  public void testServiceNodesInNodeOrder() throws Exception {
+    Assert.assertEquals(ImmutableList.of("bar", "foo", "one"), nodeIds(CONTEXT.getServiceNodes("svc1")));
+    Assert.assertEquals(ImmutableList.of("rab", "oof", "eno"), CONTEXT.getServiceHostnames("svc1"));
+    Assert.assertEquals(ImmutableList.of("9.6.8.1", "9.7.8.4", "9.1.3.4"), CONTEXT.getServiceIPs("svc1", IP_TYPE));
+    Assert.assertTrue(CONTEXT.getServiceNodes("svc4").isEmpty());
+    Assert.assertTrue(CONTEXT.getServiceHostnames("svc4").isEmpty());
+  }
+
+  @Test
+  public void testInstancesByNodeNum() throws Exception {
+    Assert.assertEquals("foo", CONTEXT.getNthServiceNode("svc1", 0).getId());
+    Assert.assertEquals("bar", CONTEXT.getNthServiceNode("svc1", 1).getId());
+    Assert.assertEquals("one", CONTEXT.getNthServiceNode("svc1", 2).getId());
+    Assert.assertEquals(1, CONTEXT.getServiceInstanceNum("svc1", ExpressionTest.node1));
+    Assert.assertEquals(2, CONTEXT.getServiceInstanceNum("svc1", ExpressionTest.node2));
+    Assert.assertEquals(-1, CONTEXT.getServiceInstanceNum("svc2", ExpressionTest.node2));
+    Assert.assertEquals(-1, CONTEXT.getServiceInstanceNum("svc4", ExpressionTest.node1));
+  }
+
+  @Test(expected = IncompleteClusterException.class)
+  public void testInstanceOutOfBounds() throws Exception {
+    CONTEXT.getNthServiceNode("svc2", 2);
+  }
+
+  @Test(expected = IncompleteClusterException.class)
+  public void testMissingHostname() throws Exception {
+    CONTEXT.getServiceHostnames("svc3");
+  }
+
+  @Test(expected = IncompleteClusterException.class)
+  public void testMissingIp() throws Exception {
+    CONTEXT.getServiceIPs("svc2", IP_TYPE);
+  }
+
+  @Test
+  public void testSharedContextSameAsPerExpression() throws Exception {
+    Expression expression = new Expression(new HostServiceEvaluator("svc2", null), "$:2181", null);
+    for (Node node : ExpressionTest.clusterNodes) {
+      Assert.assertEquals(expression.evaluate(ExpressionTest.cluster, ExpressionTest.clusterNodes, node),
+                          expression.evaluate(CONTEXT, node));
+    }
+  }
+
+  private static ImmutableList<String> nodeIds(Iterable<Node> nodes) {
+    ImmutableList.Builder<String> builder = ImmutableList.builder();
+    for (Node node : nodes) {
+      builder.add(node.getId());
+    }
+    return builder.build();
+  }
+}
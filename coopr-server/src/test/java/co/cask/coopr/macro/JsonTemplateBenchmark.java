@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Set;
+
+/**
+ * Compares expanding the config of a hadoop cluster for every node in the cluster, as the job scheduler does when it
+ * submits a stage of tasks, when macros are parsed again for every node against when the config is compiled into a
+ * {@link JsonTemplate} once, and against when in addition the cluster nodes are indexed into a
+ * {@link ClusterMacroContext} once. Not run as part of the unit tests.
+ *
+ * Usage: JsonTemplateBenchmark [numNodes] [iterations]
+ */
+public class JsonTemplateBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int numNodes = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+    Set<Node> nodes = createNodes(numNodes);
+    Cluster cluster = Cluster.builder()
+      .setID("1")
+      .setAccount(new Account("user", "tenant"))
+      .setName("hadoop")
+      .setDescription("benchmark cluster")
+      .setNodes(ImmutableSet.<String>of())
+      .build();
+    JsonObject config = createConfig();
+
+    // warm up both paths before measuring
+    long uncachedNanos = 0;
+    long compiledNanos = 0;
+    long indexedNanos = 0;
+    for (int i = 0; i < iterations * 2; i++) {
+      long start = System.nanoTime();
+      for (Node node : nodes) {
+        Expander.expand(config, null, cluster, nodes, node);
+      }
+      long uncached = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      JsonTemplate template = JsonTemplate.compile(config);
+      for (Node node : nodes) {
+        template.expand(cluster, nodes, node);
+      }
+      long compiled = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      template = JsonTemplate.compile(config);
+      ClusterMacroContext context = new ClusterMacroContext(cluster, nodes);
+      for (Node node : nodes) {
+        template.expand(context, node);
+      }
+      long indexed = System.nanoTime() - start;
+
+      if (i >= iterations) {
+        uncachedNanos += uncached;
+        compiledNanos += compiled;
+        indexedNanos += indexed;
+      }
+    }
+    System.out.println(String.format("%d nodes: %.3f ms per node parsing every time, %.3f ms per node compiled once, " +
+                                       "%.3f ms per node compiled and indexed once",
+                                     numNodes, uncachedNanos / 1000000.0 / iterations / numNodes,
+                                     compiledNanos / 1000000.0 / iterations / numNodes,
+                                     indexedNanos / 1000000.0 / iterations / numNodes));
+  }
+
+  private static Set<Node> createNodes(int numNodes) {
+    Service namenode = Service.builder().setName("hadoop-hdfs-namenode").build();
+    Service resourcemanager = Service.builder().setName("hadoop-yarn-resourcemanager").build();
+    Service hbaseMaster = Service.builder().setName("hbase-master").build();
+    Service zookeeper = Service.builder().setName("zookeeper-server").build();
+    Service datanode = Service.builder().setName("hadoop-hdfs-datanode").build();
+    Service nodemanager = Service.builder().setName("hadoop-yarn-nodemanager").build();
+    Service regionserver = Service.builder().setName("hbase-regionserver").build();
+
+    Set<Node> nodes = Sets.newHashSet();
+    for (int i = 0; i < numNodes; i++) {
+      Set<Service> services;
+      if (i == 0) {
+        services = ImmutableSet.of(namenode);
+      } else if (i == 1) {
+        services = ImmutableSet.of(resourcemanager, hbaseMaster);
+      } else if (i < 5) {
+        services = ImmutableSet.of(zookeeper);
+      } else {
+        services = ImmutableSet.of(datanode, nodemanager, regionserver);
+      }
+      nodes.add(new Node("node" + i, "1", services,
+                         NodeProperties.builder()
+                           .setHostname("host" + i + ".example.com")
+                           .addIPAddress("access_v4", "10.0." + (i / 256) + "." + (i % 256))
+                           .addIPAddress("bind_v4", "192.168." + (i / 256) + "." + (i % 256))
+                           .setNodenum(i)
+                           .build()));
+    }
+    return nodes;
+  }
+
+  // the config of the hadoop-hbase template, with a number of settings that do not contain macros
+  private static JsonObject createConfig() {
+    JsonObject coreSite = new JsonObject();
+    coreSite.addProperty("fs.defaultFS", "hdfs://%host.service.hadoop-hdfs-namenode%");
+    coreSite.addProperty("hadoop.tmp.dir", "/tmp/hadoop-${user.name}");
+    coreSite.addProperty("io.file.buffer.size", "131072");
+
+    JsonObject hdfsSite = new JsonObject();
+    hdfsSite.addProperty("dfs.namenode.http-address", "%host.service.hadoop-hdfs-namenode%:50070");
+    hdfsSite.addProperty("dfs.datanode.address", "%ip.bind_v4.self%:50010");
+    hdfsSite.addProperty("dfs.datanode.max.transfer.threads", "4096");
+    hdfsSite.addProperty("dfs.replication", "3");
+
+    JsonObject yarnSite = new JsonObject();
+    yarnSite.addProperty("yarn.resourcemanager.hostname", "%host.service.hadoop-yarn-resourcemanager%");
+    yarnSite.addProperty("yarn.nodemanager.hostname", "%host.self%");
+    yarnSite.addProperty("yarn.nodemanager.aux-services", "mapreduce_shuffle");
+    yarnSite.addProperty("yarn.nodemanager.resource.memory-mb", "8192");
+
+    JsonObject hbaseSite = new JsonObject();
+    hbaseSite.addProperty("hbase.rootdir", "hdfs://%host.service.hadoop-hdfs-namenode%/hbase");
+    hbaseSite.addProperty("hbase.zookeeper.quorum", "%join(host.service.zookeeper-server,',')%");
+    hbaseSite.addProperty("hbase.cluster.distributed", "true");
+    hbaseSite.addProperty("hbase.regionserver.handler.count", "30");
+
+    JsonObject zoocfg = new JsonObject();
+    zoocfg.addProperty("server.1", "%host.service.zookeeper-server[0]%:2888:3888");
+    zoocfg.addProperty("server.2", "%host.service.zookeeper-server[1]%:2888:3888");
+    zoocfg.addProperty("server.3", "%host.service.zookeeper-server[2]%:2888:3888");
+    JsonObject zookeeper = new JsonObject();
+    zookeeper.addProperty("myid", "%instance.self.service.zookeeper-server%");
+    zookeeper.add("zoocfg", zoocfg);
+
+    JsonObject hadoop = new JsonObject();
+    hadoop.add("core_site", coreSite);
+    hadoop.add("hdfs_site", hdfsSite);
+    hadoop.add("yarn_site", yarnSite);
+    JsonObject hbase = new JsonObject();
+    hbase.add("hbase_site", hbaseSite);
+
+    JsonObject java = new JsonObject();
+    java.addProperty("install_flavor", "oracle");
+    java.addProperty("jdk_version", "7");
+    JsonObject oracle = new JsonObject();
+    oracle.addProperty("accept_oracle_download_terms", "true");
+    java.add("oracle", oracle);
+
+    JsonObject config = new JsonObject();
+    config.add("hadoop", hadoop);
+    config.add("hbase", hbase);
+    config.add("zookeeper", zookeeper);
+    config.add("java", java);
+    for (int i = 0; i < 50; i++) {
+      config.addProperty("setting" + i, "value" + i);
+    }
+    return config;
+  }
+}
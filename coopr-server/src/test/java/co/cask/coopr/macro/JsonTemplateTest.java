@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+
+/**
+ * Tests for compiled json templates.
+ */
+public class JsonTemplateTest {
+
+  private static Set<Node> clusterNodes = ExpressionTest.clusterNodes;
+  private static Cluster cluster = ExpressionTest.cluster;
+  private static Node node1 = ExpressionTest.node1;
+  private static Node node2 = ExpressionTest.node2;
+
+  @Test
+  public void testSameAsExpander() throws Exception {
+    JsonElement json = new Gson().fromJson(ExpanderTest.jsonIn, JsonElement.class);
+    JsonTemplate template = JsonTemplate.compile(json);
+    for (Node node : new Node[] { node1, node2 }) {
+      Assert.assertEquals(Expander.expand(json, null, cluster, clusterNodes, node),
+                          template.expand(cluster, clusterNodes, node));
+    }
+  }
+
+  @Test
+  public void testSharesSubtreesWithoutMacros() throws Exception {
+    JsonObject json = new Gson().fromJson(ExpanderTest.jsonIn, JsonObject.class);
+    JsonObject expanded = JsonTemplate.compile(json).expand(cluster, clusterNodes, node2).getAsJsonObject();
+    Assert.assertNotSame(json, expanded);
+    JsonObject defaults = json.getAsJsonObject("defaults");
+    JsonObject expandedDefaults = expanded.getAsJsonObject("defaults");
+    Assert.assertSame(defaults.get("services"), expandedDefaults.get("services"));
+    Assert.assertNotSame(defaults.get("config"), expandedDefaults.get("config"));
+    Assert.assertEquals("hdfs://rab,oof,eno", expandedDefaults.getAsJsonObject("config").getAsJsonObject("hadoop")
+      .getAsJsonObject("core_site").get("fs.defaultFS").getAsString());
+    // the template is left as is
+    Assert.assertEquals(new Gson().fromJson(ExpanderTest.jsonIn, JsonObject.class), json);
+  }
+
+  @Test
+  public void testNoMacros() throws Exception {
+    JsonObject json = new JsonObject();
+    json.addProperty("text", "100%% sure there are no macros");
+    json.addProperty("number", 5);
+    Assert.assertSame(json, JsonTemplate.compile(json).expand(cluster, clusterNodes, node1));
+  }
+
+  @Test
+  public void testArrays() throws Exception {
+    JsonArray json = new JsonArray();
+    json.add(new Gson().toJsonTree("plain"));
+    json.add(new Gson().toJsonTree("%num.service.svc1% nodes"));
+    json.add(new Gson().toJsonTree("%host.service.svc4%"));
+    JsonArray expanded = JsonTemplate.compile(json).expand(cluster, clusterNodes, node1).getAsJsonArray();
+    Assert.assertEquals(3, expanded.size());
+    Assert.assertSame(json.get(0), expanded.get(0));
+    Assert.assertEquals("3 nodes", expanded.get(1).getAsString());
+    // macros that cannot be expanded are left as is
+    Assert.assertSame(json.get(2), expanded.get(2));
+  }
+
+  @Test(expected = SyntaxException.class)
+  public void testSyntaxErrorOnCompile() throws Exception {
+    JsonObject json = new JsonObject();
+    json.addProperty("bad", "%join(host.service.abc)%");
+    JsonTemplate.compile(json);
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for computing node usage from rollup buckets.
+ */
+public class NodeUsageBucketTest {
+
+  @Test
+  public void testUsageOfCompleteBucket() {
+    // node created at 10 and node created at 20 then deleted at 70, in the bucket [0, 100)
+    NodeUsageBucket bucket = new NodeUsageBucket(0, 100, 1, 10 + 20 - 70);
+    long now = 1000;
+    Assert.assertEquals(90 + 50, bucket.getUsage(100, now));
+    // times past the end of the bucket are cut off
+    Assert.assertEquals(90 + 50, bucket.getUsage(500, now));
+    Assert.assertEquals(0, bucket.getUsage(0, now));
+    Assert.assertEquals(0, bucket.getUsage(-10, now));
+    // times within the bucket are interpolated
+    Assert.assertEquals((90 + 50) / 2, bucket.getUsage(50, now));
+  }
+
+  @Test
+  public void testUsageOfCurrentBucket() {
+    // node created at 10 and node created at 20, in the bucket [0, 100) at time 40
+    NodeUsageBucket bucket = new NodeUsageBucket(0, 100, 2, 10 + 20);
+    long now = 40;
+    // no events can happen between now and the end of the bucket, so usage up to then is exact
+    Assert.assertEquals(30 + 20, bucket.getUsage(40, now));
+    Assert.assertEquals(90 + 80, bucket.getUsage(100, now));
+    Assert.assertEquals((30 + 20) / 2, bucket.getUsage(20, now));
+  }
+}
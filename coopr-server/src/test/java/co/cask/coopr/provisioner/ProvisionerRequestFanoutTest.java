@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.provisioner;
+
+import co.cask.coopr.provisioner.plugin.ResourceCollection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public class ProvisionerRequestFanoutTest {
+  private static final Provisioner LIVE1 = new Provisioner("live1", "host1", 12345, 100, null, null);
+  private static final Provisioner LIVE2 = new Provisioner("live2", "host2", 12345, 100, null, null);
+  private static final Provisioner DEAD = new Provisioner("dead", "host3", 12345, 100, null, null);
+  private static final Provisioner SLOW = new Provisioner("slow", "host4", 12345, 100, null, null);
+  private static final Provisioner LIVE3 = new Provisioner("live3", "host5", 12345, 100, null, null);
+  private static final Provisioner LIVE4 = new Provisioner("live4", "host6", 12345, 100, null, null);
+
+  @Test(timeout = 10000)
+  public void testRequestsMadeConcurrently() throws Exception {
+    // every request waits for all others to start, so this only finishes if they are all made at the same time
+    final CountDownLatch started = new CountDownLatch(2);
+    ProvisionerRequestService requestService = new MockProvisionerRequestService() {
+      @Override
+      public boolean putTenant(Provisioner provisioner, String tenantId, ResourceCollection resourceCollection) {
+        started.countDown();
+        try {
+          return started.await(5, TimeUnit.SECONDS) && super.putTenant(provisioner, tenantId, resourceCollection);
+        } catch (InterruptedException e) {
+          return false;
+        }
+      }
+    };
+    ProvisionerRequestFanout fanout = new ProvisionerRequestFanout(requestService, 2, 10000);
+
+    ProvisionerRequestFanout.Result result =
+      fanout.putTenant(ImmutableList.of(LIVE1, LIVE2), "tenant", new ResourceCollection());
+    Assert.assertTrue(result.getFailed().isEmpty());
+    Assert.assertTrue(result.getNotStarted().isEmpty());
+  }
+
+  @Test(timeout = 10000)
+  public void testFailedAndSlowProvisionersReturned() throws Exception {
+    final List<String> called = Lists.newCopyOnWriteArrayList();
+    MockProvisionerRequestService requestService = new MockProvisionerRequestService() {
+      @Override
+      public boolean putTenant(Provisioner provisioner, String tenantId, ResourceCollection resourceCollection) {
+        called.add(provisioner.getId());
+        if (provisioner.getId().equals(SLOW.getId())) {
+          try {
+            TimeUnit.SECONDS.sleep(30);
+          } catch (InterruptedException e) {
+            return false;
+          }
+        }
+        return super.putTenant(provisioner, tenantId, resourceCollection);
+      }
+    };
+    requestService.addDeadProvisioner(DEAD.getId());
+    ProvisionerRequestFanout fanout = new ProvisionerRequestFanout(requestService, 4, 500);
+
+    ProvisionerRequestFanout.Result result =
+      fanout.putTenant(ImmutableList.of(LIVE1, SLOW, DEAD, LIVE2), "tenant", new ResourceCollection());
+    Assert.assertEquals(ImmutableList.of(SLOW, DEAD), result.getFailed());
+    Assert.assertTrue(result.getNotStarted().isEmpty());
+    Assert.assertEquals(4, called.size());
+  }
+
+  @Test(timeout = 10000)
+  public void testDeadlineStartsWhenRequestRuns() throws Exception {
+    // with 2 threads, the second pair of requests only starts once the first pair is done, so finishes after the
+    // deadline has passed since the fanout began, but within the deadline since the requests started
+    ProvisionerRequestFanout fanout = new ProvisionerRequestFanout(new SleepingRequestService(600), 2, 1000);
+
+    ProvisionerRequestFanout.Result result =
+      fanout.putTenant(ImmutableList.of(LIVE1, LIVE2, LIVE3, LIVE4), "tenant", new ResourceCollection());
+    Assert.assertTrue(result.getFailed().isEmpty());
+    Assert.assertTrue(result.getNotStarted().isEmpty());
+  }
+
+  @Test(timeout = 10000)
+  public void testRequestsNotStartedInTimeAreNotMade() throws Exception {
+    // with 1 thread, the first request runs from 0 to 600 ms and the second from 600 to 1200 ms. The third cannot
+    // start before the deadline of 1000 ms since the fanout began, so should be skipped rather than failed.
+    SleepingRequestService requestService = new SleepingRequestService(600);
+    ProvisionerRequestFanout fanout = new ProvisionerRequestFanout(requestService, 1, 1000);
+
+    ProvisionerRequestFanout.Result result =
+      fanout.putTenant(ImmutableList.of(LIVE1, LIVE2, LIVE3), "tenant", new ResourceCollection());
+    Assert.assertTrue(result.getFailed().isEmpty());
+    Assert.assertEquals(ImmutableList.of(LIVE3), result.getNotStarted());
+
+    // make sure the skipped request is not made once the thread frees up
+    fanout.putTenant(ImmutableList.of(LIVE4), "tenant", new ResourceCollection());
+    Assert.assertEquals(ImmutableList.of(LIVE1.getId(), LIVE2.getId(), LIVE4.getId()), requestService.called);
+  }
+
+  @Test
+  public void testNoProvisioners() {
+    ProvisionerRequestFanout fanout = new ProvisionerRequestFanout(new MockProvisionerRequestService(), 1, 500);
+    ProvisionerRequestFanout.Result result =
+      fanout.putTenant(ImmutableList.<Provisioner>of(), "tenant", new ResourceCollection());
+    Assert.assertTrue(result.getFailed().isEmpty());
+    Assert.assertTrue(result.getNotStarted().isEmpty());
+  }
+
+  // request service whose requests all succeed after some time
+  private static class SleepingRequestService extends MockProvisionerRequestService {
+    private final List<String> called = Lists.newCopyOnWriteArrayList();
+    private final long sleepMs;
+
+    private SleepingRequestService(long sleepMs) {
+      this.sleepMs = sleepMs;
+    }
+
+    @Override
+    public boolean putTenant(Provisioner provisioner, String tenantId, ResourceCollection resourceCollection) {
+      called.add(provisioner.getId());
+      try {
+        TimeUnit.MILLISECONDS.sleep(sleepMs);
+      } catch (InterruptedException e) {
+        return false;
+      }
+      return super.putTenant(provisioner, tenantId, resourceCollection);
+    }
+  }
+}
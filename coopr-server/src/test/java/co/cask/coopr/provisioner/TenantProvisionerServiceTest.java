@@ -100,6 +100,25 @@ public class TenantProvisionerServiceTest extends BaseTest {
                         actual.getAssignedWorkers(tenant.getSpecification().getName()));
   }
 
+  @Test
+  public void testResendWritesTenantWithoutWorkerChanges() throws Exception {
+    Tenant tenant = new Tenant("id123", new TenantSpecification("tenantX", 10, 10, 100));
+    Provisioner provisioner =
+      new Provisioner("p1", "host", 12345, 100, null,
+                      ImmutableMap.<String, Integer>of(tenant.getId(), tenant.getSpecification().getWorkers()));
+    service.writeProvisioner(provisioner);
+    tenantStore.writeTenant(tenant);
+
+    // a dead provisioner is only noticed if the tenant is written to it
+    provisionerRequestService.addDeadProvisioner(provisioner.getId());
+    service.rebalanceTenantWorkers(tenant.getId());
+    Assert.assertNotNull(service.getProvisioner(provisioner.getId()));
+
+    // a rebalance queued because the tenant was not sent to some provisioners writes it even if no workers move
+    service.rebalanceTenantWorkers(new Element(TenantProvisionerService.RESEND_ELEMENT_PREFIX + "1", tenant.getId()));
+    Assert.assertNull(service.getProvisioner(provisioner.getId()));
+  }
+
   @Test
   public void testDeadProvisionerGetsDeletedDuringAddWorkers() throws Exception {
     Tenant tenant = new Tenant("id123", new TenantSpecification("tenantX", 110, 10, 100));
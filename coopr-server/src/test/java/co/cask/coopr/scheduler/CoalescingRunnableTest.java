@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link CoalescingRunnable}.
+ */
+public class CoalescingRunnableTest {
+
+  @Test
+  public void testTriggerRuns() {
+    final AtomicInteger numRuns = new AtomicInteger(0);
+    CoalescingRunnable runnable = new CoalescingRunnable(new Runnable() {
+      @Override
+      public void run() {
+        numRuns.incrementAndGet();
+      }
+    }, MoreExecutors.sameThreadExecutor());
+
+    runnable.trigger();
+    runnable.trigger();
+    runnable.run();
+    Assert.assertEquals(3, numRuns.get());
+  }
+
+  @Test
+  public void testRejectedTriggerCanBeRetried() {
+    final AtomicInteger numRuns = new AtomicInteger(0);
+    final AtomicInteger numRejects = new AtomicInteger(1);
+    CoalescingRunnable runnable = new CoalescingRunnable(new Runnable() {
+      @Override
+      public void run() {
+        numRuns.incrementAndGet();
+      }
+    }, new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        if (numRejects.getAndDecrement() > 0) {
+          throw new RejectedExecutionException();
+        }
+        command.run();
+      }
+    });
+
+    try {
+      runnable.trigger();
+      Assert.fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    Assert.assertEquals(0, numRuns.get());
+
+    // the rejected run must not look like it is still pending
+    runnable.trigger();
+    Assert.assertEquals(1, numRuns.get());
+  }
+
+  @Test(timeout = 10000)
+  public void testRequestsDuringRunAreCombined() throws Exception {
+    final AtomicInteger numRuns = new AtomicInteger(0);
+    final AtomicInteger numRunning = new AtomicInteger(0);
+    final CountDownLatch firstRunStarted = new CountDownLatch(1);
+    final CountDownLatch finishFirstRun = new CountDownLatch(1);
+    // keeps triggered runs until they are run by the test
+    final List<Runnable> triggered = Lists.newArrayList();
+    final CoalescingRunnable runnable = new CoalescingRunnable(new Runnable() {
+      @Override
+      public void run() {
+        Assert.assertEquals(1, numRunning.incrementAndGet());
+        if (numRuns.incrementAndGet() == 1) {
+          firstRunStarted.countDown();
+          try {
+            finishFirstRun.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        numRunning.decrementAndGet();
+      }
+    }, new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        triggered.add(command);
+      }
+    });
+
+    Thread fixedRateRun = new Thread(runnable);
+    fixedRateRun.start();
+    firstRunStarted.await();
+    // none of these should run at the same time as the first run, but they should cause one more run after it
+    for (int i = 0; i < 10; i++) {
+      runnable.trigger();
+      runnable.run();
+    }
+    Assert.assertEquals(1, triggered.size());
+    triggered.get(0).run();
+    finishFirstRun.countDown();
+    fixedRateRun.join();
+    Assert.assertEquals(2, numRuns.get());
+
+    // once the combined run is done, triggering queues up a new run
+    runnable.trigger();
+    Assert.assertEquals(2, triggered.size());
+  }
+}
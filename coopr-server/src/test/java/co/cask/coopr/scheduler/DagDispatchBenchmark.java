@@ -0,0 +1,195 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.TestHelper;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.scheduler.dag.TaskDag;
+import co.cask.coopr.scheduler.dag.TaskNode;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.spec.service.Service;
+import co.cask.coopr.spec.service.ServiceAction;
+import co.cask.coopr.spec.service.ServiceDependencies;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Simulates creating clusters of different sizes with randomized task durations, and compares how long the create
+ * takes when tasks are run stage by stage against when each task is run as soon as the tasks it depends on have
+ * completed. Some tasks are made much slower than others to mimic slow machines. Assumes there are always enough
+ * provisioner workers to take every task that is submitted. Not run as part of the unit tests.
+ *
+ * Usage: DagDispatchBenchmark [maxNodes] [seed]
+ */
+public class DagDispatchBenchmark {
+  private static final Account ACCOUNT = new Account("user", "tenant");
+  private static final ServiceAction ACTION = new ServiceAction("chef-solo", TestHelper.actionMapOf("script", "data"));
+  // typical seconds each action takes
+  private static final Map<ProvisionerAction, Integer> ACTION_SECONDS =
+    ImmutableMap.<ProvisionerAction, Integer>builder()
+      .put(ProvisionerAction.CREATE, 60)
+      .put(ProvisionerAction.CONFIRM, 30)
+      .put(ProvisionerAction.BOOTSTRAP, 20)
+      .put(ProvisionerAction.INSTALL, 30)
+      .put(ProvisionerAction.CONFIGURE, 10)
+      .put(ProvisionerAction.INITIALIZE, 10)
+      .put(ProvisionerAction.START, 5)
+      .build();
+  // percent of tasks that take 5 times as long as usual
+  private static final int SLOW_TASK_PERCENT = 2;
+
+  public static void main(String[] args) {
+    int maxNodes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+    Random random = new Random(seed);
+
+    for (int numNodes = 10; numNodes <= maxNodes; numNodes *= 2) {
+      JobId jobId = new JobId("1", numNodes);
+      ClusterJob job = new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE);
+      TaskDag taskDag = new JobPlanner(job, createNodes(numNodes)).createTaskDag();
+      List<Set<ClusterTask>> stages = createTasks(jobId, taskDag.linearize());
+      Map<String, Long> durations = Maps.newHashMap();
+      for (ClusterTask task : Iterables.concat(stages)) {
+        long duration = ACTION_SECONDS.get(task.getTaskName()) * (500L + random.nextInt(1000));
+        if (random.nextInt(100) < SLOW_TASK_PERCENT) {
+          duration *= 5;
+        }
+        durations.put(task.getTaskId(), duration);
+      }
+
+      long stagedMs = 0;
+      List<Set<ClusterTask>> dedupedStages = JobPlanner.deDupNodePerStage(stages);
+      for (Set<ClusterTask> stage : dedupedStages) {
+        long stageMs = 0;
+        for (ClusterTask task : stage) {
+          stageMs = Math.max(stageMs, durations.get(task.getTaskId()));
+        }
+        stagedMs += stageMs;
+      }
+
+      ClusterScheduler.addDependentTasks(job, taskDag, stages);
+      long dagMs = runWithDependencies(job, stages, durations);
+
+      System.out.println(String.format("%d nodes, %d tasks: %d seconds in %d stages, %d seconds with dependencies " +
+                                         "(%.1f%% faster)", numNodes, durations.size(), stagedMs / 1000,
+                                       dedupedStages.size(), dagMs / 1000, 100.0 * (stagedMs - dagMs) / stagedMs));
+    }
+  }
+
+  // simulate the job scheduler submitting runnable tasks each time a task completes
+  private static long runWithDependencies(ClusterJob job, List<Set<ClusterTask>> stages,
+                                          final Map<String, Long> durations) {
+    Map<String, ClusterTask> tasks = Maps.newHashMap();
+    for (ClusterTask task : Iterables.concat(stages)) {
+      task.setStatus(ClusterTask.Status.NOT_SUBMITTED);
+      tasks.put(task.getTaskId(), task);
+    }
+    final Map<String, Long> endTimes = Maps.newHashMap();
+    PriorityQueue<ClusterTask> running = new PriorityQueue<ClusterTask>(16, new Comparator<ClusterTask>() {
+      @Override
+      public int compare(ClusterTask task1, ClusterTask task2) {
+        return endTimes.get(task1.getTaskId()).compareTo(endTimes.get(task2.getTaskId()));
+      }
+    });
+
+    long now = 0;
+    int completed = 0;
+    while (completed < tasks.size()) {
+      List<ClusterTask> notSubmitted = Lists.newArrayList();
+      for (ClusterTask task : tasks.values()) {
+        if (task.getStatus() == ClusterTask.Status.NOT_SUBMITTED) {
+          notSubmitted.add(task);
+        }
+      }
+      for (ClusterTask task : JobScheduler.getRunnableTasks(job, tasks, notSubmitted)) {
+        task.setStatus(ClusterTask.Status.IN_PROGRESS);
+        endTimes.put(task.getTaskId(), now + durations.get(task.getTaskId()));
+        running.add(task);
+      }
+      ClusterTask finished = running.poll();
+      if (finished == null) {
+        throw new IllegalStateException("No runnable tasks left but the job is not complete.");
+      }
+      now = endTimes.get(finished.getTaskId());
+      finished.setStatus(ClusterTask.Status.COMPLETE);
+      completed++;
+    }
+    return now;
+  }
+
+  private static List<Set<ClusterTask>> createTasks(JobId jobId, List<Set<TaskNode>> linearizedTasks) {
+    List<Set<ClusterTask>> stages = Lists.newArrayList();
+    long taskNum = 0;
+    for (Set<TaskNode> taskNodes : linearizedTasks) {
+      Set<ClusterTask> stage = Sets.newHashSet();
+      for (TaskNode taskNode : taskNodes) {
+        stage.add(new ClusterTask(ProvisionerAction.valueOf(taskNode.getTaskName()), new TaskId(jobId, ++taskNum),
+                                  taskNode.getHostId(), taskNode.getService(), ClusterAction.CLUSTER_CREATE, "test",
+                                  ACCOUNT));
+      }
+      stages.add(stage);
+    }
+    return stages;
+  }
+
+  // one master node and the rest worker nodes, with worker services that depend on the master services
+  private static Set<Node> createNodes(int numNodes) {
+    Map<ProvisionerAction, ServiceAction> allActions = ImmutableMap.of(
+      ProvisionerAction.INSTALL, ACTION,
+      ProvisionerAction.CONFIGURE, ACTION,
+      ProvisionerAction.INITIALIZE, ACTION,
+      ProvisionerAction.START, ACTION);
+    Service base = Service.builder()
+      .setName("base")
+      .setProvisionerActions(ImmutableMap.of(ProvisionerAction.INSTALL, ACTION, ProvisionerAction.CONFIGURE, ACTION))
+      .build();
+    Service namenode = Service.builder()
+      .setName("namenode")
+      .setDependencies(ServiceDependencies.runtimeRequires("base"))
+      .setProvisionerActions(allActions)
+      .build();
+    Service datanode = Service.builder()
+      .setName("datanode")
+      .setDependencies(ServiceDependencies.runtimeRequires("base", "namenode"))
+      .setProvisionerActions(allActions)
+      .build();
+
+    Set<Node> nodes = Sets.newHashSet();
+    for (int i = 0; i < numNodes; i++) {
+      Set<Service> services = i == 0 ? ImmutableSet.of(base, namenode) : ImmutableSet.of(base, datanode);
+      nodes.add(new Node("node" + i, "1", services,
+                         NodeProperties.builder().setHostname("host" + i).addIPAddress("access_v4", "ip" + i).build()));
+    }
+    return nodes;
+  }
+}
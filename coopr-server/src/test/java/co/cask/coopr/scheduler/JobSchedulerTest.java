@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.spec.ProvisionerAction;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Tests for scheduling jobs whose tasks have dependencies.
+ */
+public class JobSchedulerTest {
+  private static final JobId JOB_ID = new JobId("1", 1);
+
+  @Test
+  public void testGetRunnableTasks() {
+    // node1: create -> bootstrap -> install, node2: create -> bootstrap, and node1 install depends on node2 bootstrap
+    ClusterTask create1 = createTask(1, ProvisionerAction.CREATE, "node1");
+    ClusterTask bootstrap1 = createTask(2, ProvisionerAction.BOOTSTRAP, "node1");
+    ClusterTask install1 = createTask(3, ProvisionerAction.INSTALL, "node1");
+    ClusterTask create2 = createTask(4, ProvisionerAction.CREATE, "node2");
+    ClusterTask bootstrap2 = createTask(5, ProvisionerAction.BOOTSTRAP, "node2");
+    ClusterJob job = new ClusterJob(JOB_ID, ClusterAction.CLUSTER_CREATE);
+    job.addStage(ImmutableSet.of(create1.getTaskId(), bootstrap1.getTaskId(), install1.getTaskId(),
+                                 create2.getTaskId(), bootstrap2.getTaskId()));
+    job.setTaskDependencies(create1.getTaskId(), ImmutableSet.<String>of());
+    job.setTaskDependencies(bootstrap1.getTaskId(), ImmutableSet.of(create1.getTaskId()));
+    job.setTaskDependencies(install1.getTaskId(), ImmutableSet.of(bootstrap1.getTaskId(), bootstrap2.getTaskId()));
+    job.setTaskDependencies(create2.getTaskId(), ImmutableSet.<String>of());
+    job.setTaskDependencies(bootstrap2.getTaskId(), ImmutableSet.of(create2.getTaskId()));
+    Map<String, ClusterTask> stageTasks = toMap(create1, bootstrap1, install1, create2, bootstrap2);
+
+    Assert.assertEquals(ImmutableSet.of(create1, create2),
+                        JobScheduler.getRunnableTasks(job, stageTasks, stageTasks.values()));
+
+    // node1 can move on even though node2 is still being created
+    create1.setStatus(ClusterTask.Status.COMPLETE);
+    create2.setStatus(ClusterTask.Status.IN_PROGRESS);
+    Assert.assertEquals(ImmutableSet.of(bootstrap1),
+                        JobScheduler.getRunnableTasks(job, stageTasks, ImmutableList.of(bootstrap1, install1,
+                                                                                        bootstrap2)));
+
+    // install on node1 waits for bootstrap on node2
+    bootstrap1.setStatus(ClusterTask.Status.COMPLETE);
+    Assert.assertTrue(JobScheduler.getRunnableTasks(job, stageTasks, ImmutableList.of(install1, bootstrap2))
+                        .isEmpty());
+    create2.setStatus(ClusterTask.Status.COMPLETE);
+    bootstrap2.setStatus(ClusterTask.Status.COMPLETE);
+    Assert.assertEquals(ImmutableSet.of(install1),
+                        JobScheduler.getRunnableTasks(job, stageTasks, ImmutableList.of(install1)));
+  }
+
+  @Test
+  public void testOneTaskPerNode() {
+    ClusterTask install = createTask(1, ProvisionerAction.INSTALL, "node1");
+    ClusterTask configure = createTask(2, ProvisionerAction.CONFIGURE, "node1");
+    ClusterJob job = new ClusterJob(JOB_ID, ClusterAction.CLUSTER_CONFIGURE);
+    job.addStage(ImmutableSet.of(install.getTaskId(), configure.getTaskId()));
+    job.setTaskDependencies(install.getTaskId(), ImmutableSet.<String>of());
+    job.setTaskDependencies(configure.getTaskId(), ImmutableSet.<String>of());
+    Map<String, ClusterTask> stageTasks = toMap(install, configure);
+
+    // the task planned first is picked
+    Assert.assertEquals(ImmutableSet.of(install), JobScheduler.getRunnableTasks(job, stageTasks, stageTasks.values()));
+    install.setStatus(ClusterTask.Status.IN_PROGRESS);
+    Assert.assertTrue(JobScheduler.getRunnableTasks(job, stageTasks, ImmutableList.of(configure)).isEmpty());
+  }
+
+  @Test
+  public void testInsertTasksBefore() {
+    ClusterJob job = new ClusterJob(JOB_ID, ClusterAction.CLUSTER_CREATE);
+    job.addStage(ImmutableSet.of("1-1-1", "1-1-2", "1-1-3"));
+    job.setTaskDependencies("1-1-1", ImmutableSet.<String>of());
+    job.setTaskDependencies("1-1-2", ImmutableSet.of("1-1-1"));
+    job.setTaskDependencies("1-1-3", ImmutableSet.of("1-1-2"));
+
+    // retrying task 2 requires running tasks 4 and 5 first
+    job.insertTasksBefore("1-1-2", ImmutableList.of("1-1-4", "1-1-5"));
+    Assert.assertEquals(ImmutableSet.of("1-1-1", "1-1-2", "1-1-3", "1-1-4", "1-1-5"), job.getCurrentStage());
+    Assert.assertEquals(ImmutableSet.of("1-1-1"), job.getTaskDependencies("1-1-4"));
+    Assert.assertEquals(ImmutableSet.of("1-1-4"), job.getTaskDependencies("1-1-5"));
+    Assert.assertEquals(ImmutableSet.of("1-1-5"), job.getTaskDependencies("1-1-2"));
+    Assert.assertEquals(ImmutableSet.of("1-1-2"), job.getTaskDependencies("1-1-3"));
+    Assert.assertEquals(ClusterTask.Status.NOT_SUBMITTED, job.getTaskStatus().get("1-1-4"));
+  }
+
+  private ClusterTask createTask(int taskNum, ProvisionerAction action, String nodeId) {
+    return new ClusterTask(action, new TaskId(JOB_ID, taskNum), nodeId, action.isHardwareAction() ? "" : "service",
+                           ClusterAction.CLUSTER_CREATE, "test", new Account("testUser", "testTenant"));
+  }
+
+  private Map<String, ClusterTask> toMap(ClusterTask... tasks) {
+    Map<String, ClusterTask> map = Maps.newHashMap();
+    for (ClusterTask task : tasks) {
+      map.put(task.getTaskId(), task);
+    }
+    return map;
+  }
+}
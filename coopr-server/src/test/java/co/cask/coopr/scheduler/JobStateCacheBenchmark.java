@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.codec.json.guice.CodecModules;
+import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.store.DBHelper;
+import co.cask.coopr.store.cluster.ClusterStore;
+import co.cask.coopr.store.cluster.SQLClusterStoreService;
+import co.cask.coopr.store.guice.TestStoreModule;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares the time the job scheduler spends reading and writing a job for each task that completes in a stage,
+ * when it reads the whole job and every task in the stage each time against when it uses a {@link JobStateCache}.
+ * Runs against an in memory derby database, so it only measures serialization and query overhead and not network
+ * round trips. Not run as part of the unit tests.
+ *
+ * Usage: JobStateCacheBenchmark [maxTasks]
+ */
+public class JobStateCacheBenchmark {
+  private static final Account ACCOUNT = new Account("user", "tenant");
+
+  public static void main(String[] args) throws Exception {
+    int maxTasks = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    Injector injector = Guice.createInjector(
+      new ConfigurationModule(BaseTest.createTestConf()),
+      new TestStoreModule(),
+      new CodecModules().getModule()
+    );
+    SQLClusterStoreService clusterStoreService = injector.getInstance(SQLClusterStoreService.class);
+    clusterStoreService.startAndWait();
+    ClusterStore clusterStore = clusterStoreService.getSystemView();
+
+    try {
+      int clusterNum = 1;
+      for (int numTasks = 10; numTasks <= maxTasks; numTasks *= 10) {
+        List<ClusterTask> tasks = writeStage(clusterStore, new JobId(String.valueOf(clusterNum++), 1), numTasks);
+        long uncachedNanos = completeWithoutCache(clusterStore, tasks);
+
+        tasks = writeStage(clusterStore, new JobId(String.valueOf(clusterNum++), 1), numTasks);
+        long cachedNanos = completeWithCache(new JobStateCache(clusterStore, 1), clusterStore, tasks);
+
+        System.out.println(String.format("%d tasks: %.2f ms per completed task without cache, %.2f ms with cache",
+                                         numTasks, uncachedNanos / 1000000.0 / numTasks,
+                                         cachedNanos / 1000000.0 / numTasks));
+      }
+    } finally {
+      clusterStoreService.stopAndWait();
+      DBHelper.dropDerbyDB();
+    }
+  }
+
+  // the stage tasks are completed one at a time, with the job scheduled after each completion as a provisioner would.
+  private static long completeWithoutCache(ClusterStore clusterStore, List<ClusterTask> tasks) throws Exception {
+    JobId jobId = JobId.fromString(tasks.get(0).getJobId());
+    long start = System.nanoTime();
+    for (ClusterTask task : tasks) {
+      completeTask(clusterStore, task);
+      ClusterJob job = clusterStore.getClusterJob(jobId);
+      Map<String, ClusterTask> stageTasks = clusterStore.getClusterTasks(toTaskIds(job.getCurrentStage()));
+      for (ClusterTask stageTask : stageTasks.values()) {
+        job.setTaskStatus(stageTask.getTaskId(), stageTask.getStatus());
+      }
+      clusterStore.writeClusterJob(job);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static long completeWithCache(JobStateCache cache, ClusterStore clusterStore,
+                                        List<ClusterTask> tasks) throws Exception {
+    JobId jobId = JobId.fromString(tasks.get(0).getJobId());
+    long start = System.nanoTime();
+    for (ClusterTask task : tasks) {
+      completeTask(clusterStore, task);
+      ClusterJob job = cache.getJob(ACCOUNT.getTenantId(), jobId);
+      Map<String, ClusterTask> stageTasks = cache.getStageTasks(job);
+      for (ClusterTask stageTask : stageTasks.values()) {
+        job.setTaskStatus(stageTask.getTaskId(), stageTask.getStatus());
+      }
+      cache.writeJob(job, true);
+    }
+    cache.writeDeferred(jobId.getId());
+    return System.nanoTime() - start;
+  }
+
+  private static void completeTask(ClusterStore clusterStore, ClusterTask task) throws Exception {
+    task.setStatus(ClusterTask.Status.COMPLETE);
+    clusterStore.writeClusterTask(task);
+  }
+
+  private static List<ClusterTask> writeStage(ClusterStore clusterStore, JobId jobId, int numTasks) throws Exception {
+    List<ClusterTask> tasks = Lists.newArrayList();
+    Set<String> stage = Sets.newHashSet();
+    for (int i = 1; i <= numTasks; i++) {
+      ClusterTask task = new ClusterTask(ProvisionerAction.CONFIGURE, new TaskId(jobId, i), "node" + i, "service",
+                                         ClusterAction.CLUSTER_CREATE, "test", ACCOUNT);
+      task.setStatus(ClusterTask.Status.IN_PROGRESS);
+      tasks.add(task);
+      stage.add(task.getTaskId());
+    }
+    clusterStore.writeClusterTasks(tasks);
+
+    ClusterJob job = new ClusterJob(jobId, ClusterAction.CLUSTER_CREATE);
+    job.addStage(stage);
+    job.setJobStatus(ClusterJob.Status.RUNNING);
+    for (ClusterTask task : tasks) {
+      job.setTaskStatus(task.getTaskId(), task.getStatus());
+    }
+    clusterStore.writeClusterJob(job);
+    return tasks;
+  }
+
+  private static List<TaskId> toTaskIds(Set<String> taskIds) {
+    List<TaskId> ids = Lists.newArrayList();
+    for (String taskId : taskIds) {
+      ids.add(TaskId.fromString(taskId));
+    }
+    return ids;
+  }
+}
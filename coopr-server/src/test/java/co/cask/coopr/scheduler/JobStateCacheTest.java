@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.spec.ProvisionerAction;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Tests for {@link JobStateCache}.
+ */
+public class JobStateCacheTest extends BaseTest {
+  private static final Account ACCOUNT = new Account("user", "tenant");
+  private static final String QUEUE = ACCOUNT.getTenantId();
+  private static final JobId JOB_ID = new JobId("1", 1);
+
+  private ClusterJob job;
+  private ClusterTask task1;
+  private ClusterTask task2;
+
+  @Before
+  public void setupJob() throws Exception {
+    task1 = createTask(1);
+    task2 = createTask(2);
+    clusterStore.writeClusterTask(task1);
+    clusterStore.writeClusterTask(task2);
+    job = new ClusterJob(JOB_ID, ClusterAction.CLUSTER_CREATE);
+    job.addStage(ImmutableSet.of(task1.getTaskId(), task2.getTaskId()));
+    job.setJobStatus(ClusterJob.Status.RUNNING);
+    clusterStore.writeClusterJob(job);
+  }
+
+  @Test
+  public void testJobReadAgainWhenChangedOutside() throws Exception {
+    JobStateCache cache = new JobStateCache(clusterStore, 0);
+    ClusterJob cached = cache.getJob(QUEUE, JOB_ID);
+    Assert.assertEquals(job, cached);
+    Assert.assertSame(cached, cache.getJob(QUEUE, JOB_ID));
+
+    // abort the job like a user would
+    ClusterJob aborted = clusterStore.getClusterJob(JOB_ID);
+    aborted.setJobStatus(ClusterJob.Status.FAILED);
+    clusterStore.writeClusterJob(aborted);
+    Assert.assertEquals(ClusterJob.Status.FAILED, cache.getJob(QUEUE, JOB_ID).getJobStatus());
+
+    clusterStore.deleteClusterJob(JOB_ID);
+    Assert.assertNull(cache.getJob(QUEUE, JOB_ID));
+  }
+
+  @Test
+  public void testGetJobSeesChangesThatKeepTheStatus() throws Exception {
+    JobStateCache cache = new JobStateCache(clusterStore, 0);
+    ClusterJob cached = cache.getJob(QUEUE, JOB_ID);
+    cached.setTaskStatus(task1.getTaskId(), ClusterTask.Status.COMPLETE);
+    cache.writeJob(cached, false);
+    Assert.assertSame(cached, cache.getJob(QUEUE, JOB_ID));
+
+    // pause and resume the job like a user would, which leaves the job with the status it had before
+    ClusterJob job = clusterStore.getClusterJob(JOB_ID);
+    ClusterJob.Status status = job.getJobStatus();
+    job.setJobStatus(ClusterJob.Status.PAUSED);
+    clusterStore.writeClusterJob(job);
+    job.setJobStatus(status);
+    job.setStatusMessage("Resumed by user.");
+    clusterStore.writeClusterJob(job);
+
+    ClusterJob reloaded = cache.getJob(QUEUE, JOB_ID);
+    Assert.assertNotSame(cached, reloaded);
+    Assert.assertEquals("Resumed by user.", reloaded.getStatusMessage());
+  }
+
+  @Test
+  public void testStageTasksTrackChanges() throws Exception {
+    JobStateCache cache = new JobStateCache(clusterStore, 0);
+    ClusterJob cached = cache.getJob(QUEUE, JOB_ID);
+    Map<String, ClusterTask> stageTasks = cache.getStageTasks(cached);
+    Assert.assertEquals(ImmutableSet.of(task1.getTaskId(), task2.getTaskId()), stageTasks.keySet());
+    Assert.assertEquals(ClusterTask.Status.IN_PROGRESS, stageTasks.get(task1.getTaskId()).getStatus());
+
+    task1.setStatus(ClusterTask.Status.COMPLETE);
+    clusterStore.writeClusterTask(task1);
+    stageTasks = cache.getStageTasks(cached);
+    Assert.assertEquals(ClusterTask.Status.COMPLETE, stageTasks.get(task1.getTaskId()).getStatus());
+    Assert.assertEquals(ClusterTask.Status.IN_PROGRESS, stageTasks.get(task2.getTaskId()).getStatus());
+
+    // changes to tasks that are not in progress are only seen after they are updated in the cache
+    task1.setStatus(ClusterTask.Status.FAILED);
+    clusterStore.writeClusterTask(task1);
+    Assert.assertEquals(ClusterTask.Status.COMPLETE, cache.getStageTasks(cached).get(task1.getTaskId()).getStatus());
+    cache.updateStageTasks(cached, ImmutableList.of(task1));
+    Assert.assertEquals(ClusterTask.Status.FAILED, cache.getStageTasks(cached).get(task1.getTaskId()).getStatus());
+  }
+
+  @Test
+  public void testUpdateStageTasks() throws Exception {
+    JobStateCache cache = new JobStateCache(clusterStore, 0);
+    ClusterJob cached = cache.getJob(QUEUE, JOB_ID);
+    cache.getStageTasks(cached);
+
+    // replace task1 with a retry task that was written, and add a task that was only written to the store
+    ClusterTask task3 = createTask(3);
+    ClusterTask task4 = createTask(4);
+    clusterStore.writeClusterTask(task3);
+    clusterStore.writeClusterTask(task4);
+    cached.getCurrentStage().remove(task1.getTaskId());
+    cached.getCurrentStage().add(task3.getTaskId());
+    cached.getCurrentStage().add(task4.getTaskId());
+    task3.setStatus(ClusterTask.Status.NOT_SUBMITTED);
+    cache.updateStageTasks(cached, ImmutableList.of(task3));
+
+    Map<String, ClusterTask> stageTasks = cache.getStageTasks(cached);
+    Assert.assertEquals(ImmutableSet.of(task2.getTaskId(), task3.getTaskId(), task4.getTaskId()),
+                        stageTasks.keySet());
+    Assert.assertSame(task3, stageTasks.get(task3.getTaskId()));
+    Assert.assertEquals(task4, stageTasks.get(task4.getTaskId()));
+  }
+
+  @Test
+  public void testDeferredWrites() throws Exception {
+    JobStateCache cache = new JobStateCache(clusterStore, 3600);
+    ClusterJob cached = cache.getJob(QUEUE, JOB_ID);
+    cached.setTaskStatus(task1.getTaskId(), ClusterTask.Status.COMPLETE);
+    cache.writeJob(cached, false);
+    Assert.assertEquals(cached, clusterStore.getClusterJob(JOB_ID));
+
+    // written less than the write interval ago, so the write is deferred
+    cached.setTaskStatus(task2.getTaskId(), ClusterTask.Status.COMPLETE);
+    cache.writeJob(cached, true);
+    Assert.assertFalse(cached.equals(clusterStore.getClusterJob(JOB_ID)));
+    Assert.assertTrue(cache.getDeferredWrites(true).isEmpty());
+    Assert.assertEquals(ImmutableMap.of(JOB_ID.getId(), QUEUE), cache.getDeferredWrites(false));
+    cache.writeDeferred(JOB_ID.getId());
+    Assert.assertEquals(cached, clusterStore.getClusterJob(JOB_ID));
+
+    // deferred writes are dropped if the job was changed outside
+    cached.setTaskStatus(task2.getTaskId(), ClusterTask.Status.FAILED);
+    cache.writeJob(cached, true);
+    ClusterJob paused = clusterStore.getClusterJob(JOB_ID);
+    paused.setJobStatus(ClusterJob.Status.PAUSED);
+    clusterStore.writeClusterJob(paused);
+    cache.writeDeferred(JOB_ID.getId());
+    Assert.assertEquals(paused, clusterStore.getClusterJob(JOB_ID));
+    Assert.assertEquals(paused, cache.getJob(QUEUE, JOB_ID));
+  }
+
+  @Test
+  public void testDeferredWritesDue() throws Exception {
+    JobStateCache cache = new JobStateCache(clusterStore, 0);
+    ClusterJob cached = cache.getJob(QUEUE, JOB_ID);
+    cache.writeJob(cached, true);
+    Assert.assertTrue(cache.getDeferredWrites(false).isEmpty());
+    Assert.assertEquals(cached, clusterStore.getClusterJob(JOB_ID));
+  }
+
+  private ClusterTask createTask(int taskNum) {
+    ClusterTask task = new ClusterTask(ProvisionerAction.CONFIGURE, new TaskId(JOB_ID, taskNum), "node" + taskNum,
+                                       "service", ClusterAction.CLUSTER_CREATE, "test", ACCOUNT);
+    task.setStatus(ClusterTask.Status.IN_PROGRESS);
+    return task;
+  }
+}
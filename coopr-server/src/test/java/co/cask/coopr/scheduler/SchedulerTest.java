@@ -259,6 +259,57 @@ public class SchedulerTest extends ServiceTestBase {
     testCallbacks(true);
   }
 
+  @Test(timeout = 20000)
+  public void testDagDispatchWithRetry() throws Exception {
+    conf.setBoolean(Constants.SCHEDULER_DAG_DISPATCH_ENABLED, true);
+    try {
+      String tenantId = cluster.getAccount().getTenantId();
+      ClusterScheduler clusterScheduler = injector.getInstance(ClusterScheduler.class);
+      CallbackScheduler callbackScheduler = injector.getInstance(CallbackScheduler.class);
+
+      clusterQueues.add(tenantId, new Element(cluster.getId(), ClusterAction.CLUSTER_CREATE.name()));
+      clusterScheduler.run();
+      waitForCallback(callbackScheduler);
+
+      JobScheduler jobScheduler = injector.getInstance(JobScheduler.class);
+      jobScheduler.run();
+
+      // fail the first confirm task, which is retried by deleting and creating the node again before confirming it
+      TakeTaskRequest takeRequest = new TakeTaskRequest("consumer1", PROVISIONER_ID, tenantId);
+      Multiset<String> takenActions = HashMultiset.create();
+      boolean failedConfirm = false;
+      SchedulableTask task = TestHelper.takeTask(getInternalServerUrl(), takeRequest);
+      while (task != null) {
+        takenActions.add(task.getTaskName());
+        int status = 0;
+        if (!failedConfirm && task.getTaskName().equals("CONFIRM")) {
+          failedConfirm = true;
+          status = 1;
+        }
+        FinishTaskRequest finishRequest =
+          new FinishTaskRequest("consumer1", PROVISIONER_ID, tenantId,
+                                task.getTaskId(), null, null, status, null, null, null);
+        TestHelper.finishTask(getInternalServerUrl(), finishRequest);
+        jobScheduler.run();
+        jobScheduler.run();
+        task = TestHelper.takeTask(getInternalServerUrl(), takeRequest);
+      }
+
+      // both nodes were created and confirmed, and the node that failed was deleted and created again
+      Assert.assertEquals(3, takenActions.count("CREATE"));
+      Assert.assertEquals(3, takenActions.count("CONFIRM"));
+      Assert.assertEquals(1, takenActions.count("DELETE"));
+      Assert.assertEquals(2, takenActions.count("BOOTSTRAP"));
+
+      Cluster actualCluster = clusterStore.getCluster(cluster.getId());
+      Assert.assertEquals(Cluster.Status.ACTIVE, actualCluster.getStatus());
+      ClusterJob actualJob = clusterStore.getClusterJob(JobId.fromString(actualCluster.getLatestJobId()));
+      Assert.assertEquals(ClusterJob.Status.COMPLETE, actualJob.getJobStatus());
+    } finally {
+      conf.setBoolean(Constants.SCHEDULER_DAG_DISPATCH_ENABLED, false);
+    }
+  }
+
   @Test(timeout = 20000)
   public void testFalseOnStartStopsJob() throws Exception {
     String tenantId = "q";
@@ -19,6 +19,7 @@ import co.cask.coopr.scheduler.dag.TaskDag;
 import co.cask.coopr.scheduler.dag.TaskNode;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -147,4 +148,35 @@ public class TaskDagTest {
     //noinspection AssertEqualsBetweenInconvertibleTypes
     Assert.assertEquals(expected, actual);
   }
+
+  @Test
+  public void testGetDependenciesSkipsNodes() {
+    TaskDag taskDag = new TaskDag();
+    TaskNode create1 = new TaskNode("1", "create", "");
+    TaskNode bootstrap1 = new TaskNode("1", "bootstrap", "");
+    TaskNode install1 = new TaskNode("1", "install", "datanode");
+    TaskNode create2 = new TaskNode("2", "create", "");
+    TaskNode bootstrap2 = new TaskNode("2", "bootstrap", "");
+    TaskNode install2 = new TaskNode("2", "install", "namenode");
+    TaskNode start2 = new TaskNode("2", "start", "namenode");
+    TaskNode start1 = new TaskNode("1", "start", "datanode");
+
+    taskDag.addDependency(create1, bootstrap1);
+    taskDag.addDependency(bootstrap1, install1);
+    taskDag.addDependency(install1, start1);
+    taskDag.addDependency(create2, bootstrap2);
+    taskDag.addDependency(bootstrap2, install2);
+    taskDag.addDependency(install2, start2);
+    taskDag.addDependency(start2, start1);  // cross dependency
+
+    // pretend the services do not define install, so those nodes are not turned into tasks
+    Set<TaskNode> taskNodes = ImmutableSet.of(create1, bootstrap1, create2, bootstrap2, start2, start1);
+    SetMultimap<TaskNode, TaskNode> dependencies = taskDag.getDependencies(taskNodes);
+
+    Assert.assertTrue(dependencies.get(create1).isEmpty());
+    Assert.assertEquals(ImmutableSet.of(create1), dependencies.get(bootstrap1));
+    Assert.assertEquals(ImmutableSet.of(create2), dependencies.get(bootstrap2));
+    Assert.assertEquals(ImmutableSet.of(bootstrap2), dependencies.get(start2));
+    Assert.assertEquals(ImmutableSet.of(bootstrap1, start2), dependencies.get(start1));
+  }
 }
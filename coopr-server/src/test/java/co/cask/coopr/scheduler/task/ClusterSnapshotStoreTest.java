@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler.task;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ *
+ */
+public class ClusterSnapshotStoreTest extends BaseTest {
+  private static ClusterSnapshotStore snapshotStore;
+  private static Node node1;
+  private static Node node2;
+
+  @BeforeClass
+  public static void setupTestClass() {
+    snapshotStore = injector.getInstance(ClusterSnapshotStore.class);
+    Service svc = Service.builder().setName("svc").build();
+    node1 = new Node("node1", "1", ImmutableSet.of(svc),
+                     NodeProperties.builder().setHostname("host1").addIPAddress("access_v4", "10.0.0.1")
+                       .setNodenum(1).build());
+    node2 = new Node("node2", "1", ImmutableSet.of(svc),
+                     NodeProperties.builder().setHostname("host2").addIPAddress("access_v4", "10.0.0.2")
+                       .setNodenum(2).build());
+  }
+
+  @Test
+  public void testPutAndGet() {
+    String snapshotId = snapshotStore.put(ImmutableList.of(node1, node2));
+    Map<String, NodeProperties> expected = ImmutableMap.of(node1.getId(), node1.getProperties(),
+                                                           node2.getId(), node2.getProperties());
+    Assert.assertEquals(expected, snapshotStore.get(snapshotId));
+
+    // same nodes in a different order are the same snapshot
+    Assert.assertEquals(snapshotId, snapshotStore.put(ImmutableList.of(node2, node1)));
+    Assert.assertFalse(snapshotId.equals(snapshotStore.put(ImmutableList.of(node1))));
+    Assert.assertNull(snapshotStore.get("missing"));
+  }
+
+  @Test
+  public void testDeleteWrittenBefore() {
+    String snapshotId = snapshotStore.put(ImmutableList.of(node1));
+    snapshotStore.deleteWrittenBefore(0);
+    Assert.assertNotNull(snapshotStore.get(snapshotId));
+
+    snapshotStore.deleteWrittenBefore(System.currentTimeMillis() + 60000);
+    Assert.assertNull(snapshotStore.get(snapshotId));
+  }
+
+  @Test
+  public void testTaskConfigCodecKeepsSnapshotId() {
+    JsonObject provisionerResults = new JsonObject();
+    provisionerResults.addProperty("key", "val");
+    TaskConfig taskConfig = new TaskConfig(node1.getProperties(), null, ImmutableMap.<String, NodeProperties>of(),
+                                           null, new JsonObject(), provisionerResults, "snapshot1");
+    TaskConfig decoded = gson.fromJson(gson.toJson(taskConfig), TaskConfig.class);
+    Assert.assertEquals(taskConfig, decoded);
+    Assert.assertEquals(provisionerResults, decoded.getProvisionerResults());
+
+    Map<String, NodeProperties> nodes = Maps.newHashMap();
+    nodes.put(node1.getId(), node1.getProperties());
+    TaskConfig withNodes = decoded.withNodes(nodes);
+    Assert.assertNull(withNodes.getNodesSnapshotId());
+    Assert.assertEquals(nodes, gson.fromJson(gson.toJson(withNodes), TaskConfig.class).getNodes());
+  }
+}
@@ -27,6 +27,8 @@ import com.google.common.collect.Lists;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.List;
+
 /**
  * Test NodeService
  */
@@ -85,6 +87,69 @@ public class NodeServiceTest extends ServiceTestBase {
                         })));
   }
 
+  @Test
+  public void testNodeActionHistory() throws Exception {
+    conf.setInt(Constants.MAX_PER_NODE_NUM_ACTIONS, 2);
+    conf.setInt(Constants.MAX_PER_NODE_LOG_LENGTH, 100);
+    NodeService nodeService = injector.getInstance(NodeService.class);
+
+    Node node = new Node("1", "1", ImmutableSet.<Service>of(), TestHelper.EMPTY_NODE_PROPERTIES);
+    for (int i = 0; i < 4; ++i) {
+      nodeService.startAction(node, "1-1-" + i, "service" + i, "action" + i);
+      nodeService.failAction(node, "stdout" + i, "stderr" + i);
+      // make sure actions have different submit times
+      Thread.sleep(2);
+    }
+
+    // only the latest action in the node keeps its logs
+    Assert.assertEquals(2, node.getActions().size());
+    Assert.assertNull(node.getActions().get(0).getStdout());
+    Assert.assertEquals("stdout3", node.getActions().get(1).getStdout());
+
+    // the full history is kept with logs, most recent first
+    List<Node.Action> history = clusterStore.getNodeActions("1", Long.MAX_VALUE, null, 3);
+    Assert.assertEquals(3, history.size());
+    Assert.assertEquals("1-1-3", history.get(0).getTaskId());
+    Assert.assertEquals("stderr2", history.get(1).getStderr());
+    Assert.assertEquals(Node.Status.FAILED, history.get(2).getStatus());
+    List<Node.Action> nextPage = clusterStore.getNodeActions("1", history.get(2).getSubmitTime(), null, 3);
+    Assert.assertEquals(1, nextPage.size());
+    Assert.assertEquals("stdout0", nextPage.get(0).getStdout());
+
+    clusterStore.deleteNode("1");
+    Assert.assertTrue(clusterStore.getNodeActions("1", Long.MAX_VALUE, null, 3).isEmpty());
+  }
+
+  @Test
+  public void testActionsFromBeforeHistoryAreKept() throws Exception {
+    conf.setInt(Constants.MAX_PER_NODE_NUM_ACTIONS, 2);
+    conf.setInt(Constants.MAX_PER_NODE_LOG_LENGTH, 100);
+    NodeService nodeService = injector.getInstance(NodeService.class);
+
+    // actions that are only in the node, like the ones written before the action history existed
+    Node node = new Node("2", "1", ImmutableSet.<Service>of(), TestHelper.EMPTY_NODE_PROPERTIES);
+    for (int i = 0; i < 2; ++i) {
+      Node.Action action = new Node.Action("1-1-" + i, "service" + i, "action" + i);
+      action.setStatus(Node.Status.FAILED);
+      action.setStdout("stdout" + i);
+      node.addAction(action);
+      // make sure actions have different submit times
+      Thread.sleep(2);
+    }
+    Assert.assertTrue(clusterStore.getNodeActions("2", Long.MAX_VALUE, null, 10).isEmpty());
+
+    // the removed action and the one losing its logs are added to the history first
+    nodeService.startAction(node, "1-1-2", "service2", "action2");
+    List<Node.Action> history = clusterStore.getNodeActions("2", Long.MAX_VALUE, null, 10);
+    Assert.assertEquals(3, history.size());
+    Assert.assertEquals("1-1-2", history.get(0).getTaskId());
+    Assert.assertEquals("stdout1", history.get(1).getStdout());
+    Assert.assertEquals("stdout0", history.get(2).getStdout());
+    Assert.assertNull(node.getActions().get(0).getStdout());
+
+    clusterStore.deleteNode("2");
+  }
+
   @Test
   public void testTruncateLog1() throws Exception {
     conf.setInt(Constants.MAX_PER_NODE_NUM_ACTIONS, 3);
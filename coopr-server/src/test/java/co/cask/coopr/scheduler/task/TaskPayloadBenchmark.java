@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler.task;
+
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.codec.json.guice.CodecModules;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.inject.Guice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the bytes written to the provisioner queues in zookeeper for a job stage with one task per node, when
+ * every task includes all cluster nodes against when every task refers to a shared cluster snapshot. The snapshot
+ * is written once per stage, gzipped, so its size is spread across the tasks of the stage. Not run as part of the
+ * unit tests.
+ *
+ * Usage: TaskPayloadBenchmark [maxNodes]
+ */
+public class TaskPayloadBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    int maxNodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    Gson gson = Guice.createInjector(new CodecModules().getModule()).getInstance(Gson.class);
+
+    for (int numNodes = 10; numNodes <= maxNodes; numNodes *= 10) {
+      Map<String, NodeProperties> nodes = Maps.newTreeMap();
+      for (int i = 0; i < numNodes; i++) {
+        nodes.put("node" + i, createNodeProperties(i));
+      }
+      NodeProperties taskNode = nodes.get("node0");
+      TaskConfig fullConfig = new TaskConfig(taskNode, null, nodes, null, new JsonObject(), new JsonObject());
+      TaskConfig snapshotConfig = new TaskConfig(taskNode, null, ImmutableMap.<String, NodeProperties>of(), null,
+                                                 new JsonObject(), new JsonObject(), "snapshot");
+
+      long fullBytes = gson.toJson(fullConfig).getBytes(Charsets.UTF_8).length;
+      long referenceBytes = gson.toJson(snapshotConfig).getBytes(Charsets.UTF_8).length;
+      long snapshotBytes = gzip(gson.toJson(nodes).getBytes(Charsets.UTF_8));
+      System.out.println(String.format("%d nodes: %d bytes per task with all nodes, %d bytes per task with a " +
+                                         "snapshot reference (%d snapshot bytes per stage, %.1f per task)",
+                                       numNodes, fullBytes, referenceBytes, snapshotBytes,
+                                       (double) snapshotBytes / numNodes));
+    }
+  }
+
+  private static NodeProperties createNodeProperties(int nodenum) {
+    return NodeProperties.builder()
+      .setHostname("node" + nodenum + ".cluster.example.com")
+      .addIPAddress("access_v4", "10.0." + (nodenum / 256) + "." + (nodenum % 256))
+      .addIPAddress("bind_v4", "192.168." + (nodenum / 256) + "." + (nodenum % 256))
+      .setNodenum(nodenum)
+      .setHardwaretype("large")
+      .setImagetype("centos6")
+      .setFlavor("m1.large")
+      .setImage("ami-12345678")
+      .setSSHUser("root")
+      .setAutomators(ImmutableSet.of("chef-solo", "shell"))
+      .setServiceNames(ImmutableSet.of("base", "hadoop-hdfs-datanode", "hadoop-yarn-nodemanager", "hbase-regionserver"))
+      .build();
+  }
+
+  private static long gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GZIPOutputStream out = new GZIPOutputStream(bytes);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+    return bytes.size();
+  }
+}
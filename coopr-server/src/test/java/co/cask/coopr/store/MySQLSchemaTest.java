@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import co.cask.coopr.BaseTest;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that the example MySQL schema matches the schema the server creates in embedded Derby, since tests only ever
+ * run against Derby.
+ */
+public class MySQLSchemaTest extends BaseTest {
+  private static final File MYSQL_SCHEMA = new File("sql/create-tables-mysql.sql");
+  private static final Pattern CREATE_TABLE =
+    Pattern.compile("CREATE TABLE IF NOT EXISTS (\\w+)\\s*\\((.*?)\\)\\s*ENGINE", Pattern.DOTALL);
+  private static final Set<String> NON_COLUMNS = ImmutableSet.of("primary", "foreign", "index", "unique", "key");
+
+  @Test
+  public void testDerbyTablesMatchMySQLSchema() throws Exception {
+    Map<String, Set<String>> mysqlTables = getMySQLTables();
+    Map<String, Set<String>> derbyTables = getDerbyTables();
+    Assert.assertTrue(derbyTables.keySet().containsAll(
+      ImmutableSet.of("clusters", "jobs", "tasks", "node_usage", "live_nodes", "tenants")));
+    for (Map.Entry<String, Set<String>> entry : derbyTables.entrySet()) {
+      String table = entry.getKey();
+      Assert.assertTrue("table " + table + " is missing from the MySQL schema", mysqlTables.containsKey(table));
+      Assert.assertEquals("columns of table " + table, entry.getValue(), mysqlTables.get(table));
+    }
+  }
+
+  private Map<String, Set<String>> getMySQLTables() throws Exception {
+    Map<String, Set<String>> tables = Maps.newHashMap();
+    Matcher matcher = CREATE_TABLE.matcher(Files.toString(MYSQL_SCHEMA, Charsets.UTF_8));
+    while (matcher.find()) {
+      Set<String> columns = Sets.newHashSet();
+      for (String line : matcher.group(2).split("\n")) {
+        String[] words = line.trim().split("\\s+");
+        String column = words[0].replace(",", "").toLowerCase();
+        if (!column.isEmpty() && !NON_COLUMNS.contains(column)) {
+          columns.add(column);
+        }
+      }
+      tables.put(matcher.group(1).toLowerCase(), columns);
+    }
+    return tables;
+  }
+
+  private Map<String, Set<String>> getDerbyTables() throws Exception {
+    Map<String, Set<String>> tables = Maps.newHashMap();
+    Connection conn = injector.getInstance(DBConnectionPool.class).getConnection();
+    try {
+      DatabaseMetaData metaData = conn.getMetaData();
+      ResultSet rs = metaData.getColumns(null, "APP", null, null);
+      try {
+        while (rs.next()) {
+          String table = rs.getString("TABLE_NAME").toLowerCase();
+          if (!tables.containsKey(table)) {
+            tables.put(table, Sets.<String>newHashSet());
+          }
+          tables.get(table).add(rs.getString("COLUMN_NAME").toLowerCase());
+        }
+      } finally {
+        rs.close();
+      }
+    } finally {
+      conn.close();
+    }
+    return tables;
+  }
+}
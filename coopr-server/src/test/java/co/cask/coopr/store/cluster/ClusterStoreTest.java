@@ -21,13 +21,16 @@ import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.ClusterSummary;
 import co.cask.coopr.cluster.Node;
 import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.metrics.NodeUsageBucket;
 import co.cask.coopr.scheduler.ClusterAction;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.spec.ProvisionerAction;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.junit.Assert;
 import org.junit.Before;
@@ -35,7 +38,13 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Tests for getting and setting cluster objects.  Test classes for different types of stores must set the
@@ -186,6 +195,169 @@ public abstract class ClusterStoreTest {
     Assert.assertNull(systemView.getClusterTask(id));
   }
 
+  @Test
+  public void testBatchGetWriteTasks() throws IOException {
+    Account account = new Account("testUser", "testTenant");
+    List<ClusterTask> tasks = Lists.newArrayList();
+    List<TaskId> taskIds = Lists.newArrayList();
+    // tasks from two jobs, with more tasks in a job than fit in a single lookup
+    for (int jobNum = 1; jobNum <= 2; jobNum++) {
+      for (int taskNum = 1; taskNum <= 600; taskNum++) {
+        TaskId id = new TaskId(new JobId("1", jobNum), taskNum);
+        taskIds.add(id);
+        tasks.add(new ClusterTask(ProvisionerAction.CONFIGURE, id, "node" + taskNum, "service",
+                                  ClusterAction.CLUSTER_CREATE, "test", account));
+      }
+    }
+    Assert.assertTrue(systemView.getClusterTasks(taskIds).isEmpty());
+
+    // write some of the tasks first so that the batch write has both updates and inserts
+    systemView.writeClusterTask(tasks.get(0));
+    systemView.writeClusterTask(tasks.get(700));
+    for (ClusterTask task : tasks) {
+      task.setStatus(ClusterTask.Status.IN_PROGRESS);
+    }
+    systemView.writeClusterTasks(tasks);
+
+    Map<String, ClusterTask> stored = systemView.getClusterTasks(taskIds);
+    Assert.assertEquals(tasks.size(), stored.size());
+    for (ClusterTask task : tasks) {
+      Assert.assertEquals(task, stored.get(task.getTaskId()));
+      Assert.assertEquals(ClusterTask.Status.IN_PROGRESS, stored.get(task.getTaskId()).getStatus());
+    }
+
+    // missing tasks are left out
+    systemView.deleteClusterTask(taskIds.get(0));
+    stored = systemView.getClusterTasks(taskIds.subList(0, 2));
+    Assert.assertEquals(ImmutableSet.of(taskIds.get(1).getId()), stored.keySet());
+  }
+
+  @Test
+  public void testProcessClusterTasks() throws IOException {
+    Account account = new Account("testUser", "testTenant");
+    writeCompletedTask(new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("2-1-1"), "node1", "service",
+                                       ClusterAction.CLUSTER_CREATE, "test", account), 5000);
+    writeCompletedTask(new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
+                                       ClusterAction.CLUSTER_CREATE, "test", account), 3000);
+    writeCompletedTask(new ClusterTask(ProvisionerAction.DELETE, TaskId.fromString("1-2-1"), "node1", "service",
+                                       ClusterAction.CLUSTER_DELETE, "test", account), 8000);
+    // tasks that are not completed create or delete tasks are left out
+    writeCompletedTask(new ClusterTask(ProvisionerAction.CONFIGURE, TaskId.fromString("1-1-2"), "node1", "service",
+                                       ClusterAction.CLUSTER_CREATE, "test", account), 4000);
+    systemView.writeClusterTask(new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-3"), "node2",
+                                                "service", ClusterAction.CLUSTER_CREATE, "test", account));
+
+    ClusterTaskFilter filter = new ClusterTaskFilter("testTenant", null, null, null, null, null, null, null);
+    final List<String> processed = Lists.newArrayList();
+    systemView.processClusterTasks(filter, new ClusterTaskProcessor() {
+      @Override
+      public void process(ClusterTask task) {
+        processed.add(task.getTaskId());
+      }
+    });
+    Assert.assertEquals(ImmutableList.of("1-1-1", "1-2-1", "2-1-1"), processed);
+
+    Assert.assertEquals(Long.valueOf(3000), systemView.getEarliestClusterTaskTime(filter, ProvisionerAction.CREATE));
+    Assert.assertEquals(Long.valueOf(5000), systemView.getLatestClusterTaskTime(filter, ProvisionerAction.CREATE));
+    Assert.assertEquals(Long.valueOf(8000), systemView.getLatestClusterTaskTime(filter, ProvisionerAction.DELETE));
+    ClusterTaskFilter otherTenant = new ClusterTaskFilter("otherTenant", null, null, null, null, null, null, null);
+    Assert.assertNull(systemView.getEarliestClusterTaskTime(otherTenant, ProvisionerAction.CREATE));
+  }
+
+  @Test
+  public void testNodeUsageRollups() throws IOException {
+    long hour = NodeUsageBucket.HOUR;
+    long day = NodeUsageBucket.DAY;
+    Account account = new Account("testUser", "testTenant");
+    systemView.writeNodeUsageEvent(completedTask(ProvisionerAction.CREATE, "1-1-1", "node1", 1000, account), hour);
+    systemView.writeNodeUsageEvent(completedTask(ProvisionerAction.CREATE, "1-1-2", "node2", 2000, account), hour);
+    // creates of live nodes and deletes of nodes that are not live are ignored
+    systemView.writeNodeUsageEvent(completedTask(ProvisionerAction.CREATE, "1-1-3", "node1", 3000, account), hour);
+    systemView.writeNodeUsageEvent(completedTask(ProvisionerAction.DELETE, "1-2-1", "node1", hour + 500, account),
+                                   hour);
+    systemView.writeNodeUsageEvent(completedTask(ProvisionerAction.DELETE, "1-2-2", "node1", hour + 600, account),
+                                   hour);
+    systemView.writeNodeUsageEvent(completedTask(ProvisionerAction.CONFIGURE, "1-1-4", "node2", 4000, account), hour);
+
+    ClusterTaskFilter filter = new ClusterTaskFilter("testTenant", null, null, null, null, null, null, null);
+    Assert.assertEquals(ImmutableList.of(new NodeUsageBucket(0, hour, 2, 3000),
+                                         new NodeUsageBucket(hour, 2 * hour, -1, -500)),
+                        systemView.getNodeUsageBuckets(filter, 0, 2 * hour));
+    Assert.assertEquals(ImmutableList.of(new NodeUsageBucket(hour, 2 * hour, -1, -500)),
+                        systemView.getNodeUsageBuckets(filter, hour, 2 * hour));
+    Assert.assertEquals(0, systemView.getNodeUsageLiveNodes(filter, 0));
+    Assert.assertEquals(2, systemView.getNodeUsageLiveNodes(filter, hour));
+    Assert.assertEquals(1, systemView.getNodeUsageLiveNodes(filter, 2 * hour));
+    Assert.assertEquals(Long.valueOf(0), systemView.getEarliestNodeUsageTime(filter));
+    ClusterTaskFilter otherTenant = new ClusterTaskFilter("otherTenant", null, null, null, null, null, null, null);
+    Assert.assertNull(systemView.getEarliestNodeUsageTime(otherTenant));
+
+    // merging keeps the usage over the whole bucket the same
+    Assert.assertEquals(2, systemView.compactNodeUsage(hour, day, day));
+    Assert.assertEquals(0, systemView.compactNodeUsage(hour, day, day));
+    Assert.assertEquals(ImmutableList.of(new NodeUsageBucket(0, day, 1, 2500 - hour)),
+                        systemView.getNodeUsageBuckets(filter, 0, day));
+
+    // events within a merged bucket are added to it
+    systemView.writeNodeUsageEvent(completedTask(ProvisionerAction.CREATE, "1-3-1", "node3", 2 * hour, account), hour);
+    Assert.assertEquals(ImmutableList.of(new NodeUsageBucket(0, day, 2, 2500 + hour)),
+                        systemView.getNodeUsageBuckets(filter, 0, day));
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentNodeUsageEvents() throws Exception {
+    final long hour = NodeUsageBucket.HOUR;
+    final Account account = new Account("testUser", "testTenant");
+    int numNodes = 20;
+    // all nodes of the cluster finish being created at the same time, in the same hour bucket
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(numNodes);
+    try {
+      List<Future<Void>> futures = Lists.newArrayList();
+      for (int i = 1; i <= numNodes; i++) {
+        final int nodeNum = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            ClusterTask task = completedTask(ProvisionerAction.CREATE, "1-1-" + nodeNum, "node" + nodeNum,
+                                             1000 + nodeNum, account);
+            startLatch.await();
+            systemView.writeNodeUsageEvent(task, hour);
+            return null;
+          }
+        }));
+      }
+      startLatch.countDown();
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    ClusterTaskFilter filter = new ClusterTaskFilter("testTenant", null, null, null, null, null, null, null);
+    Assert.assertEquals(numNodes, systemView.getNodeUsageLiveNodes(filter, hour));
+    List<NodeUsageBucket> buckets = systemView.getNodeUsageBuckets(filter, 0, hour);
+    Assert.assertEquals(1, buckets.size());
+    Assert.assertEquals(numNodes, buckets.get(0).getLiveDelta());
+  }
+
+  private ClusterTask completedTask(ProvisionerAction action, String taskId, String nodeId, long statusTime,
+                                    Account account) {
+    ClusterTask task = new ClusterTask(action, TaskId.fromString(taskId), nodeId, "service",
+                                       ClusterAction.CLUSTER_CREATE, "test", account);
+    task.setStatus(ClusterTask.Status.COMPLETE);
+    task.setStatusTime(statusTime);
+    return task;
+  }
+
+  protected void writeCompletedTask(ClusterTask task, long statusTime) throws IOException {
+    systemView.writeClusterTask(task);
+    task.setStatus(ClusterTask.Status.COMPLETE);
+    task.setStatusTime(statusTime);
+    systemView.writeClusterTask(task);
+  }
+
   @Test
   public void testGetAllClusters() throws Exception {
     Assert.assertEquals(0, systemView.getAllClusters().size());
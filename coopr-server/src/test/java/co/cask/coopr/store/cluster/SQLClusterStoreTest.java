@@ -16,16 +16,27 @@
 package co.cask.coopr.store.cluster;
 
 import co.cask.coopr.BaseTest;
+import co.cask.coopr.account.Account;
 import co.cask.coopr.codec.json.guice.CodecModules;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.metrics.NodeUsageBucket;
+import co.cask.coopr.scheduler.ClusterAction;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.spec.ProvisionerAction;
 import co.cask.coopr.store.DBHelper;
 import co.cask.coopr.store.guice.TestStoreModule;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
 
 /**
  *
@@ -57,6 +68,28 @@ public class SQLClusterStoreTest extends ClusterStoreTest {
     return sqlClusterStoreService;
   }
 
+  @Test
+  public void testRebuildNodeUsage() throws Exception {
+    long hour = NodeUsageBucket.HOUR;
+    Account account = new Account("testUser", "testTenant");
+    writeCompletedTask(new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
+                                       ClusterAction.CLUSTER_CREATE, "test", account), 1000);
+    writeCompletedTask(new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-2"), "node2", "service",
+                                       ClusterAction.CLUSTER_CREATE, "test", account), 2000);
+    writeCompletedTask(new ClusterTask(ProvisionerAction.DELETE, TaskId.fromString("1-2-1"), "node1", "service",
+                                       ClusterAction.CLUSTER_DELETE, "test", account), hour + 500);
+
+    ClusterTaskFilter filter = new ClusterTaskFilter("testTenant", null, null, null, null, null, null, null);
+    List<NodeUsageBucket> expected = ImmutableList.of(new NodeUsageBucket(0, hour, 2, 3000),
+                                                      new NodeUsageBucket(hour, 2 * hour, -1, -500));
+    sqlClusterStoreService.rebuildNodeUsage();
+    Assert.assertEquals(expected, systemView.getNodeUsageBuckets(filter, 0, 2 * hour));
+
+    // rebuilding replaces the existing rollups instead of adding to them
+    sqlClusterStoreService.rebuildNodeUsage();
+    Assert.assertEquals(expected, systemView.getNodeUsageBuckets(filter, 0, 2 * hour));
+  }
+
   @AfterClass
   public static void afterClass() {
     DBHelper.dropDerbyDB();
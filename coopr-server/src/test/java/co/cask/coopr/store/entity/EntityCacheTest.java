@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.entity;
+
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.management.CacheStats;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ *
+ */
+public class EntityCacheTest {
+  private static final BaseEntityStoreView.EntityType SERVICE = BaseEntityStoreView.EntityType.SERVICE;
+  private static final byte[] V1 = "v1".getBytes(Charsets.UTF_8);
+  private static final byte[] V2 = "v2".getBytes(Charsets.UTF_8);
+
+  @Test
+  public void testVersionsCachedPerTenant() {
+    CacheStats stats = new CacheStats();
+    EntityCache cache = new EntityCache(10, stats);
+
+    Assert.assertNull(cache.get("tenant1", SERVICE, "hdfs", 1));
+    cache.put(cache.getGeneration(), "tenant1", SERVICE, "hdfs", 1, V1);
+    cache.put(cache.getGeneration(), "tenant1", SERVICE, "hdfs", Constants.FIND_MAX_VERSION, V2);
+
+    Assert.assertArrayEquals(V1, cache.get("tenant1", SERVICE, "hdfs", 1).get());
+    Assert.assertArrayEquals(V2, cache.get("tenant1", SERVICE, "hdfs", Constants.FIND_MAX_VERSION).get());
+    Assert.assertNull(cache.get("tenant1", SERVICE, "hdfs", 2));
+    Assert.assertNull(cache.get("tenant2", SERVICE, "hdfs", 1));
+    Assert.assertNull(cache.get("tenant1", BaseEntityStoreView.EntityType.HARDWARE_TYPE, "hdfs", 1));
+    Assert.assertEquals(2, stats.getHits());
+    Assert.assertEquals(4, stats.getMisses());
+  }
+
+  @Test
+  public void testMissingEntitiesCached() {
+    EntityCache cache = new EntityCache(10, new CacheStats());
+    cache.put(cache.getGeneration(), "tenant1", SERVICE, "hdfs", Constants.FIND_MAX_VERSION, null);
+    Optional<byte[]> entity = cache.get("tenant1", SERVICE, "hdfs", Constants.FIND_MAX_VERSION);
+    Assert.assertNotNull(entity);
+    Assert.assertFalse(entity.isPresent());
+  }
+
+  @Test
+  public void testInvalidateDropsEntityAndLatestOfType() {
+    EntityCache cache = new EntityCache(10, new CacheStats());
+    List<byte[]> latest = ImmutableList.of(V1, V2);
+    cache.put(cache.getGeneration(), "tenant1", SERVICE, "hdfs", 1, V1);
+    cache.put(cache.getGeneration(), "tenant1", SERVICE, "hdfs", Constants.FIND_MAX_VERSION, V1);
+    cache.put(cache.getGeneration(), "tenant1", SERVICE, "hbase", 1, V2);
+    cache.putAllLatest(cache.getGeneration(), "tenant1", SERVICE, latest);
+    cache.putAllLatest(cache.getGeneration(), "tenant2", SERVICE, latest);
+    Assert.assertEquals(latest, cache.getAllLatest("tenant1", SERVICE));
+
+    cache.invalidate("tenant1", SERVICE, "hdfs");
+    Assert.assertNull(cache.get("tenant1", SERVICE, "hdfs", 1));
+    Assert.assertNull(cache.get("tenant1", SERVICE, "hdfs", Constants.FIND_MAX_VERSION));
+    Assert.assertNull(cache.getAllLatest("tenant1", SERVICE));
+    Assert.assertArrayEquals(V2, cache.get("tenant1", SERVICE, "hbase", 1).get());
+    Assert.assertEquals(latest, cache.getAllLatest("tenant2", SERVICE));
+
+    cache.invalidateAll();
+    Assert.assertNull(cache.get("tenant1", SERVICE, "hbase", 1));
+    Assert.assertNull(cache.getAllLatest("tenant2", SERVICE));
+  }
+
+  @Test
+  public void testReadsDuringChangesNotCached() {
+    EntityCache cache = new EntityCache(10, new CacheStats());
+    long readGeneration = cache.getGeneration();
+    // entity changes after it was read from the store but before it was put in the cache
+    cache.invalidate("tenant1", SERVICE, "hdfs");
+    cache.put(readGeneration, "tenant1", SERVICE, "hdfs", Constants.FIND_MAX_VERSION, V1);
+    cache.putAllLatest(readGeneration, "tenant1", SERVICE, ImmutableList.of(V1));
+    Assert.assertNull(cache.get("tenant1", SERVICE, "hdfs", Constants.FIND_MAX_VERSION));
+    Assert.assertNull(cache.getAllLatest("tenant1", SERVICE));
+  }
+
+  @Test
+  public void testDisabledCache() {
+    CacheStats stats = new CacheStats();
+    EntityCache cache = new EntityCache(0, stats);
+    cache.put(cache.getGeneration(), "tenant1", SERVICE, "hdfs", 1, V1);
+    cache.putAllLatest(cache.getGeneration(), "tenant1", SERVICE, ImmutableList.of(V1));
+    Assert.assertNull(cache.get("tenant1", SERVICE, "hdfs", 1));
+    Assert.assertNull(cache.getAllLatest("tenant1", SERVICE));
+    Assert.assertEquals(0, stats.getHits() + stats.getMisses());
+  }
+}
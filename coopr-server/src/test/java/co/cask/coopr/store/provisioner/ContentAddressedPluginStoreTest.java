@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.provisioner;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.provisioner.plugin.PluginType;
+import co.cask.coopr.provisioner.plugin.ResourceType;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests for the content addressed plugin store.
+ */
+public class ContentAddressedPluginStoreTest extends PluginStoreTest {
+  private final Account account1 = new Account(Constants.ADMIN_USER, "tenant1");
+  private final Account account2 = new Account(Constants.ADMIN_USER, "tenant2");
+  private final ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Override
+  AbstractPluginStore getInitializedStore() throws IOException {
+    Configuration conf = Configuration.create();
+    conf.set(Constants.ContentAddressedPluginStore.DATA_DIR, tmpFolder.newFolder().getAbsolutePath());
+    AbstractPluginStore store = new ContentAddressedPluginStore();
+    store.initialize(conf);
+    return store;
+  }
+
+  @Override
+  void clearData() {
+    // tmp folder will get deleted itself.
+  }
+
+  @Test
+  public void testSameContentsStoredOnce() throws Exception {
+    AbstractPluginStore store = getInitializedStore();
+    write(store, account1, "hadoop", 1, "hadoop cookbook");
+    write(store, account2, "hadoop", 1, "hadoop cookbook");
+    write(store, account1, "hadoop", 2, "hadoop cookbook v2");
+
+    File contents = store.getResourceFile(account1, resourceType, "hadoop", 1);
+    Assert.assertEquals(contents, store.getResourceFile(account2, resourceType, "hadoop", 1));
+    Assert.assertFalse(contents.equals(store.getResourceFile(account1, resourceType, "hadoop", 2)));
+    Assert.assertEquals(contents.getName(), store.getResourceHash(account1, resourceType, "hadoop", 1));
+  }
+
+  @Test
+  public void testContentsDeletedWhenUnreferenced() throws Exception {
+    AbstractPluginStore store = getInitializedStore();
+    write(store, account1, "hadoop", 1, "hadoop cookbook");
+    write(store, account2, "hadoop", 1, "hadoop cookbook");
+    File contents = store.getResourceFile(account1, resourceType, "hadoop", 1);
+    Assert.assertEquals(contents, store.getResourceFile(account2, resourceType, "hadoop", 1));
+
+    store.deleteResource(account1, resourceType, "hadoop", 1);
+    Assert.assertTrue(contents.exists());
+    Assert.assertEquals(contents, store.getResourceFile(account2, resourceType, "hadoop", 1));
+
+    store.deleteResource(account2, resourceType, "hadoop", 1);
+    Assert.assertFalse(contents.exists());
+  }
+
+  @Test
+  public void testCopyDoesNotCopyContents() throws Exception {
+    AbstractPluginStore store = getInitializedStore();
+    write(store, account1, "hadoop", 1, "hadoop cookbook");
+    store.copyResource(account1, account2, resourceType, "hadoop", 1);
+    File contents = store.getResourceFile(account1, resourceType, "hadoop", 1);
+    Assert.assertEquals(contents, store.getResourceFile(account2, resourceType, "hadoop", 1));
+
+    // overwriting a resource drops its reference to the old contents
+    write(store, account1, "hadoop", 1, "new hadoop cookbook");
+    Assert.assertTrue(contents.exists());
+    Assert.assertFalse(contents.equals(store.getResourceFile(account1, resourceType, "hadoop", 1)));
+    store.deleteResource(account2, resourceType, "hadoop", 1);
+    Assert.assertFalse(contents.exists());
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentWritesKeepReferenceCounts() throws Exception {
+    File dataDir = tmpFolder.newFolder();
+    Configuration conf = Configuration.create();
+    conf.set(Constants.ContentAddressedPluginStore.DATA_DIR, dataDir.getAbsolutePath());
+    final AbstractPluginStore store = new ContentAddressedPluginStore();
+    store.initialize(conf);
+    write(store, account1, "hadoop", 1, "hadoop cookbook");
+    store.copyResource(account1, account2, resourceType, "hadoop", 1);
+
+    // overwrite the same resource version with different contents at the same time
+    int numWriters = 10;
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(numWriters);
+    try {
+      List<Future<Void>> futures = Lists.newArrayList();
+      for (int i = 0; i < numWriters; i++) {
+        final String contents = "hadoop cookbook " + i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            startLatch.await();
+            write(store, account1, "hadoop", 1, contents);
+            return null;
+          }
+        }));
+      }
+      startLatch.countDown();
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // the contents still referenced by the copy must not have lost its reference
+    File copiedContents = store.getResourceFile(account2, resourceType, "hadoop", 1);
+    Assert.assertNotNull(copiedContents);
+    Assert.assertEquals(2, countBlobs(dataDir));
+
+    // once nothing points to any contents, none of them may be left behind
+    store.deleteResource(account1, resourceType, "hadoop", 1);
+    store.deleteResource(account2, resourceType, "hadoop", 1);
+    Assert.assertFalse(copiedContents.exists());
+    Assert.assertEquals(0, countBlobs(dataDir));
+  }
+
+  // count the contents in the store, leaving out the files holding reference counts
+  private int countBlobs(File dataDir) {
+    int numBlobs = 0;
+    File[] blobDirs = new File(dataDir, "blobs").listFiles();
+    if (blobDirs == null) {
+      return 0;
+    }
+    for (File blobDir : blobDirs) {
+      for (File file : blobDir.listFiles()) {
+        if (!file.getName().endsWith(".refs")) {
+          numBlobs++;
+        }
+      }
+    }
+    return numBlobs;
+  }
+
+  private void write(AbstractPluginStore store, Account account, String name, int version, String contents)
+    throws IOException {
+    OutputStream outputStream = store.getResourceOutputStream(account, resourceType, name, version);
+    try {
+      outputStream.write(contents.getBytes(Charsets.UTF_8));
+    } finally {
+      outputStream.close();
+    }
+  }
+}
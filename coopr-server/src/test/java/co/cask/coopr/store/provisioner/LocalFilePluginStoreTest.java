@@ -15,16 +15,25 @@
  */
 package co.cask.coopr.store.provisioner;
 
+import co.cask.coopr.account.Account;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.provisioner.plugin.PluginType;
+import co.cask.coopr.provisioner.plugin.ResourceType;
 import co.cask.coopr.store.guice.TestStoreModule;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Rule;
+import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  *
@@ -45,7 +54,7 @@ public class LocalFilePluginStoreTest extends PluginStoreTest {
   }
 
   @Override
-  PluginStore getInitializedStore() throws IOException {
+  AbstractPluginStore getInitializedStore() throws IOException {
     conf.set(Constants.LocalFilePluginStore.DATA_DIR, tmpFolder.newFolder().getAbsolutePath());
     store.initialize(conf);
     return store;
@@ -55,4 +64,22 @@ public class LocalFilePluginStoreTest extends PluginStoreTest {
   void clearData() {
     // tmp folder will get deleted itself.
   }
+
+  @Test
+  public void testResourceFile() throws Exception {
+    AbstractPluginStore store = getInitializedStore();
+    Account account = new Account(Constants.ADMIN_USER, "tenant1");
+    ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
+    String contents = "hadoop cookbook";
+
+    Assert.assertNull(store.getResourceFile(account, resourceType, "hadoop", 1));
+    OutputStream outputStream = store.getResourceOutputStream(account, resourceType, "hadoop", 1);
+    try {
+      outputStream.write(contents.getBytes(Charsets.UTF_8));
+    } finally {
+      outputStream.close();
+    }
+    File file = store.getResourceFile(account, resourceType, "hadoop", 1);
+    Assert.assertEquals(contents, Files.toString(file, Charsets.UTF_8));
+  }
 }
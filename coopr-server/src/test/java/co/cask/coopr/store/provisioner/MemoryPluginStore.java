@@ -20,6 +20,7 @@ import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.provisioner.plugin.ResourceType;
 import com.google.common.base.Objects;
 import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -31,7 +32,7 @@ import java.util.concurrent.ConcurrentMap;
 /**
  * Plugin store that keeps plugin modules in memory. Used for testing since nothing is persisted to disk.
  */
-public class MemoryPluginStore implements PluginStore {
+public class MemoryPluginStore extends AbstractPluginStore {
   private final ConcurrentMap<Key, ByteArrayOutputStream> store;
 
   public MemoryPluginStore() {
@@ -66,6 +67,24 @@ public class MemoryPluginStore implements PluginStore {
     return new ByteArrayInputStream(store.get(key).toByteArray());
   }
 
+  @Override
+  public void copyResource(Account fromAccount, Account toAccount, ResourceType type, String name, int version)
+    throws IOException {
+    ByteArrayOutputStream contents = store.get(new Key(fromAccount, type, name, version));
+    if (contents == null) {
+      throw new IOException("Resource " + name + " does not exist.");
+    }
+    ByteArrayOutputStream copy = new ByteArrayOutputStream();
+    contents.writeTo(copy);
+    store.put(new Key(toAccount, type, name, version), copy);
+  }
+
+  @Override
+  public String getResourceHash(Account account, ResourceType type, String name, int version) throws IOException {
+    ByteArrayOutputStream contents = store.get(new Key(account, type, name, version));
+    return contents == null ? null : Hashing.sha256().hashBytes(contents.toByteArray()).toString();
+  }
+
   @Override
   public void deleteResource(Account account, ResourceType type,  String name, int version) throws IOException {
     store.remove(new Key(account, type, name, version));
@@ -40,7 +40,7 @@ public class MemoryPluginStoreTest extends PluginStoreTest {
   }
 
   @Override
-  PluginStore getInitializedStore() {
+  AbstractPluginStore getInitializedStore() {
     store.initialize(conf);
     return store;
   }
@@ -20,6 +20,7 @@ import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.provisioner.plugin.PluginType;
 import co.cask.coopr.provisioner.plugin.ResourceType;
 import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 import com.google.common.io.CharStreams;
 import org.junit.After;
 import org.junit.Assert;
@@ -37,7 +38,7 @@ public abstract class PluginStoreTest {
   private final Account account1 = new Account(Constants.ADMIN_USER, "tenant1");
   private final Account account2 = new Account(Constants.ADMIN_USER, "tenant2");
 
-  abstract PluginStore getInitializedStore() throws Exception;
+  abstract AbstractPluginStore getInitializedStore() throws Exception;
 
   abstract void clearData();
 
@@ -48,7 +49,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testBasicInputOutputStreams() throws Exception {
-    PluginStore store = getInitializedStore();
+    AbstractPluginStore store = getInitializedStore();
     String contents = "this is the cookbook\nthis is the second line";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
     String name = "hadoop";
@@ -61,7 +62,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testMultipleWrites() throws Exception {
-    PluginStore store = getInitializedStore();
+    AbstractPluginStore store = getInitializedStore();
     String contents = "these are the first contents";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
     String name = "hadoop";
@@ -78,7 +79,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testWriteDifferentVersions() throws Exception {
-    PluginStore store = getInitializedStore();
+    AbstractPluginStore store = getInitializedStore();
     String contents1 = "v1 contents";
     String contents2 = "v2 contents";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
@@ -97,7 +98,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testWritesFromDifferentTenants() throws Exception {
-    PluginStore store = getInitializedStore();
+    AbstractPluginStore store = getInitializedStore();
     String contents1 = "tenant1 contents";
     String contents2 = "tenant2 contents";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
@@ -115,7 +116,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testWriteDifferentModules() throws Exception {
-    PluginStore store = getInitializedStore();
+    AbstractPluginStore store = getInitializedStore();
     String contents1 = "hadoop cookbook";
     String contents2 = "mysql cookbook";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
@@ -134,7 +135,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testDeleteWithinTenant() throws Exception {
-    PluginStore store = getInitializedStore();
+    AbstractPluginStore store = getInitializedStore();
     String contents = "hadoop cookbook";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
     String name = "hadoop";
@@ -153,7 +154,7 @@ public abstract class PluginStoreTest {
 
   @Test
   public void testDeleteOnlyAffectsTenant() throws Exception {
-    PluginStore store = getInitializedStore();
+    AbstractPluginStore store = getInitializedStore();
     String contents = "hadoop cookbook";
     ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
     String name = "hadoop";
@@ -173,7 +174,54 @@ public abstract class PluginStoreTest {
     Assert.assertEquals(contents, readFromStore(store, account2, resourceType, name, version));
   }
 
-  private void writeToStore(PluginStore store, Account account, ResourceType resourceType,
+  @Test
+  public void testCopyResource() throws Exception {
+    AbstractPluginStore store = getInitializedStore();
+    String contents = "hadoop cookbook";
+    ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
+    String name = "hadoop";
+    int version = 1;
+
+    writeToStore(store, account1, resourceType, name, version, contents);
+    writeToStore(store, account2, resourceType, name, version, "other contents");
+    store.copyResource(account1, account2, resourceType, name, version);
+    Assert.assertEquals(contents, readFromStore(store, account2, resourceType, name, version));
+
+    // the copy is independent of the original
+    store.deleteResource(account1, resourceType, name, version);
+    Assert.assertNull(store.getResourceInputStream(account1, resourceType, name, version));
+    Assert.assertEquals(contents, readFromStore(store, account2, resourceType, name, version));
+
+    try {
+      store.copyResource(account1, account2, resourceType, name, version);
+      Assert.fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testResourceHash() throws Exception {
+    AbstractPluginStore store = getInitializedStore();
+    ResourceType resourceType = new ResourceType(PluginType.AUTOMATOR, "chef-solo", "cookbooks");
+    String name = "hadoop";
+
+    Assert.assertNull(store.getResourceHash(account1, resourceType, name, 1));
+    writeToStore(store, account1, resourceType, name, 1, "hadoop cookbook");
+    writeToStore(store, account1, resourceType, name, 2, "hadoop cookbook v2");
+    writeToStore(store, account2, resourceType, name, 1, "hadoop cookbook");
+
+    // the hash depends only on the contents
+    String hash = store.getResourceHash(account1, resourceType, name, 1);
+    Assert.assertEquals(Hashing.sha256().hashString("hadoop cookbook", Charsets.UTF_8).toString(), hash);
+    Assert.assertEquals(hash, store.getResourceHash(account2, resourceType, name, 1));
+    Assert.assertFalse(hash.equals(store.getResourceHash(account1, resourceType, name, 2)));
+
+    store.deleteResource(account1, resourceType, name, 1);
+    Assert.assertNull(store.getResourceHash(account1, resourceType, name, 1));
+  }
+
+  private void writeToStore(AbstractPluginStore store, Account account, ResourceType resourceType,
                             String name, int version, String content) throws IOException {
     OutputStream outputStream = store.getResourceOutputStream(account, resourceType, name, version);
     try {
@@ -183,7 +231,7 @@ public abstract class PluginStoreTest {
     }
   }
 
-  private String readFromStore(PluginStore store, Account account, ResourceType resourceType,
+  private String readFromStore(AbstractPluginStore store, Account account, ResourceType resourceType,
                                String name, int version) throws IOException {
     Reader reader = new InputStreamReader(
       store.getResourceInputStream(account, resourceType, name, version), Charsets.UTF_8);
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.provisioner;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.provisioner.plugin.ResourceType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Tests the fallbacks of {@link AbstractPluginStore} for stores that only implement {@link PluginStore}.
+ */
+public class WrappedPluginStoreTest extends PluginStoreTest {
+  private final MemoryPluginStore memoryStore = new MemoryPluginStore();
+
+  @Override
+  AbstractPluginStore getInitializedStore() {
+    // only forwards the methods of the interface, so every other operation uses the fallback
+    PluginStore store = new PluginStore() {
+      @Override
+      public void initialize(Configuration conf) {
+        memoryStore.initialize(conf);
+      }
+
+      @Override
+      public OutputStream getResourceOutputStream(Account account, ResourceType type, String name, int version)
+        throws IOException {
+        return memoryStore.getResourceOutputStream(account, type, name, version);
+      }
+
+      @Override
+      public InputStream getResourceInputStream(Account account, ResourceType type, String name, int version)
+        throws IOException {
+        return memoryStore.getResourceInputStream(account, type, name, version);
+      }
+
+      @Override
+      public void deleteResource(Account account, ResourceType type, String name, int version) throws IOException {
+        memoryStore.deleteResource(account, type, name, version);
+      }
+    };
+    store.initialize(Configuration.create());
+    return AbstractPluginStore.of(store);
+  }
+
+  @Override
+  void clearData() {
+    memoryStore.clearData();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.tenant;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.spec.Tenant;
+import co.cask.coopr.spec.TenantSpecification;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the tenant cache.
+ */
+public class TenantCacheTest extends BaseTest {
+
+  @Test
+  public void testCachedUntilChanged() throws Exception {
+    TenantCache cache = new TenantCache(tenantStore, zkClientService);
+    Assert.assertNull(cache.getTenantByName("companyX"));
+
+    Tenant tenant = new Tenant("id1", new TenantSpecification("companyX", 10, 100, 1000));
+    tenantStore.writeTenant(tenant);
+    // tenants that did not exist are not cached
+    Assert.assertEquals(tenant, cache.getTenantByName("companyX"));
+
+    Tenant updated = new Tenant("id1", new TenantSpecification("companyX", 20, 100, 1000));
+    tenantStore.writeTenant(updated);
+    Assert.assertEquals(tenant, cache.getTenantByName("companyX"));
+
+    cache.tenantChanged("companyX");
+    Assert.assertEquals(updated, cache.getTenantByName("companyX"));
+  }
+
+  @Test
+  public void testChangesSeenByOtherCaches() throws Exception {
+    TenantCache cache1 = new TenantCache(tenantStore, zkClientService);
+    TenantCache cache2 = new TenantCache(tenantStore, zkClientService);
+
+    Tenant tenant = new Tenant("id1", new TenantSpecification("companyX", 10, 100, 1000));
+    tenantStore.writeTenant(tenant);
+    Assert.assertEquals(tenant, cache1.getTenantByName("companyX"));
+    Assert.assertEquals(tenant, cache2.getTenantByName("companyX"));
+
+    tenantStore.deleteTenantByName("companyX");
+    cache1.tenantChanged("companyX");
+    Assert.assertNull(cache1.getTenantByName("companyX"));
+
+    // the other cache is notified through zookeeper
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (cache2.getTenantByName("companyX") != null && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+    Assert.assertNull(cache2.getTenantByName("companyX"));
+  }
+}